@@ -86,6 +86,26 @@ public abstract class AbstractMutableOctet
 		return this;
 	}
 
+	public final MutableOctet translate(final byte[] table) {
+		translate(this, table);
+		return this;
+	}
+
+	public final MutableOctet xor(final Octet mask) {
+		xor(this, mask);
+		return this;
+	}
+
+	public final MutableOctet and(final Octet mask) {
+		and(this, mask);
+		return this;
+	}
+
+	public final MutableOctet or(final Octet mask) {
+		or(this, mask);
+		return this;
+	}
+
 	public final MutableOctet setByteAt(final int index, final byte b) {
 		if (index >= begin() && index < end()) {
 			this.data.setByteAt(index, b);
@@ -179,16 +199,51 @@ public abstract class AbstractMutableOctet
 		} else {
 			final ByteBuffer buf = octet.buffer();
 			if (buf != null) {
-				for (int i = octet.begin(); i < end; ++i) {
-					if (oldByte == buf.get(i)) {
-						buf.put(i, newByte);
-					}
-				}
+				BufferUtils.replaceAll(buf, octet.begin(), end, oldByte, newByte);
 			}
 		}
 	}
 
 
+	public static final void translate(final MutableOctet octet, final byte[] table) {
+		final ByteBuffer buf = bufferOf(octet);
+		if (buf != null) {
+			final int start = startOf(octet);
+			BufferUtils.translate(buf, start, start + octet.length(), table);
+		}
+	}
+
+	public static final void xor(final MutableOctet octet, final Octet mask) {
+		final ByteBuffer buf = checkMask(octet, mask);
+		if (buf != null) {
+			final int start = startOf(octet);
+			BufferUtils.xor(buf, start, start + octet.length(), bufferOf(mask), startOf(mask));
+		}
+	}
+
+	public static final void and(final MutableOctet octet, final Octet mask) {
+		final ByteBuffer buf = checkMask(octet, mask);
+		if (buf != null) {
+			final int start = startOf(octet);
+			BufferUtils.and(buf, start, start + octet.length(), bufferOf(mask), startOf(mask));
+		}
+	}
+
+	public static final void or(final MutableOctet octet, final Octet mask) {
+		final ByteBuffer buf = checkMask(octet, mask);
+		if (buf != null) {
+			final int start = startOf(octet);
+			BufferUtils.or(buf, start, start + octet.length(), bufferOf(mask), startOf(mask));
+		}
+	}
+
+	private static final ByteBuffer checkMask(final MutableOctet octet, final Octet mask) {
+		if (mask.length() < octet.length()) {
+			throw new IndexOutOfBoundsException("length: " + octet.length() + " mask length: " + mask.length());
+		}
+		return (octet.length() > 0) ? bufferOf(octet) : null;
+	}
+
 	static final class OutputOp extends OctetOutputOp {
 
 		private final AbstractMutableOctet mutableOctet;
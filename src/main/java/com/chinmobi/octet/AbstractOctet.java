@@ -644,6 +644,23 @@ public abstract class AbstractOctet implements Octet, Externalizable {
 		return bytes;
 	}
 
+	/**
+	 * Returns the number of one bits in the bytes of this octet.
+	 */
+	public final long bitCount() {
+		final byte[] array = this.array();
+		if (array != null) {
+			final int start = this.begin + this.arrayOffset();
+			return BufferUtils.bitCount(array, start, start + this.length);
+		}
+
+		final ByteBuffer buffer = this.buffer();
+		if (buffer != null) {
+			return BufferUtils.bitCount(buffer, this.begin, end());
+		}
+		return 0;
+	}
+
 	@Override
 	public int hashCode() {
 		int i = this.begin;
@@ -781,4 +798,21 @@ public abstract class AbstractOctet implements Octet, Externalizable {
 		return true;
 	}
 
+
+	/**
+	 * Returns the buffer of the octet, or its array wrapped as one, see startOf.
+	 */
+	static final ByteBuffer bufferOf(final Octet octet) {
+		final ByteBuffer buf = octet.buffer();
+		if (buf != null) {
+			return buf;
+		}
+		final byte[] array = octet.array();
+		return (array != null) ? ByteBuffer.wrap(array) : null;
+	}
+
+	static final int startOf(final Octet octet) {
+		return (octet.buffer() != null) ? octet.begin() : octet.begin() + octet.arrayOffset();
+	}
+
 }
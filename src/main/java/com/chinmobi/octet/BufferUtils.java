@@ -25,6 +25,8 @@
 package com.chinmobi.octet;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
@@ -32,6 +34,25 @@ import java.nio.ByteBuffer;
  */
 public final class BufferUtils {
 
+	// Below this length, per-byte access of direct buffers is cheaper than
+	// setting up bulk views.
+	private static final int BULK_THRESHOLD = 32;
+
+	private static final int SCRATCH_SIZE = 8 * 1024;
+
+	// Staging for overlapping moves and swaps of direct buffers, two halves of
+	// SCRATCH_SIZE; kept per thread so that many small edits make no garbage.
+	private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[2 * SCRATCH_SIZE];
+		}
+	};
+
+	private static final int XOR = 0;
+	private static final int AND = 1;
+	private static final int OR = 2;
+
 	private BufferUtils() {
 	}
 
@@ -93,21 +114,66 @@ public final class BufferUtils {
 			final byte[] array = buffer.array();
 			System.arraycopy(array, srcPos + buffer.arrayOffset(),
 					array, destPos + buffer.arrayOffset(), length);
-		} else {
+		} else
+		if (length < BULK_THRESHOLD) {
 			if (srcPos < destPos) {
 				for (int i = srcPos + length - 1, j = destPos + length - 1; i >= srcPos; --i, --j) {
 					buffer.put(j, buffer.get(i));
 				}
-			} else
-			if (srcPos > destPos) {
+			} else {
 				final int end = srcPos + length;
 				for (int i = srcPos, j = destPos; i < end; ++i, ++j) {
 					buffer.put(j, buffer.get(i));
 				}
 			}
+		} else
+		if ((srcPos < destPos ? destPos - srcPos : srcPos - destPos) >= length) {
+			copy(buffer, srcPos, buffer, destPos, length);
+		} else {
+			// Overlapping: stage through a scratch array, walking away from
+			// the destination so no source byte is overwritten before it is read.
+			final byte[] scratch = SCRATCH.get();
+
+			if (srcPos < destPos) {
+				for (int remaining = length; remaining > 0; ) {
+					final int n = Math.min(remaining, SCRATCH_SIZE);
+					remaining -= n;
+
+					get(buffer, srcPos + remaining, scratch, 0, n);
+					set(buffer, destPos + remaining, scratch, 0, n);
+				}
+			} else {
+				for (int done = 0; done < length; ) {
+					final int n = Math.min(length - done, SCRATCH_SIZE);
+
+					get(buffer, srcPos + done, scratch, 0, n);
+					set(buffer, destPos + done, scratch, 0, n);
+
+					done += n;
+				}
+			}
 		}
 	}
 
+	/*
+	 * copy method
+	 */
+
+	public static final void copy(final ByteBuffer src, final int srcPos,
+			final ByteBuffer dest, final int destPos, final int length) {
+		if (length <= 0) {
+			return;
+		}
+
+		final ByteBuffer srcView = src.duplicate();
+		srcView.limit(srcPos + length).position(srcPos);
+
+		final ByteBuffer destView = dest.duplicate();
+		destView.limit(destPos + length).position(destPos);
+
+		destView.put(srcView);
+	}
+
 	/*
 	 * fill method
 	 */
@@ -116,14 +182,20 @@ public final class BufferUtils {
 			final int offset, final int length, final byte b) {
 
 		if (buffer.hasArray()) {
-			final byte[] array = buffer.array();
-			final int end = offset + length + buffer.arrayOffset();
-			for (int i = offset + buffer.arrayOffset(); i < end; ++i) {
-				array[i] = b;
-			}
+			final int start = offset + buffer.arrayOffset();
+			Arrays.fill(buffer.array(), start, start + length, b);
 		} else {
 			final int end = offset + length;
-			for (int i = offset; i < end; ++i) {
+			int i = offset;
+
+			if (length >= BULK_THRESHOLD) {
+				final long word = SwarUtils.broadcast(b);
+				for (final int limit = end - 8; i <= limit; i += 8) {
+					buffer.putLong(i, word);
+				}
+			}
+
+			for (; i < end; ++i) {
 				buffer.put(i, b);
 			}
 		}
@@ -135,7 +207,7 @@ public final class BufferUtils {
 
 	public static final void replaceAll(final ByteBuffer buffer, int start, int end,
 			final byte oldByte, final byte newByte) {
-		final byte[] array = buffer.array();
+		final byte[] array = buffer.hasArray() ? buffer.array() : null;
 		if (array != null) {
 			start += buffer.arrayOffset();
 			end += buffer.arrayOffset();
@@ -145,6 +217,18 @@ public final class BufferUtils {
 				}
 			}
 		} else {
+			if ((end - start) >= BULK_THRESHOLD) {
+				final long diff = SwarUtils.broadcast((byte)(oldByte ^ newByte));
+
+				for (final int limit = end - 8; start <= limit; start += 8) {
+					final long word = buffer.getLong(start);
+					final long mask = SwarUtils.matchBytes(word, oldByte);
+					if (mask != 0) {
+						buffer.putLong(start, word ^ (diff & SwarUtils.expandMask(mask)));
+					}
+				}
+			}
+
 			for (int i = start; i < end; ++i) {
 				if (oldByte == buffer.get(i)) {
 					buffer.put(i, newByte);
@@ -153,6 +237,227 @@ public final class BufferUtils {
 		}
 	}
 
+	/*
+	 * translate method
+	 */
+
+	/**
+	 * Replaces each byte b in [start, end) with table[b &amp; 0xFF].
+	 */
+	public static final void translate(final ByteBuffer buffer, int start, int end, final byte[] table) {
+		if (table.length < 256) {
+			throw new IllegalArgumentException("Table length: " + table.length);
+		}
+
+		final byte[] array = buffer.hasArray() ? buffer.array() : null;
+		if (array != null) {
+			start += buffer.arrayOffset();
+			end += buffer.arrayOffset();
+			for (int i = start; i < end; ++i) {
+				array[i] = table[array[i] & 0xFF];
+			}
+		} else {
+			if ((end - start) >= BULK_THRESHOLD) {
+				// Bytes map one to one, in either byte order.
+				for (final int limit = end - 8; start <= limit; start += 8) {
+					final long word = buffer.getLong(start);
+					long translated = 0;
+					for (int shift = 0; shift < 64; shift += 8) {
+						translated |= (table[(int)(word >>> shift) & 0xFF] & 0xFFL) << shift;
+					}
+					if (translated != word) {
+						buffer.putLong(start, translated);
+					}
+				}
+			}
+
+			for (int i = start; i < end; ++i) {
+				buffer.put(i, table[buffer.get(i) & 0xFF]);
+			}
+		}
+	}
+
+	/*
+	 * Bitwise methods
+	 */
+
+	/**
+	 * Sets each byte in [start, end) to itself xor the byte at the same distance from
+	 * maskStart in the mask.
+	 */
+	public static final void xor(final ByteBuffer buffer, final int start, final int end,
+			final ByteBuffer mask, final int maskStart) {
+		combine(buffer, start, end, mask, maskStart, XOR);
+	}
+
+	public static final void and(final ByteBuffer buffer, final int start, final int end,
+			final ByteBuffer mask, final int maskStart) {
+		combine(buffer, start, end, mask, maskStart, AND);
+	}
+
+	public static final void or(final ByteBuffer buffer, final int start, final int end,
+			final ByteBuffer mask, final int maskStart) {
+		combine(buffer, start, end, mask, maskStart, OR);
+	}
+
+	private static final void combine(final ByteBuffer buffer, int start, final int end,
+			ByteBuffer mask, int maskStart, final int op) {
+		if (buffer.hasArray() && mask.hasArray()) {
+			final byte[] array = buffer.array();
+			final byte[] maskArray = mask.array();
+			final int limit = end + buffer.arrayOffset();
+			int j = maskStart + mask.arrayOffset();
+
+			switch (op) {
+			case XOR:
+				for (int i = start + buffer.arrayOffset(); i < limit; ++i, ++j) {
+					array[i] ^= maskArray[j];
+				}
+				break;
+
+			case AND:
+				for (int i = start + buffer.arrayOffset(); i < limit; ++i, ++j) {
+					array[i] &= maskArray[j];
+				}
+				break;
+
+			default:
+				for (int i = start + buffer.arrayOffset(); i < limit; ++i, ++j) {
+					array[i] |= maskArray[j];
+				}
+				break;
+			}
+			return;
+		}
+
+		if ((end - start) >= BULK_THRESHOLD) {
+			if (mask.order() != buffer.order()) {
+				mask = mask.duplicate().order(buffer.order());
+			}
+
+			for (final int limit = end - 8; start <= limit; start += 8, maskStart += 8) {
+				final long word = buffer.getLong(start);
+				final long maskWord = mask.getLong(maskStart);
+				buffer.putLong(start, (op == XOR) ? (word ^ maskWord) :
+					(op == AND) ? (word & maskWord) : (word | maskWord));
+			}
+		}
+
+		for (; start < end; ++start, ++maskStart) {
+			final int b = buffer.get(start);
+			final int m = mask.get(maskStart);
+			buffer.put(start, (byte)((op == XOR) ? (b ^ m) : (op == AND) ? (b & m) : (b | m)));
+		}
+	}
+
+	/**
+	 * Returns the number of one bits in [start, end).
+	 */
+	public static final long bitCount(final ByteBuffer buffer, int start, final int end) {
+		if (buffer.hasArray()) {
+			final int offset = buffer.arrayOffset();
+			return bitCount(buffer.array(), start + offset, end + offset);
+		}
+
+		long count = 0;
+
+		if ((end - start) >= BULK_THRESHOLD) {
+			for (final int limit = end - 8; start <= limit; start += 8) {
+				count += Long.bitCount(buffer.getLong(start));
+			}
+		}
+
+		for (; start < end; ++start) {
+			count += Integer.bitCount(buffer.get(start) & 0xFF);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of one bits in [start, end) of the array.
+	 */
+	public static final long bitCount(final byte[] array, final int start, final int end) {
+		long count = 0;
+		for (int i = start; i < end; ++i) {
+			count += Integer.bitCount(array[i] & 0xFF);
+		}
+		return count;
+	}
+
+	/*
+	 * indexOf methods
+	 */
+
+	/**
+	 * Returns the absolute index of the first b in [start, end), or -1.
+	 */
+	public static final int indexOf(final ByteBuffer buffer, int start, final int end, final byte b) {
+		if (buffer.hasArray()) {
+			final byte[] array = buffer.array();
+			final int offset = buffer.arrayOffset();
+			for (int i = start + offset, limit = end + offset; i < limit; ++i) {
+				if (array[i] == b) {
+					return i - offset;
+				}
+			}
+			return -1;
+		}
+
+		if ((end - start) >= BULK_THRESHOLD) {
+			final ByteOrder order = buffer.order();
+			for (final int limit = end - 8; start <= limit; start += 8) {
+				final long mask = SwarUtils.matchBytes(buffer.getLong(start), b);
+				if (mask != 0) {
+					return start + SwarUtils.firstIndex(mask, order);
+				}
+			}
+		}
+
+		for (int i = start; i < end; ++i) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the absolute index of the first b1 or b2 in [start, end), or -1.
+	 */
+	public static final int indexOf(final ByteBuffer buffer, int start, final int end,
+			final byte b1, final byte b2) {
+		if (buffer.hasArray()) {
+			final byte[] array = buffer.array();
+			final int offset = buffer.arrayOffset();
+			for (int i = start + offset, limit = end + offset; i < limit; ++i) {
+				final byte b = array[i];
+				if (b == b1 || b == b2) {
+					return i - offset;
+				}
+			}
+			return -1;
+		}
+
+		if ((end - start) >= BULK_THRESHOLD) {
+			final ByteOrder order = buffer.order();
+			for (final int limit = end - 8; start <= limit; start += 8) {
+				final long word = buffer.getLong(start);
+				final long mask = SwarUtils.matchBytes(word, b1) | SwarUtils.matchBytes(word, b2);
+				if (mask != 0) {
+					return start + SwarUtils.firstIndex(mask, order);
+				}
+			}
+		}
+
+		for (int i = start; i < end; ++i) {
+			final byte b = buffer.get(i);
+			if (b == b1 || b == b2) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	/*
 	 * swap methods
 	 */
@@ -265,44 +570,53 @@ public final class BufferUtils {
 			for (; i < end; ++i, ++j) {
 				tmp = array[i]; array[i] = array[j]; array[j] = tmp;
 			}
-		} else {
+		} else
+		if (length < BULK_THRESHOLD) {
 			final int end = srcPos + length;
 			for (int i = srcPos, j = destPos; i < end; ++i, ++j) {
 				tmp = buffer.get(i);
 				buffer.put(i, buffer.get(j));
 				buffer.put(j, tmp);
 			}
+		} else {
+			// The two ranges never overlap here.
+			final byte[] scratch = SCRATCH.get();
+
+			for (int done = 0; done < length; ) {
+				final int n = Math.min(length - done, SCRATCH_SIZE);
+
+				get(buffer, srcPos + done, scratch, 0, n);
+				get(buffer, destPos + done, scratch, SCRATCH_SIZE, n);
+
+				set(buffer, srcPos + done, scratch, SCRATCH_SIZE, n);
+				set(buffer, destPos + done, scratch, 0, n);
+
+				done += n;
+			}
 		}
 	}
 
-	private static void get(final ByteBuffer buffer, final int index, final byte[] dest, final int offset, final int length) {
+	static void get(final ByteBuffer buffer, final int index, final byte[] dest, final int offset, final int length) {
 		if (buffer.hasArray()) {
 			final byte[] array = buffer.array();
 			System.arraycopy(array, index + buffer.arrayOffset(), dest, offset, length);
 		} else {
-			final int oldPos = buffer.position();
-			final int oldLimit = buffer.limit();
+			final ByteBuffer view = buffer.duplicate();
+			view.limit(index + length).position(index);
 
-			buffer.position(0).limit(index + length).position(index);
-
-			buffer.get(dest, offset, length);
-
-			buffer.position(0).limit(oldLimit).position(oldPos);
+			view.get(dest, offset, length);
 		}
 	}
 
-	private static void set(final ByteBuffer buffer, final int index, final byte[] src, final int offset, final int length) {
+	static void set(final ByteBuffer buffer, final int index, final byte[] src, final int offset, final int length) {
 		if (buffer.hasArray()) {
 			final byte[] array = buffer.array();
 			System.arraycopy(src, offset, array, index + buffer.arrayOffset(), length);
 		} else {
-			final int oldPos = buffer.position();
-
-			buffer.position(index);
-
-			buffer.put(src, offset, length);
+			final ByteBuffer view = buffer.duplicate();
+			view.limit(index + length).position(index);
 
-			buffer.position(oldPos);
+			view.put(src, offset, length);
 		}
 	}
 
@@ -33,7 +33,9 @@ import java.io.ObjectOutput;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
+import com.chinmobi.octet.data.CompactOctetFormat;
 import com.chinmobi.octet.io.OctetInputOp;
 import com.chinmobi.octet.io.OctetOpSupplier;
 import com.chinmobi.octet.io.OctetOutputOp;
@@ -47,6 +49,7 @@ public class ExpandableOctetBuffer
 
 	private final static int OUTPUT_MODE = 0;
 	private final static int INPUT_MODE = 1;
+	private final static int GAP_MODE = 2;
 
 
 	protected final BufferSettableOctet bufferOctet;
@@ -55,6 +58,11 @@ public class ExpandableOctetBuffer
 
 	private int mode;
 
+	private boolean gapEditing;
+	private int gapEnd;
+
+	private boolean compactExternal;
+
 
 	protected ExpandableOctetBuffer(final BufferSettableOctet bufferOctet) {
 		super();
@@ -96,9 +104,16 @@ public class ExpandableOctetBuffer
 	protected void swap(final ExpandableOctetBuffer another) {
 		this.bufferOctet.swap((BufferSettableOctet)another.bufferOctet);
 
-		final int tmp = this.mode;
+		int tmp = this.mode;
 		this.mode = another.mode;
 		another.mode = tmp;
+
+		tmp = this.gapEnd;
+		this.gapEnd = another.gapEnd;
+		another.gapEnd = tmp;
+
+		contentChanged(0);
+		another.contentChanged(0);
 	}
 
 
@@ -106,6 +121,29 @@ public class ExpandableOctetBuffer
 		this.allocator = allocator;
 	}
 
+	public void setGapEditing(final boolean gapEditing) {
+		if (!gapEditing) {
+			closeGap();
+		}
+		this.gapEditing = gapEditing;
+	}
+
+	public final boolean isGapEditing() {
+		return this.gapEditing;
+	}
+
+	/**
+	 * When set, writeExternal ships only the live bytes (see {@link CompactOctetFormat})
+	 * instead of the whole backing buffer, and the buffer is read back with an exact fit.
+	 */
+	public void setCompactExternal(final boolean compactExternal) {
+		this.compactExternal = compactExternal;
+	}
+
+	public final boolean isCompactExternal() {
+		return this.compactExternal;
+	}
+
 	public ExpandableOctetBuffer load(final String fileName) throws IOException {
 		final FileInputStream inputStream = new FileInputStream(fileName);
 
@@ -166,30 +204,48 @@ public class ExpandableOctetBuffer
 		this.bufferOctet.setLength(0);
 
 		this.mode = OUTPUT_MODE;
+
+		contentChanged(0);
 		return this;
 	}
 
 
 	public final ByteBuffer buffer() {
+		closeGap();
 		return this.bufferOctet.buffer();
 	}
 
 	public final int position() {
+		closeGap();
 		return this.bufferOctet.buffer().position();
 	}
 
 	public final int remaining() {
+		closeGap();
 		return this.bufferOctet.buffer().remaining();
 	}
 
 	public final int length() {
+		final ByteBuffer buffer = this.bufferOctet.buffer();
+
 		if (this.mode == OUTPUT_MODE) {
-			return this.bufferOctet.buffer().position();
+			return buffer.position();
+		} else
+		if (this.mode == GAP_MODE) {
+			return buffer.position() + (buffer.capacity() - this.gapEnd);
 		} else {
-			return this.bufferOctet.buffer().remaining();
+			return buffer.remaining();
 		}
 	}
 
+	/**
+	 * Returns the buffer index of the first content byte, with the gap closed.
+	 */
+	protected final int contentBegin() {
+		closeGap();
+		return (this.mode == INPUT_MODE) ? this.bufferOctet.buffer().position() : 0;
+	}
+
 	public final int capacity() {
 		return this.bufferOctet.buffer().capacity();
 	}
@@ -201,13 +257,13 @@ public class ExpandableOctetBuffer
 
 	public final void toString(boolean asHexFormat, Appendable appendable) {
 		final int oldmode = this.mode;
-		if (oldmode == OUTPUT_MODE) {
+		if (oldmode != INPUT_MODE) {
 			setInputMode();
 		}
 
 		this.bufferOctet.toString(asHexFormat, appendable);
 
-		if (oldmode == OUTPUT_MODE) {
+		if (oldmode != INPUT_MODE) {
 			setOutputMode();
 		}
 	}
@@ -230,6 +286,7 @@ public class ExpandableOctetBuffer
 
 		this.bufferOctet.buffer().position(0).limit(end).position(start);
 
+		contentChanged(start);
 		return this;
 	}
 
@@ -255,6 +312,8 @@ public class ExpandableOctetBuffer
 	 */
 
 	public final ExpandableOctetBuffer ensureCapacity(final int requiredCapacity) {
+		closeGap();
+
 		final ByteBuffer buffer = this.bufferOctet.buffer();
 
 		if (buffer == null) {
@@ -306,21 +365,36 @@ public class ExpandableOctetBuffer
 			BufferUtils.expand(buffer, offset, oldLength, newLength, this);
 		}
 
+		contentChanged(offset);
 		return this;
 	}
 
 	public final ExpandableOctetBuffer fill(final int start, final int end, final byte b) {
+		closeGap();
 		BufferUtils.fill(this.bufferOctet.buffer(), start, end - start, b);
+		contentChanged(start - contentBegin());
 		return this;
 	}
 
 	public final ExpandableOctetBuffer fillZero(final int start, final int end) {
+		closeGap();
 		BufferUtils.fill(this.bufferOctet.buffer(), start, end - start, (byte)0x00);
+		contentChanged(start - contentBegin());
 		return this;
 	}
 
 	public final ExpandableOctetBuffer delete(final int start, final int end) {
 		if (start >= 0 && end > start) {
+			if (this.gapEditing) {
+				final int oldLength = length();
+				if (start < oldLength) {
+					moveGap(start);
+					this.gapEnd += (end <= oldLength) ? (end - start) : (oldLength - start);
+					contentChanged(start);
+				}
+				return this;
+			}
+
 			setOutputMode();
 
 			final ByteBuffer buffer = this.bufferOctet.buffer();
@@ -332,6 +406,7 @@ public class ExpandableOctetBuffer
 
 			final int length = (end <= position) ? (end - start) : (position - start);
 			BufferUtils.expand(buffer, start, length, 0, this);
+			contentChanged(start);
 		}
 		return this;
 	}
@@ -339,22 +414,261 @@ public class ExpandableOctetBuffer
 	public final ExpandableOctetBuffer replaceAll(final Octet mathed, final Octet replacement) {
 		final int length = mathed.length();
 		if (length > 0) {
-			int index = toInput().begin();
+			setOutputMode();
+
+			final ByteBuffer buffer = this.bufferOctet.buffer();
+			final int position = buffer.position();
+
+			final byte[] pattern = mathed.getBytes();
+			final int[] shiftTable = OctetMatchUtils.compile(pattern, 0, length);
 
-			index = toInput().indexOf(index, mathed);
+			int[] matches = new int[16];
+			int count = 0;
+
+			int index = OctetMatchUtils.findCompiled(buffer, 0, position, pattern, 0, length, shiftTable);
 			while (index >= 0) {
-				replace(index, index + length, replacement);
+				if ((count + 2) > matches.length) {
+					matches = Arrays.copyOf(matches, matches.length << 1);
+				}
+				matches[count++] = index;
+				matches[count++] = 0;
+
+				index += length;
+				index = OctetMatchUtils.findCompiled(buffer, index, position - index, pattern, 0, length, shiftTable);
+			}
+
+			if (count > 0) {
+				rewrite(buffer, position, matches, count, new int[] { length }, new Octet[] { replacement });
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Replaces every occurrence of any of the given patterns in one pass. Where
+	 * several patterns match at the same offset, the longest one wins.
+	 */
+	public final ExpandableOctetBuffer replaceAll(final Octet[] mathes, final Octet[] replacements) {
+		if (mathes.length != replacements.length) {
+			throw new IllegalArgumentException("Mismatched replacements: " + mathes.length + " != " + replacements.length);
+		}
+
+		setOutputMode();
+
+		final ByteBuffer buffer = this.bufferOctet.buffer();
+		final int position = buffer.position();
 
-				index += replacement.length();
+		final int n = mathes.length;
 
-				index = toInput().indexOf(index, mathed);
+		final byte[][] patterns = new byte[n][];
+		final int[] lengths = new int[n];
+		for (int i = 0; i < n; ++i) {
+			patterns[i] = mathes[i].getBytes();
+			lengths[i] = patterns[i].length;
+		}
+
+		// Patterns chained by their first byte, longest first.
+		final int[] first = new int[256];
+		final int[] next = new int[n];
+		Arrays.fill(first, -1);
+
+		for (int i = 0; i < n; ++i) {
+			if (lengths[i] <= 0) {
+				continue;
 			}
 
-			setOutputMode();
+			final int b = 0xFF & patterns[i][0];
+
+			int prev = -1;
+			int k = first[b];
+			while (k >= 0 && lengths[k] >= lengths[i]) {
+				prev = k;
+				k = next[k];
+			}
+
+			next[i] = k;
+			if (prev < 0) {
+				first[b] = i;
+			} else {
+				next[prev] = i;
+			}
 		}
+
+		int[] matches = new int[16];
+		int count = 0;
+
+		final byte[] array = buffer.hasArray() ? buffer.array() : null;
+		final int arrayOffset = buffer.hasArray() ? buffer.arrayOffset() : 0;
+
+		for (int i = 0; i < position; ) {
+			final byte b = (array != null) ? array[i + arrayOffset] : buffer.get(i);
+
+			int k = first[0xFF & b];
+			while (k >= 0) {
+				if (lengths[k] <= (position - i) && matchesAt(buffer, array, arrayOffset, i, patterns[k])) {
+					break;
+				}
+				k = next[k];
+			}
+
+			if (k >= 0) {
+				if ((count + 2) > matches.length) {
+					matches = Arrays.copyOf(matches, matches.length << 1);
+				}
+				matches[count++] = i;
+				matches[count++] = k;
+
+				i += lengths[k];
+			} else {
+				++i;
+			}
+		}
+
+		if (count > 0) {
+			rewrite(buffer, position, matches, count, lengths, replacements);
+		}
+
 		return this;
 	}
 
+	private static final boolean matchesAt(final ByteBuffer buffer, final byte[] array, final int arrayOffset,
+			final int index, final byte[] pattern) {
+		if (array != null) {
+			for (int i = 1, j = index + arrayOffset + 1; i < pattern.length; ++i, ++j) {
+				if (pattern[i] != array[j]) {
+					return false;
+				}
+			}
+		} else {
+			for (int i = 1, j = index + 1; i < pattern.length; ++i, ++j) {
+				if (pattern[i] != buffer.get(j)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Rewrites the content with all matches replaced. The matches are given as
+	 * (offset, pattern index) pairs in ascending order.
+	 */
+	private final void rewrite(ByteBuffer buffer, final int position,
+			final int[] matches, final int count, final int[] lengths, final Octet[] replacements) {
+		int newLength = position;
+
+		// Whether every prefix of the edits shrinks (or keeps) the content, and
+		// whether every prefix grows (or keeps) it.
+		boolean shrinking = true;
+		boolean growing = true;
+
+		for (int i = 0; i < count; i += 2) {
+			final int which = matches[i + 1];
+			newLength += replacements[which].length() - lengths[which];
+
+			if (newLength > position) {
+				shrinking = false;
+			} else
+			if (newLength < position) {
+				growing = false;
+			}
+		}
+
+		if (shrinking) {
+			int from = 0;
+			int to = 0;
+
+			for (int i = 0; i < count; i += 2) {
+				final int index = matches[i];
+				final int which = matches[i + 1];
+
+				BufferUtils.move(buffer, from, to, index - from);
+				to += index - from;
+
+				putOctet(buffer, to, replacements[which]);
+				to += replacements[which].length();
+
+				from = index + lengths[which];
+			}
+
+			BufferUtils.move(buffer, from, to, position - from);
+		} else
+		if (growing && newLength <= buffer.capacity()) {
+			int from = position;
+			int to = newLength;
+
+			for (int i = count - 2; i >= 0; i -= 2) {
+				final int index = matches[i];
+				final int which = matches[i + 1];
+
+				final int tail = index + lengths[which];
+
+				to -= from - tail;
+				BufferUtils.move(buffer, tail, to, from - tail);
+
+				to -= replacements[which].length();
+				putOctet(buffer, to, replacements[which]);
+
+				from = index;
+			}
+		} else {
+			final ByteBuffer source;
+
+			if (newLength > buffer.capacity()) {
+				source = buffer;
+				buffer = allocate(source, newLength);
+			} else {
+				final byte[] copy = new byte[position];
+				BufferUtils.get(buffer, 0, copy, 0, position);
+				source = ByteBuffer.wrap(copy);
+			}
+
+			buffer.clear();
+
+			int from = 0;
+
+			for (int i = 0; i < count; i += 2) {
+				final int index = matches[i];
+				final int which = matches[i + 1];
+
+				source.limit(index).position(from);
+				buffer.put(source);
+
+				putOctet(buffer, buffer.position(), replacements[which]);
+				buffer.position(buffer.position() + replacements[which].length());
+
+				from = index + lengths[which];
+			}
+
+			source.limit(position).position(from);
+			buffer.put(source);
+		}
+
+		buffer.limit(buffer.capacity()).position(newLength);
+
+		contentChanged(matches[0]);
+	}
+
+	private static final void putOctet(final ByteBuffer buffer, final int index, final Octet src) {
+		final int length = src.length();
+		if (length <= 0) {
+			return;
+		}
+
+		final byte[] array = src.array();
+		if (array != null) {
+			BufferUtils.set(buffer, index, array, src.begin() + src.arrayOffset(), length);
+		} else {
+			final ByteBuffer view = src.buffer().duplicate();
+			view.limit(src.end()).position(src.begin());
+
+			final int oldPos = buffer.position();
+			buffer.position(index);
+			buffer.put(view);
+			buffer.position(oldPos);
+		}
+	}
+
 	public final ExpandableOctetBuffer replaceAll(final byte oldByte, final byte newByte) {
 		setOutputMode();
 
@@ -363,13 +677,72 @@ public class ExpandableOctetBuffer
 
 		if (position > 0) {
 			BufferUtils.replaceAll(buffer, 0, position, oldByte, newByte);
+			contentChanged(0);
 		}
 
 		return this;
 	}
 
+	/**
+	 * Replaces each content byte b with table[b &amp; 0xFF]; the table has 256 entries.
+	 */
+	public final ExpandableOctetBuffer translate(final byte[] table) {
+		setOutputMode();
+
+		final ByteBuffer buffer = this.bufferOctet.buffer();
+		BufferUtils.translate(buffer, 0, buffer.position(), table);
+
+		contentChanged(0);
+		return this;
+	}
+
+	/**
+	 * Combines each content byte with the byte at the same offset of the mask, which is
+	 * at least as long as the content.
+	 */
+	public final ExpandableOctetBuffer xor(final Octet mask) {
+		final ByteBuffer buffer = checkMask(mask);
+		BufferUtils.xor(buffer, 0, buffer.position(), AbstractOctet.bufferOf(mask), AbstractOctet.startOf(mask));
+		contentChanged(0);
+		return this;
+	}
+
+	public final ExpandableOctetBuffer and(final Octet mask) {
+		final ByteBuffer buffer = checkMask(mask);
+		BufferUtils.and(buffer, 0, buffer.position(), AbstractOctet.bufferOf(mask), AbstractOctet.startOf(mask));
+		contentChanged(0);
+		return this;
+	}
+
+	public final ExpandableOctetBuffer or(final Octet mask) {
+		final ByteBuffer buffer = checkMask(mask);
+		BufferUtils.or(buffer, 0, buffer.position(), AbstractOctet.bufferOf(mask), AbstractOctet.startOf(mask));
+		contentChanged(0);
+		return this;
+	}
+
+	private final ByteBuffer checkMask(final Octet mask) {
+		setOutputMode();
+
+		final ByteBuffer buffer = this.bufferOctet.buffer();
+		if (mask.length() < buffer.position()) {
+			throw new IndexOutOfBoundsException("length: " + buffer.position() + " mask length: " + mask.length());
+		}
+		return buffer;
+	}
+
+	/**
+	 * Returns the number of one bits in the content.
+	 */
+	public final long bitCount() {
+		final int begin = contentBegin();
+		return BufferUtils.bitCount(this.bufferOctet.buffer(), begin, begin + length());
+	}
+
 	public final ExpandableOctetBuffer setByteAt(final int index, final byte b) {
+		closeGap();
 		this.bufferOctet.buffer().put(index, b);
+		contentChanged(index - contentBegin());
 		return this;
 	}
 
@@ -454,6 +827,12 @@ public class ExpandableOctetBuffer
 
 	public final ExpandableOctetBuffer replace(final int beginIndex, final int endIndex,
 			final ByteBuffer src, final int start, final int end) {
+		if (this.gapEditing) {
+			appendBuffer(reserveGap(beginIndex, endIndex, (end - start)), src, start, end);
+			contentChanged(beginIndex);
+			return this;
+		}
+
 		setOutputMode();
 
 		final int length = (end - start);
@@ -467,6 +846,7 @@ public class ExpandableOctetBuffer
 			buffer.position(beginIndex);
 			appendBuffer(buffer, src, start, end);
 
+			contentChanged(beginIndex);
 			return this;
 		}
 
@@ -480,6 +860,7 @@ public class ExpandableOctetBuffer
 
 		buffer.position(position);
 
+		contentChanged(beginIndex);
 		return this;
 	}
 
@@ -489,6 +870,12 @@ public class ExpandableOctetBuffer
 
 	public final ExpandableOctetBuffer replace(final int beginIndex, final int endIndex,
 			final byte[] src, final int offset, final int length) {
+		if (this.gapEditing) {
+			reserveGap(beginIndex, endIndex, length).put(src, offset, length);
+			contentChanged(beginIndex);
+			return this;
+		}
+
 		setOutputMode();
 
 		ByteBuffer buffer = this.bufferOctet.buffer();
@@ -500,6 +887,7 @@ public class ExpandableOctetBuffer
 			buffer.position(beginIndex);
 			buffer.put(src, offset, length);
 
+			contentChanged(beginIndex);
 			return this;
 		}
 
@@ -513,10 +901,17 @@ public class ExpandableOctetBuffer
 
 		buffer.position(position);
 
+		contentChanged(beginIndex);
 		return this;
 	}
 
 	public final ExpandableOctetBuffer replace(final int beginIndex, final int endIndex, final byte b) {
+		if (this.gapEditing) {
+			reserveGap(beginIndex, endIndex, 1).put(b);
+			contentChanged(beginIndex);
+			return this;
+		}
+
 		setOutputMode();
 
 		ByteBuffer buffer = this.bufferOctet.buffer();
@@ -527,6 +922,7 @@ public class ExpandableOctetBuffer
 
 			buffer.put(beginIndex, b);
 
+			contentChanged(beginIndex);
 			return this;
 		}
 
@@ -535,6 +931,7 @@ public class ExpandableOctetBuffer
 
 		buffer.put(beginIndex, b);
 
+		contentChanged(beginIndex);
 		return this;
 	}
 
@@ -637,11 +1034,119 @@ public class ExpandableOctetBuffer
 		return newCapacity;
 	}
 
+	/*
+	 * Gap methods
+	 */
+
+	private final void closeGap() {
+		if (this.mode == GAP_MODE) {
+			setOutputMode();
+		}
+	}
+
+	private final ByteBuffer openGap() {
+		final ByteBuffer buffer;
+
+		if (this.mode != GAP_MODE) {
+			setOutputMode();
+
+			buffer = this.bufferOctet.buffer();
+			buffer.limit(buffer.capacity());
+
+			this.gapEnd = buffer.capacity();
+			this.mode = GAP_MODE;
+		} else {
+			buffer = this.bufferOctet.buffer();
+		}
+
+		return buffer;
+	}
+
+	private final ByteBuffer moveGap(final int offset) {
+		final ByteBuffer buffer = openGap();
+		final int position = buffer.position();
+
+		if (offset < position) {
+			final int count = position - offset;
+
+			this.gapEnd -= count;
+			BufferUtils.move(buffer, offset, this.gapEnd, count);
+
+			buffer.position(offset);
+		} else
+		if (offset > position) {
+			final int count = offset - position;
+
+			BufferUtils.move(buffer, this.gapEnd, position, count);
+			this.gapEnd += count;
+
+			buffer.position(offset);
+		}
+
+		return buffer;
+	}
+
+	private final ByteBuffer ensureGap(final int requiredLength) {
+		final ByteBuffer buffer = this.bufferOctet.buffer();
+		final int position = buffer.position();
+
+		if ((this.gapEnd - position) >= requiredLength) {
+			return buffer;
+		}
+
+		final int tailLength = buffer.capacity() - this.gapEnd;
+
+		final ByteBuffer newBuffer = allocate(buffer, position + requiredLength + tailLength);
+		final int newGapEnd = newBuffer.capacity() - tailLength;
+
+		buffer.position(0).limit(position);
+		newBuffer.put(buffer);
+
+		if (tailLength > 0) {
+			buffer.limit(buffer.capacity()).position(this.gapEnd);
+			newBuffer.position(newGapEnd);
+			newBuffer.put(buffer);
+		}
+
+		newBuffer.limit(newBuffer.capacity()).position(position);
+
+		this.gapEnd = newGapEnd;
+		return newBuffer;
+	}
+
+	private final ByteBuffer reserveGap(final int beginIndex, final int endIndex, final int length) {
+		final int oldLength = length();
+
+		ByteBuffer buffer;
+		if (beginIndex >= oldLength) {
+			moveGap(oldLength);
+			buffer = ensureGap(beginIndex + length - oldLength);
+		} else {
+			moveGap(beginIndex);
+			this.gapEnd += (endIndex <= oldLength) ? (endIndex - beginIndex) : (oldLength - beginIndex);
+			buffer = ensureGap(length);
+		}
+
+		buffer.position(beginIndex);
+		return buffer;
+	}
+
 	/*
 	 * Mode methods
 	 */
 
 	protected final void setOutputMode() {
+		if (this.mode == GAP_MODE) {
+			this.mode = OUTPUT_MODE;
+
+			final ByteBuffer buffer = this.bufferOctet.buffer();
+			final int position = buffer.position();
+			final int tailLength = buffer.capacity() - this.gapEnd;
+
+			BufferUtils.move(buffer, this.gapEnd, position, tailLength);
+
+			buffer.limit(buffer.capacity()).position(position + tailLength);
+		} else
 		if (this.mode != OUTPUT_MODE) {
 			this.mode = OUTPUT_MODE;
 
@@ -656,6 +1161,8 @@ public class ExpandableOctetBuffer
 	}
 
 	protected final void setInputMode() {
+		closeGap();
+
 		if (this.mode == OUTPUT_MODE) {
 			this.mode = INPUT_MODE;
 
@@ -673,6 +1180,26 @@ public class ExpandableOctetBuffer
 	 */
 
 	public void writeExternal(final ObjectOutput out) throws IOException {
+		closeGap();
+
+		if (this.compactExternal) {
+			out.writeInt(2);
+
+			final ByteBuffer buffer = this.bufferOctet.buffer();
+			if (this.mode == OUTPUT_MODE) {
+				CompactOctetFormat.writeBuffer(buffer, 0, buffer.position(), out);
+			} else {
+				// The bytes already read are gone, as in setOutputMode; a narrowed octet
+				// narrows what is shipped further.
+				final int begin = Math.max(contentBegin(), this.bufferOctet.begin());
+				final int end = Math.max(Math.min(buffer.limit(), this.bufferOctet.end()), begin);
+				CompactOctetFormat.writeBuffer(buffer, begin, end, out);
+			}
+
+			writeAttributes(out);
+			return;
+		}
+
 		out.writeInt(1);
 		out.writeInt(this.mode);
 
@@ -682,11 +1209,46 @@ public class ExpandableOctetBuffer
 
 	public void readExternal(final ObjectInput in) throws IOException,
 			ClassNotFoundException {
-		/*int tmp = */in.readInt();
+		final int version = in.readInt();
+
+		if (version == 2) {
+			final ByteBuffer buffer = CompactOctetFormat.readBuffer(in);
+			buffer.position(buffer.limit());
+
+			this.bufferOctet.setBuffer(buffer);
+			this.bufferOctet.setBegin(0);
+			this.bufferOctet.setLength(0);
+
+			this.mode = OUTPUT_MODE;
+			this.compactExternal = true;
+
+			readAttributes(in);
+			contentChanged(0);
+			return;
+		}
+
 		this.mode = in.readInt();
 
 		final BufferSettableOctet settableOctet = (BufferSettableOctet)in.readObject();
 		this.bufferOctet.swap(settableOctet);
+
+		contentChanged(0);
+	}
+
+	/**
+	 * Writes whatever the compact format needs beyond the bytes, nothing by default.
+	 */
+	protected void writeAttributes(final ObjectOutput out) throws IOException {
+	}
+
+	protected void readAttributes(final ObjectInput in) throws IOException {
+	}
+
+	/**
+	 * Called after an edit other than an append has changed the content from the given
+	 * offset on, nothing by default. Reading off the input does not call it.
+	 */
+	protected void contentChanged(final int index) {
 	}
 
 
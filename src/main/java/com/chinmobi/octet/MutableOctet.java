@@ -38,6 +38,19 @@ public interface MutableOctet extends Octet {
 
 	public MutableOctet replaceAll(byte oldByte, byte newByte);
 
+	/**
+	 * Replaces each byte b with table[b &amp; 0xFF]; the table has 256 entries.
+	 */
+	public MutableOctet translate(byte[] table);
+
+	/**
+	 * Combines each byte with the byte at the same offset of the mask, which is at
+	 * least as long as this octet.
+	 */
+	public MutableOctet xor(Octet mask);
+	public MutableOctet and(Octet mask);
+	public MutableOctet or(Octet mask);
+
 	public MutableOctet setByteAt(int index, byte b);
 
 	public OctetOutputOp outputOp();
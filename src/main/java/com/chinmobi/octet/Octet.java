@@ -103,6 +103,8 @@ public interface Octet extends Comparable<Octet>, Serializable {
 
 	public byte[] getBytes();
 
+	public long bitCount();
+
 	public boolean equals(Object obj);
 
 	public OctetInputOp inputOp();
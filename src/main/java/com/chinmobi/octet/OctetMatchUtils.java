@@ -97,6 +97,60 @@ public class OctetMatchUtils {
 		return -1;
 	}
 
+	public static int[] compile(final byte[] obj, final int objOffset, final int objLength) {
+		final int[] shiftTable = newShiftTable();
+		initShiftTable(shiftTable, obj, objOffset, objLength);
+		return shiftTable;
+	}
+
+	/**
+	 * Same as find, but with a shift table already built by compile, so that
+	 * repeated searches for the same pattern do not rebuild it.
+	 */
+	public static int findCompiled(final ByteBuffer src, final int srcOffset, final int srcLength,
+			final byte[] obj, final int objOffset, final int objLength,
+			final int[] compiledShiftTable) {
+
+		if (objLength > 0 && objLength <= srcLength) {
+			if (src.hasArray()) {
+				final int index = doFind(src.array(), srcOffset + src.arrayOffset(), srcLength,
+						obj, objOffset, objLength, compiledShiftTable);
+				if (index >= 0) {
+					return index - src.arrayOffset();
+				}
+			} else {
+				return doFind(src, srcOffset, srcLength,
+						obj, objOffset, objLength, compiledShiftTable);
+			}
+		}
+
+		return -1;
+	}
+
+	public static int findCompiled(final Octet src, final int srcOffset, final int srcLength,
+			final byte[] obj, final int objOffset, final int objLength,
+			final int[] compiledShiftTable) {
+
+		if (objLength > 0 && objLength <= srcLength) {
+			final byte[] array = src.array();
+			if (array != null) {
+				final int index = doFind(array, srcOffset + src.arrayOffset(), srcLength,
+						obj, objOffset, objLength, compiledShiftTable);
+				if (index >= 0) {
+					return index - src.arrayOffset();
+				}
+			} else {
+				final ByteBuffer buffer = src.buffer();
+				if (buffer != null) {
+					return doFind(buffer, srcOffset, srcLength,
+							obj, objOffset, objLength, compiledShiftTable);
+				}
+			}
+		}
+
+		return -1;
+	}
+
 	private static int doFind(final ByteBuffer src, final int srcOffset, final int srcLength,
 			final byte[] obj, final int objOffset, final int objLength,
 			int[] shiftTable) {
@@ -0,0 +1,125 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octet;
+
+import java.nio.ByteOrder;
+
+/**
+ * Helpers for processing eight bytes at a time in a long ("SIMD within a
+ * register").
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class SwarUtils {
+
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	private static final long ONES = 0x0101010101010101L;
+
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+
+	private SwarUtils() {
+	}
+
+
+	public static long broadcast(final byte b) {
+		return (0xFFL & b) * ONES;
+	}
+
+	/**
+	 * Returns a word with the high bit set in exactly those bytes of the given
+	 * word that are zero.
+	 */
+	public static long zeroBytes(final long word) {
+		return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+	}
+
+	/**
+	 * Returns a word with the high bit set in exactly those bytes of the given
+	 * word that equal the given byte.
+	 */
+	public static long matchBytes(final long word, final byte b) {
+		return zeroBytes(word ^ broadcast(b));
+	}
+
+	/**
+	 * Widens a mask returned by zeroBytes or matchBytes to 0xFF per flagged byte.
+	 */
+	public static long expandMask(final long mask) {
+		return (mask >>> 7) * 0xFFL;
+	}
+
+	/**
+	 * Returns the memory index (0 - 7) of the first flagged byte of a mask that
+	 * was computed from a word read with the given byte order, or 8 if none.
+	 */
+	public static int firstIndex(final long mask, final ByteOrder order) {
+		if (order == ByteOrder.LITTLE_ENDIAN) {
+			return Long.numberOfTrailingZeros(mask) >>> 3;
+		} else {
+			return Long.numberOfLeadingZeros(mask) >>> 3;
+		}
+	}
+
+	/**
+	 * Returns the memory index (0 - 7) of the last flagged byte of a mask that
+	 * was computed from a word read with the given byte order, or -1 if none.
+	 */
+	public static int lastIndex(final long mask, final ByteOrder order) {
+		if (mask == 0) {
+			return -1;
+		}
+		if (order == ByteOrder.LITTLE_ENDIAN) {
+			return 7 - (Long.numberOfLeadingZeros(mask) >>> 3);
+		} else {
+			return 7 - (Long.numberOfTrailingZeros(mask) >>> 3);
+		}
+	}
+
+	/**
+	 * Returns the word with its ASCII upper case letters turned to lower case.
+	 */
+	public static long toLowerCase(final long word) {
+		// Per byte, (b + 0x3F) reaches the high bit from 'A' on and (b + 0x25) from
+		// past 'Z' on, so their xor flags 'A' - 'Z'; ~word drops non ASCII bytes.
+		final long heptets = word & LOW_BITS;
+		final long upper = ((heptets + 0x3F3F3F3F3F3F3F3FL) ^ (heptets + 0x2525252525252525L))
+				& ~word & HIGH_BITS;
+		return word | (upper >>> 2);
+	}
+
+	/**
+	 * Returns the word with its ASCII lower case letters turned to upper case.
+	 */
+	public static long toUpperCase(final long word) {
+		final long heptets = word & LOW_BITS;
+		final long lower = ((heptets + 0x1F1F1F1F1F1F1F1FL) ^ (heptets + 0x0505050505050505L))
+				& ~word & HIGH_BITS;
+		return word & ~(lower >>> 2);
+	}
+
+}
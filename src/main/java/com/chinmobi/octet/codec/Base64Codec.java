@@ -0,0 +1,345 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octet.codec;
+
+import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.Octet;
+
+/**
+ * Table driven Base64 (RFC 4648, standard and URL-safe alphabets) encoding and
+ * decoding between octets, see {@link OctetCodec}. Decoders accept input with or
+ * without the trailing padding.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class Base64Codec {
+
+	private static final byte[] STANDARD_ALPHABET =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+	private static final byte[] URL_SAFE_ALPHABET =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes();
+
+	private static final byte[] STANDARD_VALUES = newValues(STANDARD_ALPHABET);
+	private static final byte[] URL_SAFE_VALUES = newValues(URL_SAFE_ALPHABET);
+
+	private static final byte PAD = '=';
+
+
+	private Base64Codec() {
+	}
+
+
+	public static final Encoder newEncoder(final boolean urlSafe, final boolean padding) {
+		return new Encoder(urlSafe, padding);
+	}
+
+	public static final Decoder newDecoder(final boolean urlSafe) {
+		return new Decoder(urlSafe);
+	}
+
+	public static final ExpandableOctetBuffer encode(final Octet src, final ExpandableOctetBuffer dest) {
+		new Encoder(false, true).update(src, dest).finish(dest);
+		return dest;
+	}
+
+	/**
+	 * URL-safe alphabet without padding, as used by JWT and similar tokens.
+	 */
+	public static final ExpandableOctetBuffer encodeUrlSafe(final Octet src, final ExpandableOctetBuffer dest) {
+		new Encoder(true, false).update(src, dest).finish(dest);
+		return dest;
+	}
+
+	/**
+	 * @throws IllegalArgumentException on a character outside the alphabet or bad padding
+	 */
+	public static final ExpandableOctetBuffer decode(final Octet src, final ExpandableOctetBuffer dest) {
+		new Decoder(false).update(src, dest).finish(dest);
+		return dest;
+	}
+
+	public static final ExpandableOctetBuffer decodeUrlSafe(final Octet src, final ExpandableOctetBuffer dest) {
+		new Decoder(true).update(src, dest).finish(dest);
+		return dest;
+	}
+
+
+	private static final byte[] newValues(final byte[] alphabet) {
+		final byte[] values = new byte[256];
+		for (int i = 0; i < 256; ++i) {
+			values[i] = -1;
+		}
+		for (int i = 0; i < alphabet.length; ++i) {
+			values[alphabet[i]] = (byte)i;
+		}
+		return values;
+	}
+
+	private static final IllegalArgumentException illegalCharacter(final int ch) {
+		return new IllegalArgumentException("Illegal base64 character: 0x" + Integer.toHexString(ch));
+	}
+
+
+	public static final class Encoder extends OctetCodec {
+
+		private final byte[] alphabet;
+		private final boolean padding;
+
+		private final byte[] pending = new byte[2];
+		private int pendingCount;
+
+
+		Encoder(final boolean urlSafe, final boolean padding) {
+			super();
+			this.alphabet = urlSafe ? URL_SAFE_ALPHABET : STANDARD_ALPHABET;
+			this.padding = padding;
+		}
+
+
+		@Override
+		protected final int maxOutputLength(final int inputLength) {
+			return ((inputLength + 2) / 3) * 4 + 4;
+		}
+
+		@Override
+		protected final int maxInputLength(final int outputLength) {
+			return ((outputLength >> 2) - 1) * 3;
+		}
+
+		@Override
+		protected final int process(final byte[] in, final int inOffset, final int inLength,
+				final byte[] out, final int outOffset) {
+			final byte[] alphabet = this.alphabet;
+
+			int i = inOffset;
+			final int end = inOffset + inLength;
+			int o = outOffset;
+
+			if (this.pendingCount > 0) {
+				while (this.pendingCount < 2 && i < end) {
+					this.pending[this.pendingCount++] = in[i++];
+				}
+				if (i == end) {
+					return 0;
+				}
+
+				final int bits = ((this.pending[0] & 0xFF) << 16) | ((this.pending[1] & 0xFF) << 8) |
+						(in[i++] & 0xFF);
+				out[o++] = alphabet[bits >>> 18];
+				out[o++] = alphabet[(bits >>> 12) & 0x3F];
+				out[o++] = alphabet[(bits >>> 6) & 0x3F];
+				out[o++] = alphabet[bits & 0x3F];
+
+				this.pendingCount = 0;
+			}
+
+			for (; i + 3 <= end; i += 3) {
+				final int bits = ((in[i] & 0xFF) << 16) | ((in[i + 1] & 0xFF) << 8) | (in[i + 2] & 0xFF);
+				out[o++] = alphabet[bits >>> 18];
+				out[o++] = alphabet[(bits >>> 12) & 0x3F];
+				out[o++] = alphabet[(bits >>> 6) & 0x3F];
+				out[o++] = alphabet[bits & 0x3F];
+			}
+
+			while (i < end) {
+				this.pending[this.pendingCount++] = in[i++];
+			}
+
+			return o - outOffset;
+		}
+
+		@Override
+		protected final int flush(final byte[] out, final int outOffset) {
+			final byte[] alphabet = this.alphabet;
+			int o = outOffset;
+
+			if (this.pendingCount == 1) {
+				final int bits = (this.pending[0] & 0xFF) << 16;
+				out[o++] = alphabet[bits >>> 18];
+				out[o++] = alphabet[(bits >>> 12) & 0x3F];
+				if (this.padding) {
+					out[o++] = PAD;
+					out[o++] = PAD;
+				}
+			} else
+			if (this.pendingCount == 2) {
+				final int bits = ((this.pending[0] & 0xFF) << 16) | ((this.pending[1] & 0xFF) << 8);
+				out[o++] = alphabet[bits >>> 18];
+				out[o++] = alphabet[(bits >>> 12) & 0x3F];
+				out[o++] = alphabet[(bits >>> 6) & 0x3F];
+				if (this.padding) {
+					out[o++] = PAD;
+				}
+			}
+
+			this.pendingCount = 0;
+			return o - outOffset;
+		}
+
+		@Override
+		public final Encoder reset() {
+			this.pendingCount = 0;
+			return this;
+		}
+
+	}
+
+
+	public static final class Decoder extends OctetCodec {
+
+		private final byte[] values;
+
+		private int bits;
+		private int count;
+		private int padding;
+		private boolean done;
+
+
+		Decoder(final boolean urlSafe) {
+			super();
+			this.values = urlSafe ? URL_SAFE_VALUES : STANDARD_VALUES;
+		}
+
+
+		@Override
+		protected final int maxOutputLength(final int inputLength) {
+			return ((inputLength + 3) >> 2) * 3 + 3;
+		}
+
+		@Override
+		protected final int maxInputLength(final int outputLength) {
+			return ((outputLength / 3) - 1) << 2;
+		}
+
+		@Override
+		protected final int process(final byte[] in, final int inOffset, final int inLength,
+				final byte[] out, final int outOffset) {
+			final byte[] values = this.values;
+
+			int i = inOffset;
+			final int end = inOffset + inLength;
+			int o = outOffset;
+
+			while (i < end) {
+				if (this.count == 0 && this.padding == 0) {
+					for (; i + 4 <= end; i += 4) {
+						final int a = values[in[i] & 0xFF];
+						final int b = values[in[i + 1] & 0xFF];
+						final int c = values[in[i + 2] & 0xFF];
+						final int d = values[in[i + 3] & 0xFF];
+						if ((a | b | c | d) < 0) {
+							break;
+						}
+
+						final int v = (a << 18) | (b << 12) | (c << 6) | d;
+						out[o++] = (byte)(v >> 16);
+						out[o++] = (byte)(v >> 8);
+						out[o++] = (byte)v;
+					}
+					if (i >= end) {
+						break;
+					}
+				}
+
+				final int ch = in[i++] & 0xFF;
+				final int value = values[ch];
+
+				if (this.done) {
+					throw new IllegalArgumentException("Base64 data after the final quantum.");
+				}
+
+				if (value >= 0) {
+					if (this.padding > 0) {
+						throw illegalCharacter(ch);
+					}
+
+					this.bits = (this.bits << 6) | value;
+					if (++this.count == 4) {
+						out[o++] = (byte)(this.bits >> 16);
+						out[o++] = (byte)(this.bits >> 8);
+						out[o++] = (byte)this.bits;
+						this.bits = 0;
+						this.count = 0;
+					}
+				} else
+				if (ch == PAD) {
+					if (this.count < 2) {
+						throw illegalCharacter(ch);
+					}
+
+					if (this.count + (++this.padding) == 4) {
+						o += tail(out, o);
+						this.done = true;
+					}
+				} else {
+					throw illegalCharacter(ch);
+				}
+			}
+
+			return o - outOffset;
+		}
+
+		@Override
+		protected final int flush(final byte[] out, final int outOffset) {
+			try {
+				if (this.done) {
+					return 0;
+				}
+				if (this.padding > 0 || this.count == 1) {
+					throw new IllegalArgumentException("Truncated base64 input.");
+				}
+				return tail(out, outOffset);
+			} finally {
+				reset();
+			}
+		}
+
+		@Override
+		public final Decoder reset() {
+			this.bits = 0;
+			this.count = 0;
+			this.padding = 0;
+			this.done = false;
+			return this;
+		}
+
+		private final int tail(final byte[] out, int o) {
+			final int start = o;
+			if (this.count == 2) {
+				out[o++] = (byte)(this.bits >> 4);
+			} else
+			if (this.count == 3) {
+				out[o++] = (byte)(this.bits >> 10);
+				out[o++] = (byte)(this.bits >> 2);
+			}
+			this.bits = 0;
+			this.count = 0;
+			return o - start;
+		}
+
+	}
+
+}
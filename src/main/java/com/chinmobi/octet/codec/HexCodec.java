@@ -0,0 +1,223 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octet.codec;
+
+import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.Octet;
+
+/**
+ * Table driven hex encoding and decoding between octets, see {@link OctetCodec}.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class HexCodec {
+
+	private static final byte[] LOWER_PAIRS = newPairs("0123456789abcdef");
+	private static final byte[] UPPER_PAIRS = newPairs("0123456789ABCDEF");
+
+	private static final byte[] NIBBLES = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; ++i) {
+			NIBBLES[i] = -1;
+		}
+		for (int i = 0; i < 10; ++i) {
+			NIBBLES['0' + i] = (byte)i;
+		}
+		for (int i = 0; i < 6; ++i) {
+			NIBBLES['a' + i] = (byte)(10 + i);
+			NIBBLES['A' + i] = (byte)(10 + i);
+		}
+	}
+
+
+	private HexCodec() {
+	}
+
+
+	public static final Encoder newEncoder(final boolean upperCase) {
+		return new Encoder(upperCase);
+	}
+
+	public static final Decoder newDecoder() {
+		return new Decoder();
+	}
+
+	public static final ExpandableOctetBuffer encode(final Octet src, final ExpandableOctetBuffer dest) {
+		new Encoder(false).update(src, dest);
+		return dest;
+	}
+
+	public static final ExpandableOctetBuffer encode(final Octet src, final boolean upperCase,
+			final ExpandableOctetBuffer dest) {
+		new Encoder(upperCase).update(src, dest);
+		return dest;
+	}
+
+	/**
+	 * @throws IllegalArgumentException on a non hex character or an odd number of digits
+	 */
+	public static final ExpandableOctetBuffer decode(final Octet src, final ExpandableOctetBuffer dest) {
+		new Decoder().update(src, dest).finish(dest);
+		return dest;
+	}
+
+
+	private static final byte[] newPairs(final String digits) {
+		final byte[] pairs = new byte[512];
+		for (int i = 0; i < 256; ++i) {
+			pairs[i << 1] = (byte)digits.charAt(i >>> 4);
+			pairs[(i << 1) + 1] = (byte)digits.charAt(i & 0x0F);
+		}
+		return pairs;
+	}
+
+
+	public static final class Encoder extends OctetCodec {
+
+		private final byte[] pairs;
+
+
+		Encoder(final boolean upperCase) {
+			super();
+			this.pairs = upperCase ? UPPER_PAIRS : LOWER_PAIRS;
+		}
+
+
+		@Override
+		protected final int maxOutputLength(final int inputLength) {
+			return inputLength << 1;
+		}
+
+		@Override
+		protected final int maxInputLength(final int outputLength) {
+			return outputLength >> 1;
+		}
+
+		@Override
+		protected final int process(final byte[] in, final int inOffset, final int inLength,
+				final byte[] out, final int outOffset) {
+			final byte[] pairs = this.pairs;
+
+			int o = outOffset;
+			for (int i = inOffset, end = inOffset + inLength; i < end; ++i) {
+				final int p = (in[i] & 0xFF) << 1;
+				out[o++] = pairs[p];
+				out[o++] = pairs[p + 1];
+			}
+			return o - outOffset;
+		}
+
+		@Override
+		protected final int flush(final byte[] out, final int outOffset) {
+			return 0;
+		}
+
+		@Override
+		public final Encoder reset() {
+			return this;
+		}
+
+	}
+
+
+	public static final class Decoder extends OctetCodec {
+
+		private int pending = -1;
+
+
+		Decoder() {
+			super();
+		}
+
+
+		@Override
+		protected final int maxOutputLength(final int inputLength) {
+			return (inputLength + 1) >> 1;
+		}
+
+		@Override
+		protected final int maxInputLength(final int outputLength) {
+			return outputLength << 1;
+		}
+
+		@Override
+		protected final int process(final byte[] in, final int inOffset, final int inLength,
+				final byte[] out, final int outOffset) {
+			int i = inOffset;
+			final int end = inOffset + inLength;
+			int o = outOffset;
+
+			if (this.pending >= 0 && i < end) {
+				final int lo = nibble(in[i++]);
+				out[o++] = (byte)((this.pending << 4) | lo);
+				this.pending = -1;
+			}
+
+			for (; i + 1 < end; i += 2) {
+				final int hi = NIBBLES[in[i] & 0xFF];
+				final int lo = NIBBLES[in[i + 1] & 0xFF];
+				if ((hi | lo) < 0) {
+					nibble(in[i]);
+					nibble(in[i + 1]);
+				}
+				out[o++] = (byte)((hi << 4) | lo);
+			}
+
+			if (i < end) {
+				this.pending = nibble(in[i]);
+			}
+
+			return o - outOffset;
+		}
+
+		@Override
+		protected final int flush(final byte[] out, final int outOffset) {
+			if (this.pending >= 0) {
+				this.pending = -1;
+				throw new IllegalArgumentException("Odd number of hex digits.");
+			}
+			return 0;
+		}
+
+		@Override
+		public final Decoder reset() {
+			this.pending = -1;
+			return this;
+		}
+
+		private static final int nibble(final byte b) {
+			final int value = NIBBLES[b & 0xFF];
+			if (value < 0) {
+				throw new IllegalArgumentException("Illegal hex character: 0x" +
+						Integer.toHexString(b & 0xFF));
+			}
+			return value;
+		}
+
+	}
+
+}
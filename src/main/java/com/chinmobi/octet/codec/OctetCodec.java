@@ -0,0 +1,196 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octet.codec;
+
+import java.nio.ByteBuffer;
+
+import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.Octet;
+import com.chinmobi.octet.io.OctetOutputOp;
+
+/**
+ * A stateful byte to byte transform fed with octet ranges. Input may arrive in any
+ * number of update calls; finish writes whatever the transform still holds and
+ * makes it ready for the next payload.
+ * <p>
+ * Output goes straight into the backing array of a heap
+ * {@link ExpandableOctetBuffer}; direct buffers and {@link OctetOutputOp}s are
+ * written through a small chunk.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public abstract class OctetCodec {
+
+	static final int CHUNK_SIZE = 8 * 1024;
+
+	private static final int FINISH_LENGTH = 8;
+
+
+	private byte[] inputChunk;
+	private byte[] outputChunk;
+
+
+	protected OctetCodec() {
+	}
+
+
+	/*
+	 * Transform methods
+	 */
+
+	/**
+	 * An upper bound of the bytes produced by processing inputLength more bytes.
+	 */
+	protected abstract int maxOutputLength(int inputLength);
+
+	/**
+	 * The most input bytes whose output is sure to fit in outputLength bytes.
+	 */
+	protected abstract int maxInputLength(int outputLength);
+
+	protected abstract int process(byte[] in, int inOffset, int inLength, byte[] out, int outOffset);
+
+	/**
+	 * Writes the pending tail, at most 8 bytes, and clears the state.
+	 */
+	protected abstract int flush(byte[] out, int outOffset);
+
+	public abstract OctetCodec reset();
+
+	/*
+	 * Update methods
+	 */
+
+	public final OctetCodec update(final Octet src, final ExpandableOctetBuffer dest) {
+		return update(src, src.begin(), src.end(), dest);
+	}
+
+	public final OctetCodec update(final Octet src, final int start, final int end,
+			final ExpandableOctetBuffer dest) {
+		checkRange(src, start, end);
+
+		int index = start;
+		while (index < end) {
+			final int length = pieceLength(end - index);
+
+			final ByteBuffer buffer = dest.ensureLength(maxOutputLength(length)).buffer();
+			final int pos = buffer.position();
+
+			int count;
+			if (buffer.hasArray()) {
+				count = processPiece(src, index, length, buffer.array(), buffer.arrayOffset() + pos);
+			} else {
+				final byte[] chunk = outputChunk(maxOutputLength(length));
+				count = processPiece(src, index, length, chunk, 0);
+				buffer.put(chunk, 0, count);
+			}
+			buffer.position(pos + count);
+
+			index += length;
+		}
+		return this;
+	}
+
+	public final OctetCodec update(final Octet src, final OctetOutputOp dest) {
+		return update(src, src.begin(), src.end(), dest);
+	}
+
+	public final OctetCodec update(final Octet src, final int start, final int end,
+			final OctetOutputOp dest) {
+		checkRange(src, start, end);
+
+		int index = start;
+		while (index < end) {
+			final int length = pieceLength(end - index);
+
+			final byte[] chunk = outputChunk(maxOutputLength(length));
+			final int count = processPiece(src, index, length, chunk, 0);
+			dest.put(chunk, 0, count);
+
+			index += length;
+		}
+		return this;
+	}
+
+	public final OctetCodec finish(final ExpandableOctetBuffer dest) {
+		final ByteBuffer buffer = dest.ensureLength(FINISH_LENGTH).buffer();
+		final int pos = buffer.position();
+
+		final byte[] chunk = outputChunk(FINISH_LENGTH);
+		final int count = flush(chunk, 0);
+		buffer.put(chunk, 0, count);
+
+		buffer.position(pos + count);
+		return this;
+	}
+
+	public final OctetCodec finish(final OctetOutputOp dest) {
+		final byte[] chunk = outputChunk(FINISH_LENGTH);
+		final int count = flush(chunk, 0);
+		dest.put(chunk, 0, count);
+		return this;
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private static final void checkRange(final Octet src, final int start, final int end) {
+		if (start < src.begin() || start > end || end > src.end()) {
+			throw new IndexOutOfBoundsException("Start: " + start + " End: " + end);
+		}
+	}
+
+	private final int pieceLength(final int remaining) {
+		final int max = maxInputLength(CHUNK_SIZE);
+		return (remaining < max) ? remaining : max;
+	}
+
+	private final int processPiece(final Octet src, final int index, final int length,
+			final byte[] out, final int outOffset) {
+		if (src.hasArray()) {
+			return process(src.array(), src.arrayOffset() + index, length, out, outOffset);
+		}
+
+		if (this.inputChunk == null || this.inputChunk.length < length) {
+			this.inputChunk = new byte[length];
+		}
+
+		final ByteBuffer buffer = src.buffer().duplicate();
+		buffer.limit(index + length).position(index);
+		buffer.get(this.inputChunk, 0, length);
+
+		return process(this.inputChunk, 0, length, out, outOffset);
+	}
+
+	private final byte[] outputChunk(final int length) {
+		if (this.outputChunk == null || this.outputChunk.length < length) {
+			this.outputChunk = new byte[(length < FINISH_LENGTH) ? FINISH_LENGTH : length];
+		}
+		return this.outputChunk;
+	}
+
+}
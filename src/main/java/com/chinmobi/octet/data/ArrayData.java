@@ -113,7 +113,7 @@ public final class ArrayData implements OctetData {
 
 		final byte[] array = new byte[capacity];
 
-		in.read(array, 0, array.length);
+		in.readFully(array, 0, array.length);
 
 		return array;
 	}
@@ -171,7 +171,7 @@ public final class BufferData implements OctetData {
 		}
 
 		if (array != null) {
-			in.read(array, buffer.arrayOffset(), capacity);
+			in.readFully(array, buffer.arrayOffset(), capacity);
 		} else {
 			array = new byte[(capacity > 64) ? 64 : capacity];
 
@@ -0,0 +1,218 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octet.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+import com.chinmobi.octet.ArrayOctet;
+import com.chinmobi.octet.BufferOctet;
+import com.chinmobi.octet.Octet;
+
+/**
+ * Content-only wire format: unlike the default externalization, which ships
+ * the whole capacity of the backing buffer, only the live bytes are written,
+ * behind a one byte flags field and a varint length. Reading gives back the
+ * smallest fitting array or buffer.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class CompactOctetFormat {
+
+	private static final int FLAG_BUFFER = 0x01;
+	private static final int FLAG_DIRECT = 0x02;
+
+	private static final int SCRATCH_SIZE = 8 * 1024;
+
+
+	private CompactOctetFormat() {
+	}
+
+
+	/*
+	 * Octet methods
+	 */
+
+	public static final void writeOctet(final Octet octet, final DataOutput out) throws IOException {
+		final ByteBuffer buffer = octet.buffer();
+
+		int flags = 0;
+		if (buffer != null) {
+			flags |= FLAG_BUFFER;
+			if (buffer.isDirect()) {
+				flags |= FLAG_DIRECT;
+			}
+		}
+		out.writeByte(flags);
+
+		final int length = octet.length();
+		writeVarint(length, out);
+
+		if (octet.hasArray()) {
+			out.write(octet.array(), octet.arrayOffset() + octet.begin(), length);
+		} else {
+			writeBytes(buffer, octet.begin(), length, out);
+		}
+	}
+
+	public static final Octet readOctet(final DataInput in) throws IOException {
+		final int flags = in.readUnsignedByte();
+		if ((flags & ~(FLAG_BUFFER | FLAG_DIRECT)) != 0) {
+			throw new StreamCorruptedException("Invalid octet flags: " + flags);
+		}
+
+		final int length = readLength(in);
+
+		if ((flags & FLAG_BUFFER) != 0) {
+			final ByteBuffer buffer = newBuffer((flags & FLAG_DIRECT) != 0, length);
+			readBytes(in, buffer, 0, length);
+			return new BufferOctet(buffer, 0, length);
+		} else {
+			final byte[] array = new byte[length];
+			in.readFully(array);
+			return new ArrayOctet(array, 0, length);
+		}
+	}
+
+	/*
+	 * Buffer methods
+	 */
+
+	/**
+	 * Writes the bytes in [start, end) of the buffer, leaving its position and limit untouched.
+	 */
+	public static final void writeBuffer(final ByteBuffer buffer, final int start, final int end,
+			final DataOutput out) throws IOException {
+		if (start < 0 || start > end || end > buffer.capacity()) {
+			throw new IndexOutOfBoundsException("Start: " + start + " End: " + end +
+					" Capacity: " + buffer.capacity());
+		}
+
+		out.writeByte(buffer.isDirect() ? (FLAG_BUFFER | FLAG_DIRECT) : FLAG_BUFFER);
+
+		final int length = end - start;
+		writeVarint(length, out);
+
+		writeBytes(buffer, start, length, out);
+	}
+
+	/**
+	 * Reads a buffer whose capacity equals its content length, with position 0 and limit at the end.
+	 */
+	public static final ByteBuffer readBuffer(final DataInput in) throws IOException {
+		final int flags = in.readUnsignedByte();
+		if ((flags & FLAG_BUFFER) == 0 || (flags & ~(FLAG_BUFFER | FLAG_DIRECT)) != 0) {
+			throw new StreamCorruptedException("Invalid buffer flags: " + flags);
+		}
+
+		final int length = readLength(in);
+
+		final ByteBuffer buffer = newBuffer((flags & FLAG_DIRECT) != 0, length);
+		readBytes(in, buffer, 0, length);
+
+		return buffer;
+	}
+
+	/*
+	 * Varint methods
+	 */
+
+	public static final void writeVarint(int value, final DataOutput out) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	public static final int readVarint(final DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private static final int readLength(final DataInput in) throws IOException {
+		final int length = readVarint(in);
+		if (length < 0) {
+			throw new StreamCorruptedException("Invalid length: " + (length & 0xFFFFFFFFL));
+		}
+		return length;
+	}
+
+	private static final ByteBuffer newBuffer(final boolean isDirect, final int capacity) {
+		return isDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	private static final void writeBytes(final ByteBuffer buffer, final int start, final int length,
+			final DataOutput out) throws IOException {
+		if (buffer.hasArray()) {
+			out.write(buffer.array(), buffer.arrayOffset() + start, length);
+			return;
+		}
+
+		final ByteBuffer src = buffer.duplicate();
+		src.limit(start + length).position(start);
+
+		final byte[] scratch = new byte[(length < SCRATCH_SIZE) ? length : SCRATCH_SIZE];
+		while (src.hasRemaining()) {
+			final int len = (src.remaining() < scratch.length) ? src.remaining() : scratch.length;
+			src.get(scratch, 0, len);
+			out.write(scratch, 0, len);
+		}
+	}
+
+	private static final void readBytes(final DataInput in, final ByteBuffer buffer, final int start,
+			final int length) throws IOException {
+		if (buffer.hasArray()) {
+			in.readFully(buffer.array(), buffer.arrayOffset() + start, length);
+			return;
+		}
+
+		final ByteBuffer dest = buffer.duplicate();
+		dest.limit(start + length).position(start);
+
+		final byte[] scratch = new byte[(length < SCRATCH_SIZE) ? length : SCRATCH_SIZE];
+		while (dest.hasRemaining()) {
+			final int len = (dest.remaining() < scratch.length) ? dest.remaining() : scratch.length;
+			in.readFully(scratch, 0, len);
+			dest.put(scratch, 0, len);
+		}
+	}
+
+}
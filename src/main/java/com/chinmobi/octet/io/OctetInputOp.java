@@ -283,7 +283,7 @@ public class OctetInputOp extends InputStream implements OctetOp, ScatteringByte
 
 	public final int read() throws IOException {
 		try {
-			return this.buffer.get();
+			return this.buffer.get() & 0xFF;
 		} catch (BufferUnderflowException ex) {
 			return -1;
 		}
@@ -0,0 +1,136 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octet.zip;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * Slicing-by-8 CRC-32C (Castagnoli), used when java.util.zip.CRC32C is unavailable.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+final class Crc32c implements Checksum {
+
+	private static final int POLY = 0x82F63B78;
+
+	private static final int[][] TABLES = new int[8][256];
+
+	static {
+		for (int i = 0; i < 256; ++i) {
+			int crc = i;
+			for (int k = 0; k < 8; ++k) {
+				crc = ((crc & 1) != 0) ? ((crc >>> 1) ^ POLY) : (crc >>> 1);
+			}
+			TABLES[0][i] = crc;
+		}
+		for (int i = 0; i < 256; ++i) {
+			int crc = TABLES[0][i];
+			for (int t = 1; t < 8; ++t) {
+				crc = TABLES[0][crc & 0xFF] ^ (crc >>> 8);
+				TABLES[t][i] = crc;
+			}
+		}
+	}
+
+
+	private int crc = 0xFFFFFFFF;
+
+
+	Crc32c() {
+	}
+
+
+	public final void update(final int b) {
+		this.crc = TABLES[0][(this.crc ^ b) & 0xFF] ^ (this.crc >>> 8);
+	}
+
+	public final void update(final byte[] b, int off, int len) {
+		if (off < 0 || len < 0 || off > b.length - len) {
+			throw new ArrayIndexOutOfBoundsException();
+		}
+
+		final int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+		final int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+
+		int c = this.crc;
+		while (len >= 8) {
+			final int lo = c ^ ((b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) |
+					((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24));
+			c = t7[lo & 0xFF] ^ t6[(lo >>> 8) & 0xFF] ^ t5[(lo >>> 16) & 0xFF] ^ t4[lo >>> 24] ^
+					t3[b[off + 4] & 0xFF] ^ t2[b[off + 5] & 0xFF] ^
+					t1[b[off + 6] & 0xFF] ^ t0[b[off + 7] & 0xFF];
+			off += 8;
+			len -= 8;
+		}
+		while (len-- > 0) {
+			c = t0[(c ^ b[off++]) & 0xFF] ^ (c >>> 8);
+		}
+		this.crc = c;
+	}
+
+	/**
+	 * Consumes the remaining bytes of the buffer, like CRC32.update(ByteBuffer).
+	 */
+	public final void update(final ByteBuffer buffer) {
+		final int pos = buffer.position();
+		final int limit = buffer.limit();
+
+		if (buffer.hasArray()) {
+			update(buffer.array(), buffer.arrayOffset() + pos, limit - pos);
+		} else {
+			final ByteBuffer src = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+			final int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+			final int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+
+			int c = this.crc;
+			int i = pos;
+			for (; i + 8 <= limit; i += 8) {
+				final int lo = c ^ src.getInt(i);
+				final int hi = src.getInt(i + 4);
+				c = t7[lo & 0xFF] ^ t6[(lo >>> 8) & 0xFF] ^ t5[(lo >>> 16) & 0xFF] ^ t4[lo >>> 24] ^
+						t3[hi & 0xFF] ^ t2[(hi >>> 8) & 0xFF] ^ t1[(hi >>> 16) & 0xFF] ^ t0[hi >>> 24];
+			}
+			for (; i < limit; ++i) {
+				c = t0[(c ^ src.get(i)) & 0xFF] ^ (c >>> 8);
+			}
+			this.crc = c;
+		}
+
+		buffer.position(limit);
+	}
+
+	public final long getValue() {
+		return (~this.crc) & 0xFFFFFFFFL;
+	}
+
+	public final void reset() {
+		this.crc = 0xFFFFFFFF;
+	}
+
+}
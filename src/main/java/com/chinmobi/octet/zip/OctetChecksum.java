@@ -0,0 +1,330 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octet.zip;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.MutableOctet;
+import com.chinmobi.octet.Octet;
+import com.chinmobi.octet.io.OctetOutputOp;
+
+/**
+ * Feeds octet ranges to a {@link Checksum} or {@link MessageDigest} without copying
+ * them out first. Bound to an {@link OctetOutputOp} with {@link #track(OctetOutputOp)},
+ * it becomes a running checksum that catches up with the appended bytes whenever its
+ * value is asked for.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class OctetChecksum {
+
+	private static final int CHUNK_SIZE = 8 * 1024;
+
+	private static final MethodHandle CRC32C_CONSTRUCTOR;
+	private static final MethodHandle CHECKSUM_UPDATE_BUFFER;
+
+	static {
+		MethodHandle constructor = null;
+		MethodHandle update = null;
+
+		final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		try {
+			constructor = lookup.findConstructor(Class.forName("java.util.zip.CRC32C"),
+					MethodType.methodType(void.class)).asType(MethodType.methodType(Checksum.class));
+		} catch (Exception ignore) {
+		}
+		try {
+			update = lookup.findVirtual(Checksum.class, "update",
+					MethodType.methodType(void.class, ByteBuffer.class));
+		} catch (Exception ignore) {
+		}
+
+		CRC32C_CONSTRUCTOR = constructor;
+		CHECKSUM_UPDATE_BUFFER = update;
+	}
+
+
+	private final Checksum checksum;
+	private final MessageDigest digest;
+
+	private byte[] chunk;
+
+	private OctetOutputOp trackedOp;
+	private int trackedMark;
+
+
+	public OctetChecksum(final Checksum checksum) {
+		if (checksum == null) {
+			throw new IllegalArgumentException("Null checksum.");
+		}
+		this.checksum = checksum;
+		this.digest = null;
+	}
+
+	public OctetChecksum(final MessageDigest digest) {
+		if (digest == null) {
+			throw new IllegalArgumentException("Null digest.");
+		}
+		this.checksum = null;
+		this.digest = digest;
+	}
+
+
+	public static final OctetChecksum crc32() {
+		return new OctetChecksum(new CRC32());
+	}
+
+	/**
+	 * Uses java.util.zip.CRC32C when the runtime has it, a table driven fallback otherwise.
+	 */
+	public static final OctetChecksum crc32c() {
+		Checksum checksum = null;
+		if (CRC32C_CONSTRUCTOR != null) {
+			try {
+				checksum = (Checksum)CRC32C_CONSTRUCTOR.invokeExact();
+			} catch (Throwable ignore) {
+			}
+		}
+		if (checksum == null) {
+			checksum = new Crc32c();
+		}
+		return new OctetChecksum(checksum);
+	}
+
+	public static final OctetChecksum adler32() {
+		return new OctetChecksum(new Adler32());
+	}
+
+	public static final OctetChecksum digest(final String algorithm) throws NoSuchAlgorithmException {
+		return new OctetChecksum(MessageDigest.getInstance(algorithm));
+	}
+
+
+	public final Checksum checksum() {
+		return this.checksum;
+	}
+
+	public final MessageDigest messageDigest() {
+		return this.digest;
+	}
+
+	/*
+	 * Update methods
+	 */
+
+	public final OctetChecksum update(final Octet octet) {
+		return update(octet, octet.begin(), octet.end());
+	}
+
+	public final OctetChecksum update(final Octet octet, final int start, final int end) {
+		if (start < octet.begin() || start > end || end > octet.end()) {
+			throw new IndexOutOfBoundsException("Start: " + start + " End: " + end);
+		}
+
+		if (octet.hasArray()) {
+			updateArray(octet.array(), octet.arrayOffset() + start, end - start);
+		} else {
+			final ByteBuffer buffer = octet.buffer().duplicate();
+			buffer.limit(end).position(start);
+			updateBuffer(buffer);
+		}
+		return this;
+	}
+
+	public final OctetChecksum update(final ExpandableOctetBuffer octetBuf) {
+		return update(octetBuf.toInput());
+	}
+
+	/**
+	 * Consumes the remaining bytes of the buffer.
+	 */
+	public final OctetChecksum update(final ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			updateArray(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			buffer.position(buffer.limit());
+		} else {
+			updateBuffer(buffer);
+		}
+		return this;
+	}
+
+	public final OctetChecksum update(final byte[] src, final int offset, final int length) {
+		if (offset < 0 || length < 0 || offset > src.length - length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + " length: " + length);
+		}
+		updateArray(src, offset, length);
+		return this;
+	}
+
+	/*
+	 * Tracking methods
+	 */
+
+	/**
+	 * Makes this a running checksum of everything appended to op from now on.
+	 */
+	public final OctetChecksum track(final OctetOutputOp op) {
+		this.trackedOp = op;
+		this.trackedMark = (op != null) ? op.position() : 0;
+		return this;
+	}
+
+	public final OctetOutputOp trackedOp() {
+		return this.trackedOp;
+	}
+
+	/**
+	 * Feeds the bytes appended to the tracked op since the last sync.
+	 *
+	 * @throws IllegalStateException if the op was rewound behind the bytes already checksummed
+	 */
+	public final OctetChecksum sync() {
+		final OctetOutputOp op = this.trackedOp;
+		if (op != null) {
+			final int position = op.position();
+			if (position < this.trackedMark) {
+				throw new IllegalStateException("Tracked output rewound from " +
+						this.trackedMark + " to " + position);
+			}
+
+			if (position > this.trackedMark) {
+				final MutableOctet octet = op.octet();
+
+				final ByteBuffer buffer = octet.buffer();
+				if (buffer != null) {
+					final ByteBuffer src = buffer.duplicate();
+					src.limit(position).position(this.trackedMark);
+					update(src);
+				} else {
+					updateArray(octet.array(), octet.arrayOffset() + this.trackedMark,
+							position - this.trackedMark);
+				}
+
+				this.trackedMark = position;
+			}
+		}
+		return this;
+	}
+
+	/*
+	 * Result methods
+	 */
+
+	public final long getValue() {
+		sync();
+
+		if (this.checksum == null) {
+			throw new IllegalStateException("Not a checksum: " + this.digest.getAlgorithm());
+		}
+		return this.checksum.getValue();
+	}
+
+	/**
+	 * Completes the digest, which also resets it, as MessageDigest.digest() does.
+	 */
+	public final byte[] digest() {
+		sync();
+
+		if (this.digest == null) {
+			throw new IllegalStateException("Not a message digest.");
+		}
+		return this.digest.digest();
+	}
+
+	public final OctetChecksum reset() {
+		if (this.checksum != null) {
+			this.checksum.reset();
+		} else {
+			this.digest.reset();
+		}
+
+		if (this.trackedOp != null) {
+			this.trackedMark = this.trackedOp.position();
+		}
+		return this;
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final void updateArray(final byte[] array, final int offset, final int length) {
+		if (this.checksum != null) {
+			this.checksum.update(array, offset, length);
+		} else {
+			this.digest.update(array, offset, length);
+		}
+	}
+
+	private final void updateBuffer(final ByteBuffer buffer) {
+		if (this.digest != null) {
+			this.digest.update(buffer);
+			return;
+		}
+
+		final Checksum cs = this.checksum;
+		if (cs instanceof CRC32) {
+			((CRC32)cs).update(buffer);
+		} else
+		if (cs instanceof Adler32) {
+			((Adler32)cs).update(buffer);
+		} else
+		if (cs instanceof Crc32c) {
+			((Crc32c)cs).update(buffer);
+		} else
+		if (CHECKSUM_UPDATE_BUFFER != null) {
+			try {
+				CHECKSUM_UPDATE_BUFFER.invokeExact(cs, buffer);
+			} catch (RuntimeException ex) {
+				throw ex;
+			} catch (Error ex) {
+				throw ex;
+			} catch (Throwable ex) {
+				throw new IllegalStateException(ex);
+			}
+		} else {
+			if (this.chunk == null) {
+				this.chunk = new byte[CHUNK_SIZE];
+			}
+			final byte[] chunk = this.chunk;
+			while (buffer.hasRemaining()) {
+				final int len = (buffer.remaining() < chunk.length) ? buffer.remaining() : chunk.length;
+				buffer.get(chunk, 0, len);
+				cs.update(chunk, 0, len);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,322 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octet.zip;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.Octet;
+
+/**
+ * Compresses octets straight into an {@link ExpandableOctetBuffer}, growing it as
+ * output is produced. Heap sources and targets are handed to the {@link Deflater}
+ * through their backing arrays; direct buffers go through a small reused chunk.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class OctetDeflater {
+
+	public static final int ZLIB = 0;
+	public static final int RAW = 1;
+	public static final int GZIP = 2;
+
+	static final int CHUNK_SIZE = 8 * 1024;
+
+	static final int GZIP_MAGIC = 0x8B1F;
+
+	private static final byte[] EMPTY = new byte[0];
+
+
+	private final Deflater deflater;
+
+	private final int format;
+
+	private final CRC32 crc;
+
+	private byte[] dictionary;
+
+	private byte[] inputChunk;
+	private byte[] outputChunk;
+
+	private boolean started;
+
+
+	public OctetDeflater() {
+		this(ZLIB, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	public OctetDeflater(final int format) {
+		this(format, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	public OctetDeflater(final int format, final int level) {
+		if (format < ZLIB || format > GZIP) {
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+
+		this.deflater = new Deflater(level, (format != ZLIB));
+		this.format = format;
+		this.crc = (format == GZIP) ? new CRC32() : null;
+	}
+
+
+	public final int format() {
+		return this.format;
+	}
+
+	/**
+	 * Sets a preset dictionary, applied again after every reset until replaced.
+	 */
+	public final OctetDeflater setDictionary(final Octet dictionary) {
+		if (this.format == GZIP) {
+			throw new IllegalArgumentException("GZIP does not support preset dictionaries.");
+		}
+		if (this.started) {
+			throw new IllegalStateException("Dictionary must be set before compressing.");
+		}
+
+		this.dictionary = (dictionary != null) ? dictionary.getBytes() : null;
+		return this;
+	}
+
+	public final OctetDeflater setLevel(final int level) {
+		this.deflater.setLevel(level);
+		return this;
+	}
+
+	public final OctetDeflater reset() {
+		this.deflater.reset();
+		if (this.crc != null) {
+			this.crc.reset();
+		}
+		this.started = false;
+		return this;
+	}
+
+	public final void end() {
+		this.deflater.end();
+	}
+
+	public final long getBytesRead() {
+		return this.deflater.getBytesRead();
+	}
+
+	public final long getBytesWritten() {
+		return this.deflater.getBytesWritten();
+	}
+
+	/*
+	 * Compress methods
+	 */
+
+	/**
+	 * Compresses the whole octet as one stream appended to dest.
+	 *
+	 * @return the number of compressed bytes appended
+	 */
+	public final int deflate(final Octet src, final ExpandableOctetBuffer dest) {
+		reset();
+
+		final int start = dest.toOutput().length();
+
+		update(src, src.begin(), src.end(), dest);
+		finish(dest);
+
+		reset();
+
+		return dest.length() - start;
+	}
+
+	public final OctetDeflater update(final Octet src, final ExpandableOctetBuffer dest) {
+		return update(src, src.begin(), src.end(), dest);
+	}
+
+	public final OctetDeflater update(final Octet src, final int start, final int end,
+			final ExpandableOctetBuffer dest) {
+		if (start < src.begin() || start > end || end > src.end()) {
+			throw new IndexOutOfBoundsException("Start: " + start + " End: " + end);
+		}
+
+		begin(dest);
+
+		final int length = end - start;
+		if (length <= 0) {
+			return this;
+		}
+
+		if (src.hasArray()) {
+			final byte[] array = src.array();
+			final int offset = src.arrayOffset() + start;
+
+			if (this.crc != null) {
+				this.crc.update(array, offset, length);
+			}
+
+			this.deflater.setInput(array, offset, length);
+			drain(dest, false);
+		} else {
+			final ByteBuffer buffer = src.buffer().duplicate();
+			buffer.limit(end).position(start);
+
+			if (this.crc != null) {
+				this.crc.update(buffer);
+				buffer.position(start);
+			}
+
+			final byte[] chunk = inputChunk();
+			while (buffer.hasRemaining()) {
+				final int len = (buffer.remaining() < chunk.length) ? buffer.remaining() : chunk.length;
+				buffer.get(chunk, 0, len);
+
+				this.deflater.setInput(chunk, 0, len);
+				drain(dest, false);
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Flushes pending output so that everything fed so far can be decompressed.
+	 */
+	public final OctetDeflater flush(final ExpandableOctetBuffer dest) {
+		begin(dest);
+		this.deflater.setInput(EMPTY);
+		drain(dest, true);
+		return this;
+	}
+
+	public final OctetDeflater finish(final ExpandableOctetBuffer dest) {
+		begin(dest);
+
+		this.deflater.finish();
+		while (!this.deflater.finished()) {
+			drain(dest, false);
+		}
+
+		if (this.format == GZIP) {
+			final ByteBuffer buffer = dest.ensureLength(8).buffer();
+			final int pos = buffer.position();
+
+			putIntLE(buffer, pos, (int)this.crc.getValue());
+			putIntLE(buffer, pos + 4, (int)this.deflater.getBytesRead());
+
+			buffer.position(pos + 8);
+		}
+
+		return this;
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final byte[] inputChunk() {
+		if (this.inputChunk == null) {
+			this.inputChunk = new byte[CHUNK_SIZE];
+		}
+		return this.inputChunk;
+	}
+
+	private final byte[] outputChunk() {
+		if (this.outputChunk == null) {
+			this.outputChunk = new byte[CHUNK_SIZE];
+		}
+		return this.outputChunk;
+	}
+
+	private final void begin(final ExpandableOctetBuffer dest) {
+		if (this.started) {
+			return;
+		}
+		this.started = true;
+
+		if (this.dictionary != null) {
+			this.deflater.setDictionary(this.dictionary);
+		}
+
+		if (this.format == GZIP) {
+			final ByteBuffer buffer = dest.ensureLength(10).buffer();
+			final int pos = buffer.position();
+
+			buffer.put(pos, (byte)GZIP_MAGIC);
+			buffer.put(pos + 1, (byte)(GZIP_MAGIC >> 8));
+			buffer.put(pos + 2, (byte)Deflater.DEFLATED);
+			for (int i = 3; i < 10; ++i) {
+				buffer.put(pos + i, (byte)0);
+			}
+
+			buffer.position(pos + 10);
+		}
+	}
+
+	private final void drain(final ExpandableOctetBuffer dest, final boolean syncFlush) {
+		final int flush = syncFlush ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH;
+
+		for (;;) {
+			final ByteBuffer buffer = dest.ensureLength(CHUNK_SIZE).buffer();
+			final int pos = buffer.position();
+			final int space = buffer.capacity() - pos;
+
+			int length;
+			int count;
+			if (buffer.hasArray()) {
+				length = space;
+				count = this.deflater.deflate(buffer.array(), buffer.arrayOffset() + pos, length, flush);
+			} else {
+				final byte[] chunk = outputChunk();
+				length = (space < chunk.length) ? space : chunk.length;
+				count = this.deflater.deflate(chunk, 0, length, flush);
+				buffer.put(chunk, 0, count);
+			}
+			buffer.limit(buffer.capacity()).position(pos + count);
+
+			if (this.deflater.finished()) {
+				break;
+			}
+			if (count < length && this.deflater.needsInput()) {
+				break;
+			}
+		}
+	}
+
+	static final void putIntLE(final ByteBuffer buffer, final int index, final int value) {
+		buffer.put(index, (byte)value);
+		buffer.put(index + 1, (byte)(value >> 8));
+		buffer.put(index + 2, (byte)(value >> 16));
+		buffer.put(index + 3, (byte)(value >> 24));
+	}
+
+	static final int getIntLE(final Octet octet, final int index) {
+		return (octet.byteAt(index) & 0xFF) |
+				((octet.byteAt(index + 1) & 0xFF) << 8) |
+				((octet.byteAt(index + 2) & 0xFF) << 16) |
+				((octet.byteAt(index + 3) & 0xFF) << 24);
+	}
+
+}
@@ -0,0 +1,289 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octet.zip;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.Octet;
+
+/**
+ * Decompresses octets produced by {@link OctetDeflater} (or any zlib, raw deflate
+ * or single member GZIP stream) straight into an {@link ExpandableOctetBuffer}.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class OctetInflater {
+
+	private static final int FHCRC = 0x02;
+	private static final int FEXTRA = 0x04;
+	private static final int FNAME = 0x08;
+	private static final int FCOMMENT = 0x10;
+
+
+	private final Inflater inflater;
+
+	private final int format;
+
+	private byte[] dictionary;
+
+	private byte[] inputChunk;
+	private byte[] outputChunk;
+
+
+	public OctetInflater() {
+		this(OctetDeflater.ZLIB);
+	}
+
+	public OctetInflater(final int format) {
+		if (format < OctetDeflater.ZLIB || format > OctetDeflater.GZIP) {
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+
+		this.inflater = new Inflater(format != OctetDeflater.ZLIB);
+		this.format = format;
+	}
+
+
+	public final int format() {
+		return this.format;
+	}
+
+	/**
+	 * Sets the preset dictionary used by every following stream until replaced.
+	 */
+	public final OctetInflater setDictionary(final Octet dictionary) {
+		if (this.format == OctetDeflater.GZIP) {
+			throw new IllegalArgumentException("GZIP does not support preset dictionaries.");
+		}
+
+		this.dictionary = (dictionary != null) ? dictionary.getBytes() : null;
+		return this;
+	}
+
+	public final void end() {
+		this.inflater.end();
+	}
+
+	/*
+	 * Decompress methods
+	 */
+
+	/**
+	 * Decompresses one complete stream from src and appends the result to dest.
+	 *
+	 * @return the number of bytes appended
+	 *
+	 * @throws ZipException if the data is corrupt or truncated
+	 */
+	public final int inflate(final Octet src, final ExpandableOctetBuffer dest) throws ZipException {
+		this.inflater.reset();
+
+		final int start = dest.toOutput().length();
+
+		final int end = src.end();
+		int index = src.begin();
+
+		if (this.format == OctetDeflater.GZIP) {
+			index = skipGzipHeader(src, index, end);
+		} else
+		if (this.format == OctetDeflater.RAW && this.dictionary != null) {
+			this.inflater.setDictionary(this.dictionary);
+		}
+
+		if (src.hasArray()) {
+			this.inflater.setInput(src.array(), src.arrayOffset() + index, end - index);
+			drain(dest);
+
+			if (!this.inflater.finished()) {
+				throw new ZipException("Unexpected end of compressed data.");
+			}
+
+			index = end - this.inflater.getRemaining();
+		} else {
+			final ByteBuffer buffer = src.buffer().duplicate();
+			buffer.limit(end).position(index);
+
+			final byte[] chunk = inputChunk();
+			while (!this.inflater.finished()) {
+				if (!buffer.hasRemaining()) {
+					throw new ZipException("Unexpected end of compressed data.");
+				}
+
+				final int len = (buffer.remaining() < chunk.length) ? buffer.remaining() : chunk.length;
+				buffer.get(chunk, 0, len);
+
+				this.inflater.setInput(chunk, 0, len);
+				drain(dest);
+			}
+
+			index = buffer.position() - this.inflater.getRemaining();
+		}
+
+		final int count = dest.length() - start;
+
+		if (this.format == OctetDeflater.GZIP) {
+			if (end - index < 8) {
+				throw new ZipException("Truncated GZIP trailer.");
+			}
+
+			final ByteBuffer buffer = dest.buffer().duplicate();
+			buffer.limit(start + count).position(start);
+
+			final CRC32 crc = new CRC32();
+			crc.update(buffer);
+
+			if (OctetDeflater.getIntLE(src, index) != (int)crc.getValue()) {
+				throw new ZipException("Corrupt GZIP trailer: CRC mismatch.");
+			}
+			if (OctetDeflater.getIntLE(src, index + 4) != count) {
+				throw new ZipException("Corrupt GZIP trailer: size mismatch.");
+			}
+		}
+
+		this.inflater.reset();
+
+		return count;
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final byte[] inputChunk() {
+		if (this.inputChunk == null) {
+			this.inputChunk = new byte[OctetDeflater.CHUNK_SIZE];
+		}
+		return this.inputChunk;
+	}
+
+	private final byte[] outputChunk() {
+		if (this.outputChunk == null) {
+			this.outputChunk = new byte[OctetDeflater.CHUNK_SIZE];
+		}
+		return this.outputChunk;
+	}
+
+	private final void drain(final ExpandableOctetBuffer dest) throws ZipException {
+		for (;;) {
+			final ByteBuffer buffer = dest.ensureLength(OctetDeflater.CHUNK_SIZE).buffer();
+			final int pos = buffer.position();
+			final int space = buffer.capacity() - pos;
+
+			int length;
+			int count;
+			try {
+				if (buffer.hasArray()) {
+					length = space;
+					count = this.inflater.inflate(buffer.array(), buffer.arrayOffset() + pos, length);
+				} else {
+					final byte[] chunk = outputChunk();
+					length = (space < chunk.length) ? space : chunk.length;
+					count = this.inflater.inflate(chunk, 0, length);
+					buffer.put(chunk, 0, count);
+				}
+			} catch (DataFormatException ex) {
+				final ZipException ze = new ZipException(ex.getMessage());
+				ze.initCause(ex);
+				throw ze;
+			}
+			buffer.limit(buffer.capacity()).position(pos + count);
+
+			if (this.inflater.finished()) {
+				break;
+			}
+
+			if (this.inflater.needsDictionary()) {
+				if (this.dictionary == null) {
+					throw new ZipException("Missing preset dictionary.");
+				}
+				this.inflater.setDictionary(this.dictionary);
+				continue;
+			}
+
+			if (count < length) {
+				if (this.inflater.needsInput()) {
+					break;
+				}
+				if (count == 0) {
+					throw new ZipException("Inflater made no progress.");
+				}
+			}
+		}
+	}
+
+	private static final int skipGzipHeader(final Octet src, int index, final int end) throws ZipException {
+		if (end - index < 10) {
+			throw new ZipException("Truncated GZIP header.");
+		}
+
+		final int magic = (src.byteAt(index) & 0xFF) | ((src.byteAt(index + 1) & 0xFF) << 8);
+		if (magic != OctetDeflater.GZIP_MAGIC) {
+			throw new ZipException("Not in GZIP format.");
+		}
+		if (src.byteAt(index + 2) != 8) {
+			throw new ZipException("Unsupported compression method.");
+		}
+
+		final int flags = src.byteAt(index + 3) & 0xFF;
+		index += 10;
+
+		if ((flags & FEXTRA) != 0) {
+			if (end - index < 2) {
+				throw new ZipException("Truncated GZIP header.");
+			}
+			index += 2 + ((src.byteAt(index) & 0xFF) | ((src.byteAt(index + 1) & 0xFF) << 8));
+		}
+		if ((flags & FNAME) != 0) {
+			index = skipZeroTerminated(src, index, end);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			index = skipZeroTerminated(src, index, end);
+		}
+		if ((flags & FHCRC) != 0) {
+			index += 2;
+		}
+
+		if (index > end) {
+			throw new ZipException("Truncated GZIP header.");
+		}
+		return index;
+	}
+
+	private static final int skipZeroTerminated(final Octet src, int index, final int end) throws ZipException {
+		while (index < end) {
+			if (src.byteAt(index++) == 0) {
+				return index;
+			}
+		}
+		throw new ZipException("Truncated GZIP header.");
+	}
+
+}
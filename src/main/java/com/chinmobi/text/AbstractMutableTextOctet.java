@@ -28,6 +28,7 @@ import java.nio.ByteBuffer;
 
 import com.chinmobi.octet.AbstractMutableOctet;
 import com.chinmobi.octet.MutableOctet;
+import com.chinmobi.octet.Octet;
 import com.chinmobi.octet.data.OctetData;
 import com.chinmobi.octet.io.OctetOutputOp;
 
@@ -87,6 +88,58 @@ public abstract class AbstractMutableTextOctet extends AbstractTextOctet
 		return this;
 	}
 
+	public final MutableOctet translate(final byte[] table) {
+		AbstractMutableOctet.translate(this, table);
+		return this;
+	}
+
+	public final MutableOctet xor(final Octet mask) {
+		AbstractMutableOctet.xor(this, mask);
+		return this;
+	}
+
+	public final MutableOctet and(final Octet mask) {
+		AbstractMutableOctet.and(this, mask);
+		return this;
+	}
+
+	public final MutableOctet or(final Octet mask) {
+		AbstractMutableOctet.or(this, mask);
+		return this;
+	}
+
+	/**
+	 * Turns the ASCII letters of this text to lower case in place.
+	 */
+	public final MutableOctet toLowerCase() {
+		final byte[] array = array();
+		if (array != null) {
+			TextMatchUtils.toLowerCase(array, begin() + arrayOffset(), end() + arrayOffset());
+		} else {
+			final ByteBuffer buf = buffer();
+			if (buf != null) {
+				TextMatchUtils.toLowerCase(buf, begin(), end());
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Turns the ASCII letters of this text to upper case in place.
+	 */
+	public final MutableOctet toUpperCase() {
+		final byte[] array = array();
+		if (array != null) {
+			TextMatchUtils.toUpperCase(array, begin() + arrayOffset(), end() + arrayOffset());
+		} else {
+			final ByteBuffer buf = buffer();
+			if (buf != null) {
+				TextMatchUtils.toUpperCase(buf, begin(), end());
+			}
+		}
+		return this;
+	}
+
 	public final MutableOctet setByteAt(final int index, final byte b) {
 		if (index >= begin() && index < end()) {
 			this.data.setByteAt(index, b);
@@ -24,18 +24,13 @@
  */
 package com.chinmobi.text;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Reader;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CoderResult;
-import java.nio.charset.CodingErrorAction;
 import java.util.Set;
 
 import com.chinmobi.octet.AbstractOctet;
@@ -453,6 +448,22 @@ public abstract class AbstractTextOctet extends AbstractOctet implements TextOct
 		return this;
 	}
 
+	/*
+	 * Number methods
+	 */
+
+	public final int parseInt(final int beginIndex, final int endIndex) {
+		return TextNumberUtils.parseInt(this, beginIndex, endIndex);
+	}
+
+	public final long parseLong(final int beginIndex, final int endIndex) {
+		return TextNumberUtils.parseLong(this, beginIndex, endIndex);
+	}
+
+	public final double parseDouble(final int beginIndex, final int endIndex) {
+		return TextNumberUtils.parseDouble(this, beginIndex, endIndex);
+	}
+
 	/*
 	 * trim methods
 	 */
@@ -564,10 +575,7 @@ public abstract class AbstractTextOctet extends AbstractOctet implements TextOct
 	}
 
 	protected static final CharsetDecoder getCharsetDecoder(final Charset charset) {
-		final CharsetDecoder decoder = charset.newDecoder();
-		decoder.onMalformedInput(CodingErrorAction.REPLACE);
-		decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
-		return decoder;
+		return CharsetUtils.newDecoder(charset);
 	}
 
 
@@ -577,65 +585,46 @@ public abstract class AbstractTextOctet extends AbstractOctet implements TextOct
 
 	public final void appendTo(final Appendable appendable) throws IOException {
 		if (this.length > 0) {
-			doAppend(getCharsetDecoder(), appendable);
+			doAppend(appendable);
 		}
 	}
 
-	private final void doAppend(final CharsetDecoder decoder, final Appendable appendable) throws IOException {
-		ByteBuffer buffer = buffer();
-		int oldPosition = -1;
-		int oldLimit = 0;
-
-		if (buffer != null) {
-			oldPosition = buffer.position();
-			oldLimit = buffer.limit();
-
-			buffer.position(0).limit(end()).position(this.begin);
-		} else if (array() != null){
-			buffer = ByteBuffer.wrap(array(), this.begin + arrayOffset(), this.length);
-		} else {
-			return;
-		}
+	private final void doAppend(final Appendable appendable) throws IOException {
+		final ByteBuffer buffer = buffer();
 
-		try {
-			decodeBuffer(buffer, decoder, appendable);
-		} finally {
-			if (oldPosition >= 0) {
-				buffer.position(0).limit(oldLimit).position(oldPosition);
+		if (isParallelDecoded()) {
+			if (buffer != null) {
+				ParallelUtf8Decoder.decode(buffer, this.begin, end(), appendable);
+			} else if (array() != null) {
+				ParallelUtf8Decoder.decode(array(), this.begin + arrayOffset(), this.length, appendable);
 			}
+			return;
 		}
-	}
-
-	private static final void decodeBuffer(final ByteBuffer buffer, final CharsetDecoder decoder, final Appendable appendable)
-			throws IOException {
-
-		final CharBuffer chars = CharBuffer.allocate(128);
 
-		decoder.reset();
-
-		for (;;) {
-			CoderResult result = decoder.decode(buffer, chars, true);
-
-			if (result.isOverflow()) {
-				chars.flip();
-				appendable.append(chars);
-				chars.clear();
-				continue;
-			}
-			break;
+		if (buffer != null) {
+			CharsetUtils.decode(buffer, this.begin, end(), getCharset(), appendable);
+		} else if (array() != null) {
+			CharsetUtils.decode(array(), this.begin + arrayOffset(), this.length, getCharset(), appendable);
 		}
-
-		decoder.flush(chars);
-		chars.flip();
-		appendable.append(chars);
 	}
 
 	/*
 	 * other methods
 	 */
 
+	/**
+	 * Returns a reader that decodes straight from these bytes, see {@link TextOctetReader}.
+	 */
 	public final Reader getReader() {
-		return new BufferedReader(new InputStreamReader(inputOp(), getCharset()));
+		return new TextOctetReader(this);
+	}
+
+	/**
+	 * Returns a char sequence read straight from these bytes where the charset allows,
+	 * see {@link TextCharSequence#of(TextOctet)}.
+	 */
+	public final CharSequence asCharSequence() {
+		return TextCharSequence.of(this);
 	}
 
 
@@ -651,7 +640,7 @@ public abstract class AbstractTextOctet extends AbstractOctet implements TextOct
 		} else {
 			if (this.length > 0) {
 				try {
-					doAppend(getCharsetDecoder(), appendable);
+					doAppend(appendable);
 				} catch (IOException ignore) {
 				}
 			}
@@ -669,44 +658,38 @@ public abstract class AbstractTextOctet extends AbstractOctet implements TextOct
 
 	private final String decodeToString() {
 		if (this.length > 0) {
-			final StringBuilder builder = new StringBuilder();
+			final ByteBuffer buffer = buffer();
 
-			try {
-				doAppend(getCharsetDecoder(), builder);
-			} catch (IOException ignore) {
+			if (isParallelDecoded()) {
+				if (buffer != null) {
+					return ParallelUtf8Decoder.decode(buffer, this.begin, end());
+				} else if (array() != null) {
+					return ParallelUtf8Decoder.decode(array(), this.begin + arrayOffset(), this.length);
+				}
 			}
 
-			return builder.toString();
-
-			/*byte[] array;
-			final ByteBuffer buffer = buffer();
-
 			if (buffer != null) {
-				if (buffer.hasArray()) {
-					array = buffer.array();
-					return new String(array, this.begin + buffer.arrayOffset(), this.length, getCharset());
-				} else {
-					final StringBuilder builder = new StringBuilder();
-
-					try {
-						doAppend(getCharsetDecoder(), builder);
-					} catch (IOException ignore) {
-					}
-
-					return builder.toString();
-				}
+				return CharsetUtils.decode(buffer, this.begin, end(), getCharset());
 			} else {
-				array = array();
+				final byte[] array = array();
 
 				if (array != null) {
-					return new String(array, this.begin + arrayOffset(), this.length, getCharset());
+					return CharsetUtils.decode(array, this.begin + arrayOffset(), this.length, getCharset());
 				}
-			}*/
+			}
 		}
 
 		return new String();
 	}
 
+	/**
+	 * Large UTF-8 text is validated and decoded in chunks on the fork-join pool.
+	 */
+	private final boolean isParallelDecoded() {
+		return (this.length >= ParallelUtf8Decoder.PARALLEL_THRESHOLD &&
+				CharsetUtils.UTF_8.equals(getCharset()));
+	}
+
 
 	/*
 	 * Externalizable methods
@@ -766,11 +749,7 @@ public abstract class AbstractTextOctet extends AbstractOctet implements TextOct
 			} else {
 				final ByteBuffer buffer = this.buffer();
 				if (buffer != null) {
-					for (; i < end; ++i, ++j) {
-						if (!equalsIgnoreCase(buffer.get(i), anotherBuffer.get(j))) {
-							return false;
-						}
-					}
+					return TextMatchUtils.equalsIgnoreCase(buffer, i, anotherBuffer, j, length);
 				} else {
 					return false;
 				}
@@ -814,14 +793,7 @@ public abstract class AbstractTextOctet extends AbstractOctet implements TextOct
 	}
 
 	private static boolean equalsIgnoreCase(final byte obj, final byte src) {
-		if (obj == src) {
-			return true;
-		} else
-		if (obj <= 0x7A && obj >= 0x41) {
-			if (obj >= 0x61) return (obj - 32) == src;
-			if (obj <= 0x5A) return (obj + 32) == src;
-		}
-		return false;
+		return TextMatchUtils.equalsIgnoreCase(obj, src);
 	}
 
 }
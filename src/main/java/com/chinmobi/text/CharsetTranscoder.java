@@ -0,0 +1,463 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+import com.chinmobi.octet.ExpandableOctetBuffer;
+
+/**
+ * Transcodes bytes from one charset to another, appending to an expandable buffer in a
+ * single pass. UTF-16 to and from UTF-8 and ISO-8859-1 or US-ASCII to and from UTF-8
+ * go byte to byte; any other pair goes through a decoder and an encoder. Malformed and
+ * unmappable input is replaced exactly as the JDK coders do with replacement actions.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class CharsetTranscoder {
+
+	private static final Charset UTF_16BE = Charset.forName("UTF-16BE");
+	private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+
+	private static final int GENERIC = 0;
+	private static final int UTF16_TO_UTF8 = 1;
+	private static final int UTF8_TO_UTF16 = 2;
+	private static final int SINGLE_TO_UTF8 = 3;
+	private static final int UTF8_TO_SINGLE = 4;
+
+	private static final int COMPLETE = 0;
+	private static final int INCOMPLETE = -1;
+	private static final int MALFORMED = -2;
+
+	/** Input bytes handled per reservation of output room. */
+	private static final int SLICE_SIZE = 8 * 1024;
+
+	/** Malformed input is handed to the JDK coders this many bytes at a time. */
+	private static final int WINDOW_SIZE = 16;
+
+	private static final int CHARS_SIZE = 1024;
+
+	private final Charset from;
+	private final Charset to;
+
+	private final int kind;
+	private final boolean bigEndian;
+	private final int maxChar;
+
+	private CharsetDecoder decoder;
+	private CharsetEncoder encoder;
+	private CharBuffer chars;
+
+	private int status;
+	private int width;
+
+
+	public CharsetTranscoder(final Charset from, final Charset to) {
+		this.from = from;
+		this.to = to;
+
+		int kind = GENERIC;
+		boolean bigEndian = false;
+		int maxChar = 0;
+
+		if (to.equals(CharsetUtils.UTF_8)) {
+			if (from.equals(UTF_16BE) || from.equals(UTF_16LE)) {
+				kind = UTF16_TO_UTF8;
+				bigEndian = from.equals(UTF_16BE);
+			} else
+			if (from.equals(CharsetUtils.ISO_8859_1) || from.equals(CharsetUtils.US_ASCII)) {
+				kind = SINGLE_TO_UTF8;
+				maxChar = from.equals(CharsetUtils.ISO_8859_1) ? 0xFF : 0x7F;
+			}
+		} else
+		if (from.equals(CharsetUtils.UTF_8)) {
+			if (to.equals(UTF_16BE) || to.equals(UTF_16LE)) {
+				kind = UTF8_TO_UTF16;
+				bigEndian = to.equals(UTF_16BE);
+			} else
+			if (to.equals(CharsetUtils.ISO_8859_1) || to.equals(CharsetUtils.US_ASCII)) {
+				kind = UTF8_TO_SINGLE;
+				maxChar = to.equals(CharsetUtils.ISO_8859_1) ? 0xFF : 0x7F;
+			}
+		}
+
+		this.kind = kind;
+		this.bigEndian = bigEndian;
+		this.maxChar = maxChar;
+	}
+
+
+	public final Charset getFrom() {
+		return this.from;
+	}
+
+	public final Charset getTo() {
+		return this.to;
+	}
+
+	public final CharsetTranscoder reset() {
+		if (this.decoder != null) {
+			this.decoder.reset();
+			this.encoder.reset();
+			this.chars.clear();
+		}
+		return this;
+	}
+
+	/**
+	 * Transcodes the remaining bytes of src and appends the result to dest. Unless
+	 * endOfInput is set, a sequence cut off at the limit of src is left there, with the
+	 * position of src just before it, to be completed by the next call.
+	 */
+	public final void transcode(final ByteBuffer src, final ExpandableOctetBuffer dest,
+			final boolean endOfInput) {
+		final int limit = src.limit();
+		int i = src.position();
+
+		if (this.kind == GENERIC) {
+			src.position(transcodeWithCoders(src, i, limit, dest, endOfInput));
+			return;
+		}
+
+		while (i < limit) {
+			final int end = Math.min(limit, i + SLICE_SIZE);
+
+			// No kind writes more than three bytes for one byte read.
+			final ByteBuffer out = dest.ensureLength(3 * (end - i)).buffer();
+
+			this.status = COMPLETE;
+			final int stop = transcodeSlice(src, i, end, out);
+
+			if (this.status == COMPLETE || (this.status == INCOMPLETE && end < limit)) {
+				i = stop;
+				continue;
+			}
+
+			if (this.status == INCOMPLETE && !endOfInput) {
+				i = stop;
+				break;
+			}
+
+			// Malformed, or cut off at the end of input: let the coders replace it.
+			final int windowEnd = Math.min(limit, stop + WINDOW_SIZE);
+			reset();
+			i = transcodeWithCoders(src, stop, windowEnd, dest, endOfInput && windowEnd == limit);
+			if (i <= stop) {
+				break;
+			}
+		}
+
+		src.position(i);
+	}
+
+	/*
+	 * Direct methods
+	 */
+
+	private final int transcodeSlice(final ByteBuffer src, final int i, final int end,
+			final ByteBuffer out) {
+		switch (this.kind) {
+		case UTF16_TO_UTF8:  return utf16ToUtf8(src, i, end, out);
+		case UTF8_TO_UTF16:  return utf8ToUtf16(src, i, end, out);
+		case SINGLE_TO_UTF8: return singleToUtf8(src, i, end, out);
+		default:             return utf8ToSingle(src, i, end, out);
+		}
+	}
+
+	private final int utf16ToUtf8(final ByteBuffer src, int i, final int end, final ByteBuffer out) {
+		int o = out.position();
+
+		while (i + 1 < end) {
+			final int c = char16(src, i);
+
+			if (c < 0xD800 || c > 0xDFFF) {
+				o = putUtf8(out, o, c);
+				i += 2;
+				continue;
+			}
+
+			if (c >= 0xDC00) {
+				this.status = MALFORMED;
+				break;
+			}
+			if (i + 3 >= end) {
+				this.status = INCOMPLETE;
+				break;
+			}
+
+			final int c2 = char16(src, i + 2);
+			if (c2 < 0xDC00 || c2 > 0xDFFF) {
+				this.status = MALFORMED;
+				break;
+			}
+
+			o = putUtf8(out, o, Character.toCodePoint((char)c, (char)c2));
+			i += 4;
+		}
+
+		if (this.status == COMPLETE && i < end) {
+			this.status = INCOMPLETE;
+		}
+
+		out.position(o);
+		return i;
+	}
+
+	private final int utf8ToUtf16(final ByteBuffer src, int i, final int end, final ByteBuffer out) {
+		int o = out.position();
+
+		while (i < end) {
+			final int cp = utf8(src, i, end);
+			if (cp < 0) {
+				this.status = cp;
+				break;
+			}
+
+			if (cp < 0x10000) {
+				o = putChar16(out, o, cp);
+			} else {
+				o = putChar16(out, o, Character.highSurrogate(cp));
+				o = putChar16(out, o, Character.lowSurrogate(cp));
+			}
+			i += this.width;
+		}
+
+		out.position(o);
+		return i;
+	}
+
+	private final int singleToUtf8(final ByteBuffer src, int i, final int end, final ByteBuffer out) {
+		final int maxChar = this.maxChar;
+		int o = out.position();
+
+		for (; i < end; ++i) {
+			final int c = src.get(i) & 0xFF;
+
+			if (c < 0x80) {
+				out.put(o++, (byte)c);
+			} else {
+				o = putUtf8(out, o, (c <= maxChar) ? c : 0xFFFD);
+			}
+		}
+
+		out.position(o);
+		return i;
+	}
+
+	private final int utf8ToSingle(final ByteBuffer src, int i, final int end, final ByteBuffer out) {
+		final int maxChar = this.maxChar;
+		int o = out.position();
+
+		while (i < end) {
+			final int cp = utf8(src, i, end);
+			if (cp < 0) {
+				this.status = cp;
+				break;
+			}
+
+			// A supplementary character is one unmappable pair and gets one replacement.
+			out.put(o++, (cp <= maxChar) ? (byte)cp : (byte)'?');
+			i += this.width;
+		}
+
+		out.position(o);
+		return i;
+	}
+
+	private final int char16(final ByteBuffer src, final int i) {
+		final int b0 = src.get(i) & 0xFF;
+		final int b1 = src.get(i + 1) & 0xFF;
+		return this.bigEndian ? ((b0 << 8) | b1) : ((b1 << 8) | b0);
+	}
+
+	private final int putChar16(final ByteBuffer out, final int o, final int c) {
+		if (this.bigEndian) {
+			out.put(o, (byte)(c >> 8));
+			out.put(o + 1, (byte)c);
+		} else {
+			out.put(o, (byte)c);
+			out.put(o + 1, (byte)(c >> 8));
+		}
+		return o + 2;
+	}
+
+	private static final int putUtf8(final ByteBuffer out, final int o, final int cp) {
+		if (cp < 0x80) {
+			out.put(o, (byte)cp);
+			return o + 1;
+		} else
+		if (cp < 0x800) {
+			out.put(o, (byte)(0xC0 | (cp >> 6)));
+			out.put(o + 1, (byte)(0x80 | (cp & 0x3F)));
+			return o + 2;
+		} else
+		if (cp < 0x10000) {
+			out.put(o, (byte)(0xE0 | (cp >> 12)));
+			out.put(o + 1, (byte)(0x80 | ((cp >> 6) & 0x3F)));
+			out.put(o + 2, (byte)(0x80 | (cp & 0x3F)));
+			return o + 3;
+		} else {
+			out.put(o, (byte)(0xF0 | (cp >> 18)));
+			out.put(o + 1, (byte)(0x80 | ((cp >> 12) & 0x3F)));
+			out.put(o + 2, (byte)(0x80 | ((cp >> 6) & 0x3F)));
+			out.put(o + 3, (byte)(0x80 | (cp & 0x3F)));
+			return o + 4;
+		}
+	}
+
+	/**
+	 * Returns the code point of the well formed UTF-8 sequence at i, with its length
+	 * in width, or INCOMPLETE or MALFORMED.
+	 */
+	private final int utf8(final ByteBuffer src, final int i, final int end) {
+		final int b1 = src.get(i);
+
+		if (b1 >= 0) {
+			this.width = 1;
+			return b1;
+		}
+
+		if ((b1 >> 5) == -2 && (b1 & 0x1E) != 0) {
+			// 110xxxxx 10xxxxxx, not overlong
+			if (i + 1 >= end) {
+				return INCOMPLETE;
+			}
+			final int b2 = src.get(i + 1);
+			if ((b2 & 0xC0) == 0x80) {
+				this.width = 2;
+				return ((b1 & 0x1F) << 6) | (b2 & 0x3F);
+			}
+		} else
+		if ((b1 >> 4) == -2) {
+			// 1110xxxx 10xxxxxx 10xxxxxx
+			if (i + 2 >= end) {
+				return INCOMPLETE;
+			}
+			final int b2 = src.get(i + 1);
+			final int b3 = src.get(i + 2);
+			if ((b2 & 0xC0) == 0x80 && (b3 & 0xC0) == 0x80) {
+				final int c = ((b1 & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F);
+				if (c >= 0x800 && (c < 0xD800 || c > 0xDFFF)) {
+					this.width = 3;
+					return c;
+				}
+			}
+		} else
+		if ((b1 >> 3) == -2) {
+			// 11110xxx 10xxxxxx 10xxxxxx 10xxxxxx
+			if (i + 3 >= end) {
+				return INCOMPLETE;
+			}
+			final int b2 = src.get(i + 1);
+			final int b3 = src.get(i + 2);
+			final int b4 = src.get(i + 3);
+			if ((b2 & 0xC0) == 0x80 && (b3 & 0xC0) == 0x80 && (b4 & 0xC0) == 0x80) {
+				final int cp = ((b1 & 0x07) << 18) | ((b2 & 0x3F) << 12) |
+						((b3 & 0x3F) << 6) | (b4 & 0x3F);
+				if (cp >= 0x10000 && cp <= 0x10FFFF) {
+					this.width = 4;
+					return cp;
+				}
+			}
+		}
+
+		return MALFORMED;
+	}
+
+	/*
+	 * Coder methods
+	 */
+
+	private final int transcodeWithCoders(final ByteBuffer src, final int start, final int end,
+			final ExpandableOctetBuffer dest, final boolean endOfInput) {
+		if (this.decoder == null) {
+			this.decoder = CharsetUtils.newDecoder(this.from);
+			this.encoder = ExpandableTextBuffer.getCharsetEncoder(this.to);
+			this.chars = CharBuffer.allocate(CHARS_SIZE);
+		}
+
+		final CharsetDecoder decoder = this.decoder;
+		final CharBuffer chars = this.chars;
+
+		final ByteBuffer in = src.duplicate();
+		in.limit(end);
+		in.position(start);
+
+		for (;;) {
+			final CoderResult result = decoder.decode(in, chars, endOfInput);
+
+			chars.flip();
+			encodeChars(chars, dest, false);
+			// An encoder may hold back a high surrogate until its pair arrives.
+			chars.compact();
+
+			if (!result.isOverflow()) {
+				break;
+			}
+		}
+
+		if (endOfInput) {
+			decoder.flush(chars);
+
+			chars.flip();
+			encodeChars(chars, dest, true);
+
+			for (;;) {
+				final ByteBuffer out = dest.ensureLength(16).buffer();
+				if (!this.encoder.flush(out).isOverflow()) {
+					break;
+				}
+			}
+
+			reset();
+		}
+
+		return in.position();
+	}
+
+	private final void encodeChars(final CharBuffer chars, final ExpandableOctetBuffer dest,
+			final boolean endOfInput) {
+		final CharsetEncoder encoder = this.encoder;
+
+		int required = (int)(chars.remaining() * encoder.averageBytesPerChar()) + 16;
+
+		for (;;) {
+			final ByteBuffer out = dest.ensureLength(required).buffer();
+
+			if (!encoder.encode(chars, out, endOfInput).isOverflow()) {
+				break;
+			}
+
+			required = (int)(chars.remaining() * encoder.maxBytesPerChar()) + 16;
+		}
+	}
+
+}
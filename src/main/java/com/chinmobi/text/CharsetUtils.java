@@ -0,0 +1,701 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Coding helpers for text octets: per thread cached decoders, a direct path for
+ * US-ASCII and ISO-8859-1 and a hand written UTF-8 decoder and encoder. Malformed input
+ * is replaced exactly as the JDK coders do with {@link CodingErrorAction#REPLACE}.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class CharsetUtils {
+
+	public static final Charset US_ASCII = Charset.forName("US-ASCII");
+	public static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** Larger inputs are decoded through a CharBuffer rather than as one String. */
+	private static final int STRING_APPEND_LIMIT = 8 * 1024;
+
+	private static final int SCRATCH_SIZE = 8 * 1024;
+
+	private static final int CACHE_SIZE = 4;
+
+	private static final int UTF8_ACCEPT = 0;
+	private static final int UTF8_REJECT = 12;
+
+	/** The class of each byte for the UTF-8 state machine. */
+	private static final byte[] UTF8_CLASSES = new byte[256];
+
+	/** The next state, by state plus byte class; states are multiples of 12. */
+	private static final byte[] UTF8_TRANSITIONS = {
+		 0, 12, 24, 36, 60, 96, 84, 12, 12, 12, 48, 72,
+		12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12,
+		12,  0, 12, 12, 12, 12, 12,  0, 12,  0, 12, 12,
+		12, 24, 12, 12, 12, 12, 12, 24, 12, 24, 12, 12,
+		12, 12, 12, 12, 12, 12, 12, 24, 12, 12, 12, 12,
+		12, 24, 12, 12, 12, 12, 12, 12, 12, 24, 12, 12,
+		12, 12, 12, 12, 12, 12, 12, 36, 12, 36, 12, 12,
+		12, 36, 12, 12, 12, 12, 12, 36, 12, 36, 12, 12,
+		12, 36, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12,
+	};
+
+	static {
+		// 0x00-0x7F stay class 0.
+		fillClass(0x80, 0x8F, 1);
+		fillClass(0x90, 0x9F, 9);
+		fillClass(0xA0, 0xBF, 7);
+		fillClass(0xC0, 0xC1, 8);
+		fillClass(0xC2, 0xDF, 2);
+		fillClass(0xE0, 0xE0, 10);
+		fillClass(0xE1, 0xEC, 3);
+		fillClass(0xED, 0xED, 4);
+		fillClass(0xEE, 0xEF, 3);
+		fillClass(0xF0, 0xF0, 11);
+		fillClass(0xF1, 0xF3, 6);
+		fillClass(0xF4, 0xF4, 5);
+		fillClass(0xF5, 0xFF, 8);
+	}
+
+	private static final ThreadLocal<DecoderCache> CACHES = new ThreadLocal<DecoderCache>() {
+		@Override
+		protected DecoderCache initialValue() {
+			return new DecoderCache();
+		}
+	};
+
+
+	private CharsetUtils() {
+	}
+
+
+	/*
+	 * Decoder cache methods
+	 */
+
+	/**
+	 * Returns a reset decoder, reporting malformed and unmappable input with replacements,
+	 * that belongs to the caller until handed back to {@link #releaseDecoder(CharsetDecoder)}.
+	 */
+	public static final CharsetDecoder acquireDecoder(final Charset charset) {
+		return CACHES.get().acquire(charset);
+	}
+
+	public static final void releaseDecoder(final CharsetDecoder decoder) {
+		CACHES.get().release(decoder);
+	}
+
+	static final CharsetDecoder newDecoder(final Charset charset) {
+		final CharsetDecoder decoder = charset.newDecoder();
+		decoder.onMalformedInput(CodingErrorAction.REPLACE);
+		decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		return decoder;
+	}
+
+	/*
+	 * Decode methods
+	 */
+
+	public static final String decode(final byte[] array, final int offset, final int length,
+			final Charset charset) {
+		if (offset < 0 || length < 0 || offset > array.length - length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + " length: " + length);
+		}
+		if (length == 0) {
+			return "";
+		}
+
+		if (ISO_8859_1.equals(charset)) {
+			return latin1String(array, offset, length);
+		}
+
+		if (UTF_8.equals(charset) || US_ASCII.equals(charset)) {
+			final int ascii = asciiLength(array, offset, length);
+			if (ascii == length) {
+				return latin1String(array, offset, length);
+			}
+
+			if (UTF_8.equals(charset)) {
+				return decodeUtf8(array, offset, length);
+			}
+		}
+
+		return decodeWithDecoder(ByteBuffer.wrap(array, offset, length), charset);
+	}
+
+	/**
+	 * Decodes the bytes in [start, end) of the buffer, leaving its position and limit untouched.
+	 */
+	public static final String decode(final ByteBuffer buffer, final int start, final int end,
+			final Charset charset) {
+		if (buffer.hasArray()) {
+			return decode(buffer.array(), buffer.arrayOffset() + start, end - start, charset);
+		}
+
+		final int length = end - start;
+		if (length < 0) {
+			throw new IndexOutOfBoundsException("Start: " + start + " End: " + end);
+		}
+
+		final byte[] bytes = (length <= SCRATCH_SIZE) ? CACHES.get().scratch() : new byte[length];
+
+		final ByteBuffer src = buffer.duplicate();
+		src.limit(end).position(start);
+		src.get(bytes, 0, length);
+
+		return decode(bytes, 0, length, charset);
+	}
+
+	public static final void decode(final ByteBuffer buffer, final int start, final int end,
+			final Charset charset, final Appendable appendable) throws IOException {
+		if (end - start <= STRING_APPEND_LIMIT) {
+			appendable.append(decode(buffer, start, end, charset));
+			return;
+		}
+
+		final ByteBuffer src = buffer.duplicate();
+		src.limit(end).position(start);
+
+		final CharsetDecoder decoder = acquireDecoder(charset);
+		try {
+			decodeTo(src, decoder, CharBuffer.allocate(1024), appendable);
+		} finally {
+			releaseDecoder(decoder);
+		}
+	}
+
+	public static final void decode(final byte[] array, final int offset, final int length,
+			final Charset charset, final Appendable appendable) throws IOException {
+		if (length <= STRING_APPEND_LIMIT) {
+			appendable.append(decode(array, offset, length, charset));
+			return;
+		}
+
+		final CharsetDecoder decoder = acquireDecoder(charset);
+		try {
+			decodeTo(ByteBuffer.wrap(array, offset, length), decoder, CharBuffer.allocate(1024), appendable);
+		} finally {
+			releaseDecoder(decoder);
+		}
+	}
+
+	/**
+	 * The length of the leading run of bytes below 0x80.
+	 */
+	public static final int asciiLength(final byte[] array, final int offset, final int length) {
+		final int end = offset + length;
+		int i = offset;
+
+		for (; i + 8 <= end; i += 8) {
+			if ((array[i] | array[i + 1] | array[i + 2] | array[i + 3] |
+					array[i + 4] | array[i + 5] | array[i + 6] | array[i + 7]) < 0) {
+				break;
+			}
+		}
+		while (i < end && array[i] >= 0) {
+			++i;
+		}
+
+		return i - offset;
+	}
+
+	/*
+	 * Validate methods
+	 */
+
+	public static final boolean isValidUtf8(final byte[] array, final int offset, final int length) {
+		return (validUtf8Length(array, offset, length) == length);
+	}
+
+	public static final boolean isValidUtf8(final ByteBuffer buffer, final int start, final int end) {
+		return (validUtf8Length(buffer, start, end) == end - start);
+	}
+
+	/**
+	 * The length of the leading run of well formed UTF-8, which ends on a whole code point.
+	 * Runs of ASCII are skipped 8 bytes at a time, the rest goes through a table driven
+	 * state machine.
+	 */
+	public static final int validUtf8Length(final byte[] array, final int offset, final int length) {
+		if (offset < 0 || length < 0 || offset > array.length - length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + " length: " + length);
+		}
+
+		final int end = offset + length;
+		int state = UTF8_ACCEPT;
+		int codePointStart = offset;
+
+		for (int i = offset; i < end; ++i) {
+			int b = array[i];
+
+			if (state == UTF8_ACCEPT) {
+				if (b >= 0) {
+					while (i + 8 <= end && (array[i] | array[i + 1] | array[i + 2] | array[i + 3] |
+							array[i + 4] | array[i + 5] | array[i + 6] | array[i + 7]) >= 0) {
+						i += 8;
+					}
+					if (i == end) {
+						break;
+					}
+					b = array[i];
+				}
+				codePointStart = i;
+			}
+
+			state = UTF8_TRANSITIONS[state + UTF8_CLASSES[b & 0xFF]];
+			if (state == UTF8_REJECT) {
+				return codePointStart - offset;
+			}
+		}
+
+		return ((state == UTF8_ACCEPT) ? end : codePointStart) - offset;
+	}
+
+	/**
+	 * As {@link #validUtf8Length(byte[], int, int)} over the bytes in [start, end) of the
+	 * buffer, leaving its position and limit untouched.
+	 */
+	public static final int validUtf8Length(final ByteBuffer buffer, final int start, final int end) {
+		if (start < 0 || start > end || end > buffer.limit()) {
+			throw new IndexOutOfBoundsException("Start: " + start + " End: " + end);
+		}
+		if (buffer.hasArray()) {
+			return validUtf8Length(buffer.array(), buffer.arrayOffset() + start, end - start);
+		}
+
+		int state = UTF8_ACCEPT;
+		int codePointStart = start;
+
+		for (int i = start; i < end; ++i) {
+			int b = buffer.get(i);
+
+			if (state == UTF8_ACCEPT) {
+				if (b >= 0) {
+					// The high bits test the same in either byte order.
+					while (i + 8 <= end && (buffer.getLong(i) & 0x8080808080808080L) == 0) {
+						i += 8;
+					}
+					if (i == end) {
+						break;
+					}
+					b = buffer.get(i);
+				}
+				codePointStart = i;
+			}
+
+			state = UTF8_TRANSITIONS[state + UTF8_CLASSES[b & 0xFF]];
+			if (state == UTF8_REJECT) {
+				return codePointStart - start;
+			}
+		}
+
+		return ((state == UTF8_ACCEPT) ? end : codePointStart) - start;
+	}
+
+	/*
+	 * Encode methods
+	 */
+
+	/**
+	 * The number of bytes the chars take in UTF-8, a lone surrogate taking the one byte
+	 * of its replacement.
+	 */
+	public static final int utf8Length(final CharSequence csq, final int start, final int end) {
+		int length = end - start;
+
+		for (int i = start; i < end; ++i) {
+			final char c = csq.charAt(i);
+
+			if (c < 0x80) {
+				continue;
+			} else
+			if (c < 0x800) {
+				length += 1;
+			} else
+			if (!Character.isSurrogate(c)) {
+				length += 2;
+			} else
+			if (Character.isHighSurrogate(c) && i + 1 < end &&
+					Character.isLowSurrogate(csq.charAt(i + 1))) {
+				// Two chars, four bytes.
+				length += 2;
+				++i;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Writes the chars as UTF-8 at index of the buffer, with '?' for a lone surrogate,
+	 * and returns the index after them. The buffer must have room for
+	 * {@link #utf8Length(CharSequence, int, int)} bytes; its position is untouched.
+	 */
+	public static final int encodeUtf8(final CharSequence csq, final int start, final int end,
+			final ByteBuffer buffer, final int index) {
+		int i = start;
+
+		if (buffer.hasArray()) {
+			final byte[] array = buffer.array();
+			final int offset = buffer.arrayOffset();
+			int o = index + offset;
+
+			for (; i < end; ++i) {
+				final char c = csq.charAt(i);
+				if (c >= 0x80) {
+					break;
+				}
+				array[o++] = (byte)c;
+			}
+
+			for (; i < end; ++i) {
+				final char c = csq.charAt(i);
+
+				if (c < 0x80) {
+					array[o++] = (byte)c;
+				} else
+				if (c < 0x800) {
+					array[o++] = (byte)(0xC0 | (c >> 6));
+					array[o++] = (byte)(0x80 | (c & 0x3F));
+				} else
+				if (!Character.isSurrogate(c)) {
+					array[o++] = (byte)(0xE0 | (c >> 12));
+					array[o++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+					array[o++] = (byte)(0x80 | (c & 0x3F));
+				} else
+				if (Character.isHighSurrogate(c) && i + 1 < end &&
+						Character.isLowSurrogate(csq.charAt(i + 1))) {
+					final int cp = Character.toCodePoint(c, csq.charAt(++i));
+					array[o++] = (byte)(0xF0 | (cp >> 18));
+					array[o++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+					array[o++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+					array[o++] = (byte)(0x80 | (cp & 0x3F));
+				} else {
+					array[o++] = (byte)'?';
+				}
+			}
+
+			return o - offset;
+		}
+
+		int o = index;
+
+		for (; i < end; ++i) {
+			final char c = csq.charAt(i);
+
+			if (c < 0x80) {
+				buffer.put(o++, (byte)c);
+			} else
+			if (c < 0x800) {
+				buffer.put(o++, (byte)(0xC0 | (c >> 6)));
+				buffer.put(o++, (byte)(0x80 | (c & 0x3F)));
+			} else
+			if (!Character.isSurrogate(c)) {
+				buffer.put(o++, (byte)(0xE0 | (c >> 12)));
+				buffer.put(o++, (byte)(0x80 | ((c >> 6) & 0x3F)));
+				buffer.put(o++, (byte)(0x80 | (c & 0x3F)));
+			} else
+			if (Character.isHighSurrogate(c) && i + 1 < end &&
+					Character.isLowSurrogate(csq.charAt(i + 1))) {
+				final int cp = Character.toCodePoint(c, csq.charAt(++i));
+				buffer.put(o++, (byte)(0xF0 | (cp >> 18)));
+				buffer.put(o++, (byte)(0x80 | ((cp >> 12) & 0x3F)));
+				buffer.put(o++, (byte)(0x80 | ((cp >> 6) & 0x3F)));
+				buffer.put(o++, (byte)(0x80 | (cp & 0x3F)));
+			} else {
+				buffer.put(o++, (byte)'?');
+			}
+		}
+
+		return o;
+	}
+
+	/**
+	 * The number of bytes the chars take in US-ASCII or ISO-8859-1, where a surrogate
+	 * pair is replaced by a single '?'.
+	 */
+	public static final int singleByteLength(final CharSequence csq, final int start, final int end) {
+		int length = end - start;
+
+		for (int i = start; i < end; ++i) {
+			if (Character.isHighSurrogate(csq.charAt(i)) && i + 1 < end &&
+					Character.isLowSurrogate(csq.charAt(i + 1))) {
+				--length;
+				++i;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Writes each char up to maxChar, 0x7F for US-ASCII or 0xFF for ISO-8859-1, as one
+	 * byte and any other as '?', and returns the index after them.
+	 */
+	public static final int encodeSingleByte(final CharSequence csq, final int start, final int end,
+			final int maxChar, final ByteBuffer buffer, int index) {
+		for (int i = start; i < end; ++i) {
+			final char c = csq.charAt(i);
+
+			if (c <= maxChar) {
+				buffer.put(index++, (byte)c);
+			} else {
+				if (Character.isHighSurrogate(c) && i + 1 < end &&
+						Character.isLowSurrogate(csq.charAt(i + 1))) {
+					++i;
+				}
+				buffer.put(index++, (byte)'?');
+			}
+		}
+
+		return index;
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private static final void fillClass(final int from, final int to, final int byteClass) {
+		for (int b = from; b <= to; ++b) {
+			UTF8_CLASSES[b] = (byte)byteClass;
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static final String latin1String(final byte[] array, final int offset, final int length) {
+		// Widens each byte to a char with a zero high byte, which is exactly ISO-8859-1.
+		return new String(array, 0, offset, length);
+	}
+
+	private static final String decodeUtf8(final byte[] src, final int offset, final int length) {
+		final char[] chars = new char[length];
+
+		final int n = decodeUtf8(src, offset, length, chars, 0);
+		if (n >= 0) {
+			return new String(chars, 0, n);
+		}
+
+		// Malformed or truncated: the JDK decoder takes over from the first bad sequence
+		// so that replacements come out exactly as before.
+		final int valid = validUtf8Length(src, offset, length);
+		final StringBuilder builder = new StringBuilder(length);
+		builder.append(chars, 0, decodeUtf8(src, offset, valid, chars, 0));
+		builder.append(decodeWithDecoder(ByteBuffer.wrap(src, offset + valid, length - valid), UTF_8));
+		return builder.toString();
+	}
+
+	/**
+	 * Decodes well formed UTF-8 into chars, which must have room for length chars, and
+	 * returns the number written; returns -1 at the first malformed or truncated sequence.
+	 */
+	static final int decodeUtf8(final byte[] src, final int offset, final int length,
+			final char[] chars, final int charsOffset) {
+		final int end = offset + length;
+		int i = offset;
+		int n = charsOffset;
+
+		while (i < end) {
+			final int b1 = src[i];
+
+			if (b1 >= 0) {
+				chars[n++] = (char)b1;
+				++i;
+
+				while (i < end && src[i] >= 0) {
+					chars[n++] = (char)src[i++];
+				}
+				continue;
+			}
+			if ((b1 >> 5) == -2 && (b1 & 0x1E) != 0) {
+				// 110xxxxx 10xxxxxx, not overlong
+				if (i + 1 < end) {
+					final int b2 = src[i + 1];
+					if ((b2 & 0xC0) == 0x80) {
+						chars[n++] = (char)(((b1 & 0x1F) << 6) | (b2 & 0x3F));
+						i += 2;
+						continue;
+					}
+				}
+			} else
+			if ((b1 >> 4) == -2) {
+				// 1110xxxx 10xxxxxx 10xxxxxx
+				if (i + 2 < end) {
+					final int b2 = src[i + 1];
+					final int b3 = src[i + 2];
+					if ((b2 & 0xC0) == 0x80 && (b3 & 0xC0) == 0x80) {
+						final int c = ((b1 & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F);
+						if (c >= 0x800 && (c < 0xD800 || c > 0xDFFF)) {
+							chars[n++] = (char)c;
+							i += 3;
+							continue;
+						}
+					}
+				}
+			} else
+			if ((b1 >> 3) == -2) {
+				// 11110xxx 10xxxxxx 10xxxxxx 10xxxxxx
+				if (i + 3 < end) {
+					final int b2 = src[i + 1];
+					final int b3 = src[i + 2];
+					final int b4 = src[i + 3];
+					if ((b2 & 0xC0) == 0x80 && (b3 & 0xC0) == 0x80 && (b4 & 0xC0) == 0x80) {
+						final int cp = ((b1 & 0x07) << 18) | ((b2 & 0x3F) << 12) |
+								((b3 & 0x3F) << 6) | (b4 & 0x3F);
+						if (cp >= 0x10000 && cp <= 0x10FFFF) {
+							chars[n++] = Character.highSurrogate(cp);
+							chars[n++] = Character.lowSurrogate(cp);
+							i += 4;
+							continue;
+						}
+					}
+				}
+			}
+
+			return -1;
+		}
+
+		return n - charsOffset;
+	}
+
+	private static final String decodeWithDecoder(final ByteBuffer src, final Charset charset) {
+		final CharsetDecoder decoder = acquireDecoder(charset);
+		try {
+			final int capacity = (int)(src.remaining() * (double)decoder.maxCharsPerByte()) + 1;
+			final CharBuffer chars = CharBuffer.allocate(capacity);
+
+			CoderResult result = decoder.decode(src, chars, true);
+			if (!result.isOverflow()) {
+				result = decoder.flush(chars);
+			}
+			if (result.isOverflow()) {
+				// Cannot happen with maxCharsPerByte, but stay correct if a charset misreports it.
+				final StringBuilder builder = new StringBuilder();
+				chars.flip();
+				builder.append(chars);
+				chars.clear();
+				try {
+					decodeTo(src, decoder, chars, builder);
+				} catch (IOException ignore) {
+				}
+				return builder.toString();
+			}
+
+			chars.flip();
+			return chars.toString();
+		} finally {
+			releaseDecoder(decoder);
+		}
+	}
+
+	private static final void decodeTo(final ByteBuffer src, final CharsetDecoder decoder,
+			final CharBuffer chars, final Appendable appendable) throws IOException {
+		for (;;) {
+			final CoderResult result = decoder.decode(src, chars, true);
+
+			if (result.isOverflow()) {
+				chars.flip();
+				appendable.append(chars);
+				chars.clear();
+				continue;
+			}
+			break;
+		}
+
+		while (decoder.flush(chars).isOverflow()) {
+			chars.flip();
+			appendable.append(chars);
+			chars.clear();
+		}
+
+		chars.flip();
+		appendable.append(chars);
+	}
+
+
+	private static final class DecoderCache {
+
+		private final Charset[] charsets = new Charset[CACHE_SIZE];
+		private final CharsetDecoder[] decoders = new CharsetDecoder[CACHE_SIZE];
+		private final boolean[] inUse = new boolean[CACHE_SIZE];
+
+		private int next;
+
+		private byte[] scratch;
+
+
+		final CharsetDecoder acquire(final Charset charset) {
+			for (int i = 0; i < CACHE_SIZE; ++i) {
+				if (!this.inUse[i] && charset.equals(this.charsets[i])) {
+					this.inUse[i] = true;
+					return this.decoders[i].reset();
+				}
+			}
+
+			final CharsetDecoder decoder = newDecoder(charset);
+
+			// Replace a free slot, round robin.
+			for (int k = 0; k < CACHE_SIZE; ++k) {
+				final int i = (this.next + k) % CACHE_SIZE;
+				if (!this.inUse[i]) {
+					this.charsets[i] = charset;
+					this.decoders[i] = decoder;
+					this.inUse[i] = true;
+					this.next = (i + 1) % CACHE_SIZE;
+					break;
+				}
+			}
+
+			return decoder;
+		}
+
+		final void release(final CharsetDecoder decoder) {
+			for (int i = 0; i < CACHE_SIZE; ++i) {
+				if (this.decoders[i] == decoder) {
+					this.inUse[i] = false;
+					return;
+				}
+			}
+		}
+
+		final byte[] scratch() {
+			if (this.scratch == null) {
+				this.scratch = new byte[SCRATCH_SIZE];
+			}
+			return this.scratch;
+		}
+
+	}
+
+}
@@ -0,0 +1,658 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.chinmobi.octet.BufferUtils;
+import com.chinmobi.octet.MutableOctet;
+import com.chinmobi.octet.Octet;
+import com.chinmobi.octet.SwarUtils;
+
+/**
+ * Escaping and unescaping of text bytes for JSON strings, HTML and URL percent-encoding.
+ * The few bytes that need work are searched for eight at a time on direct buffers, and
+ * the runs between them are copied in bulk.
+ * <p>
+ * Unescaping never makes the text longer, so it can also be done in place on a
+ * {@link MutableOctet}, which is shortened to fit. Malformed escapes are kept as they
+ * are, but for JSON escapes of lone surrogates, which turn into U+FFFD.
+ * <p>
+ * The source bytes, and the bytes unescaped, are taken as UTF-8, or any charset that
+ * keeps ASCII as is.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class EscapeUtils {
+
+	private static final int JSON_ESCAPE = 0x01;
+	private static final int HTML_ESCAPE = 0x02;
+	private static final int URL_ESCAPE = 0x04;
+	private static final int FORM_ESCAPE = 0x08;
+	private static final int JSON_UNESCAPE = 0x10;
+	private static final int HTML_UNESCAPE = 0x20;
+	private static final int URL_UNESCAPE = 0x40;
+	private static final int FORM_UNESCAPE = 0x80;
+
+	private static final int BULK_THRESHOLD = 16;
+
+	private static final long CONTROL_MASK = 0xE0E0E0E0E0E0E0E0L;
+
+	private static final byte[] HEX_DIGITS = {
+		'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+	};
+
+	private static final byte[] AMP = { '&', 'a', 'm', 'p', ';' };
+	private static final byte[] LT = { '&', 'l', 't', ';' };
+	private static final byte[] GT = { '&', 'g', 't', ';' };
+	private static final byte[] QUOT = { '&', 'q', 'u', 'o', 't', ';' };
+	private static final byte[] APOS = { '&', '#', '3', '9', ';' };
+
+	private static final String[] ENTITY_NAMES = { "amp", "lt", "gt", "quot", "apos", "nbsp" };
+	private static final int[] ENTITY_CODE_POINTS = { '&', '<', '>', '"', '\'', 0xA0 };
+
+	/** The kinds of work each byte needs. */
+	private static final byte[] FLAGS = new byte[256];
+
+	private static final byte[] HEX_VALUES = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; ++i) {
+			int flags = 0;
+			if (i < 0x20 || i == '"' || i == '\\') {
+				flags |= JSON_ESCAPE;
+			}
+			if (i == '&' || i == '<' || i == '>' || i == '"' || i == '\'') {
+				flags |= HTML_ESCAPE;
+			}
+			if (!((i >= 'a' && i <= 'z') || (i >= 'A' && i <= 'Z') || (i >= '0' && i <= '9') ||
+					i == '-' || i == '.' || i == '_' || i == '~')) {
+				flags |= URL_ESCAPE | FORM_ESCAPE;
+			}
+			if (i == '\\') {
+				flags |= JSON_UNESCAPE;
+			}
+			if (i == '&') {
+				flags |= HTML_UNESCAPE;
+			}
+			if (i == '%') {
+				flags |= URL_UNESCAPE | FORM_UNESCAPE;
+			}
+			if (i == '+') {
+				flags |= FORM_UNESCAPE;
+			}
+			FLAGS[i] = (byte)flags;
+
+			HEX_VALUES[i] = -1;
+		}
+		for (int i = 0; i < 10; ++i) {
+			HEX_VALUES['0' + i] = (byte)i;
+		}
+		for (int i = 0; i < 6; ++i) {
+			HEX_VALUES['a' + i] = (byte)(10 + i);
+			HEX_VALUES['A' + i] = (byte)(10 + i);
+		}
+	}
+
+
+	private EscapeUtils() {
+	}
+
+
+	/*
+	 * Escape methods
+	 */
+
+	/**
+	 * Appends the bytes escaped as the content of a JSON string, without the quotes.
+	 */
+	public static final ExpandableTextBuffer escapeJson(final Octet src, final ExpandableTextBuffer dest) {
+		return escapeJson(src, src.begin(), src.end(), dest);
+	}
+
+	public static final ExpandableTextBuffer escapeJson(final Octet src, final int start, final int end,
+			final ExpandableTextBuffer dest) {
+		escape(src, start, end, JSON_ESCAPE, dest);
+		return dest;
+	}
+
+	/**
+	 * Appends the bytes with &amp;, &lt;, &gt; and both quotes escaped, for HTML text and
+	 * attribute values.
+	 */
+	public static final ExpandableTextBuffer escapeHtml(final Octet src, final ExpandableTextBuffer dest) {
+		return escapeHtml(src, src.begin(), src.end(), dest);
+	}
+
+	public static final ExpandableTextBuffer escapeHtml(final Octet src, final int start, final int end,
+			final ExpandableTextBuffer dest) {
+		escape(src, start, end, HTML_ESCAPE, dest);
+		return dest;
+	}
+
+	/**
+	 * Appends the bytes percent-encoded, all but the unreserved ones of RFC 3986.
+	 *
+	 * @param plusForSpace whether a space is written as '+', as in form data
+	 */
+	public static final ExpandableTextBuffer escapeUrl(final Octet src, final boolean plusForSpace,
+			final ExpandableTextBuffer dest) {
+		return escapeUrl(src, src.begin(), src.end(), plusForSpace, dest);
+	}
+
+	public static final ExpandableTextBuffer escapeUrl(final Octet src, final int start, final int end,
+			final boolean plusForSpace, final ExpandableTextBuffer dest) {
+		escape(src, start, end, plusForSpace ? FORM_ESCAPE : URL_ESCAPE, dest);
+		return dest;
+	}
+
+	/*
+	 * Unescape methods
+	 */
+
+	public static final ExpandableTextBuffer unescapeJson(final Octet src, final ExpandableTextBuffer dest) {
+		return unescapeJson(src, src.begin(), src.end(), dest);
+	}
+
+	public static final ExpandableTextBuffer unescapeJson(final Octet src, final int start, final int end,
+			final ExpandableTextBuffer dest) {
+		unescape(src, start, end, JSON_UNESCAPE, new Output(dest));
+		return dest;
+	}
+
+	/**
+	 * Appends the bytes with the character references of HTML decoded: the numeric ones,
+	 * and the named ones for &amp;, &lt;, &gt;, &quot;, &apos; and &nbsp;.
+	 */
+	public static final ExpandableTextBuffer unescapeHtml(final Octet src, final ExpandableTextBuffer dest) {
+		return unescapeHtml(src, src.begin(), src.end(), dest);
+	}
+
+	public static final ExpandableTextBuffer unescapeHtml(final Octet src, final int start, final int end,
+			final ExpandableTextBuffer dest) {
+		unescape(src, start, end, HTML_UNESCAPE, new Output(dest));
+		return dest;
+	}
+
+	/**
+	 * Appends the bytes with the %xx escapes decoded.
+	 *
+	 * @param plusForSpace whether '+' stands for a space, as in form data and query strings
+	 */
+	public static final ExpandableTextBuffer unescapeUrl(final Octet src, final boolean plusForSpace,
+			final ExpandableTextBuffer dest) {
+		return unescapeUrl(src, src.begin(), src.end(), plusForSpace, dest);
+	}
+
+	public static final ExpandableTextBuffer unescapeUrl(final Octet src, final int start, final int end,
+			final boolean plusForSpace, final ExpandableTextBuffer dest) {
+		unescape(src, start, end, plusForSpace ? FORM_UNESCAPE : URL_UNESCAPE, new Output(dest));
+		return dest;
+	}
+
+	/*
+	 * Unescape in place methods
+	 */
+
+	/**
+	 * Unescapes [start, end) of the octet in place, deleting the bytes freed, and returns
+	 * the new end of the range.
+	 */
+	public static final int unescapeJson(final MutableOctet octet, final int start, final int end) {
+		return unescapeInPlace(octet, start, end, JSON_UNESCAPE);
+	}
+
+	public static final int unescapeHtml(final MutableOctet octet, final int start, final int end) {
+		return unescapeInPlace(octet, start, end, HTML_UNESCAPE);
+	}
+
+	public static final int unescapeUrl(final MutableOctet octet, final int start, final int end,
+			final boolean plusForSpace) {
+		return unescapeInPlace(octet, start, end, plusForSpace ? FORM_UNESCAPE : URL_UNESCAPE);
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private static final void checkRange(final Octet src, final int start, final int end) {
+		if (start < src.begin() || start > end || end > src.end()) {
+			throw new IndexOutOfBoundsException("Start: " + start + " End: " + end);
+		}
+	}
+
+	private static final void escape(final Octet src, final int start, final int end,
+			final int kind, final ExpandableTextBuffer dest) {
+		checkRange(src, start, end);
+
+		int from = start;
+		for (;;) {
+			final int special = indexOf(src, from, end, kind);
+			if (special > from) {
+				dest.append(src, from, special);
+			}
+			if (special >= end) {
+				break;
+			}
+
+			final int b = src.byteAt(special) & 0xFF;
+			switch (kind) {
+			case JSON_ESCAPE:
+				appendJsonEscape(b, dest);
+				break;
+
+			case HTML_ESCAPE:
+				dest.append((b == '&') ? AMP : (b == '<') ? LT : (b == '>') ? GT : (b == '"') ? QUOT : APOS);
+				break;
+
+			default:
+				if (b == ' ' && kind == FORM_ESCAPE) {
+					dest.append((byte)'+');
+				} else {
+					dest.append((byte)'%');
+					dest.append(HEX_DIGITS[b >> 4]);
+					dest.append(HEX_DIGITS[b & 0x0F]);
+				}
+				break;
+			}
+			from = special + 1;
+		}
+	}
+
+	private static final void appendJsonEscape(final int b, final ExpandableTextBuffer dest) {
+		dest.append((byte)'\\');
+		switch (b) {
+		case '"': dest.append((byte)'"'); break;
+		case '\\': dest.append((byte)'\\'); break;
+		case '\b': dest.append((byte)'b'); break;
+		case '\f': dest.append((byte)'f'); break;
+		case '\n': dest.append((byte)'n'); break;
+		case '\r': dest.append((byte)'r'); break;
+		case '\t': dest.append((byte)'t'); break;
+		default:
+			dest.append((byte)'u');
+			dest.append((byte)'0');
+			dest.append((byte)'0');
+			dest.append(HEX_DIGITS[b >> 4]);
+			dest.append(HEX_DIGITS[b & 0x0F]);
+			break;
+		}
+	}
+
+	private static final int unescapeInPlace(final MutableOctet octet, final int start, final int end,
+			final int kind) {
+		final Output out = new Output(octet, start);
+		unescape(octet, start, end, kind, out);
+
+		if (out.index < end) {
+			octet.delete(out.index, end);
+		}
+		return out.index;
+	}
+
+	private static final void unescape(final Octet src, final int start, final int end,
+			final int kind, final Output out) {
+		checkRange(src, start, end);
+
+		int from = start;
+		for (;;) {
+			final int special = indexOf(src, from, end, kind);
+			if (special > from) {
+				out.copy(src, from, special);
+			}
+			if (special >= end) {
+				break;
+			}
+
+			switch (kind) {
+			case JSON_UNESCAPE:
+				from = unescapeJson(src, special, end, out);
+				break;
+
+			case HTML_UNESCAPE:
+				from = unescapeHtml(src, special, end, out);
+				break;
+
+			default:
+				from = unescapeUrl(src, special, end, out);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Unescapes the escape at index, returning the index after it.
+	 */
+	private static final int unescapeJson(final Octet src, final int index, final int end,
+			final Output out) {
+		if (index + 1 >= end) {
+			out.put((byte)'\\');
+			return end;
+		}
+
+		final byte b = src.byteAt(index + 1);
+		switch (b) {
+		case 'b': out.put((byte)'\b'); return index + 2;
+		case 'f': out.put((byte)'\f'); return index + 2;
+		case 'n': out.put((byte)'\n'); return index + 2;
+		case 'r': out.put((byte)'\r'); return index + 2;
+		case 't': out.put((byte)'\t'); return index + 2;
+		case 'u': break;
+		default: out.put(b); return index + 2;
+		}
+
+		int cp = hex4(src, index + 2, end);
+		if (cp < 0) {
+			out.copy(src, index, index + 2);
+			return index + 2;
+		}
+		int next = index + 6;
+
+		if (cp >= 0xD800 && cp <= 0xDBFF) {
+			final int low = (next + 1 < end && src.byteAt(next) == '\\' && src.byteAt(next + 1) == 'u') ?
+					hex4(src, next + 2, end) : -1;
+			if (low >= 0xDC00 && low <= 0xDFFF) {
+				cp = 0x10000 + ((cp - 0xD800) << 10) + (low - 0xDC00);
+				next += 6;
+			} else {
+				cp = 0xFFFD;
+			}
+		} else if (cp >= 0xDC00 && cp <= 0xDFFF) {
+			cp = 0xFFFD;
+		}
+
+		out.putCodePoint(cp);
+		return next;
+	}
+
+	private static final int hex4(final Octet src, final int index, final int end) {
+		if (index + 4 > end) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = index; i < index + 4; ++i) {
+			final int digit = HEX_VALUES[src.byteAt(i) & 0xFF];
+			if (digit < 0) {
+				return -1;
+			}
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	private static final int unescapeHtml(final Octet src, final int index, final int end,
+			final Output out) {
+		// Character references end with ';', look a little way for it.
+		int semicolon = -1;
+		for (int i = index + 1; i < end && i < index + 32; ++i) {
+			if (src.byteAt(i) == ';') {
+				semicolon = i;
+				break;
+			}
+		}
+
+		if (semicolon > index + 1) {
+			int cp = -1;
+
+			if (src.byteAt(index + 1) == '#') {
+				cp = parseNumericReference(src, index + 2, semicolon);
+			} else {
+				for (int k = 0; k < ENTITY_NAMES.length; ++k) {
+					if (isName(src, index + 1, semicolon, ENTITY_NAMES[k])) {
+						cp = ENTITY_CODE_POINTS[k];
+						break;
+					}
+				}
+			}
+
+			if (cp >= 0) {
+				out.putCodePoint(cp);
+				return semicolon + 1;
+			}
+		}
+
+		out.put((byte)'&');
+		return index + 1;
+	}
+
+	/**
+	 * Returns the code point of the digits in [start, end), U+FFFD for one that cannot be
+	 * in a text, or -1 if they are no number.
+	 */
+	private static final int parseNumericReference(final Octet src, int start, final int end) {
+		int radix = 10;
+		if (start < end && (src.byteAt(start) | 0x20) == 'x') {
+			radix = 16;
+			++start;
+		}
+		if (start >= end) {
+			return -1;
+		}
+
+		int value = 0;
+		for (int i = start; i < end; ++i) {
+			final int digit = HEX_VALUES[src.byteAt(i) & 0xFF];
+			if (digit < 0 || digit >= radix) {
+				return -1;
+			}
+			if (value <= 0x10FFFF) {
+				value = value * radix + digit;
+			}
+		}
+
+		if (value == 0 || value > 0x10FFFF || (value >= 0xD800 && value <= 0xDFFF)) {
+			return 0xFFFD;
+		}
+		return value;
+	}
+
+	private static final boolean isName(final Octet src, final int start, final int end, final String name) {
+		if (end - start != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); ++i) {
+			if (src.byteAt(start + i) != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final int unescapeUrl(final Octet src, final int index, final int end,
+			final Output out) {
+		final byte b = src.byteAt(index);
+		if (b == '+') {
+			out.put((byte)' ');
+			return index + 1;
+		}
+
+		if (index + 2 < end) {
+			final int high = HEX_VALUES[src.byteAt(index + 1) & 0xFF];
+			final int low = HEX_VALUES[src.byteAt(index + 2) & 0xFF];
+			if (high >= 0 && low >= 0) {
+				out.put((byte)((high << 4) | low));
+				return index + 3;
+			}
+		}
+
+		out.put(b);
+		return index + 1;
+	}
+
+	/*
+	 * indexOf methods
+	 */
+
+	/**
+	 * Returns the index of the first byte in [start, end) that needs work of the kind,
+	 * or end.
+	 */
+	private static final int indexOf(final Octet src, final int start, final int end, final int kind) {
+		final ByteBuffer buffer = src.buffer();
+		if (buffer == null) {
+			final int offset = src.arrayOffset();
+			return indexOf(src.array(), start + offset, end + offset, kind) - offset;
+		}
+		if (buffer.hasArray()) {
+			final int offset = buffer.arrayOffset();
+			return indexOf(buffer.array(), start + offset, end + offset, kind) - offset;
+		}
+		return indexOf(buffer, start, end, kind);
+	}
+
+	private static final int indexOf(final byte[] array, int start, final int end, final int kind) {
+		for (; start < end; ++start) {
+			if ((FLAGS[array[start] & 0xFF] & kind) != 0) {
+				break;
+			}
+		}
+		return start;
+	}
+
+	private static final int indexOf(final ByteBuffer buffer, int start, final int end, final int kind) {
+		if ((end - start) >= BULK_THRESHOLD && (kind & (URL_ESCAPE | FORM_ESCAPE)) == 0) {
+			final ByteOrder order = buffer.order();
+			for (final int limit = end - 8; start <= limit; start += 8) {
+				final long mask = specialBytes(buffer.getLong(start), kind);
+				if (mask != 0) {
+					return start + SwarUtils.firstIndex(mask, order);
+				}
+			}
+		}
+
+		for (; start < end; ++start) {
+			if ((FLAGS[buffer.get(start) & 0xFF] & kind) != 0) {
+				break;
+			}
+		}
+		return start;
+	}
+
+	private static final long specialBytes(final long word, final int kind) {
+		switch (kind) {
+		case JSON_ESCAPE:
+			return SwarUtils.matchBytes(word, (byte)'"') | SwarUtils.matchBytes(word, (byte)'\\')
+					| SwarUtils.zeroBytes(word & CONTROL_MASK);
+
+		case HTML_ESCAPE:
+			return SwarUtils.matchBytes(word, (byte)'&') | SwarUtils.matchBytes(word, (byte)'<')
+					| SwarUtils.matchBytes(word, (byte)'>') | SwarUtils.matchBytes(word, (byte)'"')
+					| SwarUtils.matchBytes(word, (byte)'\'');
+
+		case JSON_UNESCAPE:
+			return SwarUtils.matchBytes(word, (byte)'\\');
+
+		case HTML_UNESCAPE:
+			return SwarUtils.matchBytes(word, (byte)'&');
+
+		case URL_UNESCAPE:
+			return SwarUtils.matchBytes(word, (byte)'%');
+
+		default:
+			return SwarUtils.matchBytes(word, (byte)'%') | SwarUtils.matchBytes(word, (byte)'+');
+		}
+	}
+
+	/*
+	 * Output
+	 */
+
+	/**
+	 * Where unescaped bytes go: appended to a buffer, or written back over the source
+	 * from index on, which never passes the bytes still to be read.
+	 */
+	private static final class Output {
+		private final ExpandableTextBuffer dest;
+
+		private final byte[] array;
+		private final int arrayOffset;
+		private final ByteBuffer buffer;
+
+		int index;
+
+		Output(final ExpandableTextBuffer dest) {
+			this.dest = dest;
+			this.array = null;
+			this.arrayOffset = 0;
+			this.buffer = null;
+		}
+
+		Output(final MutableOctet octet, final int index) {
+			this.dest = null;
+			this.buffer = octet.buffer();
+			this.array = (this.buffer == null) ? octet.array() : null;
+			this.arrayOffset = (this.buffer == null) ? octet.arrayOffset() : 0;
+			this.index = index;
+		}
+
+		final void copy(final Octet src, final int start, final int end) {
+			if (this.dest != null) {
+				this.dest.append(src, start, end);
+				return;
+			}
+
+			if (start != this.index) {
+				if (this.array != null) {
+					System.arraycopy(this.array, start + this.arrayOffset,
+							this.array, this.index + this.arrayOffset, end - start);
+				} else {
+					BufferUtils.move(this.buffer, start, this.index, end - start);
+				}
+			}
+			this.index += end - start;
+		}
+
+		final void put(final byte b) {
+			if (this.dest != null) {
+				this.dest.append(b);
+			} else if (this.array != null) {
+				this.array[this.index++ + this.arrayOffset] = b;
+			} else {
+				this.buffer.put(this.index++, b);
+			}
+		}
+
+		final void putCodePoint(final int cp) {
+			if (cp < 0x80) {
+				put((byte)cp);
+			} else if (cp < 0x800) {
+				put((byte)(0xC0 | (cp >> 6)));
+				put((byte)(0x80 | (cp & 0x3F)));
+			} else if (cp < 0x10000) {
+				put((byte)(0xE0 | (cp >> 12)));
+				put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+				put((byte)(0x80 | (cp & 0x3F)));
+			} else {
+				put((byte)(0xF0 | (cp >> 18)));
+				put((byte)(0x80 | ((cp >> 12) & 0x3F)));
+				put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+				put((byte)(0x80 | (cp & 0x3F)));
+			}
+		}
+	}
+
+}
@@ -24,11 +24,11 @@
  */
 package com.chinmobi.text;
 
-import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.nio.ByteBuffer;
@@ -53,6 +53,20 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 
 	private static final int TEST_MODE = 0;
 
+	private static final int LOAD_CHUNK_SIZE = 64 * 1024;
+
+	private static final int ENCODE_WITH_ENCODER = 0;
+	private static final int ENCODE_UTF8 = 1;
+	private static final int ENCODE_ASCII = 2;
+	private static final int ENCODE_LATIN1 = 3;
+
+	private transient Charset encoderCharset;
+	private transient CharsetEncoder encoder;
+	private transient int encodeKind;
+
+	private transient Utf8Index utf8Index;
+	private transient LineIndex lineIndex;
+
 
 	protected ExpandableTextBuffer(final BufferSettableOctet bufferOctet) {
 		super(bufferOctet);
@@ -112,9 +126,7 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 						if (!bufferText().isSameCharset(charsetName)) {
 							final Charset charset = Charset.forName(charsetName);
 
-							super.load(fileChannel);
-
-							convertForCharset(charset, bufferText().getCharset(), offset);
+							loadForCharset(fileChannel, charset, offset);
 
 							return this;
 						}
@@ -132,6 +144,32 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 		return this;
 	}
 
+	private final void loadForCharset(final FileChannel fileChannel, final Charset from,
+			final int offset) throws IOException {
+		final CharsetTranscoder transcoder = new CharsetTranscoder(from, bufferText().getCharset());
+
+		final ByteBuffer chunk = ByteBuffer.allocate(LOAD_CHUNK_SIZE);
+
+		// The bytes read while guessing the charset are the first of the file.
+		final ByteBuffer buffer = buffer();
+		final int position = buffer.position();
+		for (int i = offset; i < position; ++i) {
+			chunk.put(buffer.get(i));
+		}
+		buffer.position(offset);
+
+		for (;;) {
+			final int count = fileChannel.read(chunk);
+
+			chunk.flip();
+			transcoder.transcode(chunk, this, count < 0);
+			if (count < 0) {
+				break;
+			}
+			chunk.compact();
+		}
+	}
+
 	private final String guessCharsetName(final FileChannel fileChannel) throws IOException {
 		setOutputMode();
 
@@ -206,6 +244,47 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 	}
 
 
+	/**
+	 * Returns the code point index of the content, kept up by appends and by the edit
+	 * methods; call {@link Utf8Index#invalidate(int)} only after writing through
+	 * {@link #buffer()} or an output op at an offset before the end.
+	 */
+	public final Utf8Index utf8Index() {
+		if (this.utf8Index == null) {
+			this.utf8Index = new Utf8Index(this);
+		}
+		return this.utf8Index;
+	}
+
+	/**
+	 * Returns the line index of the content, kept up as {@link #utf8Index()} is.
+	 */
+	public final LineIndex lineIndex() {
+		if (this.lineIndex == null) {
+			this.lineIndex = new LineIndex(this);
+		}
+		return this.lineIndex;
+	}
+
+	final int contentBeginIndex() {
+		return contentBegin();
+	}
+
+	@Override
+	protected void contentChanged(final int index) {
+		invalidateIndexes(index);
+	}
+
+	private final void invalidateIndexes(final int beginIndex) {
+		if (this.utf8Index != null) {
+			this.utf8Index.forget(beginIndex);
+		}
+		if (this.lineIndex != null) {
+			this.lineIndex.forget(beginIndex);
+		}
+	}
+
+
 	public final ExpandableTextBuffer toOutputText() {
 		super.toOutput();
 		return this;
@@ -222,9 +301,11 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 	}
 
 
+	/**
+	 * Returns a writer that encodes straight into this buffer, see {@link TextBufferWriter}.
+	 */
 	public final Writer getWriter() {
-		setOutputMode();
-		return new BufferedWriter(new OutputStreamWriter(outputOp(), getCharset()));
+		return new TextBufferWriter(this);
 	}
 
 	public final PrintWriter getPrintWriter(final boolean autoFlush) {
@@ -258,37 +339,100 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 	}
 
 
+	@Override
+	protected void writeAttributes(final ObjectOutput out) throws IOException {
+		out.writeUTF(hasCharset() ? getCharset().name() : "");
+	}
+
+	@Override
+	protected void readAttributes(final ObjectInput in) throws IOException {
+		final String charsetName = in.readUTF();
+		if (charsetName.length() > 0) {
+			setCharset(charsetName);
+		}
+	}
+
+
 	/*
 	 * Append methods
 	 */
 
 	public final ExpandableTextBuffer append(final char c) {
-		setOutputMode();
+		final int kind = encodeKind();
+
+		if (kind == ENCODE_WITH_ENCODER) {
+			setOutputMode();
 
-		final char[] array = new char[1];
-		array[0] = c;
+			final char[] array = new char[1];
+			array[0] = c;
 
-		final CharBuffer chars = CharBuffer.wrap(array);
-		appendChars(this.bufferOctet.buffer(), chars, getCharsetEncoder());
+			final CharBuffer chars = CharBuffer.wrap(array);
+			appendChars(this.bufferOctet.buffer(), chars, getCharsetEncoder());
+		} else
+		if (c < 0x80) {
+			ensureOutputLength(1).put((byte)c);
+		} else
+		if (kind == ENCODE_UTF8) {
+			final ByteBuffer buffer = ensureOutputLength(3);
+			if (c < 0x800) {
+				buffer.put((byte)(0xC0 | (c >> 6)));
+				buffer.put((byte)(0x80 | (c & 0x3F)));
+			} else
+			if (!Character.isSurrogate(c)) {
+				buffer.put((byte)(0xE0 | (c >> 12)));
+				buffer.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte)(0x80 | (c & 0x3F)));
+			} else {
+				// A lone surrogate, as the encoder replaces it.
+				buffer.put((byte)'?');
+			}
+		} else {
+			ensureOutputLength(1).put((kind == ENCODE_LATIN1 && c <= 0xFF) ? (byte)c : (byte)'?');
+		}
 
 		return this;
 	}
 
-	public final ExpandableTextBuffer append(final CharSequence csq, final int start, final int end) {
-		setOutputMode();
+	/**
+	 * @throws IllegalArgumentException if codePoint is not a valid Unicode code point
+	 */
+	public final ExpandableTextBuffer appendCodePoint(final int codePoint) {
+		if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT && codePoint >= 0) {
+			return append((char)codePoint);
+		}
+		if (!Character.isValidCodePoint(codePoint)) {
+			throw new IllegalArgumentException("Invalid code point: " + codePoint);
+		}
 
-		final CharBuffer chars = CharBuffer.wrap(csq, start, end);
-		appendChars(this.bufferOctet.buffer(), chars, getCharsetEncoder());
+		final int kind = encodeKind();
+
+		if (kind == ENCODE_UTF8) {
+			final ByteBuffer buffer = ensureOutputLength(4);
+			buffer.put((byte)(0xF0 | (codePoint >> 18)));
+			buffer.put((byte)(0x80 | ((codePoint >> 12) & 0x3F)));
+			buffer.put((byte)(0x80 | ((codePoint >> 6) & 0x3F)));
+			buffer.put((byte)(0x80 | (codePoint & 0x3F)));
+		} else
+		if (kind != ENCODE_WITH_ENCODER) {
+			ensureOutputLength(1).put((byte)'?');
+		} else {
+			setOutputMode();
+			appendChars(this.bufferOctet.buffer(), CharBuffer.wrap(Character.toChars(codePoint)),
+					getCharsetEncoder());
+		}
 
 		return this;
 	}
 
-	public final ExpandableTextBuffer append(final CharSequence csq) {
+	public final ExpandableTextBuffer append(final CharSequence csq, final int start, final int end) {
 		setOutputMode();
+		appendChars(this.bufferOctet.buffer(), csq, start, end);
+		return this;
+	}
 
-		final CharBuffer chars = CharBuffer.wrap(csq);
-		appendChars(this.bufferOctet.buffer(), chars, getCharsetEncoder());
-
+	public final ExpandableTextBuffer append(final CharSequence csq) {
+		setOutputMode();
+		appendChars(this.bufferOctet.buffer(), csq, 0, csq.length());
 		return this;
 	}
 
@@ -300,7 +444,7 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 
 		chars.position(0).limit(end).position(start);
 		try {
-			appendChars(this.bufferOctet.buffer(), chars, getCharsetEncoder());
+			appendChars(this.bufferOctet.buffer(), chars, 0, end - start);
 		} finally {
 			chars.position(0).limit(oldLimit).position(oldPos);
 		}
@@ -308,6 +452,51 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 		return this;
 	}
 
+	public final ExpandableTextBuffer appendInt(final int value) {
+		if (encodeKind() == ENCODE_WITH_ENCODER) {
+			final ByteBuffer digits = ByteBuffer.allocate(TextNumberUtils.MAX_INT_LENGTH);
+			return appendDigits(digits, TextNumberUtils.putInt(digits, 0, value));
+		}
+
+		final ByteBuffer buffer = ensureOutputLength(TextNumberUtils.MAX_INT_LENGTH);
+		buffer.position(TextNumberUtils.putInt(buffer, buffer.position(), value));
+		return this;
+	}
+
+	public final ExpandableTextBuffer appendLong(final long value) {
+		if (encodeKind() == ENCODE_WITH_ENCODER) {
+			final ByteBuffer digits = ByteBuffer.allocate(TextNumberUtils.MAX_LONG_LENGTH);
+			return appendDigits(digits, TextNumberUtils.putLong(digits, 0, value));
+		}
+
+		final ByteBuffer buffer = ensureOutputLength(TextNumberUtils.MAX_LONG_LENGTH);
+		buffer.position(TextNumberUtils.putLong(buffer, buffer.position(), value));
+		return this;
+	}
+
+	public final ExpandableTextBuffer appendDouble(final double value) {
+		if (encodeKind() == ENCODE_WITH_ENCODER) {
+			final ByteBuffer digits = ByteBuffer.allocate(TextNumberUtils.MAX_DOUBLE_LENGTH);
+			return appendDigits(digits, TextNumberUtils.putDouble(digits, 0, value));
+		}
+
+		final ByteBuffer buffer = ensureOutputLength(TextNumberUtils.MAX_DOUBLE_LENGTH);
+		buffer.position(TextNumberUtils.putDouble(buffer, buffer.position(), value));
+		return this;
+	}
+
+	/**
+	 * Appends the ASCII digits through the encoder, for charsets the digit bytes are not
+	 * the same in.
+	 */
+	private final ExpandableTextBuffer appendDigits(final ByteBuffer digits, final int length) {
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; ++i) {
+			chars[i] = (char)digits.get(i);
+		}
+		return append(CharBuffer.wrap(chars), 0, length);
+	}
+
 	/*
 	 * Replace methods
 	 */
@@ -320,8 +509,7 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 			final CharSequence csq, final int start, final int end) {
 		setOutputMode();
 
-		final CharBuffer chars = CharBuffer.wrap(csq, start, end);
-		doReplace(this.bufferOctet.buffer(), beginIndex, endIndex, chars, getCharsetEncoder());
+		doReplace(this.bufferOctet.buffer(), beginIndex, endIndex, csq, start, end);
 
 		return this;
 	}
@@ -335,7 +523,7 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 
 		chars.position(0).limit(end).position(start);
 		try {
-			doReplace(this.bufferOctet.buffer(), beginIndex, endIndex, chars, getCharsetEncoder());
+			doReplace(this.bufferOctet.buffer(), beginIndex, endIndex, chars, 0, end - start);
 		} finally {
 			chars.position(0).limit(oldLimit).position(oldPos);
 		}
@@ -346,11 +534,7 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 	public final ExpandableTextBuffer replace(final int beginIndex, final int endIndex, final char c) {
 		setOutputMode();
 
-		final char[] array = new char[1];
-		array[0] = c;
-
-		final CharBuffer chars = CharBuffer.wrap(array);
-		doReplace(this.bufferOctet.buffer(), beginIndex, endIndex, chars, getCharsetEncoder());
+		doReplace(this.bufferOctet.buffer(), beginIndex, endIndex, String.valueOf(c), 0, 1);
 
 		return this;
 	}
@@ -378,14 +562,16 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 
 
 	private final ByteBuffer doReplace(ByteBuffer buffer, final int beginIndex, final int endIndex,
-			final CharBuffer chars, final CharsetEncoder encoder) {
+			final CharSequence csq, final int start, final int end) {
+		invalidateIndexes(beginIndex);
+
 		int position = buffer.position();
 
 		if (beginIndex >= position) {
 			buffer = ensureLength(buffer, beginIndex - position);
 
 			buffer.position(beginIndex);
-			buffer = appendChars(buffer, chars, encoder);
+			buffer = appendChars(buffer, csq, start, end);
 
 			return buffer;
 		}
@@ -395,7 +581,7 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 
 		final int distance = buffer.position() - beginIndex;
 
-		buffer = appendChars(buffer, chars, encoder);
+		buffer = appendChars(buffer, csq, start, end);
 
 		position = beginIndex + distance;
 
@@ -422,13 +608,22 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 		final Charset charset = Charset.forName(charsetName);
 
 		convertForCharset(this.bufferText().getCharset(), charset, 0);
+		invalidateIndexes(0);
 
 		this.bufferText().setCharset(charset);
 		return this;
 	}
 
+	/**
+	 * Returns the encoder of the current charset, kept until the charset changes.
+	 */
 	protected CharsetEncoder getCharsetEncoder() {
-		return getCharsetEncoder(this.bufferText().getCharset());
+		encodeKind();
+
+		if (this.encoder == null) {
+			this.encoder = getCharsetEncoder(this.encoderCharset);
+		}
+		return this.encoder;
 	}
 
 	protected static final CharsetEncoder getCharsetEncoder(final Charset charset) {
@@ -446,61 +641,69 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 		return AbstractTextOctet.getCharsetDecoder(charset);
 	}
 
-	private final void convertForCharset(final Charset from, final Charset to, int offset) {
-
+	private final void convertForCharset(final Charset from, final Charset to, final int offset) {
+		// The whole content is converted, whatever has been read of it already.
 		setInputMode();
+		buffer().position(0);
+		setOutputMode();
 
-		ByteBuffer buffer = buffer();
-		buffer.position(offset);
-
-		if (buffer.remaining() > 0) {
-			final CharsetDecoder decoder = getCharsetDecoder(from);
-			final CharsetEncoder encoder = getCharsetEncoder(to);
-
-			@SuppressWarnings("unused")
-			final CharBuffer chars = (TEST_MODE > 0) ? CharBuffer.allocate(4) : CharBuffer.allocate(128);
-
-			buffer = buffer();
-
-			int limit = buffer.limit();
-
-			decoder.reset();
-
-			for (;;) {
-				CoderResult result = decoder.decode(buffer, chars, true);
+		final ByteBuffer source = buffer();
+		final int end = source.position();
 
-				if (result.isOverflow()) {
-					chars.flip();
+		if (end > offset) {
+			// Transcode into a second buffer in one pass, then keep it in place of the first.
+			final ByteBuffer target = allocate(source, end);
 
-					final int remaining = buffer.remaining();
+			source.flip();
+			source.limit(offset);
+			target.put(source);
 
-					final int position = buffer.position();
-					buffer.position(0).limit(limit);
-					setOutputMode();
-					buffer = doReplace(buffer, offset, position, chars, encoder);
+			source.limit(end).position(offset);
+			new CharsetTranscoder(from, to).transcode(source, this, true);
+		}
+	}
 
-					setInputMode();
-					limit = buffer.limit();
+	private final int encodeKind() {
+		final Charset charset = this.bufferText().getCharset();
 
-					offset = limit - remaining;
-					buffer.position(offset);
+		if (charset != this.encoderCharset) {
+			this.encoderCharset = charset;
+			this.encoder = null;
 
-					chars.clear();
-					continue;
-				}
-				break;
+			if (CharsetUtils.UTF_8.equals(charset)) {
+				this.encodeKind = ENCODE_UTF8;
+			} else
+			if (CharsetUtils.US_ASCII.equals(charset)) {
+				this.encodeKind = ENCODE_ASCII;
+			} else
+			if (CharsetUtils.ISO_8859_1.equals(charset)) {
+				this.encodeKind = ENCODE_LATIN1;
+			} else {
+				this.encodeKind = ENCODE_WITH_ENCODER;
 			}
+		}
 
-			decoder.flush(chars);
-			chars.flip();
+		return this.encodeKind;
+	}
 
-			if (chars.hasRemaining()) {
-				final int position = buffer.position();
-				buffer.position(0).limit(limit);
-				setOutputMode();
-				doReplace(buffer, offset, position, chars, encoder);
-			}
+	private final ByteBuffer appendChars(ByteBuffer bytes,
+			final CharSequence csq, final int start, final int end) {
+		switch (encodeKind()) {
+		case ENCODE_UTF8:
+			// Presized from the exact length, so the bytes go straight in.
+			bytes = ensureLength(bytes, CharsetUtils.utf8Length(csq, start, end));
+			bytes.position(CharsetUtils.encodeUtf8(csq, start, end, bytes, bytes.position()));
+			return bytes;
+
+		case ENCODE_ASCII:
+		case ENCODE_LATIN1:
+			bytes = ensureLength(bytes, CharsetUtils.singleByteLength(csq, start, end));
+			bytes.position(CharsetUtils.encodeSingleByte(csq, start, end,
+					(this.encodeKind == ENCODE_ASCII) ? 0x7F : 0xFF, bytes, bytes.position()));
+			return bytes;
 		}
+
+		return appendChars(bytes, CharBuffer.wrap(csq, start, end), getCharsetEncoder());
 	}
 
 	@SuppressWarnings("unused")
@@ -524,7 +727,8 @@ public class ExpandableTextBuffer extends ExpandableOctetBuffer implements Appen
 					if (remaining > 4) remaining = 4;
 				}
 
-				bytes = ensureLength(bytes, remaining);
+				// Always grow: the room left may be too short for the next char alone.
+				bytes = ensureLength(bytes, bytes.remaining() + remaining);
 				continue;
 			}
 			break;
@@ -0,0 +1,545 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.chinmobi.octet.SwarUtils;
+
+/**
+ * An index of the lines of a text, by the positions where they start. A line ends with
+ * a '\n' byte, which makes the index good for any charset that keeps ASCII as is, and
+ * the last line is whatever follows the last '\n', possibly nothing.
+ * <p>
+ * The starts are kept in blocks of {@link #BLOCK_SIZE}: the first start of each block as
+ * is, the others as variable length deltas from the one before, so a line takes one or
+ * two bytes for the most part. Lookups either way search the blocks and then decode at
+ * most one block.
+ * <p>
+ * The index picks up bytes appended since the last lookup; after any other edit call
+ * {@link #invalidate(int)} from the first byte changed. The index of an
+ * {@link ExpandableTextBuffer}, see {@link ExpandableTextBuffer#lineIndex()}, is
+ * invalidated by the edit methods of the buffer itself, and starts over when the bytes
+ * start somewhere else than at the last lookup, as after reading off the input. Runs of at
+ * least {@link #PARALLEL_THRESHOLD} new bytes are scanned in chunks on the common
+ * fork-join pool.
+ * <p>
+ * Positions are indexes of the octet, or offsets into the content of a buffer.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class LineIndex {
+
+	public static final int BLOCK_SIZE = 64;
+
+	/** Below this the fork-join overhead outweighs the gain. */
+	public static final int PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+
+	private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+
+	private static final int BLOCK_SHIFT = 6;
+
+	private static final int BULK_THRESHOLD = 16;
+
+	private static final int FILE_MAGIC = 0x4C494458; // "LIDX"
+
+	private final TextOctet text;
+	private final ExpandableTextBuffer textBuffer;
+
+	// The current view of the bytes; content byte i is at origin + i.
+	private ByteBuffer buffer;
+	private byte[] array;
+	private int origin;
+	private int base;
+	private int length;
+
+	private int[] blockStarts;
+	private int[] blockPositions;
+	private byte[] deltas;
+	private int deltasLength;
+
+	private int lineCount;
+	private int lastStart;
+
+	/** Where the next delta to decode is. */
+	private int cursor;
+
+	/** Scanned up to here. */
+	private int indexedBytes;
+
+
+	public LineIndex(final TextOctet text) {
+		this(text, null);
+	}
+
+	LineIndex(final ExpandableTextBuffer textBuffer) {
+		this(null, textBuffer);
+	}
+
+	private LineIndex(final TextOctet text, final ExpandableTextBuffer textBuffer) {
+		this.text = text;
+		this.textBuffer = textBuffer;
+
+		this.blockStarts = new int[16];
+		this.blockPositions = new int[16];
+		this.deltas = new byte[256];
+
+		reset();
+	}
+
+
+	/**
+	 * Forgets the lines that start past the given position.
+	 */
+	public final LineIndex invalidate(final int index) {
+		refresh();
+		forget(index);
+		return this;
+	}
+
+	/**
+	 * As invalidate, without looking at the bytes, which may be in the middle of an edit.
+	 */
+	final void forget(final int index) {
+		final int at = index - this.base;
+		if (at < this.indexedBytes) {
+			truncate(Math.max(0, at));
+		}
+	}
+
+	/*
+	 * Line methods
+	 */
+
+	public final int lineCount() {
+		update();
+		return this.lineCount;
+	}
+
+	/**
+	 * Returns the position of the first byte of the line.
+	 */
+	public final int lineStart(final int line) {
+		update();
+		checkLine(line);
+		return this.base + startOf(line);
+	}
+
+	/**
+	 * Returns the position of the '\n' that ends the line, or the end of the text for
+	 * the last line.
+	 */
+	public final int lineEnd(final int line) {
+		update();
+		checkLine(line);
+		return this.base + ((line + 1 < this.lineCount) ? startOf(line + 1) - 1 : this.length);
+	}
+
+	/**
+	 * Returns the line that holds the byte at the position; the end of the text is
+	 * on the last line.
+	 */
+	public final int lineOf(final int index) {
+		update();
+
+		final int at = index - this.base;
+		if (at < 0 || at > this.length) {
+			throw new IndexOutOfBoundsException("Index: " + index);
+		}
+		return lineAt(at);
+	}
+
+	/*
+	 * Store methods
+	 */
+
+	/**
+	 * Writes the index to a file, for instance next to the file the text came from, to be
+	 * {@link #load(String) loaded} back instead of scanning the text again.
+	 */
+	public final void store(final String fileName) throws IOException {
+		update();
+
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(fileName)));
+		try {
+			final int blocks = blockCount();
+
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(this.indexedBytes);
+			out.writeInt(this.lineCount);
+			out.writeInt(this.lastStart);
+			out.writeInt(this.deltasLength);
+			for (int i = 0; i < blocks; ++i) {
+				out.writeInt(this.blockStarts[i]);
+				out.writeInt(this.blockPositions[i]);
+			}
+			out.write(this.deltas, 0, this.deltasLength);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Replaces the index with one {@link #store(String) stored} before. The text may have
+	 * grown since, the rest is scanned at the next lookup.
+	 *
+	 * @throws IOException if the file is not a line index, or does not fit the text
+	 */
+	public final LineIndex load(final String fileName) throws IOException {
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			if (in.readInt() != FILE_MAGIC) {
+				throw new IOException("Not a line index: " + fileName);
+			}
+
+			final int indexedBytes = in.readInt();
+			final int lineCount = in.readInt();
+			final int lastStart = in.readInt();
+			final int deltasLength = in.readInt();
+
+			final int blocks = (lineCount + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+			if (lineCount < 1 || deltasLength < 0 || lastStart < 0 || lastStart > indexedBytes) {
+				throw new IOException("Corrupt line index: " + fileName);
+			}
+
+			final int[] blockStarts = new int[Math.max(16, blocks)];
+			final int[] blockPositions = new int[blockStarts.length];
+			for (int i = 0; i < blocks; ++i) {
+				blockStarts[i] = in.readInt();
+				blockPositions[i] = in.readInt();
+			}
+			final byte[] deltas = new byte[Math.max(256, deltasLength)];
+			in.readFully(deltas, 0, deltasLength);
+
+			refresh();
+			if (indexedBytes > this.length || (lastStart > 0 && byteAt(lastStart - 1) != '\n')) {
+				throw new IOException("Line index does not fit the text: " + fileName);
+			}
+
+			this.blockStarts = blockStarts;
+			this.blockPositions = blockPositions;
+			this.deltas = deltas;
+			this.deltasLength = deltasLength;
+			this.lineCount = lineCount;
+			this.lastStart = lastStart;
+			this.indexedBytes = indexedBytes;
+		} finally {
+			in.close();
+		}
+
+		return this;
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final void checkLine(final int line) {
+		if (line < 0 || line >= this.lineCount) {
+			throw new IndexOutOfBoundsException("Line: " + line + " Count: " + this.lineCount);
+		}
+	}
+
+	private final int blockCount() {
+		return (this.lineCount + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+	}
+
+	/**
+	 * Returns the start of the line, leaving the cursor after its delta.
+	 */
+	private final int startOf(final int line) {
+		final int block = line >> BLOCK_SHIFT;
+
+		int start = this.blockStarts[block];
+		this.cursor = this.blockPositions[block];
+		for (int k = line & (BLOCK_SIZE - 1); k > 0; --k) {
+			start += nextDelta();
+		}
+		return start;
+	}
+
+	private final int nextDelta() {
+		int p = this.cursor;
+		int delta = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = this.deltas[p++];
+			delta |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		this.cursor = p;
+		return delta;
+	}
+
+	private final int lineAt(final int at) {
+		// The last block whose first line starts at or before at.
+		int lo = 0;
+		int hi = blockCount() - 1;
+		while (lo < hi) {
+			final int mid = (lo + hi + 1) >>> 1;
+			if (this.blockStarts[mid] <= at) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+
+		int line = lo << BLOCK_SHIFT;
+		int start = this.blockStarts[lo];
+		this.cursor = this.blockPositions[lo];
+		final int last = Math.min(this.lineCount, line + BLOCK_SIZE) - 1;
+		while (line < last) {
+			start += nextDelta();
+			if (start > at) {
+				break;
+			}
+			++line;
+		}
+		return line;
+	}
+
+	private final void addLine(final int start) {
+		final int n = this.lineCount;
+
+		if ((n & (BLOCK_SIZE - 1)) == 0) {
+			final int block = n >> BLOCK_SHIFT;
+			if (block == this.blockStarts.length) {
+				this.blockStarts = Arrays.copyOf(this.blockStarts, block * 2);
+				this.blockPositions = Arrays.copyOf(this.blockPositions, block * 2);
+			}
+			this.blockStarts[block] = start;
+			this.blockPositions[block] = this.deltasLength;
+		} else {
+			if (this.deltasLength + 5 > this.deltas.length) {
+				this.deltas = Arrays.copyOf(this.deltas, this.deltas.length * 2);
+			}
+
+			int delta = start - this.lastStart;
+			while (delta >= 0x80) {
+				this.deltas[this.deltasLength++] = (byte)(delta | 0x80);
+				delta >>>= 7;
+			}
+			this.deltas[this.deltasLength++] = (byte)delta;
+		}
+
+		this.lastStart = start;
+		this.lineCount = n + 1;
+	}
+
+	private final void reset() {
+		this.deltasLength = 0;
+		this.lineCount = 0;
+		this.indexedBytes = 0;
+		addLine(0);
+	}
+
+	/**
+	 * Keeps the lines that start at or before at, and the scan up to at.
+	 */
+	private final void truncate(final int at) {
+		final int count = lineAt(at) + 1;
+
+		this.lastStart = startOf(count - 1);
+		this.deltasLength = this.cursor;
+		this.lineCount = count;
+		this.indexedBytes = at;
+	}
+
+	private final void refresh() {
+		final int origin;
+		if (this.text != null) {
+			this.buffer = this.text.buffer();
+			this.array = (this.buffer == null) ? this.text.array() : null;
+			this.base = this.text.begin();
+			origin = this.base + ((this.array != null) ? this.text.arrayOffset() : 0);
+			this.length = this.text.length();
+		} else {
+			this.buffer = this.textBuffer.buffer();
+			this.array = null;
+			this.base = 0;
+			origin = this.textBuffer.contentBeginIndex();
+			this.length = this.textBuffer.length();
+		}
+
+		// Bytes read off the front of a buffer, or a moved octet, shift every start.
+		if (origin != this.origin) {
+			this.origin = origin;
+			reset();
+		}
+
+		if (this.indexedBytes > this.length) {
+			truncate(this.length);
+		}
+	}
+
+	private final int byteAt(final int i) {
+		return (this.array != null) ? this.array[this.origin + i] : this.buffer.get(this.origin + i);
+	}
+
+	private final void update() {
+		refresh();
+
+		final int from = this.indexedBytes;
+		final int end = this.length;
+		if (from >= end) {
+			return;
+		}
+
+		final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		final int count = Math.min((end - from) / MIN_CHUNK_SIZE, parallelism * 4);
+		if (end - from < PARALLEL_THRESHOLD || parallelism <= 1 || count <= 1) {
+			scan(from, end, null);
+		} else {
+			final Chunks chunks = new Chunks(from, end, count);
+			ForkJoinPool.commonPool().invoke(chunks.task(0, count));
+
+			for (int i = 0; i < count; ++i) {
+				final int[] positions = chunks.positions[i];
+				for (int k = 0, n = chunks.counts[i]; k < n; ++k) {
+					addLine(positions[k] + 1);
+				}
+			}
+		}
+
+		this.indexedBytes = end;
+	}
+
+	/**
+	 * Finds the '\n' bytes in [from, end), adding the lines after them, or collecting their
+	 * positions into the chunks.
+	 */
+	private final void scan(int from, final int end, final Chunks chunks) {
+		final int chunk = (chunks != null) ? chunks.indexOf(from) : -1;
+
+		if (this.array != null) {
+			final byte[] array = this.array;
+			final int offset = this.origin;
+			for (int i = from + offset, limit = end + offset; i < limit; ++i) {
+				if (array[i] == '\n') {
+					found(i - offset, chunks, chunk);
+				}
+			}
+			return;
+		}
+
+		final ByteBuffer buffer = this.buffer;
+		final int offset = this.origin;
+
+		if ((end - from) >= BULK_THRESHOLD) {
+			final ByteOrder order = buffer.order();
+			for (final int limit = end - 8; from <= limit; from += 8) {
+				long mask = SwarUtils.matchBytes(buffer.getLong(from + offset), (byte)'\n');
+				while (mask != 0) {
+					found(from + SwarUtils.firstIndex(mask, order), chunks, chunk);
+					mask = (order == ByteOrder.LITTLE_ENDIAN) ? (mask & (mask - 1)) :
+						(mask ^ Long.highestOneBit(mask));
+				}
+			}
+		}
+
+		for (; from < end; ++from) {
+			if (buffer.get(from + offset) == '\n') {
+				found(from, chunks, chunk);
+			}
+		}
+	}
+
+	private final void found(final int at, final Chunks chunks, final int chunk) {
+		if (chunks == null) {
+			addLine(at + 1);
+		} else {
+			chunks.add(chunk, at);
+		}
+	}
+
+	/*
+	 * Chunks
+	 */
+
+	private final class Chunks {
+		final int[] bounds;
+
+		/** The '\n' positions found in each chunk. */
+		final int[][] positions;
+		final int[] counts;
+
+		Chunks(final int from, final int end, final int count) {
+			this.bounds = new int[count + 1];
+			for (int i = 0; i <= count; ++i) {
+				this.bounds[i] = from + (int)((long)(end - from) * i / count);
+			}
+			this.positions = new int[count][];
+			this.counts = new int[count];
+		}
+
+		final int indexOf(final int from) {
+			return Arrays.binarySearch(this.bounds, from);
+		}
+
+		final void add(final int chunk, final int at) {
+			int[] positions = this.positions[chunk];
+			final int n = this.counts[chunk];
+			if (positions == null) {
+				positions = this.positions[chunk] = new int[1024];
+			} else if (n == positions.length) {
+				positions = this.positions[chunk] = Arrays.copyOf(positions, n * 2);
+			}
+			positions[n] = at;
+			this.counts[chunk] = n + 1;
+		}
+
+		final RecursiveAction task(final int from, final int to) {
+			return new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					if (to - from == 1) {
+						scan(Chunks.this.bounds[from], Chunks.this.bounds[from + 1], Chunks.this);
+					} else {
+						final int middle = (from + to) >>> 1;
+						invokeAll(task(from, middle), task(middle, to));
+					}
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,385 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Validates and decodes large runs of UTF-8 on the common fork-join pool. The bytes are
+ * cut into chunks at code point boundaries, that is before a byte that is not a
+ * continuation byte, so that each chunk decodes on its own exactly as it would as part
+ * of the whole; a chunk with malformed input goes through the JDK decoder, which keeps
+ * the replacements as {@link CharsetUtils#decode(byte[], int, int, java.nio.charset.Charset)}
+ * gives them.
+ * <p>
+ * Inputs below {@link #PARALLEL_THRESHOLD}, or with a pool of one thread, are decoded
+ * on the calling thread.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class ParallelUtf8Decoder {
+
+	/** Below this the fork-join overhead outweighs the gain. */
+	public static final int PARALLEL_THRESHOLD = 1024 * 1024;
+
+	private static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+	/** Bounds the chars held at once by an append. */
+	private static final int APPEND_WINDOW_SIZE = 16 * 1024 * 1024;
+
+
+	private ParallelUtf8Decoder() {
+	}
+
+
+	/*
+	 * Validate methods
+	 */
+
+	public static final boolean isValid(final byte[] array, final int offset, final int length) {
+		checkRange(array.length, offset, length);
+
+		final int[] bounds = split(array, null, offset, length);
+		if (bounds == null) {
+			return CharsetUtils.isValidUtf8(array, offset, length);
+		}
+
+		final Chunks chunks = new Chunks(array, null, bounds, Chunks.VALIDATE);
+		ForkJoinPool.commonPool().invoke(chunks.task(0, chunks.count));
+		return chunks.allValid();
+	}
+
+	public static final boolean isValid(final ByteBuffer buffer, final int start, final int end) {
+		checkRange(buffer.limit(), start, end - start);
+		if (buffer.hasArray()) {
+			return isValid(buffer.array(), buffer.arrayOffset() + start, end - start);
+		}
+
+		final int[] bounds = split(null, buffer, start, end - start);
+		if (bounds == null) {
+			return CharsetUtils.isValidUtf8(buffer, start, end);
+		}
+
+		final Chunks chunks = new Chunks(null, buffer, bounds, Chunks.VALIDATE);
+		ForkJoinPool.commonPool().invoke(chunks.task(0, chunks.count));
+		return chunks.allValid();
+	}
+
+	/*
+	 * Decode methods
+	 */
+
+	public static final String decode(final byte[] array, final int offset, final int length) {
+		checkRange(array.length, offset, length);
+		return decodeString(array, null, offset, length);
+	}
+
+	/**
+	 * Decodes the bytes in [start, end) of the buffer, leaving its position and limit untouched.
+	 */
+	public static final String decode(final ByteBuffer buffer, final int start, final int end) {
+		checkRange(buffer.limit(), start, end - start);
+		if (buffer.hasArray()) {
+			return decodeString(buffer.array(), null, buffer.arrayOffset() + start, end - start);
+		}
+		return decodeString(null, buffer, start, end - start);
+	}
+
+	/**
+	 * Decodes into one char array per chunk, in order, so that no single array has to
+	 * hold the whole text.
+	 */
+	public static final char[][] decodeSegments(final byte[] array, final int offset, final int length) {
+		checkRange(array.length, offset, length);
+		return decodeSegments(array, null, offset, length);
+	}
+
+	public static final char[][] decodeSegments(final ByteBuffer buffer, final int start, final int end) {
+		checkRange(buffer.limit(), start, end - start);
+		if (buffer.hasArray()) {
+			return decodeSegments(buffer.array(), null, buffer.arrayOffset() + start, end - start);
+		}
+		return decodeSegments(null, buffer, start, end - start);
+	}
+
+	/**
+	 * Decodes and appends window by window, so at most {@link #APPEND_WINDOW_SIZE} bytes
+	 * worth of chars are held at once.
+	 */
+	public static final void decode(final byte[] array, final int offset, final int length,
+			final Appendable appendable) throws IOException {
+		checkRange(array.length, offset, length);
+		append(array, null, offset, length, appendable);
+	}
+
+	public static final void decode(final ByteBuffer buffer, final int start, final int end,
+			final Appendable appendable) throws IOException {
+		checkRange(buffer.limit(), start, end - start);
+		if (buffer.hasArray()) {
+			append(buffer.array(), null, buffer.arrayOffset() + start, end - start, appendable);
+		} else {
+			append(null, buffer, start, end - start, appendable);
+		}
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private static final void checkRange(final int size, final int offset, final int length) {
+		if (offset < 0 || length < 0 || offset > size - length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + " length: " + length);
+		}
+	}
+
+	private static final String decodeString(final byte[] array, final ByteBuffer buffer,
+			final int offset, final int length) {
+		final int[] bounds = split(array, buffer, offset, length);
+		if (bounds == null) {
+			return (array != null) ? CharsetUtils.decode(array, offset, length, CharsetUtils.UTF_8) :
+				CharsetUtils.decode(buffer, offset, offset + length, CharsetUtils.UTF_8);
+		}
+
+		// Well formed UTF-8 never takes more chars than bytes, so each chunk decodes in
+		// place at its byte offset and the gaps are closed afterwards.
+		final char[] chars = new char[length];
+		final Chunks chunks = new Chunks(array, buffer, bounds, Chunks.DECODE);
+		chunks.chars = chars;
+		ForkJoinPool.commonPool().invoke(chunks.task(0, chunks.count));
+
+		if (chunks.allValid()) {
+			int n = 0;
+			for (int i = 0; i < chunks.count; ++i) {
+				System.arraycopy(chars, bounds[i] - offset, chars, n, chunks.counts[i]);
+				n += chunks.counts[i];
+			}
+			return new String(chars, 0, n);
+		}
+
+		final StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < chunks.count; ++i) {
+			if (chunks.counts[i] >= 0) {
+				builder.append(chars, bounds[i] - offset, chunks.counts[i]);
+			} else {
+				builder.append(chunks.decodeChunk(i));
+			}
+		}
+		return builder.toString();
+	}
+
+	private static final char[][] decodeSegments(final byte[] array, final ByteBuffer buffer,
+			final int offset, final int length) {
+		if (length == 0) {
+			return new char[0][];
+		}
+
+		final int[] bounds = split(array, buffer, offset, length);
+		if (bounds == null) {
+			final String str = (array != null) ?
+					CharsetUtils.decode(array, offset, length, CharsetUtils.UTF_8) :
+					CharsetUtils.decode(buffer, offset, offset + length, CharsetUtils.UTF_8);
+			return new char[][] { str.toCharArray() };
+		}
+
+		final Chunks chunks = new Chunks(array, buffer, bounds, Chunks.SEGMENTS);
+		ForkJoinPool.commonPool().invoke(chunks.task(0, chunks.count));
+		return chunks.segments;
+	}
+
+	private static final void append(final byte[] array, final ByteBuffer buffer,
+			final int offset, final int length, final Appendable appendable) throws IOException {
+		final int end = offset + length;
+		int start = offset;
+
+		while (start < end) {
+			int windowEnd = end;
+			if (end - start > APPEND_WINDOW_SIZE) {
+				windowEnd = boundary(array, buffer, start, start + APPEND_WINDOW_SIZE);
+			}
+
+			for (char[] segment : decodeSegments(array, buffer, start, windowEnd - start)) {
+				appendable.append(CharBuffer.wrap(segment));
+			}
+			start = windowEnd;
+		}
+	}
+
+	/**
+	 * Returns the chunk bounds, count + 1 of them, or null when the input is better
+	 * decoded in one piece.
+	 */
+	private static final int[] split(final byte[] array, final ByteBuffer buffer,
+			final int offset, final int length) {
+		final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		if (length < PARALLEL_THRESHOLD || parallelism <= 1) {
+			return null;
+		}
+
+		// A few chunks per thread even out the slower, non-ASCII ones.
+		final int count = Math.max(1, Math.min(length / MIN_CHUNK_SIZE, parallelism * 4));
+		if (count == 1) {
+			return null;
+		}
+
+		final int end = offset + length;
+		final int[] bounds = new int[count + 1];
+		bounds[0] = offset;
+		for (int i = 1; i < count; ++i) {
+			final int at = offset + (int)((long)length * i / count);
+			bounds[i] = Math.max(bounds[i - 1], boundary(array, buffer, bounds[i - 1], at));
+		}
+		bounds[count] = end;
+		return bounds;
+	}
+
+	/**
+	 * Moves at back over at most three continuation bytes, to where a code point starts.
+	 * Longer runs are malformed anyway and may be cut anywhere.
+	 */
+	private static final int boundary(final byte[] array, final ByteBuffer buffer,
+			final int from, final int at) {
+		for (int i = at; i > from && i > at - 4; --i) {
+			final int b = (array != null) ? array[i] : buffer.get(i);
+			if ((b & 0xC0) != 0x80) {
+				return i;
+			}
+		}
+		return at;
+	}
+
+	/*
+	 * Chunks
+	 */
+
+	private static final class Chunks {
+		static final int VALIDATE = 0;
+		static final int DECODE = 1;
+		static final int SEGMENTS = 2;
+
+		final byte[] array;
+		final ByteBuffer buffer;
+		final int[] bounds;
+		final int count;
+		final int mode;
+
+		/** The chars of each chunk, or -1 if it is not well formed. */
+		final int[] counts;
+
+		char[] chars;
+		final char[][] segments;
+
+		Chunks(final byte[] array, final ByteBuffer buffer, final int[] bounds, final int mode) {
+			this.array = array;
+			this.buffer = buffer;
+			this.bounds = bounds;
+			this.count = bounds.length - 1;
+			this.mode = mode;
+			this.counts = new int[this.count];
+			this.segments = (mode == SEGMENTS) ? new char[this.count][] : null;
+		}
+
+		final boolean allValid() {
+			for (int n : this.counts) {
+				if (n < 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		final RecursiveAction task(final int from, final int to) {
+			return new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					if (to - from == 1) {
+						run(from);
+					} else {
+						final int middle = (from + to) >>> 1;
+						invokeAll(task(from, middle), task(middle, to));
+					}
+				}
+			};
+		}
+
+		final void run(final int index) {
+			final int start = this.bounds[index];
+			final int length = this.bounds[index + 1] - start;
+
+			if (this.mode == VALIDATE && this.array == null) {
+				this.counts[index] = CharsetUtils.isValidUtf8(this.buffer, start, start + length) ? 0 : -1;
+				return;
+			}
+
+			byte[] src = this.array;
+			int srcOffset = start;
+			if (src == null) {
+				src = new byte[length];
+				final ByteBuffer dup = this.buffer.duplicate();
+				dup.limit(start + length).position(start);
+				dup.get(src);
+				srcOffset = 0;
+			}
+
+			switch (this.mode) {
+			case VALIDATE:
+				this.counts[index] = CharsetUtils.isValidUtf8(src, srcOffset, length) ? 0 : -1;
+				break;
+
+			case DECODE:
+				this.counts[index] = CharsetUtils.decodeUtf8(src, srcOffset, length,
+						this.chars, start - this.bounds[0]);
+				break;
+
+			default:
+				final char[] chars = new char[length];
+				final int n = CharsetUtils.decodeUtf8(src, srcOffset, length, chars, 0);
+				if (n >= 0) {
+					this.segments[index] = (n == length) ? chars : Arrays.copyOf(chars, n);
+				} else {
+					this.segments[index] = CharsetUtils.decode(src, srcOffset, length,
+							CharsetUtils.UTF_8).toCharArray();
+				}
+				break;
+			}
+		}
+
+		final String decodeChunk(final int index) {
+			final int start = this.bounds[index];
+			final int end = this.bounds[index + 1];
+			return (this.array != null) ?
+					CharsetUtils.decode(this.array, start, end - start, CharsetUtils.UTF_8) :
+					CharsetUtils.decode(this.buffer, start, end, CharsetUtils.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,205 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * A Writer that encodes straight into an {@link ExpandableTextBuffer} in its charset,
+ * with no buffering of its own: what is written is in the buffer at once, and flush has
+ * nothing to do. A high surrogate at the end of a write waits for its pair.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class TextBufferWriter extends Writer {
+
+	private final ExpandableTextBuffer buffer;
+
+	private CharBuffer wrapped;
+
+	private int pendingHigh;
+	private boolean closed;
+
+
+	public TextBufferWriter(final ExpandableTextBuffer buffer) {
+		super();
+		this.buffer = buffer;
+		this.pendingHigh = -1;
+	}
+
+
+	public final ExpandableTextBuffer getBuffer() {
+		return this.buffer;
+	}
+
+	/*
+	 * Write methods
+	 */
+
+	@Override
+	public final void write(final int c) throws IOException {
+		ensureOpen();
+
+		final char ch = (char)c;
+
+		if (this.pendingHigh >= 0) {
+			final char high = (char)this.pendingHigh;
+			this.pendingHigh = -1;
+
+			if (Character.isLowSurrogate(ch)) {
+				this.buffer.appendCodePoint(Character.toCodePoint(high, ch));
+				return;
+			}
+			this.buffer.append(high);
+		}
+
+		if (Character.isHighSurrogate(ch)) {
+			this.pendingHigh = ch;
+		} else {
+			this.buffer.append(ch);
+		}
+	}
+
+	@Override
+	public final void write(final char[] cbuf, final int off, final int len) throws IOException {
+		if (off < 0 || len < 0 || off > cbuf.length - len) {
+			throw new IndexOutOfBoundsException("Offset: " + off + " Length: " + len);
+		}
+		ensureOpen();
+
+		// Callers mostly write from the same array over and over.
+		CharBuffer chars = this.wrapped;
+		if (chars == null || chars.array() != cbuf) {
+			chars = CharBuffer.wrap(cbuf);
+			this.wrapped = chars;
+		}
+
+		writeChars(chars, off, off + len);
+	}
+
+	@Override
+	public final void write(final String str, final int off, final int len) throws IOException {
+		if (off < 0 || len < 0 || off > str.length() - len) {
+			throw new IndexOutOfBoundsException("Offset: " + off + " Length: " + len);
+		}
+		ensureOpen();
+
+		writeChars(str, off, off + len);
+	}
+
+	@Override
+	public final TextBufferWriter append(final CharSequence csq) throws IOException {
+		if (csq == null) {
+			write("null");
+		} else {
+			ensureOpen();
+			writeChars(csq, 0, csq.length());
+		}
+		return this;
+	}
+
+	@Override
+	public final TextBufferWriter append(final CharSequence csq, final int start, final int end)
+			throws IOException {
+		if (csq == null) {
+			return append("null".subSequence(start, end));
+		}
+		if (start < 0 || start > end || end > csq.length()) {
+			throw new IndexOutOfBoundsException("Start: " + start + " End: " + end);
+		}
+		ensureOpen();
+
+		writeChars(csq, start, end);
+		return this;
+	}
+
+	@Override
+	public final TextBufferWriter append(final char c) throws IOException {
+		write(c);
+		return this;
+	}
+
+	@Override
+	public final void flush() throws IOException {
+		ensureOpen();
+	}
+
+	/**
+	 * Closes the writer; a high surrogate still waiting for its pair goes in replaced.
+	 */
+	@Override
+	public final void close() {
+		if (!this.closed) {
+			this.closed = true;
+
+			if (this.pendingHigh >= 0) {
+				this.buffer.append((char)this.pendingHigh);
+				this.pendingHigh = -1;
+			}
+		}
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final void ensureOpen() throws IOException {
+		if (this.closed) {
+			throw new IOException("Writer closed");
+		}
+	}
+
+	private final void writeChars(final CharSequence csq, int start, int end) {
+		if (start >= end) {
+			return;
+		}
+
+		if (this.pendingHigh >= 0) {
+			final char high = (char)this.pendingHigh;
+			this.pendingHigh = -1;
+
+			final char c = csq.charAt(start);
+			if (Character.isLowSurrogate(c)) {
+				this.buffer.appendCodePoint(Character.toCodePoint(high, c));
+				++start;
+			} else {
+				this.buffer.append(high);
+			}
+		}
+
+		if (start < end && Character.isHighSurrogate(csq.charAt(end - 1))) {
+			--end;
+			this.pendingHigh = csq.charAt(end);
+		}
+
+		if (start < end) {
+			this.buffer.append(csq, start, end);
+		}
+	}
+
+}
@@ -0,0 +1,313 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A CharSequence read straight from the bytes of a text octet, for java.util.regex and
+ * other CharSequence based parsers. ISO-8859-1, US-ASCII and ASCII only content are read
+ * one byte per char; well formed UTF-8 is read through an index of the byte offset of
+ * every 32nd char, built once. Sub sequences are views over the same bytes.
+ * <p>
+ * A view remembers where it read last, so reading forward is cheap; it is not safe to
+ * share between threads. The bytes must not change while the view is in use.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class TextCharSequence implements CharSequence {
+
+	private static final int LATIN1 = 0;
+	private static final int ASCII = 1;
+	private static final int UTF8 = 2;
+
+	private static final int STRIDE_SHIFT = 5;
+
+	private static final byte[] EMPTY_ARRAY = new byte[0];
+
+	private final ByteBuffer buffer;
+	private final byte[] array;
+	private final int arrayOffset;
+
+	private final int kind;
+
+	/** For one byte chars, the index of the first byte; for UTF-8, the first char in the index. */
+	private final int offset;
+	private final int length;
+
+	/**
+	 * For UTF-8, the byte index where the char holding each 32nd UTF-16 unit starts,
+	 * shifted left by one, with the low bit set when that unit is the low half of a pair.
+	 */
+	private final int[] index;
+
+	private int cursorUnit;
+	private int cursorIndex;
+
+
+	private TextCharSequence(final ByteBuffer buffer, final byte[] array, final int arrayOffset,
+			final int kind, final int offset, final int length, final int[] index) {
+		this.buffer = buffer;
+		this.array = array;
+		this.arrayOffset = arrayOffset;
+
+		this.kind = kind;
+		this.offset = offset;
+		this.length = length;
+
+		this.index = index;
+
+		this.cursorUnit = Integer.MAX_VALUE;
+	}
+
+
+	/**
+	 * Returns a copy free view over the text when its charset is ISO-8859-1 or US-ASCII,
+	 * or its content is ASCII or well formed UTF-8; otherwise the decoded string.
+	 */
+	public static final CharSequence of(final TextOctet text) {
+		final ByteBuffer buffer = text.buffer();
+		final byte[] array = (buffer == null && text.hasArray()) ? text.array() : EMPTY_ARRAY;
+		final int arrayOffset = (buffer == null && text.hasArray()) ? text.arrayOffset() : 0;
+
+		final int begin = text.begin();
+		final int end = text.end();
+
+		final Charset charset = text.getCharset();
+
+		if (CharsetUtils.ISO_8859_1.equals(charset)) {
+			return new TextCharSequence(buffer, array, arrayOffset, LATIN1, begin, end - begin, null);
+		}
+		if (CharsetUtils.US_ASCII.equals(charset)) {
+			return new TextCharSequence(buffer, array, arrayOffset, ASCII, begin, end - begin, null);
+		}
+
+		if (CharsetUtils.UTF_8.equals(charset)) {
+			final int ascii;
+			if (buffer != null) {
+				int i = begin;
+				while (i < end && buffer.get(i) >= 0) {
+					++i;
+				}
+				ascii = i - begin;
+			} else {
+				ascii = CharsetUtils.asciiLength(array, begin + arrayOffset, end - begin);
+			}
+
+			if (ascii == end - begin) {
+				return new TextCharSequence(buffer, array, arrayOffset, ASCII, begin, end - begin, null);
+			}
+
+			final TextCharSequence utf8 = buildUtf8(buffer, array, arrayOffset, begin, end);
+			if (utf8 != null) {
+				return utf8;
+			}
+		}
+
+		return text.toString();
+	}
+
+	/*
+	 * CharSequence methods
+	 */
+
+	public final int length() {
+		return this.length;
+	}
+
+	public final char charAt(final int index) {
+		if (index < 0 || index >= this.length) {
+			throw new IndexOutOfBoundsException("Index: " + index + " Length: " + this.length);
+		}
+
+		switch (this.kind) {
+		case LATIN1:
+			return (char)(byteAt(this.offset + index) & 0xFF);
+
+		case ASCII:
+			final int b = byteAt(this.offset + index);
+			return (b >= 0) ? (char)b : '\uFFFD';
+
+		default:
+			return utf8CharAt(this.offset + index);
+		}
+	}
+
+	public final CharSequence subSequence(final int start, final int end) {
+		if (start < 0 || start > end || end > this.length) {
+			throw new IndexOutOfBoundsException("Start: " + start + " End: " + end);
+		}
+
+		return new TextCharSequence(this.buffer, this.array, this.arrayOffset,
+				this.kind, this.offset + start, end - start, this.index);
+	}
+
+	@Override
+	public final String toString() {
+		final char[] chars = new char[this.length];
+		for (int i = 0; i < chars.length; ++i) {
+			chars[i] = charAt(i);
+		}
+		return new String(chars);
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final int byteAt(final int index) {
+		if (this.buffer != null) {
+			return this.buffer.get(index);
+		}
+		return this.array[index + this.arrayOffset];
+	}
+
+	private final char utf8CharAt(final int unit) {
+		int u;
+		int i;
+
+		if (unit >= this.cursorUnit && unit - this.cursorUnit < (2 << STRIDE_SHIFT)) {
+			u = this.cursorUnit;
+			i = this.cursorIndex;
+		} else {
+			final int entry = this.index[unit >> STRIDE_SHIFT];
+			u = (unit >> STRIDE_SHIFT) << STRIDE_SHIFT;
+			i = entry >> 1;
+			if ((entry & 1) != 0) {
+				--u;
+			}
+		}
+
+		for (;;) {
+			final int b1 = byteAt(i);
+
+			if (b1 >= 0) {
+				if (u == unit) {
+					this.cursorUnit = u;
+					this.cursorIndex = i;
+					return (char)b1;
+				}
+				++u;
+				++i;
+				continue;
+			}
+
+			if ((b1 & 0xE0) == 0xC0) {
+				if (u == unit) {
+					this.cursorUnit = u;
+					this.cursorIndex = i;
+					return (char)(((b1 & 0x1F) << 6) | (byteAt(i + 1) & 0x3F));
+				}
+				++u;
+				i += 2;
+			} else
+			if ((b1 & 0xF0) == 0xE0) {
+				if (u == unit) {
+					this.cursorUnit = u;
+					this.cursorIndex = i;
+					return (char)(((b1 & 0x0F) << 12) | ((byteAt(i + 1) & 0x3F) << 6) |
+							(byteAt(i + 2) & 0x3F));
+				}
+				++u;
+				i += 3;
+			} else {
+				if (u == unit || u + 1 == unit) {
+					this.cursorUnit = u;
+					this.cursorIndex = i;
+					final int cp = ((b1 & 0x07) << 18) | ((byteAt(i + 1) & 0x3F) << 12) |
+							((byteAt(i + 2) & 0x3F) << 6) | (byteAt(i + 3) & 0x3F);
+					return (u == unit) ? Character.highSurrogate(cp) : Character.lowSurrogate(cp);
+				}
+				u += 2;
+				i += 4;
+			}
+		}
+	}
+
+	/**
+	 * Checks the bytes are well formed UTF-8 while indexing them, or returns null.
+	 */
+	private static final TextCharSequence buildUtf8(final ByteBuffer buffer, final byte[] array,
+			final int arrayOffset, final int begin, final int end) {
+		final int stride = 1 << STRIDE_SHIFT;
+
+		int[] index = new int[((end - begin) >> STRIDE_SHIFT) + 1];
+		int units = 0;
+
+		int i = begin;
+		while (i < end) {
+			final int b1 = (buffer != null) ? buffer.get(i) : array[i + arrayOffset];
+
+			final int width;
+			final int count;
+			if (b1 >= 0) {
+				width = 1;
+				count = 1;
+			} else {
+				width = ((b1 >> 5) == -2) ? 2 : ((b1 >> 4) == -2) ? 3 : ((b1 >> 3) == -2) ? 4 : 0;
+				count = (width == 4) ? 2 : 1;
+
+				if (width == 0 || i + width > end ||
+						!isWellFormed(buffer, array, arrayOffset, i, b1, width)) {
+					return null;
+				}
+			}
+
+			// The char covers units [units, units + count); index any 32nd unit among them.
+			if ((units & (stride - 1)) == 0) {
+				index[units >> STRIDE_SHIFT] = i << 1;
+			} else
+			if (count == 2 && ((units + 1) & (stride - 1)) == 0) {
+				index[(units + 1) >> STRIDE_SHIFT] = (i << 1) | 1;
+			}
+
+			units += count;
+			i += width;
+		}
+
+		return new TextCharSequence(buffer, array, arrayOffset, UTF8, 0, units, index);
+	}
+
+	private static final boolean isWellFormed(final ByteBuffer buffer, final byte[] array,
+			final int arrayOffset, final int i, final int b1, final int width) {
+		int cp = b1 & (0x7F >> width);
+		for (int k = 1; k < width; ++k) {
+			final int b = (buffer != null) ? buffer.get(i + k) : array[i + k + arrayOffset];
+			if ((b & 0xC0) != 0x80) {
+				return false;
+			}
+			cp = (cp << 6) | (b & 0x3F);
+		}
+
+		switch (width) {
+		case 2:  return (cp >= 0x80);
+		case 3:  return (cp >= 0x800 && (cp < 0xD800 || cp > 0xDFFF));
+		default: return (cp >= 0x10000 && cp <= 0x10FFFF);
+		}
+	}
+
+}
@@ -28,6 +28,7 @@ import java.nio.ByteBuffer;
 
 import com.chinmobi.octet.Octet;
 import com.chinmobi.octet.OctetMatchUtils;
+import com.chinmobi.octet.SwarUtils;
 
 /**
  * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
@@ -35,10 +36,122 @@ import com.chinmobi.octet.OctetMatchUtils;
  */
 public final class TextMatchUtils extends OctetMatchUtils {
 
+	private static final int BULK_THRESHOLD = 16;
+
+	private static final byte[] LOWER_CASE = new byte[256];
+	private static final byte[] UPPER_CASE = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; ++i) {
+			LOWER_CASE[i] = (byte)((i >= 'A' && i <= 'Z') ? (i + 32) : i);
+			UPPER_CASE[i] = (byte)((i >= 'a' && i <= 'z') ? (i - 32) : i);
+		}
+	}
+
+
 	private TextMatchUtils() {
 		super();
 	}
 
+	/*
+	 * Case methods
+	 */
+
+	public static byte toLowerCase(final byte b) {
+		return LOWER_CASE[b & 0xFF];
+	}
+
+	public static byte toUpperCase(final byte b) {
+		return UPPER_CASE[b & 0xFF];
+	}
+
+	/**
+	 * Compares two bytes, folding ASCII letters only.
+	 */
+	public static boolean equalsIgnoreCase(final byte obj, final byte src) {
+		return (obj == src) || (LOWER_CASE[obj & 0xFF] == LOWER_CASE[src & 0xFF]);
+	}
+
+	/**
+	 * Compares length bytes of two buffers, folding ASCII letters only; eight bytes
+	 * at a time when the buffers share a byte order.
+	 */
+	public static boolean equalsIgnoreCase(final ByteBuffer buffer, int index,
+			final ByteBuffer another, int anotherIndex, final int length) {
+		final int end = index + length;
+
+		if (length >= BULK_THRESHOLD && buffer.order() == another.order()) {
+			for (final int limit = end - 8; index <= limit; index += 8, anotherIndex += 8) {
+				final long word = buffer.getLong(index);
+				final long anotherWord = another.getLong(anotherIndex);
+				if (word != anotherWord
+						&& SwarUtils.toLowerCase(word) != SwarUtils.toLowerCase(anotherWord)) {
+					return false;
+				}
+			}
+		}
+
+		for (; index < end; ++index, ++anotherIndex) {
+			if (!equalsIgnoreCase(buffer.get(index), another.get(anotherIndex))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static void toLowerCase(final byte[] array, final int start, final int end) {
+		for (int i = start; i < end; ++i) {
+			array[i] = LOWER_CASE[array[i] & 0xFF];
+		}
+	}
+
+	public static void toUpperCase(final byte[] array, final int start, final int end) {
+		for (int i = start; i < end; ++i) {
+			array[i] = UPPER_CASE[array[i] & 0xFF];
+		}
+	}
+
+	/**
+	 * Turns the ASCII letters in [start, end) of the buffer to lower case.
+	 */
+	public static void toLowerCase(final ByteBuffer buffer, int start, final int end) {
+		convertCase(buffer, start, end, true);
+	}
+
+	/**
+	 * Turns the ASCII letters in [start, end) of the buffer to upper case.
+	 */
+	public static void toUpperCase(final ByteBuffer buffer, int start, final int end) {
+		convertCase(buffer, start, end, false);
+	}
+
+	private static void convertCase(final ByteBuffer buffer, int start, final int end, final boolean lower) {
+		if (buffer.hasArray()) {
+			final int offset = buffer.arrayOffset();
+			if (lower) {
+				toLowerCase(buffer.array(), start + offset, end + offset);
+			} else {
+				toUpperCase(buffer.array(), start + offset, end + offset);
+			}
+			return;
+		}
+
+		if ((end - start) >= BULK_THRESHOLD) {
+			for (final int limit = end - 8; start <= limit; start += 8) {
+				final long word = buffer.getLong(start);
+				final long converted = lower ? SwarUtils.toLowerCase(word) : SwarUtils.toUpperCase(word);
+				if (converted != word) {
+					buffer.putLong(start, converted);
+				}
+			}
+		}
+
+		final byte[] table = lower ? LOWER_CASE : UPPER_CASE;
+		for (; start < end; ++start) {
+			buffer.put(start, table[buffer.get(start) & 0xFF]);
+		}
+	}
+
 	// -------------------------------------------------------------------------
 
 	private static void initIgnoreCaseShiftTable(int[] shiftTable,
@@ -48,27 +161,44 @@ public final class TextMatchUtils extends OctetMatchUtils {
 		}
 		final int end = offset + length;
 		for (int i = offset; i < end; ++i) {
-			int pos = 0xFF & bytes[i];
-			shiftTable[pos] = end - i;
-
-			if (pos <= 0x7A && pos >= 0x41) {
-				if (pos >= 0x61) shiftTable[pos - 32] = end - i;
-				else
-				if (pos <= 0x5A) shiftTable[pos + 32] = end - i;
-			}
+			final int pos = 0xFF & bytes[i];
+			shiftTable[0xFF & LOWER_CASE[pos]] = end - i;
+			shiftTable[0xFF & UPPER_CASE[pos]] = end - i;
 		}
 	}
 
-	private static boolean equalsIgnoreCase(final byte obj, final byte src) {
-		if (obj == src) {
-			return true;
-		} else
-		if (obj <= 0x7A && obj >= 0x41) {
-			if (obj >= 0x61) return (obj - 32) == src;
-			if (obj <= 0x5A) return (obj + 32) == src;
+	/**
+	 * Builds the ignore case shift table for findCompiledIgnoreCase once, for patterns
+	 * searched repeatedly.
+	 */
+	public static int[] compileIgnoreCase(final byte[] obj, final int objOffset, final int objLength) {
+		final int[] shiftTable = newShiftTable();
+		initIgnoreCaseShiftTable(shiftTable, obj, objOffset, objLength);
+		return shiftTable;
+	}
+
+	public static int findCompiledIgnoreCase(final Octet src, final int srcOffset, final int srcLength,
+			final byte[] obj, final int objOffset, final int objLength,
+			final int[] compiledShiftTable) {
+
+		if (objLength > 0 && objLength <= srcLength) {
+			final byte[] array = src.array();
+			if (array != null) {
+				final int index = doFindIgnoreCase(array, srcOffset + src.arrayOffset(), srcLength,
+						obj, objOffset, objLength, compiledShiftTable);
+				if (index >= 0) {
+					return index - src.arrayOffset();
+				}
+			} else {
+				final ByteBuffer buffer = src.buffer();
+				if (buffer != null) {
+					return doFindIgnoreCase(buffer, srcOffset, srcLength,
+							obj, objOffset, objLength, compiledShiftTable);
+				}
+			}
 		}
 
-		return false;
+		return -1;
 	}
 
 	public static int findIgnoreCase(final Octet src, final int srcOffset, final int srcLength,
@@ -201,14 +331,9 @@ public final class TextMatchUtils extends OctetMatchUtils {
 		}
 		final int end = offset + length;
 		for (int i = offset; i < end; ++i) {
-			int pos = 0xFF & buffer.get(i);
-			shiftTable[pos] = end - i;
-
-			if (pos <= 0x7A && pos >= 0x41) {
-				if (pos >= 0x61) shiftTable[pos - 32] = end - i;
-				else
-				if (pos <= 0x5A) shiftTable[pos + 32] = end - i;
-			}
+			final int pos = 0xFF & buffer.get(i);
+			shiftTable[0xFF & LOWER_CASE[pos]] = end - i;
+			shiftTable[0xFF & UPPER_CASE[pos]] = end - i;
 		}
 	}
 
@@ -357,14 +482,9 @@ public final class TextMatchUtils extends OctetMatchUtils {
 			shiftTable[i] = length + 1;
 		}
 		for (int i = offset + length - 1; i >= offset; --i) {
-			int pos = 0xFF & bytes[i];
-			shiftTable[pos] = i - offset + 1;
-
-			if (pos <= 0x7A && pos >= 0x41) {
-				if (pos >= 0x61) shiftTable[pos - 32] = i - offset + 1;
-				else
-				if (pos <= 0x5A) shiftTable[pos + 32] = i - offset + 1;
-			}
+			final int pos = 0xFF & bytes[i];
+			shiftTable[0xFF & LOWER_CASE[pos]] = i - offset + 1;
+			shiftTable[0xFF & UPPER_CASE[pos]] = i - offset + 1;
 		}
 	}
 
@@ -495,14 +615,9 @@ public final class TextMatchUtils extends OctetMatchUtils {
 			shiftTable[i] = length + 1;
 		}
 		for (int i = offset + length - 1; i >= offset; --i) {
-			int pos = 0xFF & buffer.get(i);
-			shiftTable[pos] = i - offset + 1;
-
-			if (pos <= 0x7A && pos >= 0x41) {
-				if (pos >= 0x61) shiftTable[pos - 32] = i - offset + 1;
-				else
-				if (pos <= 0x5A) shiftTable[pos + 32] = i - offset + 1;
-			}
+			final int pos = 0xFF & buffer.get(i);
+			shiftTable[0xFF & LOWER_CASE[pos]] = i - offset + 1;
+			shiftTable[0xFF & UPPER_CASE[pos]] = i - offset + 1;
 		}
 	}
 
@@ -0,0 +1,616 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import com.chinmobi.octet.Octet;
+
+/**
+ * Parses and formats decimal numbers directly on the bytes of ASCII compatible text.
+ * <p>
+ * Doubles are formatted with the Ryu algorithm (Ulf Adams, PLDI 2018), which gives the
+ * shortest digit string that reads back to the same value, in the layout of
+ * {@link Double#toString(double)}.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class TextNumberUtils {
+
+	public static final int MAX_INT_LENGTH = 11;
+	public static final int MAX_LONG_LENGTH = 20;
+	public static final int MAX_DOUBLE_LENGTH = 24;
+
+	/** Eighteen digits always fit in a long; longer mantissas take the slow path anyway. */
+	private static final int MAX_MANTISSA_DIGITS = 18;
+
+	private static final int DOUBLE_MANTISSA_BITS = 52;
+	private static final int DOUBLE_EXPONENT_BITS = 11;
+	private static final int DOUBLE_BIAS = 1023;
+
+	private static final int POW5_BITCOUNT = 125;
+	private static final int POW5_INV_BITCOUNT = 125;
+
+	private static final int POW5_TABLE_SIZE = 326;
+	private static final int POW5_INV_TABLE_SIZE = 342;
+
+	private static final long[] POW5_SPLIT = new long[POW5_TABLE_SIZE * 2];
+	private static final long[] POW5_INV_SPLIT = new long[POW5_INV_TABLE_SIZE * 2];
+
+	private static final double[] EXACT_POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	static {
+		final BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+		for (int i = 0; i < POW5_TABLE_SIZE; ++i) {
+			final BigInteger pow = BigInteger.valueOf(5).pow(i);
+			final int shift = pow.bitLength() - POW5_BITCOUNT;
+			final BigInteger split = (shift >= 0) ? pow.shiftRight(shift) : pow.shiftLeft(-shift);
+
+			POW5_SPLIT[i << 1] = split.and(mask).longValue();
+			POW5_SPLIT[(i << 1) + 1] = split.shiftRight(64).longValue();
+		}
+
+		for (int i = 0; i < POW5_INV_TABLE_SIZE; ++i) {
+			final BigInteger pow = BigInteger.valueOf(5).pow(i);
+			final int shift = pow.bitLength() - 1 + POW5_INV_BITCOUNT;
+			final BigInteger inv = BigInteger.ONE.shiftLeft(shift).divide(pow).add(BigInteger.ONE);
+
+			POW5_INV_SPLIT[i << 1] = inv.and(mask).longValue();
+			POW5_INV_SPLIT[(i << 1) + 1] = inv.shiftRight(64).longValue();
+		}
+	}
+
+
+	private TextNumberUtils() {
+	}
+
+
+	/*
+	 * Parse methods
+	 */
+
+	/**
+	 * Parses [begin, end) like {@link Integer#parseInt(String)}.
+	 *
+	 * @throws NumberFormatException
+	 */
+	public static final int parseInt(final Octet text, final int begin, final int end) {
+		final long value = parseLong(text, begin, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		return (int)value;
+	}
+
+	/**
+	 * Parses [begin, end) like {@link Long#parseLong(String)}.
+	 *
+	 * @throws NumberFormatException
+	 */
+	public static final long parseLong(final Octet text, final int begin, final int end) {
+		return parseLong(text, begin, end, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Parses [begin, end) like {@link Double#parseDouble(String)}. Plain decimal input
+	 * with up to 18 significant digits and a small exponent is converted in place;
+	 * anything else goes through Double.parseDouble.
+	 *
+	 * @throws NumberFormatException
+	 */
+	public static final double parseDouble(final Octet text, final int begin, final int end) {
+		checkRange(text, begin, end);
+
+		int i = begin;
+		boolean negative = false;
+
+		if (i < end) {
+			final byte b = text.byteAt(i);
+			if (b == '-' || b == '+') {
+				negative = (b == '-');
+				++i;
+			}
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		boolean exact = true;
+
+		for (; i < end; ++i) {
+			final int d = text.byteAt(i) - '0';
+			if (d < 0 || d > 9) {
+				break;
+			}
+			seenDigit = true;
+			if (digits < MAX_MANTISSA_DIGITS) {
+				mantissa = mantissa * 10 + d;
+				if (mantissa != 0) {
+					++digits;
+				}
+			} else {
+				++exponent;
+				if (d != 0) {
+					exact = false;
+				}
+			}
+		}
+
+		if (i < end && text.byteAt(i) == '.') {
+			for (++i; i < end; ++i) {
+				final int d = text.byteAt(i) - '0';
+				if (d < 0 || d > 9) {
+					break;
+				}
+				seenDigit = true;
+				if (digits < MAX_MANTISSA_DIGITS) {
+					mantissa = mantissa * 10 + d;
+					if (mantissa != 0) {
+						++digits;
+					}
+					--exponent;
+				} else if (d != 0) {
+					exact = false;
+				}
+			}
+		}
+
+		if (seenDigit && i < end && (text.byteAt(i) | 0x20) == 'e') {
+			int j = i + 1;
+			boolean expNegative = false;
+
+			if (j < end) {
+				final byte b = text.byteAt(j);
+				if (b == '-' || b == '+') {
+					expNegative = (b == '-');
+					++j;
+				}
+			}
+
+			int explicit = 0;
+			final int start = j;
+			for (; j < end; ++j) {
+				final int d = text.byteAt(j) - '0';
+				if (d < 0 || d > 9) {
+					break;
+				}
+				if (explicit < 100000) {
+					explicit = explicit * 10 + d;
+				}
+			}
+
+			if (j > start) {
+				exponent += expNegative ? -explicit : explicit;
+				i = j;
+			}
+		}
+
+		if (seenDigit && i == end && exact) {
+			if (mantissa == 0) {
+				return negative ? -0.0d : 0.0d;
+			}
+			if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+				double value = mantissa;
+				if (exponent < 0) {
+					value /= EXACT_POWERS_OF_TEN[-exponent];
+				} else {
+					value *= EXACT_POWERS_OF_TEN[exponent];
+				}
+				return negative ? -value : value;
+			}
+		}
+
+		return Double.parseDouble(asciiString(text, begin, end));
+	}
+
+	/*
+	 * Format methods
+	 */
+
+	/**
+	 * Writes the decimal form of value at index, returning the index after the last digit.
+	 */
+	public static final int putInt(final ByteBuffer buffer, final int index, final int value) {
+		return putLong(buffer, index, value);
+	}
+
+	public static final int putLong(final ByteBuffer buffer, int index, final long value) {
+		long v = value;
+		if (v < 0) {
+			buffer.put(index++, (byte)'-');
+		} else {
+			v = -v;
+		}
+
+		// Digits are produced from the negative value so that MIN_VALUE needs no special case.
+		final int length = negativeDigitCount(v);
+		int pos = index + length;
+		while (v <= -10) {
+			final long q = v / 10;
+			buffer.put(--pos, (byte)('0' + (int)(q * 10 - v)));
+			v = q;
+		}
+		buffer.put(--pos, (byte)('0' - (int)v));
+
+		return index + length;
+	}
+
+	/**
+	 * Writes value in the layout of {@link Double#toString(double)} with the shortest
+	 * digits that read back to it, returning the index after the last byte.
+	 */
+	public static final int putDouble(final ByteBuffer buffer, int index, final double value) {
+		final long bits = Double.doubleToRawLongBits(value);
+		final int ieeeExponent = (int)((bits >>> DOUBLE_MANTISSA_BITS) & ((1 << DOUBLE_EXPONENT_BITS) - 1));
+		final long ieeeMantissa = bits & ((1L << DOUBLE_MANTISSA_BITS) - 1);
+		final boolean sign = bits < 0;
+
+		if (ieeeExponent == ((1 << DOUBLE_EXPONENT_BITS) - 1)) {
+			if (ieeeMantissa != 0) {
+				return putAscii(buffer, index, "NaN");
+			}
+			if (sign) {
+				buffer.put(index++, (byte)'-');
+			}
+			return putAscii(buffer, index, "Infinity");
+		}
+
+		if (sign) {
+			buffer.put(index++, (byte)'-');
+		}
+
+		if (ieeeExponent == 0 && ieeeMantissa == 0) {
+			return putAscii(buffer, index, "0.0");
+		}
+
+		int e2;
+		long m2;
+		if (ieeeExponent == 0) {
+			e2 = 1 - DOUBLE_BIAS - DOUBLE_MANTISSA_BITS - 2;
+			m2 = ieeeMantissa;
+		} else {
+			e2 = ieeeExponent - DOUBLE_BIAS - DOUBLE_MANTISSA_BITS - 2;
+			m2 = ieeeMantissa | (1L << DOUBLE_MANTISSA_BITS);
+		}
+
+		final boolean even = (m2 & 1) == 0;
+		final boolean acceptBounds = even;
+
+		final long mv = 4 * m2;
+		final int mmShift = (ieeeMantissa != 0 || ieeeExponent <= 1) ? 1 : 0;
+
+		long vr, vp, vm;
+		int e10;
+		boolean vmIsTrailingZeros = false;
+		boolean vrIsTrailingZeros = false;
+
+		if (e2 >= 0) {
+			final int q = log10Pow2(e2) - ((e2 > 3) ? 1 : 0);
+			e10 = q;
+			final int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+			final int i = -e2 + q + k;
+
+			vr = mulShift(4 * m2, POW5_INV_SPLIT, q, i);
+			vp = mulShift(4 * m2 + 2, POW5_INV_SPLIT, q, i);
+			vm = mulShift(4 * m2 - 1 - mmShift, POW5_INV_SPLIT, q, i);
+
+			if (q <= 21) {
+				if (mv % 5 == 0) {
+					vrIsTrailingZeros = multipleOfPowerOf5(mv, q);
+				} else if (acceptBounds) {
+					vmIsTrailingZeros = multipleOfPowerOf5(mv - 1 - mmShift, q);
+				} else {
+					vp -= multipleOfPowerOf5(mv + 2, q) ? 1 : 0;
+				}
+			}
+		} else {
+			final int q = log10Pow5(-e2) - ((-e2 > 1) ? 1 : 0);
+			e10 = q + e2;
+			final int i = -e2 - q;
+			final int k = pow5bits(i) - POW5_BITCOUNT;
+			final int j = q - k;
+
+			vr = mulShift(4 * m2, POW5_SPLIT, i, j);
+			vp = mulShift(4 * m2 + 2, POW5_SPLIT, i, j);
+			vm = mulShift(4 * m2 - 1 - mmShift, POW5_SPLIT, i, j);
+
+			if (q <= 1) {
+				vrIsTrailingZeros = true;
+				if (acceptBounds) {
+					vmIsTrailingZeros = (mmShift == 1);
+				} else {
+					--vp;
+				}
+			} else if (q < 63) {
+				vrIsTrailingZeros = (mv & ((1L << q) - 1)) == 0;
+			}
+		}
+
+		int removed = 0;
+		int lastRemovedDigit = 0;
+		long output;
+
+		if (vmIsTrailingZeros || vrIsTrailingZeros) {
+			while (vp / 10 > vm / 10) {
+				vmIsTrailingZeros &= (vm % 10 == 0);
+				vrIsTrailingZeros &= (lastRemovedDigit == 0);
+				lastRemovedDigit = (int)(vr % 10);
+				vr /= 10;
+				vp /= 10;
+				vm /= 10;
+				++removed;
+			}
+			if (vmIsTrailingZeros) {
+				while (vm % 10 == 0) {
+					vrIsTrailingZeros &= (lastRemovedDigit == 0);
+					lastRemovedDigit = (int)(vr % 10);
+					vr /= 10;
+					vp /= 10;
+					vm /= 10;
+					++removed;
+				}
+			}
+			if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0) {
+				// Round half to even.
+				lastRemovedDigit = 4;
+			}
+			output = vr + (((vr == vm && (!acceptBounds || !vmIsTrailingZeros)) || lastRemovedDigit >= 5) ? 1 : 0);
+		} else {
+			boolean roundUp = false;
+			if (vp / 100 > vm / 100) {
+				roundUp = (vr % 100) >= 50;
+				vr /= 100;
+				vp /= 100;
+				vm /= 100;
+				removed += 2;
+			}
+			while (vp / 10 > vm / 10) {
+				roundUp = (vr % 10) >= 5;
+				vr /= 10;
+				vp /= 10;
+				vm /= 10;
+				++removed;
+			}
+			output = vr + ((vr == vm || roundUp) ? 1 : 0);
+		}
+
+		return putDecimal(buffer, index, output, e10 + removed);
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private static final void checkRange(final Octet text, final int begin, final int end) {
+		if (begin < text.begin() || begin > end || end > text.end()) {
+			throw new IndexOutOfBoundsException("Begin: " + begin + " End: " + end);
+		}
+	}
+
+	private static final long parseLong(final Octet text, final int begin, final int end,
+			final long min, final long max) {
+		checkRange(text, begin, end);
+
+		int i = begin;
+		if (i == end) {
+			throw new NumberFormatException("Empty number.");
+		}
+
+		boolean negative = false;
+		final byte first = text.byteAt(i);
+		if (first == '-' || first == '+') {
+			negative = (first == '-');
+			if (++i == end) {
+				throw numberFormat(text, begin, end);
+			}
+		}
+
+		// Accumulates negatively, as Long.parseLong does, to reach MIN_VALUE.
+		final long limit = negative ? min : -max;
+		final long multmin = limit / 10;
+
+		long result = 0;
+		for (; i < end; ++i) {
+			final int d = text.byteAt(i) - '0';
+			if (d < 0 || d > 9 || result < multmin) {
+				throw numberFormat(text, begin, end);
+			}
+			result *= 10;
+			if (result < limit + d) {
+				throw numberFormat(text, begin, end);
+			}
+			result -= d;
+		}
+
+		return negative ? result : -result;
+	}
+
+	private static final NumberFormatException numberFormat(final Octet text, final int begin, final int end) {
+		return new NumberFormatException("For input string: \"" + asciiString(text, begin, end) + "\"");
+	}
+
+	@SuppressWarnings("deprecation")
+	private static final String asciiString(final Octet text, final int begin, final int end) {
+		final byte[] bytes = new byte[end - begin];
+		for (int i = begin; i < end; ++i) {
+			bytes[i - begin] = text.byteAt(i);
+		}
+		return new String(bytes, 0, 0, bytes.length);
+	}
+
+	private static final int negativeDigitCount(final long v) {
+		long p = -10;
+		for (int i = 1; i < 19; ++i) {
+			if (v > p) {
+				return i;
+			}
+			p *= 10;
+		}
+		return 19;
+	}
+
+	private static final int putAscii(final ByteBuffer buffer, int index, final String s) {
+		for (int i = 0; i < s.length(); ++i) {
+			buffer.put(index++, (byte)s.charAt(i));
+		}
+		return index;
+	}
+
+	/**
+	 * Lays out output * 10^exponent as Double.toString does.
+	 */
+	private static final int putDecimal(final ByteBuffer buffer, int index, long output, final int exponent) {
+		final int length = negativeDigitCount(-output);
+		final int sciExponent = exponent + length - 1;
+
+		if (sciExponent >= -3 && sciExponent < 7) {
+			if (sciExponent >= 0) {
+				final int intLength = sciExponent + 1;
+				if (length <= intLength) {
+					putDigits(buffer, index, output, length);
+					index += length;
+					for (int i = length; i < intLength; ++i) {
+						buffer.put(index++, (byte)'0');
+					}
+					buffer.put(index++, (byte)'.');
+					buffer.put(index++, (byte)'0');
+				} else {
+					// d...d.d...d, written right to left
+					final int end = index + length + 1;
+					int pos = end;
+					for (int i = length; i > intLength; --i) {
+						buffer.put(--pos, (byte)('0' + (int)(output % 10)));
+						output /= 10;
+					}
+					buffer.put(--pos, (byte)'.');
+					putDigits(buffer, index, output, intLength);
+					index = end;
+				}
+			} else {
+				buffer.put(index++, (byte)'0');
+				buffer.put(index++, (byte)'.');
+				for (int i = -1; i > sciExponent; --i) {
+					buffer.put(index++, (byte)'0');
+				}
+				putDigits(buffer, index, output, length);
+				index += length;
+			}
+			return index;
+		}
+
+		// d.d...dEn
+		if (length == 1) {
+			buffer.put(index++, (byte)('0' + (int)output));
+			buffer.put(index++, (byte)'.');
+			buffer.put(index++, (byte)'0');
+		} else {
+			final int end = index + length + 1;
+			int pos = end;
+			for (int i = length; i > 1; --i) {
+				buffer.put(--pos, (byte)('0' + (int)(output % 10)));
+				output /= 10;
+			}
+			buffer.put(--pos, (byte)'.');
+			buffer.put(--pos, (byte)('0' + (int)output));
+			index = end;
+		}
+
+		buffer.put(index++, (byte)'E');
+		return putLong(buffer, index, sciExponent);
+	}
+
+	private static final void putDigits(final ByteBuffer buffer, final int index, long value, final int length) {
+		for (int pos = index + length - 1; pos >= index; --pos) {
+			buffer.put(pos, (byte)('0' + (int)(value % 10)));
+			value /= 10;
+		}
+	}
+
+	private static final int pow5bits(final int e) {
+		return ((e * 1217359) >>> 19) + 1;
+	}
+
+	private static final int log10Pow2(final int e) {
+		return (e * 78913) >>> 18;
+	}
+
+	private static final int log10Pow5(final int e) {
+		return (e * 732923) >>> 20;
+	}
+
+	private static final boolean multipleOfPowerOf5(long value, final int p) {
+		int count = 0;
+		while (value % 5 == 0) {
+			value /= 5;
+			if (++count >= p) {
+				return true;
+			}
+		}
+		return count >= p;
+	}
+
+	/**
+	 * (m * table[index]) >> j, where the table entry is 128 bits wide and j >= 64.
+	 */
+	private static final long mulShift(final long m, final long[] table, final int index, final int j) {
+		final long lo = table[index << 1];
+		final long hi = table[(index << 1) + 1];
+
+		final long b0High = multiplyHighUnsigned(m, lo);
+		final long b2Low = m * hi;
+		final long b2High = multiplyHighUnsigned(m, hi);
+
+		final long sumLow = b0High + b2Low;
+		final long sumHigh = b2High + ((Long.compareUnsigned(sumLow, b2Low) < 0) ? 1 : 0);
+
+		final int shift = j - 64;
+		if (shift == 0) {
+			return sumLow;
+		}
+		return (sumLow >>> shift) | (sumHigh << (64 - shift));
+	}
+
+	private static final long multiplyHighUnsigned(final long a, final long b) {
+		final long mask = 0xFFFFFFFFL;
+
+		final long aLow = a & mask;
+		final long aHigh = a >>> 32;
+		final long bLow = b & mask;
+		final long bHigh = b >>> 32;
+
+		final long lowLow = aLow * bLow;
+		final long highLow = aHigh * bLow;
+		final long lowHigh = aLow * bHigh;
+		final long highHigh = aHigh * bHigh;
+
+		final long cross = (lowLow >>> 32) + (highLow & mask) + lowHigh;
+		return (highLow >>> 32) + (cross >>> 32) + highHigh;
+	}
+
+}
@@ -76,6 +76,10 @@ public interface TextOctet extends Octet {
 
 	public TextOctet trim();
 
+	public int parseInt(int beginIndex, int endIndex);
+	public long parseLong(int beginIndex, int endIndex);
+	public double parseDouble(int beginIndex, int endIndex);
+
 	public boolean hasCharset();
 
 	public boolean isSameCharset(String charsetName);
@@ -86,6 +90,8 @@ public interface TextOctet extends Octet {
 
 	public Reader getReader();
 
+	public CharSequence asCharSequence();
+
 	public String toString();
 
 }
@@ -0,0 +1,324 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * A Reader that decodes a text octet in its charset straight from the octet's bytes
+ * into the caller's chars, with no buffering of its own. The bytes are taken as they
+ * are when the reader is made. {@link #readLine()} hands lines out as a reused view
+ * rather than as strings.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class TextOctetReader extends Reader {
+
+	private final TextOctet source;
+	private final int beginIndex;
+	private final int endIndex;
+
+	/** The octet's bytes; the octet index of a byte is its position less indexBase. */
+	private final ByteBuffer input;
+	private final int indexBase;
+
+	private final CharsetDecoder decoder;
+
+	private CharBuffer single;
+	private CharBuffer pair;
+
+	private TextTokenizer lines;
+	private int lineMode;
+
+	/** The low half of a surrogate pair, when a read had room for the high half only. */
+	private int pending;
+	private boolean finished;
+	private boolean closed;
+
+	private int markIndex;
+	private int markPending;
+
+
+	public TextOctetReader(final TextOctet source) {
+		this(source, source.begin(), source.end());
+	}
+
+	public TextOctetReader(final TextOctet source, final int beginIndex, final int endIndex) {
+		super();
+
+		if (beginIndex < source.begin() || beginIndex > endIndex || endIndex > source.end()) {
+			throw new IndexOutOfBoundsException("Begin: " + beginIndex + " End: " + endIndex);
+		}
+
+		this.source = source;
+		this.beginIndex = beginIndex;
+		this.endIndex = endIndex;
+
+		final ByteBuffer buffer = source.buffer();
+		if (buffer != null) {
+			this.input = buffer.duplicate();
+			this.input.limit(endIndex).position(beginIndex);
+			this.indexBase = 0;
+		} else {
+			final byte[] array = source.hasArray() ? source.array() : new byte[0];
+			this.indexBase = source.hasArray() ? source.arrayOffset() : 0;
+			this.input = ByteBuffer.wrap(array, beginIndex + this.indexBase, endIndex - beginIndex);
+		}
+
+		this.decoder = CharsetUtils.newDecoder(source.getCharset());
+
+		this.pending = -1;
+		this.markIndex = beginIndex;
+		this.markPending = -1;
+	}
+
+
+	/**
+	 * Returns the index in the octet of the next byte to decode.
+	 */
+	public final int position() {
+		return this.input.position() - this.indexBase;
+	}
+
+	/*
+	 * Read methods
+	 */
+
+	@Override
+	public final int read() throws IOException {
+		ensureOpen();
+
+		if (this.pending >= 0) {
+			final int c = this.pending;
+			this.pending = -1;
+			return c;
+		}
+
+		CharBuffer chars = this.single;
+		if (chars == null) {
+			chars = CharBuffer.allocate(1);
+			this.single = chars;
+		}
+		chars.clear();
+
+		return (decode(chars) > 0) ? chars.get(0) : -1;
+	}
+
+	@Override
+	public final int read(final char[] cbuf, final int off, final int len) throws IOException {
+		if (off < 0 || len < 0 || off > cbuf.length - len) {
+			throw new IndexOutOfBoundsException("Offset: " + off + " Length: " + len);
+		}
+		ensureOpen();
+
+		if (len == 0) {
+			return 0;
+		}
+
+		int count = 0;
+		if (this.pending >= 0) {
+			cbuf[off] = (char)this.pending;
+			this.pending = -1;
+			++count;
+		}
+
+		if (count < len) {
+			count += decode(CharBuffer.wrap(cbuf, off + count, len - count));
+		}
+
+		return (count > 0) ? count : -1;
+	}
+
+	@Override
+	public final int read(final CharBuffer target) throws IOException {
+		ensureOpen();
+
+		if (!target.hasRemaining()) {
+			return 0;
+		}
+
+		int count = 0;
+		if (this.pending >= 0) {
+			target.put((char)this.pending);
+			this.pending = -1;
+			++count;
+		}
+
+		if (target.hasRemaining()) {
+			count += decode(target);
+		}
+
+		return (count > 0) ? count : -1;
+	}
+
+	/**
+	 * Reads the next line, ended by LF, CR or CRLF, and returns a view over its bytes
+	 * without the line end, or null at the end of the text. The same view is returned
+	 * on every call and is moved by the next one, so copy it to keep it.
+	 *
+	 * @throws IllegalStateException if the charset does not write CR and LF as single
+	 *         bytes, or a read stopped in the middle of a surrogate pair
+	 */
+	public final TextOctet readLine() throws IOException {
+		ensureOpen();
+
+		if (this.lineMode == 0) {
+			final byte[] crlf = "\r\n".getBytes(this.source.getCharset());
+			this.lineMode = (crlf.length == 2 && crlf[0] == '\r' && crlf[1] == '\n') ? 1 : -1;
+		}
+		if (this.lineMode < 0) {
+			throw new IllegalStateException("Lines are not byte delimited in " +
+					this.source.getCharset().name());
+		}
+		if (this.pending >= 0) {
+			throw new IllegalStateException("In the middle of a surrogate pair");
+		}
+
+		TextTokenizer lines = this.lines;
+		if (lines == null) {
+			lines = new TextTokenizer();
+			this.lines = lines;
+		}
+
+		lines.reset(this.source, position(), this.endIndex);
+		if (!lines.next()) {
+			return null;
+		}
+
+		this.input.position(lines.position() + this.indexBase);
+		return lines.token();
+	}
+
+	@Override
+	public final long skip(final long n) throws IOException {
+		if (n < 0) {
+			throw new IllegalArgumentException("Skip value is negative");
+		}
+		ensureOpen();
+
+		final char[] array = new char[(int)Math.min(n, 512)];
+
+		long skipped = 0;
+		while (skipped < n) {
+			final int count = read(array, 0, (int)Math.min(n - skipped, array.length));
+			if (count < 0) {
+				break;
+			}
+			skipped += count;
+		}
+
+		return skipped;
+	}
+
+	@Override
+	public final boolean ready() throws IOException {
+		ensureOpen();
+		return (this.pending >= 0 || !this.finished);
+	}
+
+	@Override
+	public final boolean markSupported() {
+		return true;
+	}
+
+	/**
+	 * Marks the present position; the limit does not matter as the bytes are all there.
+	 */
+	@Override
+	public final void mark(final int readAheadLimit) throws IOException {
+		ensureOpen();
+
+		this.markIndex = position();
+		this.markPending = this.pending;
+	}
+
+	@Override
+	public final void reset() throws IOException {
+		ensureOpen();
+
+		this.input.position(this.markIndex + this.indexBase);
+		this.pending = this.markPending;
+
+		this.decoder.reset();
+		this.finished = false;
+	}
+
+	@Override
+	public final void close() {
+		this.closed = true;
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final void ensureOpen() throws IOException {
+		if (this.closed) {
+			throw new IOException("Reader closed");
+		}
+	}
+
+	/**
+	 * Decodes into the room of out and returns the number of chars decoded, zero only
+	 * at the end of the text.
+	 */
+	private final int decode(final CharBuffer out) {
+		final int start = out.position();
+
+		if (!this.finished) {
+			final CoderResult result = this.decoder.decode(this.input, out, true);
+
+			if (result.isUnderflow()) {
+				if (this.decoder.flush(out).isUnderflow()) {
+					this.finished = true;
+				}
+			} else
+			if (out.position() == start) {
+				// No room for a surrogate pair: hand out its high half now and keep the other.
+				CharBuffer pair = this.pair;
+				if (pair == null) {
+					pair = CharBuffer.allocate(2);
+					this.pair = pair;
+				}
+				pair.clear();
+
+				this.decoder.decode(this.input, pair, true);
+				out.put(pair.get(0));
+				if (pair.position() > 1) {
+					this.pending = pair.get(1);
+				}
+			}
+		}
+
+		return out.position() - start;
+	}
+
+}
@@ -0,0 +1,1192 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.ArrayList;
+import java.util.Set;
+
+import com.chinmobi.octet.OctetAppendable;
+
+/**
+ * A large-text buffer kept as a balanced tree of immutable {@link ArrayText}
+ * and {@link BufferText} chunks. Edits are O(log n) and subropes share the
+ * chunks of the rope they were taken from.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public class TextRope {
+
+	static final int CHUNK_SIZE = 64 * 1024;
+
+	static final int MERGE_LENGTH = 256;
+
+	private Node root;
+
+	private Charset charset;
+
+
+	public TextRope() {
+		this.root = null;
+	}
+
+	/**
+	 * The bytes of the given text are shared, not copied; they must not be
+	 * modified while the rope is in use.
+	 */
+	public TextRope(final TextOctet text) {
+		this.root = newLeaf(text, text.begin(), text.length());
+		if (text.hasCharset()) {
+			this.charset = text.getCharset();
+		}
+	}
+
+	public TextRope(final ExpandableTextBuffer buffer) {
+		final TextOctet text = buffer.toInputText();
+
+		final ArrayList<Node> leaves = new ArrayList<Node>();
+
+		final int end = text.end();
+		for (int i = text.begin(); i < end; i += CHUNK_SIZE) {
+			final int length = Math.min(CHUNK_SIZE, end - i);
+
+			final byte[] chunk = new byte[length];
+			copyBytes(text, i, chunk, 0, length);
+
+			leaves.add(new Leaf(new ArrayText(chunk)));
+		}
+
+		this.root = build(leaves, 0, leaves.size());
+		if (buffer.hasCharset()) {
+			this.charset = buffer.getCharset();
+		}
+	}
+
+	private TextRope(final Node root, final Charset charset) {
+		this.root = root;
+		this.charset = charset;
+	}
+
+
+	public final TextRope clear() {
+		this.root = null;
+		return this;
+	}
+
+	public final int length() {
+		return (this.root != null) ? this.root.length : 0;
+	}
+
+	public final boolean isEmpty() {
+		return (this.root == null);
+	}
+
+	public final byte byteAt(final int index) {
+		if (index < 0 || index >= length()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length());
+		}
+
+		Node node = this.root;
+		int offset = index;
+
+		while (node instanceof Concat) {
+			final Concat concat = (Concat)node;
+			if (offset < concat.left.length) {
+				node = concat.left;
+			} else {
+				offset -= concat.left.length;
+				node = concat.right;
+			}
+		}
+
+		final TextOctet text = ((Leaf)node).text;
+		return text.byteAt(text.begin() + offset);
+	}
+
+	public final byte[] getBytes() {
+		final byte[] bytes = new byte[length()];
+		copyBytes(0, bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	public final TextRope subrope(final int beginIndex) {
+		return subrope(beginIndex, length());
+	}
+
+	public final TextRope subrope(final int beginIndex, final int endIndex) {
+		checkRange(beginIndex, endIndex);
+		return new TextRope(slice(this.root, beginIndex, endIndex), this.charset);
+	}
+
+	/*
+	 * Append methods
+	 */
+
+	/**
+	 * The bytes of the given text are shared, not copied.
+	 */
+	public final TextRope append(final TextOctet text) {
+		return replace(length(), length(), text);
+	}
+
+	public final TextRope append(final byte[] bytes, final int offset, final int length) {
+		return replace(length(), length(), bytes, offset, length);
+	}
+
+	public final TextRope append(final CharSequence csq) {
+		return replace(length(), length(), csq);
+	}
+
+	public final TextRope append(final TextRope rope) {
+		return replace(length(), length(), rope);
+	}
+
+	/*
+	 * Insert methods
+	 */
+
+	public final TextRope insert(final int offset, final TextOctet text) {
+		return replace(offset, offset, text);
+	}
+
+	public final TextRope insert(final int offset, final byte[] bytes, final int start, final int length) {
+		return replace(offset, offset, bytes, start, length);
+	}
+
+	public final TextRope insert(final int offset, final CharSequence csq) {
+		return replace(offset, offset, csq);
+	}
+
+	public final TextRope insert(final int offset, final TextRope rope) {
+		return replace(offset, offset, rope);
+	}
+
+	/*
+	 * Delete methods
+	 */
+
+	public final TextRope delete(final int beginIndex, int endIndex) {
+		if (endIndex > length()) {
+			endIndex = length();
+		}
+		return doReplace(beginIndex, endIndex, null);
+	}
+
+	/*
+	 * Replace methods
+	 */
+
+	public final TextRope replace(final int beginIndex, final int endIndex, final TextOctet text) {
+		return doReplace(beginIndex, endIndex, newLeaf(text, text.begin(), text.length()));
+	}
+
+	public final TextRope replace(final int beginIndex, final int endIndex,
+			final byte[] bytes, final int offset, final int length) {
+		if (offset < 0 || length < 0 || offset > bytes.length - length) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		Node node = null;
+		if (length > 0) {
+			final byte[] chunk = new byte[length];
+			System.arraycopy(bytes, offset, chunk, 0, length);
+			node = new Leaf(new ArrayText(chunk));
+		}
+		return doReplace(beginIndex, endIndex, node);
+	}
+
+	public final TextRope replace(final int beginIndex, final int endIndex, final CharSequence csq) {
+		Node node = null;
+		if (csq.length() > 0) {
+			final ByteBuffer bytes = getCharset().encode(CharBuffer.wrap(csq));
+			node = new Leaf(new ArrayText(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining()));
+		}
+		return doReplace(beginIndex, endIndex, node);
+	}
+
+	public final TextRope replace(final int beginIndex, final int endIndex, final TextRope rope) {
+		return doReplace(beginIndex, endIndex, rope.root);
+	}
+
+	private final TextRope doReplace(final int beginIndex, final int endIndex, final Node node) {
+		checkRange(beginIndex, endIndex);
+
+		this.root = join(join(head(this.root, beginIndex), node), tail(this.root, endIndex));
+		return this;
+	}
+
+	private final void checkRange(final int beginIndex, final int endIndex) {
+		if (beginIndex < 0 || endIndex > length() || beginIndex > endIndex) {
+			throw new IndexOutOfBoundsException("Begin: " + beginIndex + ", End: " + endIndex + ", Length: " + length());
+		}
+	}
+
+	/*
+	 * equals methods
+	 */
+
+	public final boolean equals(final boolean ignoreCase, final TextRope another) {
+		if (this == another) {
+			return true;
+		}
+		if (length() != another.length()) {
+			return false;
+		}
+
+		final int[] leafStart = new int[1];
+		int index = 0;
+
+		while (index < length()) {
+			final TextOctet text = another.leafAt(index, leafStart).text;
+
+			final int start = text.begin() + (index - leafStart[0]);
+			if (!regionMatches(ignoreCase, index, text, start, text.end() - start)) {
+				return false;
+			}
+
+			index += text.end() - start;
+		}
+
+		return true;
+	}
+
+	public final boolean equals(final boolean ignoreCase, final byte[] bytes, final int offset, final int length) {
+		return (length == length()) && regionMatches(ignoreCase, 0, bytes, offset, length);
+	}
+
+	public final boolean equals(final boolean ignoreCase, final byte[] bytes) {
+		return equals(ignoreCase, bytes, 0, bytes.length);
+	}
+
+	public final boolean equals(final boolean ignoreCase, final TextOctet text) {
+		return (text.length() == length()) && regionMatches(ignoreCase, 0, text, text.begin(), text.length());
+	}
+
+	/*
+	 * startsWith methods
+	 */
+
+	public final boolean startsWith(final boolean ignoreCase, final byte[] bytes, final int offset, final int length) {
+		return startsWith(ignoreCase, 0, bytes, offset, length);
+	}
+
+	public final boolean startsWith(final boolean ignoreCase, final byte[] bytes) {
+		return startsWith(ignoreCase, 0, bytes, 0, bytes.length);
+	}
+
+	public final boolean startsWith(final boolean ignoreCase, final TextOctet prefix) {
+		return startsWith(ignoreCase, 0, prefix);
+	}
+
+	public final boolean startsWith(final boolean ignoreCase, int fromIndex, final byte[] bytes, final int offset, final int length) {
+		if (fromIndex < 0) {
+			fromIndex = 0;
+		}
+		return (length() - fromIndex >= length) && regionMatches(ignoreCase, fromIndex, bytes, offset, length);
+	}
+
+	public final boolean startsWith(final boolean ignoreCase, final int fromIndex, final byte[] bytes) {
+		return startsWith(ignoreCase, fromIndex, bytes, 0, bytes.length);
+	}
+
+	public final boolean startsWith(final boolean ignoreCase, int fromIndex, final TextOctet prefix) {
+		if (fromIndex < 0) {
+			fromIndex = 0;
+		}
+		return (length() - fromIndex >= prefix.length())
+				&& regionMatches(ignoreCase, fromIndex, prefix, prefix.begin(), prefix.length());
+	}
+
+	/*
+	 * endsWith methods
+	 */
+
+	public final boolean endsWith(final boolean ignoreCase, final byte[] bytes, final int offset, final int length) {
+		return (length() >= length) && regionMatches(ignoreCase, length() - length, bytes, offset, length);
+	}
+
+	public final boolean endsWith(final boolean ignoreCase, final byte[] bytes) {
+		return endsWith(ignoreCase, bytes, 0, bytes.length);
+	}
+
+	public final boolean endsWith(final boolean ignoreCase, final TextOctet suffix) {
+		return (length() >= suffix.length())
+				&& regionMatches(ignoreCase, length() - suffix.length(), suffix, suffix.begin(), suffix.length());
+	}
+
+	/*
+	 * indexOf methods
+	 */
+
+	public final int indexOf(final byte b) {
+		return indexOf(0, b);
+	}
+
+	public final int indexOf(int fromIndex, final byte b) {
+		if (fromIndex < 0) {
+			fromIndex = 0;
+		}
+
+		final int[] leafStart = new int[1];
+		int start = fromIndex;
+
+		while (start < length()) {
+			final TextOctet text = leafAt(start, leafStart).text;
+
+			final int index = text.indexOf(text.begin() + (start - leafStart[0]), b);
+			if (index >= 0) {
+				return leafStart[0] + (index - text.begin());
+			}
+
+			start = leafStart[0] + text.length();
+		}
+
+		return -1;
+	}
+
+	public final int indexOf(final boolean ignoreCase, final TextOctet octet) {
+		return indexOf(ignoreCase, 0, octet.getBytes());
+	}
+
+	public final int indexOf(final boolean ignoreCase, final byte[] bytes, final int offset, final int length) {
+		return indexOf(ignoreCase, 0, bytes, offset, length);
+	}
+
+	public final int indexOf(final boolean ignoreCase, final byte[] bytes) {
+		return indexOf(ignoreCase, 0, bytes, 0, bytes.length);
+	}
+
+	public final int indexOf(final boolean ignoreCase, final int fromIndex, final TextOctet octet) {
+		return indexOf(ignoreCase, fromIndex, octet.getBytes());
+	}
+
+	public final int indexOf(final boolean ignoreCase, final int fromIndex, final byte[] bytes) {
+		return indexOf(ignoreCase, fromIndex, bytes, 0, bytes.length);
+	}
+
+	public final int indexOf(final boolean ignoreCase, int fromIndex, final byte[] bytes, final int offset, final int length) {
+		if (fromIndex < 0) {
+			fromIndex = 0;
+		}
+
+		final int total = length();
+		if (length <= 0 || total - fromIndex < length) {
+			return -1;
+		}
+
+		int[] shiftTable = null;
+		if (TextMatchUtils.shouldShiftTable(total - fromIndex, length)) {
+			shiftTable = TextMatchUtils.newShiftTable();
+		}
+
+		final int[] leafStart = new int[1];
+		int start = fromIndex;
+
+		while (start < total) {
+			final TextOctet text = leafAt(start, leafStart).text;
+			final int leafEnd = leafStart[0] + text.length();
+
+			final int index = find(ignoreCase, text, text.begin() + (start - leafStart[0]), leafEnd - start,
+					bytes, offset, length, shiftTable);
+			if (index >= 0) {
+				return leafStart[0] + (index - text.begin());
+			}
+
+			// Matches that start in this leaf and end in the following ones.
+			if (leafEnd < total && length > 1) {
+				final int windowBegin = Math.max(start, leafEnd - length + 1);
+				final int windowEnd = Math.min(leafEnd + length - 1, total);
+
+				final int found = findInWindow(ignoreCase, false, windowBegin, windowEnd, bytes, offset, length);
+				if (found >= 0) {
+					return found;
+				}
+			}
+
+			start = leafEnd;
+		}
+
+		return -1;
+	}
+
+	/*
+	 * lastIndexOf methods
+	 */
+
+	public final int lastIndexOf(final byte b) {
+		return lastIndexOf(length() - 1, b);
+	}
+
+	public final int lastIndexOf(final int fromIndex, final byte b) {
+		final int[] leafStart = new int[1];
+		int end = Math.min(fromIndex + 1, length());
+
+		while (end > 0) {
+			final TextOctet text = leafAt(end - 1, leafStart).text;
+
+			final int index = text.lastIndexOf(text.begin() + (end - 1 - leafStart[0]), b);
+			if (index >= 0) {
+				return leafStart[0] + (index - text.begin());
+			}
+
+			end = leafStart[0];
+		}
+
+		return -1;
+	}
+
+	public final int lastIndexOf(final boolean ignoreCase, final TextOctet octet) {
+		return lastIndexOf(ignoreCase, length(), octet.getBytes());
+	}
+
+	public final int lastIndexOf(final boolean ignoreCase, final byte[] bytes, final int offset, final int length) {
+		return lastIndexOf(ignoreCase, length(), bytes, offset, length);
+	}
+
+	public final int lastIndexOf(final boolean ignoreCase, final byte[] bytes) {
+		return lastIndexOf(ignoreCase, length(), bytes, 0, bytes.length);
+	}
+
+	public final int lastIndexOf(final boolean ignoreCase, final int toIndex, final TextOctet octet) {
+		return lastIndexOf(ignoreCase, toIndex, octet.getBytes());
+	}
+
+	public final int lastIndexOf(final boolean ignoreCase, final int toIndex, final byte[] bytes) {
+		return lastIndexOf(ignoreCase, toIndex, bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Finds the last match that lies entirely before <code>toIndex</code>.
+	 */
+	public final int lastIndexOf(final boolean ignoreCase, int toIndex, final byte[] bytes, final int offset, final int length) {
+		if (toIndex > length()) {
+			toIndex = length();
+		}
+
+		if (length <= 0 || toIndex < length) {
+			return -1;
+		}
+
+		int[] shiftTable = null;
+		if (TextMatchUtils.shouldShiftTable(toIndex, length)) {
+			shiftTable = TextMatchUtils.newShiftTable();
+		}
+
+		final int[] leafStart = new int[1];
+		int end = toIndex;
+
+		while (end > 0) {
+			final TextOctet text = leafAt(end - 1, leafStart).text;
+
+			final int index = reverseFind(ignoreCase, text, text.begin(), end - leafStart[0],
+					bytes, offset, length, shiftTable);
+			if (index >= 0) {
+				return leafStart[0] + (index - text.begin());
+			}
+
+			// Matches that end in this leaf and start in the preceding ones.
+			if (leafStart[0] > 0 && length > 1) {
+				final int windowBegin = Math.max(leafStart[0] - length + 1, 0);
+				final int windowEnd = Math.min(leafStart[0] + length - 1, end);
+
+				final int found = findInWindow(ignoreCase, true, windowBegin, windowEnd, bytes, offset, length);
+				if (found >= 0) {
+					return found;
+				}
+			}
+
+			end = leafStart[0];
+		}
+
+		return -1;
+	}
+
+	private final int findInWindow(final boolean ignoreCase, final boolean reverse,
+			final int windowBegin, final int windowEnd, final byte[] bytes, final int offset, final int length) {
+		final int windowLength = windowEnd - windowBegin;
+		if (windowLength < length) {
+			return -1;
+		}
+
+		final byte[] window = new byte[windowLength];
+		copyBytes(windowBegin, window, 0, windowLength);
+
+		final ArrayText text = new ArrayText(window);
+
+		final int index = reverse ?
+				reverseFind(ignoreCase, text, 0, windowLength, bytes, offset, length, null) :
+				find(ignoreCase, text, 0, windowLength, bytes, offset, length, null);
+
+		return (index >= 0) ? windowBegin + index : -1;
+	}
+
+	private static int find(final boolean ignoreCase, final TextOctet src, final int srcOffset, final int srcLength,
+			final byte[] obj, final int objOffset, final int objLength, final int[] shiftTable) {
+		if (ignoreCase) {
+			return TextMatchUtils.findIgnoreCase(src, srcOffset, srcLength, obj, objOffset, objLength, shiftTable);
+		} else {
+			return TextMatchUtils.find(src, srcOffset, srcLength, obj, objOffset, objLength, shiftTable);
+		}
+	}
+
+	private static int reverseFind(final boolean ignoreCase, final TextOctet src, final int srcOffset, final int srcLength,
+			final byte[] obj, final int objOffset, final int objLength, final int[] shiftTable) {
+		if (ignoreCase) {
+			return TextMatchUtils.reverseFindIgnoreCase(src, srcOffset, srcLength, obj, objOffset, objLength, shiftTable);
+		} else {
+			return TextMatchUtils.reverseFind(src, srcOffset, srcLength, obj, objOffset, objLength, shiftTable);
+		}
+	}
+
+	private final boolean regionMatches(final boolean ignoreCase, final int fromIndex,
+			final byte[] bytes, int offset, int length) {
+		final int[] leafStart = new int[1];
+		int start = fromIndex;
+
+		while (length > 0) {
+			final TextOctet text = leafAt(start, leafStart).text;
+
+			final int n = Math.min(length, leafStart[0] + text.length() - start);
+			if (!text.startsWith(ignoreCase, text.begin() + (start - leafStart[0]), bytes, offset, n)) {
+				return false;
+			}
+
+			start += n;
+			offset += n;
+			length -= n;
+		}
+
+		return true;
+	}
+
+	private final boolean regionMatches(final boolean ignoreCase, final int fromIndex,
+			final TextOctet another, int anotherIndex, int length) {
+		final int[] leafStart = new int[1];
+		int start = fromIndex;
+
+		while (length > 0) {
+			final TextOctet text = leafAt(start, leafStart).text;
+
+			final int n = Math.min(length, leafStart[0] + text.length() - start);
+			if (!regionMatches(ignoreCase, text, text.begin() + (start - leafStart[0]), another, anotherIndex, n)) {
+				return false;
+			}
+
+			start += n;
+			anotherIndex += n;
+			length -= n;
+		}
+
+		return true;
+	}
+
+	private static boolean regionMatches(final boolean ignoreCase, final TextOctet text, final int index,
+			final TextOctet another, final int anotherIndex, final int length) {
+		final byte[] array = another.array();
+		if (array != null) {
+			return text.startsWith(ignoreCase, index, array, anotherIndex + another.arrayOffset(), length);
+		}
+
+		final byte[] textArray = text.array();
+		if (textArray != null) {
+			return another.startsWith(ignoreCase, anotherIndex, textArray, index + text.arrayOffset(), length);
+		}
+
+		final ByteBuffer buffer = text.buffer();
+		final ByteBuffer anotherBuffer = another.buffer();
+		if (ignoreCase) {
+			return TextMatchUtils.equalsIgnoreCase(buffer, index, anotherBuffer, anotherIndex, length);
+		}
+
+		for (int i = 0; i < length; ++i) {
+			if (buffer.get(index + i) != anotherBuffer.get(anotherIndex + i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/*
+	 * charset methods
+	 */
+
+	public final TextRope setCharset(final Charset charset) {
+		this.charset = charset;
+		return this;
+	}
+
+	/**
+	 *
+	 * @param charsetName
+	 *
+	 * @throws IllegalCharsetNameException
+	 * @throws IllegalArgumentException
+	 * @throws UnsupportedCharsetException
+	 */
+	public final TextRope setCharset(final String charsetName) {
+		if (!isSameCharset(charsetName)) {
+			this.charset = Charset.forName(charsetName);
+		}
+		return this;
+	}
+
+	public final boolean isSameCharset(final String charsetName) {
+		final Charset charset = getCharset();
+		if (charset.name().equalsIgnoreCase(charsetName)) {
+			return true;
+		}
+
+		final Set<String> aliases = charset.aliases();
+		for (String name : aliases) {
+			if (name.equalsIgnoreCase(charsetName)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	public final Charset getCharset() {
+		if (this.charset == null) {
+			this.charset = Charset.forName("UTF-8");
+		}
+		return this.charset;
+	}
+
+	public final boolean hasCharset() {
+		return (this.charset != null);
+	}
+
+	/**
+	 *
+	 * @param charsetName
+	 * @return this TextRope
+	 *
+	 * @throws IllegalCharsetNameException
+	 * @throws IllegalArgumentException
+	 * @throws UnsupportedCharsetException
+	 */
+	public final TextRope convert(final String charsetName) {
+		if (isSameCharset(charsetName)) {
+			return this;
+		}
+
+		final Charset charset = Charset.forName(charsetName);
+
+		final ChunkEncoder sink = new ChunkEncoder(ExpandableTextBuffer.getCharsetEncoder(charset));
+		try {
+			decodeTo(sink);
+		} catch (IOException ignore) {
+		}
+
+		this.root = build(sink.leaves, 0, sink.leaves.size());
+		this.charset = charset;
+		return this;
+	}
+
+	/*
+	 * Output methods
+	 */
+
+	/**
+	 * Writes the whole rope with gathering writes, one buffer per chunk.
+	 */
+	public final long transferTo(final GatheringByteChannel channel) throws IOException {
+		final ByteBuffer[] buffers = buffers();
+
+		final long total = length();
+		long written = 0;
+		int index = 0;
+
+		while (written < total) {
+			while (!buffers[index].hasRemaining()) {
+				++index;
+			}
+
+			written += channel.write(buffers, index, buffers.length - index);
+		}
+
+		return written;
+	}
+
+	public final void transferTo(final OctetAppendable appendable) {
+		if (this.root != null) {
+			transferTo(this.root, appendable);
+		}
+	}
+
+	private static void transferTo(final Node node, final OctetAppendable appendable) {
+		if (node instanceof Concat) {
+			transferTo(((Concat)node).left, appendable);
+			transferTo(((Concat)node).right, appendable);
+		} else {
+			appendable.append(((Leaf)node).text);
+		}
+	}
+
+	public final void appendTo(final Appendable appendable) throws IOException {
+		if (this.root != null) {
+			decodeTo(new AppendableSink(appendable));
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+
+		try {
+			appendTo(builder);
+		} catch (IOException ignore) {
+		}
+
+		return builder.toString();
+	}
+
+	private final ByteBuffer[] buffers() {
+		final ByteBuffer[] buffers = new ByteBuffer[(this.root != null) ? this.root.leaves : 0];
+		if (this.root != null) {
+			fillBuffers(this.root, buffers, 0);
+		}
+		return buffers;
+	}
+
+	private static int fillBuffers(final Node node, final ByteBuffer[] buffers, final int index) {
+		if (node instanceof Concat) {
+			final int next = fillBuffers(((Concat)node).left, buffers, index);
+			return fillBuffers(((Concat)node).right, buffers, next);
+		}
+
+		final TextOctet text = ((Leaf)node).text;
+
+		final ByteBuffer buffer = text.buffer();
+		if (buffer != null) {
+			final ByteBuffer view = buffer.duplicate();
+			view.limit(text.end()).position(text.begin());
+			buffers[index] = view;
+		} else {
+			buffers[index] = ByteBuffer.wrap(text.array(), text.begin() + text.arrayOffset(), text.length());
+		}
+
+		return index + 1;
+	}
+
+	/*
+	 * Decoding methods
+	 */
+
+	private static abstract class Sink {
+
+		abstract void put(CharBuffer chars) throws IOException;
+
+		void finish(final CharBuffer chars) throws IOException {
+		}
+
+	}
+
+	private static final class AppendableSink extends Sink {
+
+		private final Appendable appendable;
+
+		AppendableSink(final Appendable appendable) {
+			this.appendable = appendable;
+		}
+
+		@Override
+		final void put(final CharBuffer chars) throws IOException {
+			this.appendable.append(chars);
+			chars.position(chars.limit());
+		}
+
+	}
+
+	private static final class ChunkEncoder extends Sink {
+
+		private final CharsetEncoder encoder;
+
+		private final ArrayList<Node> leaves;
+
+		private ByteBuffer chunk;
+
+		ChunkEncoder(final CharsetEncoder encoder) {
+			this.encoder = encoder;
+			this.leaves = new ArrayList<Node>();
+			this.chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+			encoder.reset();
+		}
+
+		@Override
+		final void put(final CharBuffer chars) {
+			while (this.encoder.encode(chars, this.chunk, false).isOverflow()) {
+				flushChunk();
+			}
+		}
+
+		@Override
+		final void finish(final CharBuffer chars) {
+			while (this.encoder.encode(chars, this.chunk, true).isOverflow()) {
+				flushChunk();
+			}
+			while (this.encoder.flush(this.chunk).isOverflow()) {
+				flushChunk();
+			}
+			flushChunk();
+		}
+
+		private final void flushChunk() {
+			if (this.chunk.position() > 0) {
+				this.leaves.add(new Leaf(new ArrayText(this.chunk.array(), 0, this.chunk.position())));
+				this.chunk = ByteBuffer.allocate(CHUNK_SIZE);
+			}
+		}
+
+	}
+
+	private final void decodeTo(final Sink sink) throws IOException {
+		final CharsetDecoder decoder = CharsetUtils.acquireDecoder(getCharset());
+		try {
+			decodeTo(decoder, sink);
+		} finally {
+			CharsetUtils.releaseDecoder(decoder);
+		}
+	}
+
+	private final void decodeTo(final CharsetDecoder decoder, final Sink sink) throws IOException {
+		final CharBuffer chars = CharBuffer.allocate(128);
+
+		// Holds the bytes of a character that is split between two chunks.
+		ByteBuffer carry = ByteBuffer.allocate(16);
+
+		decoder.reset();
+
+		for (ByteBuffer in : buffers()) {
+			while (carry.position() > 0 && in.hasRemaining()) {
+				final int carried = carry.position();
+				final int start = in.position();
+				final int n = Math.min(in.remaining(), carry.remaining());
+
+				for (int i = 0; i < n; ++i) {
+					carry.put(in.get(start + i));
+				}
+
+				carry.flip();
+				decode(decoder, carry, chars, false, sink);
+
+				final int consumed = carry.position();
+				if (consumed >= carried) {
+					in.position(start + (consumed - carried));
+					carry.clear();
+				} else {
+					carry.compact();
+					in.position(start + n);
+				}
+			}
+
+			decode(decoder, in, chars, false, sink);
+
+			if (in.remaining() > carry.remaining()) {
+				carry.flip();
+				carry = ByteBuffer.allocate(carry.remaining() + in.remaining()).put(carry);
+			}
+			carry.put(in);
+		}
+
+		carry.flip();
+		decode(decoder, carry, chars, true, sink);
+
+		while (decoder.flush(chars).isOverflow()) {
+			chars.flip();
+			sink.put(chars);
+			chars.compact();
+		}
+
+		chars.flip();
+		sink.put(chars);
+		sink.finish(chars);
+	}
+
+	private static void decode(final CharsetDecoder decoder, final ByteBuffer in, final CharBuffer chars,
+			final boolean endOfInput, final Sink sink) throws IOException {
+		for (;;) {
+			final CoderResult result = decoder.decode(in, chars, endOfInput);
+
+			if (result.isOverflow()) {
+				chars.flip();
+				sink.put(chars);
+				chars.compact();
+				continue;
+			}
+			break;
+		}
+	}
+
+	/*
+	 * Internal byte access methods
+	 */
+
+	private final Leaf leafAt(final int index, final int[] leafStart) {
+		Node node = this.root;
+		int start = 0;
+
+		while (node instanceof Concat) {
+			final Concat concat = (Concat)node;
+			if (index - start < concat.left.length) {
+				node = concat.left;
+			} else {
+				start += concat.left.length;
+				node = concat.right;
+			}
+		}
+
+		leafStart[0] = start;
+		return (Leaf)node;
+	}
+
+	private final void copyBytes(int index, final byte[] dst, int offset, int length) {
+		final int[] leafStart = new int[1];
+
+		while (length > 0) {
+			final TextOctet text = leafAt(index, leafStart).text;
+
+			final int n = Math.min(length, leafStart[0] + text.length() - index);
+			copyBytes(text, text.begin() + (index - leafStart[0]), dst, offset, n);
+
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	private static void copyBytes(final TextOctet text, final int index, final byte[] dst, final int offset, final int length) {
+		final byte[] array = text.array();
+		if (array != null) {
+			System.arraycopy(array, index + text.arrayOffset(), dst, offset, length);
+		} else {
+			final ByteBuffer view = text.buffer().duplicate();
+			view.limit(index + length).position(index);
+			view.get(dst, offset, length);
+		}
+	}
+
+	/*
+	 * Tree methods
+	 */
+
+	private static abstract class Node {
+
+		final int length;
+		final int height;
+		final int leaves;
+
+		Node(final int length, final int height, final int leaves) {
+			this.length = length;
+			this.height = height;
+			this.leaves = leaves;
+		}
+
+	}
+
+	private static final class Leaf extends Node {
+
+		final AbstractTextOctet text;
+
+		Leaf(final AbstractTextOctet text) {
+			super(text.length(), 0, 1);
+			this.text = text;
+		}
+
+		final Node slice(final int beginIndex, final int endIndex) {
+			return newLeaf(this.text, this.text.begin() + beginIndex, endIndex - beginIndex);
+		}
+
+	}
+
+	private static final class Concat extends Node {
+
+		final Node left;
+		final Node right;
+
+		Concat(final Node left, final Node right) {
+			super(left.length + right.length, Math.max(left.height, right.height) + 1, left.leaves + right.leaves);
+			this.left = left;
+			this.right = right;
+		}
+
+	}
+
+	private static Node newLeaf(final TextOctet text, final int begin, final int length) {
+		if (length <= 0) {
+			return null;
+		}
+
+		final ByteBuffer buffer = text.buffer();
+		if (buffer != null) {
+			return new Leaf(new BufferText(buffer, begin, length));
+		} else {
+			return new Leaf(new ArrayText(text.array(), begin + text.arrayOffset(), length));
+		}
+	}
+
+	private static Node build(final ArrayList<Node> nodes, final int from, final int to) {
+		if (from >= to) {
+			return null;
+		}
+		if (to - from == 1) {
+			return nodes.get(from);
+		}
+
+		final int middle = (from + to) >>> 1;
+		return new Concat(build(nodes, from, middle), build(nodes, middle, to));
+	}
+
+	private static Node slice(final Node node, final int beginIndex, final int endIndex) {
+		return tail(head(node, endIndex), beginIndex);
+	}
+
+	private static Node head(final Node node, final int index) {
+		if (node == null || index <= 0) {
+			return null;
+		}
+		if (index >= node.length) {
+			return node;
+		}
+
+		if (node instanceof Leaf) {
+			return ((Leaf)node).slice(0, index);
+		}
+
+		final Concat concat = (Concat)node;
+		if (index <= concat.left.length) {
+			return head(concat.left, index);
+		} else {
+			return join(concat.left, head(concat.right, index - concat.left.length));
+		}
+	}
+
+	private static Node tail(final Node node, final int index) {
+		if (node == null || index >= node.length) {
+			return null;
+		}
+		if (index <= 0) {
+			return node;
+		}
+
+		if (node instanceof Leaf) {
+			return ((Leaf)node).slice(index, node.length);
+		}
+
+		final Concat concat = (Concat)node;
+		if (index >= concat.left.length) {
+			return tail(concat.right, index - concat.left.length);
+		} else {
+			return join(tail(concat.left, index), concat.right);
+		}
+	}
+
+	private static Node join(final Node left, final Node right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+
+		if (left.height > right.height + 1) {
+			final Concat concat = (Concat)left;
+			return balance(concat.left, join(concat.right, right));
+		}
+		if (right.height > left.height + 1) {
+			final Concat concat = (Concat)right;
+			return balance(join(left, concat.left), concat.right);
+		}
+
+		return concat(left, right);
+	}
+
+	private static Node balance(final Node left, final Node right) {
+		if (left.height > right.height + 1) {
+			final Concat concat = (Concat)left;
+			if (concat.left.height >= concat.right.height) {
+				return balance(concat.left, balance(concat.right, right));
+			} else {
+				final Concat inner = (Concat)concat.right;
+				return balance(balance(concat.left, inner.left), balance(inner.right, right));
+			}
+		}
+		if (right.height > left.height + 1) {
+			final Concat concat = (Concat)right;
+			if (concat.right.height >= concat.left.height) {
+				return balance(balance(left, concat.left), concat.right);
+			} else {
+				final Concat inner = (Concat)concat.left;
+				return balance(balance(left, inner.left), balance(inner.right, concat.right));
+			}
+		}
+		return new Concat(left, right);
+	}
+
+	/**
+	 * Joins two nodes of similar height, merging small adjacent leaves so that
+	 * repeated small edits do not degrade into a tree of tiny chunks.
+	 */
+	private static Node concat(final Node left, final Node right) {
+		if (left instanceof Leaf && right instanceof Leaf) {
+			if (left.length + right.length <= MERGE_LENGTH) {
+				return merge((Leaf)left, (Leaf)right);
+			}
+		} else if (left instanceof Concat && right instanceof Leaf) {
+			final Concat concat = (Concat)left;
+			if (concat.right instanceof Leaf && concat.right.length + right.length <= MERGE_LENGTH) {
+				return new Concat(concat.left, merge((Leaf)concat.right, (Leaf)right));
+			}
+		} else if (left instanceof Leaf && right instanceof Concat) {
+			final Concat concat = (Concat)right;
+			if (concat.left instanceof Leaf && left.length + concat.left.length <= MERGE_LENGTH) {
+				return new Concat(merge((Leaf)left, (Leaf)concat.left), concat.right);
+			}
+		}
+
+		return new Concat(left, right);
+	}
+
+	private static Leaf merge(final Leaf left, final Leaf right) {
+		final byte[] bytes = new byte[left.length + right.length];
+
+		copyBytes(left.text, left.text.begin(), bytes, 0, left.length);
+		copyBytes(right.text, right.text.begin(), bytes, left.length, right.length);
+
+		return new Leaf(new ArrayText(bytes));
+	}
+
+}
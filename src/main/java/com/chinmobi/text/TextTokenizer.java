@@ -0,0 +1,274 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.chinmobi.octet.BufferUtils;
+import com.chinmobi.octet.Octet;
+import com.chinmobi.octet.OctetMatchUtils;
+
+/**
+ * A cursor over the lines or separated tokens of an octet.
+ * <p>
+ * Each call of next moves to the following token, whose absolute bounds are given by
+ * begin and end; token returns one reused view over them, so walking any number of
+ * tokens allocates nothing.
+ * <p>
+ * In line mode, lines end at LF, CR or CRLF and an empty last line is not reported.
+ * In separator mode, n separators give n + 1 tokens, empty ones included.
+ * An empty range has no tokens in either mode.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class TextTokenizer {
+
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	private static final byte[] EMPTY_ARRAY = new byte[0];
+
+	private final byte separator;
+	private final byte[] separators;
+	private final int[] shiftTable;
+
+	private Octet source;
+	private ByteBuffer sourceBuffer;
+	private byte[] sourceArray;
+	private int sourceArrayOffset;
+
+	private int position;
+	private int limit;
+
+	private int tokenBegin;
+	private int tokenEnd;
+
+	private ArrayText arrayView;
+	private BufferText bufferView;
+
+
+	/**
+	 * Creates a tokenizer in line mode.
+	 */
+	public TextTokenizer() {
+		this.separator = 0;
+		this.separators = null;
+		this.shiftTable = null;
+	}
+
+	public TextTokenizer(final byte separator) {
+		this.separator = separator;
+		this.separators = new byte[] { separator };
+		this.shiftTable = null;
+	}
+
+	public TextTokenizer(final byte[] separator) {
+		if (separator.length == 0) {
+			throw new IllegalArgumentException("Empty separator.");
+		}
+
+		this.separator = separator[0];
+		this.separators = separator.clone();
+		this.shiftTable = (separator.length > 1) ?
+				OctetMatchUtils.compile(this.separators, 0, this.separators.length) : null;
+	}
+
+
+	public final TextTokenizer reset(final Octet source) {
+		return reset(source, source.begin(), source.end());
+	}
+
+	public final TextTokenizer reset(final Octet source, final int beginIndex, final int endIndex) {
+		if (beginIndex < source.begin() || beginIndex > endIndex || endIndex > source.end()) {
+			throw new IndexOutOfBoundsException("Begin: " + beginIndex + " End: " + endIndex);
+		}
+
+		this.source = source;
+		this.sourceBuffer = source.buffer();
+		this.sourceArray = (this.sourceBuffer == null) ? source.array() : null;
+		this.sourceArrayOffset = (this.sourceArray != null) ? source.arrayOffset() : 0;
+
+		this.limit = endIndex;
+		this.position = (beginIndex < endIndex || isLineMode()) ? beginIndex : endIndex + 1;
+		this.tokenBegin = this.tokenEnd = beginIndex;
+
+		if (this.arrayView != null) {
+			this.arrayView.setCharset(charsetOf(source));
+		}
+		if (this.bufferView != null) {
+			this.bufferView.setCharset(charsetOf(source));
+		}
+
+		return this;
+	}
+
+	public final boolean isLineMode() {
+		return (this.separators == null);
+	}
+
+	/**
+	 * Moves to the next token.
+	 *
+	 * @return false if there are no more tokens
+	 */
+	public final boolean next() {
+		final int pos = this.position;
+
+		if (isLineMode()) {
+			if (pos >= this.limit) {
+				return false;
+			}
+
+			final int index = indexOf(pos, LF, CR);
+			this.tokenBegin = pos;
+			if (index < 0) {
+				this.tokenEnd = this.limit;
+				this.position = this.limit;
+			} else {
+				this.tokenEnd = index;
+				if (byteAt(index) == CR && (index + 1) < this.limit && byteAt(index + 1) == LF) {
+					this.position = index + 2;
+				} else {
+					this.position = index + 1;
+				}
+			}
+			return true;
+		}
+
+		if (pos > this.limit) {
+			return false;
+		}
+
+		final int index;
+		if (this.shiftTable == null) {
+			index = indexOf(pos, this.separator, this.separator);
+		} else {
+			index = OctetMatchUtils.findCompiled(this.source, pos, this.limit - pos,
+					this.separators, 0, this.separators.length, this.shiftTable);
+		}
+
+		this.tokenBegin = pos;
+		if (index < 0) {
+			this.tokenEnd = this.limit;
+			this.position = this.limit + 1;
+		} else {
+			this.tokenEnd = index;
+			this.position = index + this.separators.length;
+		}
+		return true;
+	}
+
+	/*
+	 * Current token methods
+	 */
+
+	public final int begin() {
+		return this.tokenBegin;
+	}
+
+	public final int end() {
+		return this.tokenEnd;
+	}
+
+	public final int length() {
+		return this.tokenEnd - this.tokenBegin;
+	}
+
+	/**
+	 * Returns the index where the next scan starts, that is, the first byte not yet
+	 * consumed.
+	 */
+	public final int position() {
+		return (this.position <= this.limit) ? this.position : this.limit;
+	}
+
+	/**
+	 * Returns a view over the current token. The same view is returned on every call
+	 * and is moved by the next call of next, so copy it to keep it.
+	 */
+	public final TextOctet token() {
+		final int length = this.tokenEnd - this.tokenBegin;
+
+		if (this.sourceBuffer != null) {
+			if (this.bufferView == null) {
+				this.bufferView = new BufferText();
+				this.bufferView.setCharset(charsetOf(this.source));
+			}
+			return this.bufferView.wrap(this.sourceBuffer, this.tokenBegin, length);
+		} else {
+			if (this.arrayView == null) {
+				this.arrayView = new ArrayText();
+				this.arrayView.setCharset(charsetOf(this.source));
+			}
+			final byte[] array = (this.sourceArray != null) ? this.sourceArray : EMPTY_ARRAY;
+			return this.arrayView.wrap(array, this.tokenBegin + this.sourceArrayOffset, length);
+		}
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private static final Charset charsetOf(final Octet source) {
+		if (source instanceof TextOctet) {
+			final TextOctet text = (TextOctet)source;
+			if (text.hasCharset()) {
+				return text.getCharset();
+			}
+		}
+		return null;
+	}
+
+	private final byte byteAt(final int index) {
+		if (this.sourceBuffer != null) {
+			return this.sourceBuffer.get(index);
+		}
+		return this.sourceArray[index + this.sourceArrayOffset];
+	}
+
+	private final int indexOf(final int start, final byte b1, final byte b2) {
+		if (this.sourceBuffer != null) {
+			if (b1 == b2) {
+				return BufferUtils.indexOf(this.sourceBuffer, start, this.limit, b1);
+			}
+			return BufferUtils.indexOf(this.sourceBuffer, start, this.limit, b1, b2);
+		}
+
+		final byte[] array = this.sourceArray;
+		if (array != null) {
+			final int offset = this.sourceArrayOffset;
+			for (int i = start + offset, end = this.limit + offset; i < end; ++i) {
+				final byte b = array[i];
+				if (b == b1 || b == b2) {
+					return i - offset;
+				}
+			}
+		}
+		return -1;
+	}
+
+}
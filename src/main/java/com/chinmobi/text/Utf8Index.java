@@ -0,0 +1,405 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A sparse index between the byte positions of UTF-8 text and its UTF-16 and code point
+ * positions. A checkpoint is kept at the first code point boundary at or past every
+ * {@link #CHECKPOINT_INTERVAL} bytes, so a lookup either way scans at most about that many
+ * bytes. The index is built lazily, only as far as the lookups reach.
+ * <p>
+ * Bytes appended since the last lookup are picked up as they are reached; after any other
+ * edit call {@link #invalidate(int)} from the first byte changed. The index of an
+ * {@link ExpandableTextBuffer}, see {@link ExpandableTextBuffer#utf8Index()}, is
+ * invalidated by the edit methods of the buffer itself. When the bytes start somewhere
+ * else than at the last lookup, as after reading off the input of a buffer, the index
+ * starts over.
+ * <p>
+ * Byte positions are indexes of the octet, or offsets into the content of a buffer. A
+ * malformed sequence counts as the one replacement char the JDK decoder puts for it.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class Utf8Index {
+
+	public static final int CHECKPOINT_INTERVAL = 1024;
+
+	private static final int INTERVAL_SHIFT = 10;
+
+	private final TextOctet text;
+	private final ExpandableTextBuffer textBuffer;
+
+	// The current view of the bytes; content byte i is at origin + i.
+	private ByteBuffer buffer;
+	private byte[] array;
+	private int origin;
+	private int base;
+	private int length;
+
+	private int[] checkpointBytes;
+	private int[] checkpointChars;
+	private int[] checkpointCodePoints;
+	private int checkpointCount;
+
+	/** Indexed up to here, always a code point boundary, with the counts before it. */
+	private int indexedBytes;
+	private int indexedChars;
+	private int indexedCodePoints;
+
+
+	public Utf8Index(final TextOctet text) {
+		this(text, null);
+	}
+
+	Utf8Index(final ExpandableTextBuffer textBuffer) {
+		this(null, textBuffer);
+	}
+
+	private Utf8Index(final TextOctet text, final ExpandableTextBuffer textBuffer) {
+		this.text = text;
+		this.textBuffer = textBuffer;
+
+		this.checkpointBytes = new int[16];
+		this.checkpointChars = new int[16];
+		this.checkpointCodePoints = new int[16];
+		this.checkpointCount = 1;
+	}
+
+
+	/**
+	 * Forgets what was indexed from the given byte position on.
+	 */
+	public final Utf8Index invalidate(final int byteIndex) {
+		refresh();
+		forget(byteIndex);
+		return this;
+	}
+
+	/**
+	 * As invalidate, without looking at the bytes, which may be in the middle of an edit.
+	 */
+	final void forget(final int byteIndex) {
+		truncate(byteIndex - this.base);
+	}
+
+	/*
+	 * Count methods
+	 */
+
+	public final int charLength() {
+		refresh();
+		advance(this.length, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		return this.indexedChars + tailCount(false);
+	}
+
+	public final int codePointCount() {
+		refresh();
+		advance(this.length, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		return this.indexedCodePoints + tailCount(true);
+	}
+
+	/*
+	 * Byte to char methods
+	 */
+
+	/**
+	 * Returns the UTF-16 index of the char that starts at the byte position, or of the
+	 * one holding it when the position falls inside a code point.
+	 */
+	public final int charIndex(final int byteIndex) {
+		return countBefore(byteIndex, false);
+	}
+
+	public final int codePointIndex(final int byteIndex) {
+		return countBefore(byteIndex, true);
+	}
+
+	/*
+	 * Char to byte methods
+	 */
+
+	/**
+	 * Returns the byte position where the char at the UTF-16 index starts; for the low
+	 * half of a surrogate pair, where the pair starts. charLength gives the end.
+	 */
+	public final int byteIndexOfChar(final int charIndex) {
+		return byteIndexOf(charIndex, false);
+	}
+
+	public final int byteIndexOfCodePoint(final int codePointIndex) {
+		return byteIndexOf(codePointIndex, true);
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final int countBefore(final int byteIndex, final boolean codePoints) {
+		refresh();
+
+		final int target = byteIndex - this.base;
+		if (target < 0 || target > this.length) {
+			throw new IndexOutOfBoundsException("Index: " + byteIndex);
+		}
+
+		advance(target, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+		int k = target >> INTERVAL_SHIFT;
+		if (k >= this.checkpointCount) {
+			k = this.checkpointCount - 1;
+		}
+		if (this.checkpointBytes[k] > target) {
+			--k;
+		}
+
+		int i = this.checkpointBytes[k];
+		int count = codePoints ? this.checkpointCodePoints[k] : this.checkpointChars[k];
+
+		while (i < target) {
+			final int sequence = sequenceAt(i);
+			i += sequence >> 3;
+			if (i > target) {
+				break;
+			}
+			count += codePoints ? 1 : (sequence & 0x03);
+		}
+
+		return count;
+	}
+
+	private final int byteIndexOf(final int index, final boolean codePoints) {
+		refresh();
+
+		if (index < 0) {
+			throw new IndexOutOfBoundsException("Index: " + index);
+		}
+
+		if (codePoints) {
+			advance(this.length, Integer.MAX_VALUE, index);
+		} else {
+			advance(this.length, index, Integer.MAX_VALUE);
+		}
+
+		final int[] counts = codePoints ? this.checkpointCodePoints : this.checkpointChars;
+		int k = Arrays.binarySearch(counts, 0, this.checkpointCount, index);
+		if (k < 0) {
+			k = -k - 2;
+		}
+
+		int i = this.checkpointBytes[k];
+		int count = counts[k];
+
+		while (count < index && i < this.length) {
+			final int sequence = sequenceAt(i);
+			final int units = codePoints ? 1 : (sequence & 0x03);
+			if (count + units > index) {
+				// The low half of a pair.
+				return this.base + i;
+			}
+			count += units;
+			i += sequence >> 3;
+		}
+
+		if (count < index) {
+			throw new IndexOutOfBoundsException("Index: " + index + " Length: " + count);
+		}
+		return this.base + i;
+	}
+
+	/**
+	 * Indexes on until the byte target or past the char or code point target, or up to
+	 * where a code point may still be cut short by the end of the bytes.
+	 */
+	private final void advance(final int byteTarget, final int charTarget, final int codePointTarget) {
+		int i = this.indexedBytes;
+		int chars = this.indexedChars;
+		int codePoints = this.indexedCodePoints;
+
+		final int end = this.length;
+		int nextCheckpoint = this.checkpointCount << INTERVAL_SHIFT;
+
+		while (i < end && i < byteTarget && chars <= charTarget && codePoints <= codePointTarget) {
+			final int sequence = sequenceAt(i);
+			final int next = i + (sequence >> 3);
+			if (next == end && (sequence & 0x04) == 0 && isCutShort(i)) {
+				break;
+			}
+
+			i = next;
+			chars += sequence & 0x03;
+			++codePoints;
+
+			if (i >= nextCheckpoint) {
+				addCheckpoint(i, chars, codePoints);
+				nextCheckpoint = this.checkpointCount << INTERVAL_SHIFT;
+			}
+		}
+
+		this.indexedBytes = i;
+		this.indexedChars = chars;
+		this.indexedCodePoints = codePoints;
+	}
+
+	private final int tailCount(final boolean codePoints) {
+		int count = 0;
+		for (int i = this.indexedBytes; i < this.length; ) {
+			final int sequence = sequenceAt(i);
+			i += sequence >> 3;
+			count += codePoints ? 1 : (sequence & 0x03);
+		}
+		return count;
+	}
+
+	private final void addCheckpoint(final int bytes, final int chars, final int codePoints) {
+		final int k = this.checkpointCount;
+		if (k == this.checkpointBytes.length) {
+			this.checkpointBytes = Arrays.copyOf(this.checkpointBytes, k * 2);
+			this.checkpointChars = Arrays.copyOf(this.checkpointChars, k * 2);
+			this.checkpointCodePoints = Arrays.copyOf(this.checkpointCodePoints, k * 2);
+		}
+		this.checkpointBytes[k] = bytes;
+		this.checkpointChars[k] = chars;
+		this.checkpointCodePoints[k] = codePoints;
+		this.checkpointCount = k + 1;
+	}
+
+	private final void truncate(final int byteIndex) {
+		if (byteIndex > this.indexedBytes) {
+			return;
+		}
+
+		// A boundary depends on the byte at it too, an ill-formed sequence may end there.
+		int k = this.checkpointCount - 1;
+		while (k > 0 && this.checkpointBytes[k] >= byteIndex) {
+			--k;
+		}
+		this.checkpointCount = k + 1;
+
+		this.indexedBytes = this.checkpointBytes[k];
+		this.indexedChars = this.checkpointChars[k];
+		this.indexedCodePoints = this.checkpointCodePoints[k];
+	}
+
+	private final void refresh() {
+		final int origin;
+		if (this.text != null) {
+			this.buffer = this.text.buffer();
+			this.array = (this.buffer == null) ? this.text.array() : null;
+			this.base = this.text.begin();
+			origin = this.base + ((this.array != null) ? this.text.arrayOffset() : 0);
+			this.length = this.text.length();
+		} else {
+			this.buffer = this.textBuffer.buffer();
+			this.array = null;
+			this.base = 0;
+			origin = this.textBuffer.contentBeginIndex();
+			this.length = this.textBuffer.length();
+		}
+
+		// Bytes read off the front of a buffer, or a moved octet, shift every offset.
+		if (origin != this.origin) {
+			this.origin = origin;
+			truncate(0);
+		}
+
+		if (this.indexedBytes > this.length) {
+			truncate(this.length);
+		}
+	}
+
+	private final int byteAt(final int i) {
+		return (this.array != null) ? this.array[this.origin + i] : this.buffer.get(this.origin + i);
+	}
+
+	/**
+	 * Whether the sequence at i runs into the end of the bytes before it is complete.
+	 */
+	private final boolean isCutShort(final int i) {
+		final int b1 = byteAt(i) & 0xFF;
+		final int need = (b1 > 0xF4) ? 1 : (b1 >= 0xF0) ? 4 : (b1 >= 0xE0) ? 3 : (b1 >= 0xC2) ? 2 : 1;
+		return (i + need > this.length);
+	}
+
+	/**
+	 * Returns the byte length of the code point at i shifted left by 3, bit 2 set when it
+	 * is well formed, and the number of UTF-16 units it decodes to in the low two bits.
+	 * An ill-formed sequence is as long as its longest well formed prefix, at least one
+	 * byte, or three bytes for an encoded surrogate, and decodes to one replacement char,
+	 * as the JDK decoder has it.
+	 */
+	private final int sequenceAt(final int i) {
+		final int b1 = byteAt(i) & 0xFF;
+		if (b1 < 0x80) {
+			return (1 << 3) | 0x04 | 1;
+		}
+
+		final int need;
+		int lo = 0x80;
+		int hi = 0xBF;
+		if (b1 >= 0xC2 && b1 <= 0xDF) {
+			need = 2;
+		} else
+		if (b1 >= 0xE0 && b1 <= 0xEF) {
+			need = 3;
+			if (b1 == 0xE0) {
+				lo = 0xA0;
+			}
+		} else
+		if (b1 >= 0xF0 && b1 <= 0xF4) {
+			need = 4;
+			if (b1 == 0xF0) {
+				lo = 0x90;
+			} else if (b1 == 0xF4) {
+				hi = 0x8F;
+			}
+		} else {
+			return (1 << 3) | 1;
+		}
+
+		for (int k = 1; k < need; ++k) {
+			if (i + k >= this.length) {
+				return (k << 3) | 1;
+			}
+			final int b = byteAt(i + k) & 0xFF;
+			if (b < lo || b > hi) {
+				return (k << 3) | 1;
+			}
+			lo = 0x80;
+			hi = 0xBF;
+		}
+
+		if (b1 == 0xED && (byteAt(i + 1) & 0xFF) >= 0xA0) {
+			// An encoded surrogate, taken whole.
+			return (3 << 3) | 1;
+		}
+
+		return (need << 3) | 0x04 | ((need == 4) ? 2 : 1);
+	}
+
+}
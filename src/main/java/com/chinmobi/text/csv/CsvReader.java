@@ -0,0 +1,384 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.csv;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import com.chinmobi.octet.BufferUtils;
+import com.chinmobi.octet.io.OctetOutputOp;
+import com.chinmobi.text.BufferText;
+import com.chinmobi.text.ExpandableTextBuffer;
+import com.chinmobi.text.TextOctet;
+
+/**
+ * Reads RFC 4180 records from the content of an {@link ExpandableTextBuffer}, refilled
+ * from a channel when one is given.
+ * <p>
+ * Fields are returned as views into the buffer. Quoted fields have their quotes
+ * removed and doubled quotes collapsed in place, so the buffer content is modified as
+ * records are read. Views and indices are valid until the next call of nextRecord.
+ * <p>
+ * Records end at LF or CRLF; a CR or LF inside quotes belongs to the field.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class CsvReader {
+
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private static final byte QUOTE = '"';
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	private static final byte PLAIN = 0;
+	private static final byte QUOTED = 1;
+	private static final byte ESCAPED = 2;
+
+
+	private final ExpandableTextBuffer buffer;
+	private final ReadableByteChannel channel;
+	private final byte delimiter;
+
+	private final OctetOutputOp outputOp;
+
+	private int readIndex;
+	private boolean endOfInput;
+
+	private int fieldCount;
+	private int[] fieldBegins;
+	private int[] fieldEnds;
+	private byte[] fieldModes;
+
+	private BufferText[] views;
+
+	private long recordNumber;
+
+
+	public CsvReader(final ReadableByteChannel channel) {
+		this(new ExpandableTextBuffer(DEFAULT_BUFFER_SIZE), channel, (byte)',');
+	}
+
+	/**
+	 * Reads the records already in the buffer only.
+	 */
+	public CsvReader(final ExpandableTextBuffer buffer) {
+		this(buffer, null, (byte)',');
+	}
+
+	/**
+	 * @param buffer the working buffer; its current content is read first
+	 * @param channel the source to refill from, or null
+	 * @param delimiter the field delimiter
+	 */
+	public CsvReader(final ExpandableTextBuffer buffer, final ReadableByteChannel channel, final byte delimiter) {
+		if (delimiter == QUOTE || delimiter == CR || delimiter == LF) {
+			throw new IllegalArgumentException("Illegal delimiter: " + delimiter);
+		}
+
+		this.buffer = buffer;
+		this.channel = channel;
+		this.delimiter = delimiter;
+
+		buffer.toOutput();
+		this.outputOp = (channel != null) ? buffer.outputOp() : null;
+		this.endOfInput = (channel == null);
+
+		this.fieldBegins = new int[16];
+		this.fieldEnds = new int[16];
+		this.fieldModes = new byte[16];
+		this.views = new BufferText[16];
+	}
+
+
+	public final ExpandableTextBuffer buffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Returns true once the channel has reported end of stream, or always when there
+	 * is no channel.
+	 */
+	public final boolean isEndOfInput() {
+		return this.endOfInput;
+	}
+
+	/**
+	 * Returns the number of records read so far.
+	 */
+	public final long recordNumber() {
+		return this.recordNumber;
+	}
+
+	/**
+	 * Moves to the next record.
+	 *
+	 * @return false when no complete record is available: at end of input, or when a
+	 *         non-blocking channel has no more data for now
+	 *
+	 * @throws EOFException if the input ends inside a quoted field
+	 */
+	public final boolean nextRecord() throws IOException {
+		this.fieldCount = 0;
+
+		for (;;) {
+			final int end = scanRecord();
+			if (end >= 0) {
+				unescapeFields();
+				this.readIndex = end;
+				++this.recordNumber;
+				return true;
+			}
+
+			if (!fill()) {
+				this.fieldCount = 0;
+				return false;
+			}
+		}
+	}
+
+	/*
+	 * Field methods
+	 */
+
+	public final int fieldCount() {
+		return this.fieldCount;
+	}
+
+	public final int fieldBegin(final int index) {
+		checkIndex(index);
+		return this.fieldBegins[index];
+	}
+
+	public final int fieldEnd(final int index) {
+		checkIndex(index);
+		return this.fieldEnds[index];
+	}
+
+	/**
+	 * Returns a view over the field. Each field index has its own view, reused from
+	 * record to record.
+	 */
+	public final TextOctet field(final int index) {
+		checkIndex(index);
+
+		BufferText view = this.views[index];
+		if (view == null) {
+			view = new BufferText();
+			this.views[index] = view;
+		}
+		if (this.buffer.hasCharset()) {
+			view.setCharset(this.buffer.getCharset());
+		}
+
+		final int begin = this.fieldBegins[index];
+		return view.wrap(this.buffer.buffer(), begin, this.fieldEnds[index] - begin);
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final void checkIndex(final int index) {
+		if (index < 0 || index >= this.fieldCount) {
+			throw new IndexOutOfBoundsException("Field: " + index + " Count: " + this.fieldCount);
+		}
+	}
+
+	/**
+	 * Locates the fields of the record at readIndex.
+	 *
+	 * @return the index after the record, or -1 if more input is needed
+	 */
+	private final int scanRecord() throws EOFException {
+		final ByteBuffer buf = this.buffer.buffer();
+		final int limit = buf.position();
+
+		int pos = this.readIndex;
+		if (pos >= limit) {
+			return -1;
+		}
+
+		this.fieldCount = 0;
+
+		for (;;) {
+			if (pos < limit && buf.get(pos) == QUOTE) {
+				// Quoted field, find the closing quote skipping doubled ones.
+				boolean escaped = false;
+				int i = pos + 1;
+				for (;;) {
+					final int q = BufferUtils.indexOf(buf, i, limit, QUOTE);
+					if (q < 0 || (q + 1) >= limit) {
+						if (!this.endOfInput) {
+							return -1;
+						}
+						if (q < 0) {
+							throw new EOFException("Unterminated quoted field in record " + (this.recordNumber + 1));
+						}
+						i = q + 1;
+						break;
+					}
+					if (buf.get(q + 1) == QUOTE) {
+						escaped = true;
+						i = q + 2;
+						continue;
+					}
+					i = q + 1;
+					break;
+				}
+
+				// Anything between the closing quote and the delimiter is kept as is.
+				int next = BufferUtils.indexOf(buf, i, limit, this.delimiter, LF);
+				if (next < 0) {
+					if (!this.endOfInput) {
+						return -1;
+					}
+					next = limit;
+				}
+
+				addField(pos, next, (escaped || next > i) ? ESCAPED : QUOTED);
+				pos = next;
+			} else {
+				int next = BufferUtils.indexOf(buf, pos, limit, this.delimiter, LF);
+				if (next < 0) {
+					if (!this.endOfInput) {
+						return -1;
+					}
+					next = limit;
+				}
+
+				addField(pos, next, PLAIN);
+				pos = next;
+			}
+
+			if (pos >= limit) {
+				stripCR(buf);
+				return limit;
+			}
+			if (buf.get(pos) == LF) {
+				stripCR(buf);
+				return pos + 1;
+			}
+			++pos;
+		}
+	}
+
+	private final void stripCR(final ByteBuffer buf) {
+		final int last = this.fieldCount - 1;
+		final int end = this.fieldEnds[last];
+		if (end > this.fieldBegins[last] && buf.get(end - 1) == CR) {
+			this.fieldEnds[last] = end - 1;
+		}
+	}
+
+	private final void addField(final int begin, final int end, final byte mode) {
+		final int index = this.fieldCount;
+		if (index >= this.fieldBegins.length) {
+			final int newLength = this.fieldBegins.length << 1;
+			this.fieldBegins = Arrays.copyOf(this.fieldBegins, newLength);
+			this.fieldEnds = Arrays.copyOf(this.fieldEnds, newLength);
+			this.fieldModes = Arrays.copyOf(this.fieldModes, newLength);
+			this.views = Arrays.copyOf(this.views, newLength);
+		}
+
+		this.fieldBegins[index] = begin;
+		this.fieldEnds[index] = end;
+		this.fieldModes[index] = mode;
+		this.fieldCount = index + 1;
+	}
+
+	/**
+	 * Drops the quotes of quoted fields, rewriting those with doubled quotes or text
+	 * after the closing quote in place.
+	 */
+	private final void unescapeFields() {
+		final ByteBuffer buf = this.buffer.buffer();
+
+		for (int f = 0; f < this.fieldCount; ++f) {
+			final byte mode = this.fieldModes[f];
+			if (mode == PLAIN) {
+				continue;
+			}
+
+			final int begin = this.fieldBegins[f];
+			final int end = this.fieldEnds[f];
+
+			if (mode == QUOTED) {
+				this.fieldBegins[f] = begin + 1;
+				this.fieldEnds[f] = end - 1;
+				continue;
+			}
+
+			int w = begin;
+			int r = begin + 1;
+			boolean inQuotes = true;
+			while (r < end) {
+				final byte b = buf.get(r++);
+				if (b == QUOTE && inQuotes) {
+					if (r < end && buf.get(r) == QUOTE) {
+						buf.put(w++, QUOTE);
+						++r;
+					} else {
+						inQuotes = false;
+					}
+				} else {
+					buf.put(w++, b);
+				}
+			}
+
+			this.fieldEnds[f] = w;
+		}
+	}
+
+	private final boolean fill() throws IOException {
+		if (this.endOfInput) {
+			return false;
+		}
+
+		if (this.readIndex > 0) {
+			this.buffer.delete(0, this.readIndex);
+			this.readIndex = 0;
+		}
+
+		final ByteBuffer buf = this.buffer.buffer();
+		int length = buf.capacity() - buf.position();
+		if (length < (buf.capacity() >> 2)) {
+			// Mostly full with one partial record, grow.
+			length = buf.capacity();
+		}
+
+		final int n = this.outputOp.restart().transferFrom(this.channel, length);
+		if (n < 0) {
+			this.endOfInput = true;
+			return (this.buffer.buffer().position() > 0);
+		}
+		return (n > 0);
+	}
+
+}
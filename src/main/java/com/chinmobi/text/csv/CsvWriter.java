@@ -0,0 +1,173 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.csv;
+
+import java.nio.ByteBuffer;
+
+import com.chinmobi.octet.Octet;
+import com.chinmobi.text.ExpandableTextBuffer;
+
+/**
+ * Writes RFC 4180 records into an {@link ExpandableTextBuffer}.
+ * <p>
+ * Every field is appended as is and then, only if it holds the delimiter, a quote,
+ * CR or LF, quoted and escaped in place. Records end with CRLF.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class CsvWriter {
+
+	private static final byte QUOTE = '"';
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+
+	private final ExpandableTextBuffer buffer;
+	private final byte delimiter;
+
+	private int fieldCount;
+
+
+	public CsvWriter(final ExpandableTextBuffer buffer) {
+		this(buffer, (byte)',');
+	}
+
+	public CsvWriter(final ExpandableTextBuffer buffer, final byte delimiter) {
+		if (delimiter == QUOTE || delimiter == CR || delimiter == LF) {
+			throw new IllegalArgumentException("Illegal delimiter: " + delimiter);
+		}
+
+		this.buffer = buffer;
+		this.delimiter = delimiter;
+	}
+
+
+	public final ExpandableTextBuffer buffer() {
+		return this.buffer;
+	}
+
+	/*
+	 * Field methods
+	 */
+
+	public final CsvWriter writeField(final CharSequence csq) {
+		final int start = beginField();
+		this.buffer.append(csq);
+		return endField(start);
+	}
+
+	public final CsvWriter writeField(final Octet octet) {
+		return writeField(octet, octet.begin(), octet.end());
+	}
+
+	public final CsvWriter writeField(final Octet octet, final int start, final int end) {
+		final int fieldStart = beginField();
+		this.buffer.append(octet, start, end);
+		return endField(fieldStart);
+	}
+
+	public final CsvWriter writeField(final long value) {
+		final int start = beginField();
+		this.buffer.appendLong(value);
+		return endField(start);
+	}
+
+	public final CsvWriter writeField(final double value) {
+		final int start = beginField();
+		this.buffer.appendDouble(value);
+		return endField(start);
+	}
+
+	/**
+	 * Writes an empty field.
+	 */
+	public final CsvWriter writeEmptyField() {
+		beginField();
+		return this;
+	}
+
+	public final CsvWriter endRecord() {
+		this.buffer.append(CR);
+		this.buffer.append(LF);
+		this.fieldCount = 0;
+		return this;
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final int beginField() {
+		if (this.fieldCount++ > 0) {
+			this.buffer.append(this.delimiter);
+		} else {
+			this.buffer.toOutput();
+		}
+		return this.buffer.position();
+	}
+
+	private final CsvWriter endField(final int start) {
+		ByteBuffer buf = this.buffer.buffer();
+		final int end = buf.position();
+
+		int quotes = 0;
+		boolean special = false;
+		for (int i = start; i < end; ++i) {
+			final byte b = buf.get(i);
+			if (b == QUOTE) {
+				++quotes;
+				special = true;
+			} else if (b == this.delimiter || b == CR || b == LF) {
+				special = true;
+			}
+		}
+
+		if (!special) {
+			return this;
+		}
+
+		// Grow by the two enclosing quotes plus one per doubled quote, then move the
+		// field right from its end, doubling quotes on the way.
+		final int extra = quotes + 2;
+		this.buffer.ensureLength(extra);
+		buf = this.buffer.buffer();
+
+		int w = end + extra;
+		buf.put(--w, QUOTE);
+		for (int r = end; r > start; ) {
+			final byte b = buf.get(--r);
+			buf.put(--w, b);
+			if (b == QUOTE) {
+				buf.put(--w, QUOTE);
+			}
+		}
+		buf.put(--w, QUOTE);
+
+		buf.position(end + extra);
+		return this;
+	}
+
+}
@@ -0,0 +1,506 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.http;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.chinmobi.octet.BufferUtils;
+import com.chinmobi.octet.Octet;
+import com.chinmobi.text.ArrayText;
+import com.chinmobi.text.BufferText;
+import com.chinmobi.text.TextMatchUtils;
+import com.chinmobi.text.TextOctet;
+
+/**
+ * A resumable parser of HTTP/1.1 request and response heads.
+ * <p>
+ * Call parse each time more bytes have arrived; it continues from where the previous
+ * call stopped, so every byte is scanned once. The head must stay at the same indices
+ * between calls, as it does while an {@link com.chinmobi.octet.ExpandableOctetBuffer}
+ * is appended to. Parts of the head are returned as reused views and as absolute
+ * indices; nothing is copied.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class HttpHeadParser {
+
+	public static final int DEFAULT_MAX_HEAD_LENGTH = 8 * 1024;
+	public static final int DEFAULT_MAX_HEADERS = 100;
+
+	private static final int START_LINE = 0;
+	private static final int HEADERS = 1;
+	private static final int DONE = 2;
+
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+	private static final byte SP = ' ';
+	private static final byte HT = '\t';
+
+	// Indices into parts.
+	private static final int PART_0 = 0;
+	private static final int PART_1 = 2;
+	private static final int PART_2 = 4;
+	private static final int HEADER_BASE = 6;
+
+	private static final boolean[] TOKEN_CHARS = new boolean[128];
+
+	static {
+		for (int c = '0'; c <= '9'; ++c) {
+			TOKEN_CHARS[c] = true;
+		}
+		for (int c = 'A'; c <= 'Z'; ++c) {
+			TOKEN_CHARS[c] = true;
+			TOKEN_CHARS[c + 32] = true;
+		}
+		for (char c : "!#$%&'*+-.^_`|~".toCharArray()) {
+			TOKEN_CHARS[c] = true;
+		}
+	}
+
+
+	private final boolean request;
+	private final int maxHeadLength;
+	private final int maxHeaders;
+
+	private ByteBuffer dataBuffer;
+	private byte[] dataArray;
+	private int dataArrayOffset;
+
+	private int state;
+	private int headBegin;
+	private int lineBegin;
+	private int scanIndex;
+	private int headEnd;
+
+	private int statusCode;
+
+	// begin, end pairs: three start line parts, then name and value of each header
+	private int[] parts;
+	private int headerCount;
+
+	private TextOctet[] views;
+
+
+	public HttpHeadParser(final boolean request) {
+		this(request, DEFAULT_MAX_HEAD_LENGTH, DEFAULT_MAX_HEADERS);
+	}
+
+	public HttpHeadParser(final boolean request, final int maxHeadLength, final int maxHeaders) {
+		if (maxHeadLength <= 0 || maxHeaders < 0) {
+			throw new IllegalArgumentException("maxHeadLength: " + maxHeadLength + " maxHeaders: " + maxHeaders);
+		}
+
+		this.request = request;
+		this.maxHeadLength = maxHeadLength;
+		this.maxHeaders = maxHeaders;
+
+		this.parts = new int[HEADER_BASE + 4 * 16];
+		this.views = new TextOctet[this.parts.length >> 1];
+
+		reset();
+	}
+
+
+	public final HttpHeadParser reset() {
+		this.dataBuffer = null;
+		this.dataArray = null;
+
+		this.state = START_LINE;
+		this.headBegin = this.lineBegin = this.scanIndex = -1;
+		this.headEnd = -1;
+		this.statusCode = 0;
+		this.headerCount = 0;
+		return this;
+	}
+
+	public final boolean isRequest() {
+		return this.request;
+	}
+
+	public final boolean isComplete() {
+		return (this.state == DONE);
+	}
+
+	/**
+	 * Parses the head starting at begin, resuming from the previous call.
+	 *
+	 * @param data the bytes received so far
+	 * @param begin where the head starts; ignored after the first call
+	 * @param end the end of the bytes received so far
+	 *
+	 * @return the index after the empty line ending the head, or -1 if more bytes are needed
+	 *
+	 * @throws IllegalArgumentException if the head is malformed or over a limit
+	 */
+	public final int parse(final Octet data, final int begin, final int end) {
+		if (this.state == DONE) {
+			return this.headEnd;
+		}
+
+		setData(data);
+
+		if (this.headBegin < 0) {
+			if (begin < data.begin() || begin > end) {
+				throw new IndexOutOfBoundsException("Begin: " + begin + " End: " + end);
+			}
+			this.headBegin = this.lineBegin = this.scanIndex = begin;
+		}
+		if (end > data.end() || end < this.scanIndex) {
+			throw new IndexOutOfBoundsException("End: " + end);
+		}
+
+		final int limit = Math.min(end, this.headBegin + this.maxHeadLength);
+
+		for (;;) {
+			final int lf = indexOfLF(this.scanIndex, limit);
+			if (lf < 0) {
+				if (limit < end) {
+					throw new IllegalArgumentException("Head longer than " + this.maxHeadLength + " bytes");
+				}
+				this.scanIndex = limit;
+				return -1;
+			}
+
+			int lineEnd = lf;
+			if (lineEnd > this.lineBegin && byteAt(lineEnd - 1) == CR) {
+				--lineEnd;
+			}
+
+			final int lineBegin = this.lineBegin;
+			this.lineBegin = this.scanIndex = lf + 1;
+
+			if (this.state == START_LINE) {
+				if (lineEnd == lineBegin) {
+					// Empty lines before the start line are ignored.
+					continue;
+				}
+				parseStartLine(lineBegin, lineEnd);
+				this.state = HEADERS;
+			} else if (lineEnd == lineBegin) {
+				this.state = DONE;
+				this.headEnd = lf + 1;
+				return this.headEnd;
+			} else {
+				parseHeader(lineBegin, lineEnd);
+			}
+		}
+	}
+
+	/*
+	 * Start line methods
+	 */
+
+	/**
+	 * Returns the request method, or null for a response.
+	 */
+	public final TextOctet method() {
+		return this.request ? part(PART_0) : null;
+	}
+
+	/**
+	 * Returns the request target, or null for a response.
+	 */
+	public final TextOctet uri() {
+		return this.request ? part(PART_1) : null;
+	}
+
+	public final TextOctet version() {
+		return this.request ? part(PART_2) : part(PART_0);
+	}
+
+	/**
+	 * Returns the status code of a response, or 0 for a request.
+	 */
+	public final int statusCode() {
+		return this.statusCode;
+	}
+
+	/**
+	 * Returns the reason phrase of a response, or null for a request.
+	 */
+	public final TextOctet reason() {
+		return this.request ? null : part(PART_2);
+	}
+
+	/*
+	 * Header methods
+	 */
+
+	public final int headerCount() {
+		return this.headerCount;
+	}
+
+	public final int nameBegin(final int index) {
+		return this.parts[headerPart(index)];
+	}
+
+	public final int nameEnd(final int index) {
+		return this.parts[headerPart(index) + 1];
+	}
+
+	public final int valueBegin(final int index) {
+		return this.parts[headerPart(index) + 2];
+	}
+
+	public final int valueEnd(final int index) {
+		return this.parts[headerPart(index) + 3];
+	}
+
+	public final TextOctet headerName(final int index) {
+		return part(headerPart(index));
+	}
+
+	/**
+	 * Returns the header value with surrounding whitespace removed.
+	 */
+	public final TextOctet headerValue(final int index) {
+		return part(headerPart(index) + 2);
+	}
+
+	/**
+	 * Returns the index of the first header with the given ASCII name, compared
+	 * ignoring case, or -1.
+	 */
+	public final int indexOfHeader(final byte[] name) {
+		return indexOfHeader(0, name);
+	}
+
+	public final int indexOfHeader(final int fromIndex, final byte[] name) {
+		for (int i = Math.max(fromIndex, 0); i < this.headerCount; ++i) {
+			final int part = HEADER_BASE + (i << 2);
+			final int begin = this.parts[part];
+			if ((this.parts[part + 1] - begin) != name.length) {
+				continue;
+			}
+
+			int j = 0;
+			for (; j < name.length; ++j) {
+				if (!TextMatchUtils.equalsIgnoreCase(byteAt(begin + j), name[j])) {
+					break;
+				}
+			}
+			if (j == name.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value of the first header with the given ASCII name, or null.
+	 */
+	public final TextOctet headerValue(final byte[] name) {
+		final int index = indexOfHeader(name);
+		return (index >= 0) ? headerValue(index) : null;
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final void setData(final Octet data) {
+		// Looked up on every call, the buffer is replaced when an expandable buffer grows.
+		this.dataBuffer = data.buffer();
+		this.dataArray = (this.dataBuffer == null) ? data.array() : null;
+		this.dataArrayOffset = (this.dataArray != null) ? data.arrayOffset() : 0;
+	}
+
+	private final int headerPart(final int index) {
+		if (index < 0 || index >= this.headerCount) {
+			throw new IndexOutOfBoundsException("Header: " + index + " Count: " + this.headerCount);
+		}
+		return HEADER_BASE + (index << 2);
+	}
+
+	private final TextOctet part(final int part) {
+		if (this.state == START_LINE) {
+			return null;
+		}
+
+		final int begin = this.parts[part];
+		final int length = this.parts[part + 1] - begin;
+		final int slot = part >> 1;
+
+		final TextOctet view = this.views[slot];
+		if (this.dataBuffer != null) {
+			final BufferText text = (view instanceof BufferText) ? (BufferText)view : new BufferText();
+			this.views[slot] = text;
+			return text.wrap(this.dataBuffer, begin, length);
+		} else {
+			final ArrayText text = (view instanceof ArrayText) ? (ArrayText)view : new ArrayText();
+			this.views[slot] = text;
+			return text.wrap(this.dataArray, begin + this.dataArrayOffset, length);
+		}
+	}
+
+	private final byte byteAt(final int index) {
+		if (this.dataBuffer != null) {
+			return this.dataBuffer.get(index);
+		}
+		return this.dataArray[index + this.dataArrayOffset];
+	}
+
+	private final int indexOfLF(final int start, final int end) {
+		if (this.dataBuffer != null) {
+			return BufferUtils.indexOf(this.dataBuffer, start, end, LF);
+		}
+
+		final byte[] array = this.dataArray;
+		if (array != null) {
+			final int offset = this.dataArrayOffset;
+			for (int i = start + offset, limit = end + offset; i < limit; ++i) {
+				if (array[i] == LF) {
+					return i - offset;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private final int indexOfSP(int index, final int end) {
+		for (; index < end; ++index) {
+			if (byteAt(index) == SP) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private final void parseStartLine(final int begin, final int end) {
+		final int sp1 = indexOfSP(begin, end);
+		if (sp1 <= begin) {
+			throw new IllegalArgumentException("Malformed start line");
+		}
+
+		if (this.request) {
+			// method SP request-target SP HTTP-version
+			final int sp2 = indexOfSP(sp1 + 1, end);
+			if (sp2 <= sp1 + 1 || indexOfSP(sp2 + 1, end) >= 0) {
+				throw new IllegalArgumentException("Malformed request line");
+			}
+			for (int i = begin; i < sp1; ++i) {
+				if (!isTokenChar(byteAt(i))) {
+					throw new IllegalArgumentException("Malformed request method");
+				}
+			}
+			checkVersion(sp2 + 1, end);
+
+			setPart(PART_0, begin, sp1);
+			setPart(PART_1, sp1 + 1, sp2);
+			setPart(PART_2, sp2 + 1, end);
+		} else {
+			// HTTP-version SP status-code SP [ reason-phrase ]
+			checkVersion(begin, sp1);
+
+			if (end < sp1 + 4 || (end > sp1 + 4 && byteAt(sp1 + 4) != SP)) {
+				throw new IllegalArgumentException("Malformed status line");
+			}
+			int code = 0;
+			for (int i = sp1 + 1; i < sp1 + 4; ++i) {
+				final int d = byteAt(i) - '0';
+				if (d < 0 || d > 9) {
+					throw new IllegalArgumentException("Malformed status code");
+				}
+				code = code * 10 + d;
+			}
+			this.statusCode = code;
+
+			setPart(PART_0, begin, sp1);
+			setPart(PART_1, sp1 + 1, sp1 + 4);
+			setPart(PART_2, Math.min(sp1 + 5, end), end);
+		}
+	}
+
+	private final void checkVersion(final int begin, final int end) {
+		// HTTP/d.d
+		if ((end - begin) != 8 || byteAt(begin) != 'H' || byteAt(begin + 1) != 'T'
+				|| byteAt(begin + 2) != 'T' || byteAt(begin + 3) != 'P' || byteAt(begin + 4) != '/'
+				|| !isDigit(byteAt(begin + 5)) || byteAt(begin + 6) != '.' || !isDigit(byteAt(begin + 7))) {
+			throw new IllegalArgumentException("Malformed HTTP version");
+		}
+	}
+
+	private final void parseHeader(final int begin, final int end) {
+		if (this.headerCount >= this.maxHeaders) {
+			throw new IllegalArgumentException("More than " + this.maxHeaders + " headers");
+		}
+
+		int colon = begin;
+		for (; colon < end; ++colon) {
+			final byte b = byteAt(colon);
+			if (b == ':') {
+				break;
+			}
+			if (!isTokenChar(b)) {
+				// Also rejects obsolete line folding and whitespace before the colon.
+				throw new IllegalArgumentException("Malformed header name");
+			}
+		}
+		if (colon == begin || colon == end) {
+			throw new IllegalArgumentException("Malformed header line");
+		}
+
+		int valueBegin = colon + 1;
+		int valueEnd = end;
+		while (valueBegin < valueEnd && isWhitespace(byteAt(valueBegin))) {
+			++valueBegin;
+		}
+		while (valueEnd > valueBegin && isWhitespace(byteAt(valueEnd - 1))) {
+			--valueEnd;
+		}
+
+		final int part = HEADER_BASE + (this.headerCount << 2);
+		if (part + 4 > this.parts.length) {
+			this.parts = Arrays.copyOf(this.parts, this.parts.length << 1);
+			this.views = Arrays.copyOf(this.views, this.parts.length >> 1);
+		}
+
+		this.parts[part] = begin;
+		this.parts[part + 1] = colon;
+		this.parts[part + 2] = valueBegin;
+		this.parts[part + 3] = valueEnd;
+		++this.headerCount;
+	}
+
+	private final void setPart(final int part, final int begin, final int end) {
+		this.parts[part] = begin;
+		this.parts[part + 1] = end;
+	}
+
+	private static final boolean isTokenChar(final byte b) {
+		return (b >= 0 && TOKEN_CHARS[b]);
+	}
+
+	private static final boolean isDigit(final byte b) {
+		return (b >= '0' && b <= '9');
+	}
+
+	private static final boolean isWhitespace(final byte b) {
+		return (b == SP || b == HT);
+	}
+
+}
@@ -0,0 +1,659 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.json;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.chinmobi.octet.Octet;
+import com.chinmobi.text.ArrayText;
+import com.chinmobi.text.BufferText;
+import com.chinmobi.text.CharsetUtils;
+import com.chinmobi.text.ExpandableTextBuffer;
+import com.chinmobi.text.TextNumberUtils;
+import com.chinmobi.text.TextOctet;
+
+/**
+ * A pull tokenizer over UTF-8 JSON text.
+ * <p>
+ * Each call of next returns the type of the following token and moves begin and end
+ * to its bytes: the content between the quotes for names and strings (still escaped),
+ * the literal for numbers, true, false and null. Nothing is copied or decoded unless
+ * asked for, and token returns one reused view.
+ * <p>
+ * Several top level values may follow one another, as in JSON lines.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class JsonTokenizer {
+
+	public static final int END_OF_INPUT = 0;
+	public static final int START_OBJECT = 1;
+	public static final int END_OBJECT = 2;
+	public static final int START_ARRAY = 3;
+	public static final int END_ARRAY = 4;
+	public static final int FIELD_NAME = 5;
+	public static final int STRING = 6;
+	public static final int NUMBER = 7;
+	public static final int TRUE = 8;
+	public static final int FALSE = 9;
+	public static final int NULL = 10;
+
+	private static final byte OBJECT = 1;
+	private static final byte ARRAY = 2;
+
+	private static final byte[] TRUE_BYTES = { 't', 'r', 'u', 'e' };
+	private static final byte[] FALSE_BYTES = { 'f', 'a', 'l', 's', 'e' };
+	private static final byte[] NULL_BYTES = { 'n', 'u', 'l', 'l' };
+
+	private static final byte[] EMPTY_ARRAY = new byte[0];
+
+
+	private Octet source;
+	private ByteBuffer sourceBuffer;
+	private byte[] sourceArray;
+	private int sourceArrayOffset;
+
+	private int position;
+	private int limit;
+
+	private byte[] stack;
+	private int depth;
+
+	private boolean afterValue;
+	private boolean needName;
+	private boolean justOpened;
+
+	private int tokenType;
+	private int tokenBegin;
+	private int tokenEnd;
+	private boolean tokenEscaped;
+	private boolean tokenInteger;
+
+	private ArrayText arrayView;
+	private BufferText bufferView;
+
+	private ExpandableTextBuffer scratch;
+
+
+	public JsonTokenizer() {
+		this.stack = new byte[16];
+	}
+
+
+	public final JsonTokenizer reset(final Octet source) {
+		return reset(source, source.begin(), source.end());
+	}
+
+	public final JsonTokenizer reset(final Octet source, final int beginIndex, final int endIndex) {
+		if (beginIndex < source.begin() || beginIndex > endIndex || endIndex > source.end()) {
+			throw new IndexOutOfBoundsException("Begin: " + beginIndex + " End: " + endIndex);
+		}
+
+		this.source = source;
+		this.sourceBuffer = source.buffer();
+		this.sourceArray = (this.sourceBuffer == null) ? source.array() : null;
+		this.sourceArrayOffset = (this.sourceArray != null) ? source.arrayOffset() : 0;
+
+		this.position = beginIndex;
+		this.limit = endIndex;
+
+		this.depth = 0;
+		this.afterValue = false;
+		this.needName = false;
+		this.justOpened = false;
+
+		this.tokenType = END_OF_INPUT;
+		this.tokenBegin = this.tokenEnd = beginIndex;
+
+		return this;
+	}
+
+	/**
+	 * Moves to the next token.
+	 *
+	 * @return the token type, END_OF_INPUT after the last top level value
+	 *
+	 * @throws IllegalArgumentException if the text is not valid JSON
+	 */
+	public final int next() {
+		int pos = skipWhitespace(this.position);
+
+		if (pos >= this.limit) {
+			if (this.depth > 0 || this.needName) {
+				throw syntaxError(pos, "Unexpected end of input");
+			}
+			this.position = pos;
+			this.tokenBegin = this.tokenEnd = pos;
+			return (this.tokenType = END_OF_INPUT);
+		}
+
+		byte b = byteAt(pos);
+
+		if (this.depth > 0 && this.afterValue) {
+			final byte container = this.stack[this.depth - 1];
+			if (b == ',') {
+				this.afterValue = false;
+				this.needName = (container == OBJECT);
+				pos = skipWhitespace(pos + 1);
+				if (pos >= this.limit) {
+					throw syntaxError(pos, "Unexpected end of input");
+				}
+				b = byteAt(pos);
+			} else if ((b == '}' && container == OBJECT) || (b == ']' && container == ARRAY)) {
+				return closeContainer(pos, container);
+			} else {
+				throw syntaxError(pos, "Expected ',' or end of container");
+			}
+		} else if (this.justOpened) {
+			final byte container = this.stack[this.depth - 1];
+			if ((b == '}' && container == OBJECT) || (b == ']' && container == ARRAY)) {
+				return closeContainer(pos, container);
+			}
+		}
+
+		this.justOpened = false;
+
+		if (this.needName) {
+			if (b != '"') {
+				throw syntaxError(pos, "Expected field name");
+			}
+			pos = scanString(pos);
+
+			pos = skipWhitespace(pos);
+			if (pos >= this.limit || byteAt(pos) != ':') {
+				throw syntaxError(pos, "Expected ':'");
+			}
+			this.position = pos + 1;
+			this.needName = false;
+			return (this.tokenType = FIELD_NAME);
+		}
+
+		this.afterValue = true;
+
+		switch (b) {
+		case '{':
+			return openContainer(pos, OBJECT);
+
+		case '[':
+			return openContainer(pos, ARRAY);
+
+		case '"':
+			this.position = scanString(pos);
+			return (this.tokenType = STRING);
+
+		case 't':
+			return scanLiteral(pos, TRUE_BYTES, TRUE);
+
+		case 'f':
+			return scanLiteral(pos, FALSE_BYTES, FALSE);
+
+		case 'n':
+			return scanLiteral(pos, NULL_BYTES, NULL);
+
+		default:
+			if (b == '-' || (b >= '0' && b <= '9')) {
+				this.position = scanNumber(pos);
+				return (this.tokenType = NUMBER);
+			}
+			throw syntaxError(pos, "Unexpected character '" + (char)(b & 0xFF) + "'");
+		}
+	}
+
+	/**
+	 * Skips the value that starts with the current token, including all nested tokens.
+	 */
+	public final JsonTokenizer skipValue() {
+		if (this.tokenType == START_OBJECT || this.tokenType == START_ARRAY) {
+			final int target = this.depth - 1;
+			while (this.depth > target) {
+				if (next() == END_OF_INPUT) {
+					break;
+				}
+			}
+		} else if (this.tokenType == FIELD_NAME) {
+			next();
+			skipValue();
+		}
+		return this;
+	}
+
+	/*
+	 * Current token methods
+	 */
+
+	public final int tokenType() {
+		return this.tokenType;
+	}
+
+	public final int begin() {
+		return this.tokenBegin;
+	}
+
+	public final int end() {
+		return this.tokenEnd;
+	}
+
+	public final int depth() {
+		return this.depth;
+	}
+
+	/**
+	 * Returns true if the current name or string holds escape sequences, in which case
+	 * its raw bytes differ from its value.
+	 */
+	public final boolean hasEscapes() {
+		return this.tokenEscaped;
+	}
+
+	/**
+	 * Returns true if the current number has neither fraction nor exponent.
+	 */
+	public final boolean isInteger() {
+		return this.tokenInteger;
+	}
+
+	/**
+	 * Returns a view over the raw bytes of the current token. The same view is
+	 * returned on every call and is moved by the next call of next.
+	 */
+	public final TextOctet token() {
+		final int length = this.tokenEnd - this.tokenBegin;
+
+		if (this.sourceBuffer != null) {
+			if (this.bufferView == null) {
+				this.bufferView = new BufferText();
+			}
+			return this.bufferView.wrap(this.sourceBuffer, this.tokenBegin, length);
+		} else {
+			if (this.arrayView == null) {
+				this.arrayView = new ArrayText();
+			}
+			final byte[] array = (this.sourceArray != null) ? this.sourceArray : EMPTY_ARRAY;
+			return this.arrayView.wrap(array, this.tokenBegin + this.sourceArrayOffset, length);
+		}
+	}
+
+	public final int intValue() {
+		checkNumber();
+		return TextNumberUtils.parseInt(this.source, this.tokenBegin, this.tokenEnd);
+	}
+
+	public final long longValue() {
+		checkNumber();
+		return TextNumberUtils.parseLong(this.source, this.tokenBegin, this.tokenEnd);
+	}
+
+	public final double doubleValue() {
+		checkNumber();
+		return TextNumberUtils.parseDouble(this.source, this.tokenBegin, this.tokenEnd);
+	}
+
+	/**
+	 * Returns true if the current name or string equals the given ASCII bytes. Only
+	 * names without escapes can match.
+	 */
+	public final boolean nameEquals(final byte[] bytes) {
+		if (this.tokenEscaped || (this.tokenEnd - this.tokenBegin) != bytes.length) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; ++i) {
+			if (byteAt(this.tokenBegin + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Appends the unescaped UTF-8 bytes of the current name or string.
+	 */
+	public final ExpandableTextBuffer appendString(final ExpandableTextBuffer dest) {
+		checkString();
+
+		int from = this.tokenBegin;
+		final int end = this.tokenEnd;
+
+		while (from < end) {
+			final int escape = indexOf(from, end, (byte)'\\');
+			if (escape > from) {
+				dest.append(this.source, from, escape);
+			}
+			if (escape >= end) {
+				break;
+			}
+			from = appendEscape(escape, dest);
+		}
+
+		return dest;
+	}
+
+	/**
+	 * Returns the value of the current name or string as a String.
+	 */
+	public final String stringValue() {
+		checkString();
+
+		if (!this.tokenEscaped) {
+			if (this.sourceBuffer != null) {
+				return CharsetUtils.decode(this.sourceBuffer, this.tokenBegin, this.tokenEnd, CharsetUtils.UTF_8);
+			}
+			return CharsetUtils.decode(this.sourceArray, this.tokenBegin + this.sourceArrayOffset,
+					this.tokenEnd - this.tokenBegin, CharsetUtils.UTF_8);
+		}
+
+		if (this.scratch == null) {
+			this.scratch = new ExpandableTextBuffer(64);
+		}
+		final ExpandableTextBuffer buffer = this.scratch.clear();
+		appendString(buffer);
+
+		final ByteBuffer bytes = buffer.buffer();
+		return CharsetUtils.decode(bytes, 0, bytes.position(), CharsetUtils.UTF_8);
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private static final IllegalArgumentException syntaxError(final int index, final String message) {
+		return new IllegalArgumentException(message + " at index " + index);
+	}
+
+	private final void checkNumber() {
+		if (this.tokenType != NUMBER) {
+			throw new IllegalStateException("Not a number token: " + this.tokenType);
+		}
+	}
+
+	private final void checkString() {
+		if (this.tokenType != STRING && this.tokenType != FIELD_NAME) {
+			throw new IllegalStateException("Not a string token: " + this.tokenType);
+		}
+	}
+
+	private final byte byteAt(final int index) {
+		if (this.sourceBuffer != null) {
+			return this.sourceBuffer.get(index);
+		}
+		return this.sourceArray[index + this.sourceArrayOffset];
+	}
+
+	private final int indexOf(int from, final int end, final byte b) {
+		for (; from < end; ++from) {
+			if (byteAt(from) == b) {
+				break;
+			}
+		}
+		return from;
+	}
+
+	private final int skipWhitespace(int pos) {
+		for (; pos < this.limit; ++pos) {
+			final byte b = byteAt(pos);
+			if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+				break;
+			}
+		}
+		return pos;
+	}
+
+	private final int openContainer(final int pos, final byte container) {
+		if (this.depth >= this.stack.length) {
+			this.stack = Arrays.copyOf(this.stack, this.stack.length << 1);
+		}
+		this.stack[this.depth++] = container;
+
+		this.afterValue = false;
+		this.needName = (container == OBJECT);
+		this.justOpened = true;
+
+		this.tokenBegin = pos;
+		this.tokenEnd = this.position = pos + 1;
+		return (this.tokenType = (container == OBJECT) ? START_OBJECT : START_ARRAY);
+	}
+
+	private final int closeContainer(final int pos, final byte container) {
+		--this.depth;
+
+		this.afterValue = true;
+		this.needName = false;
+		this.justOpened = false;
+
+		this.tokenBegin = pos;
+		this.tokenEnd = this.position = pos + 1;
+		return (this.tokenType = (container == OBJECT) ? END_OBJECT : END_ARRAY);
+	}
+
+	private final int scanLiteral(final int pos, final byte[] literal, final int type) {
+		final int end = pos + literal.length;
+		if (end > this.limit) {
+			throw syntaxError(pos, "Invalid literal");
+		}
+		for (int i = 1; i < literal.length; ++i) {
+			if (byteAt(pos + i) != literal[i]) {
+				throw syntaxError(pos, "Invalid literal");
+			}
+		}
+
+		this.tokenBegin = pos;
+		this.tokenEnd = this.position = end;
+		return (this.tokenType = type);
+	}
+
+	/**
+	 * Scans the string starting with the quote at pos.
+	 *
+	 * @return the index after the closing quote
+	 */
+	private final int scanString(final int pos) {
+		final int begin = pos + 1;
+		boolean escaped = false;
+
+		int i = begin;
+		for (;;) {
+			if (this.sourceBuffer != null) {
+				i = JsonUtils.indexOfSpecial(this.sourceBuffer, i, this.limit);
+			} else {
+				final int offset = this.sourceArrayOffset;
+				i = JsonUtils.indexOfSpecial(this.sourceArray, i + offset, this.limit + offset) - offset;
+			}
+
+			if (i >= this.limit) {
+				throw syntaxError(pos, "Unterminated string");
+			}
+
+			final byte b = byteAt(i);
+			if (b == '"') {
+				break;
+			}
+			if (b != '\\') {
+				throw syntaxError(i, "Control character in string");
+			}
+
+			escaped = true;
+			if (i + 1 >= this.limit) {
+				throw syntaxError(i, "Unterminated string");
+			}
+			switch (byteAt(i + 1)) {
+			case '"': case '\\': case '/': case 'b': case 'f': case 'n': case 'r': case 't':
+				i += 2;
+				break;
+			case 'u':
+				if (i + 6 > this.limit) {
+					throw syntaxError(i, "Invalid escape");
+				}
+				for (int j = i + 2; j < i + 6; ++j) {
+					if (hexValue(byteAt(j)) < 0) {
+						throw syntaxError(i, "Invalid escape");
+					}
+				}
+				i += 6;
+				break;
+			default:
+				throw syntaxError(i, "Invalid escape");
+			}
+		}
+
+		this.tokenBegin = begin;
+		this.tokenEnd = i;
+		this.tokenEscaped = escaped;
+		return i + 1;
+	}
+
+	/**
+	 * Scans the number starting at pos against the JSON grammar.
+	 *
+	 * @return the index after the number
+	 */
+	private final int scanNumber(final int pos) {
+		int i = pos;
+		boolean integer = true;
+
+		if (byteAt(i) == '-') {
+			++i;
+		}
+		if (i >= this.limit) {
+			throw syntaxError(pos, "Invalid number");
+		}
+
+		if (byteAt(i) == '0') {
+			++i;
+		} else {
+			final int start = i;
+			i = skipDigits(i);
+			if (i == start) {
+				throw syntaxError(pos, "Invalid number");
+			}
+		}
+
+		if (i < this.limit && byteAt(i) == '.') {
+			integer = false;
+			final int start = ++i;
+			i = skipDigits(i);
+			if (i == start) {
+				throw syntaxError(pos, "Invalid number");
+			}
+		}
+
+		if (i < this.limit && (byteAt(i) | 0x20) == 'e') {
+			integer = false;
+			++i;
+			if (i < this.limit && (byteAt(i) == '+' || byteAt(i) == '-')) {
+				++i;
+			}
+			final int start = i;
+			i = skipDigits(i);
+			if (i == start) {
+				throw syntaxError(pos, "Invalid number");
+			}
+		}
+
+		this.tokenBegin = pos;
+		this.tokenEnd = i;
+		this.tokenInteger = integer;
+		return i;
+	}
+
+	private final int skipDigits(int i) {
+		for (; i < this.limit; ++i) {
+			final byte b = byteAt(i);
+			if (b < '0' || b > '9') {
+				break;
+			}
+		}
+		return i;
+	}
+
+	private static final int hexValue(final byte b) {
+		if (b >= '0' && b <= '9') {
+			return b - '0';
+		}
+		final int c = b | 0x20;
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		return -1;
+	}
+
+	private final int hex4(final int index) {
+		return (hexValue(byteAt(index)) << 12) | (hexValue(byteAt(index + 1)) << 8)
+				| (hexValue(byteAt(index + 2)) << 4) | hexValue(byteAt(index + 3));
+	}
+
+	/**
+	 * Appends the escape at index, returning the index after it.
+	 */
+	private final int appendEscape(final int index, final ExpandableTextBuffer dest) {
+		final byte b = byteAt(index + 1);
+		switch (b) {
+		case 'b': dest.append((byte)'\b'); return index + 2;
+		case 'f': dest.append((byte)'\f'); return index + 2;
+		case 'n': dest.append((byte)'\n'); return index + 2;
+		case 'r': dest.append((byte)'\r'); return index + 2;
+		case 't': dest.append((byte)'\t'); return index + 2;
+		case 'u': break;
+		default: dest.append(b); return index + 2;
+		}
+
+		int cp = hex4(index + 2);
+		int next = index + 6;
+
+		if (cp >= 0xD800 && cp <= 0xDBFF) {
+			if (next + 6 <= this.tokenEnd && byteAt(next) == '\\' && byteAt(next + 1) == 'u') {
+				final int low = hex4(next + 2);
+				if (low >= 0xDC00 && low <= 0xDFFF) {
+					cp = 0x10000 + ((cp - 0xD800) << 10) + (low - 0xDC00);
+					next += 6;
+				} else {
+					cp = 0xFFFD;
+				}
+			} else {
+				cp = 0xFFFD;
+			}
+		} else if (cp >= 0xDC00 && cp <= 0xDFFF) {
+			cp = 0xFFFD;
+		}
+
+		if (cp < 0x80) {
+			dest.append((byte)cp);
+		} else if (cp < 0x800) {
+			dest.append((byte)(0xC0 | (cp >> 6)));
+			dest.append((byte)(0x80 | (cp & 0x3F)));
+		} else if (cp < 0x10000) {
+			dest.append((byte)(0xE0 | (cp >> 12)));
+			dest.append((byte)(0x80 | ((cp >> 6) & 0x3F)));
+			dest.append((byte)(0x80 | (cp & 0x3F)));
+		} else {
+			dest.append((byte)(0xF0 | (cp >> 18)));
+			dest.append((byte)(0x80 | ((cp >> 12) & 0x3F)));
+			dest.append((byte)(0x80 | ((cp >> 6) & 0x3F)));
+			dest.append((byte)(0x80 | (cp & 0x3F)));
+		}
+		return next;
+	}
+
+}
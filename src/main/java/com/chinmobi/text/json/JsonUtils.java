@@ -0,0 +1,97 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.json;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.chinmobi.octet.SwarUtils;
+
+/**
+ * Scanning helpers shared by the tokenizer and the writer.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+final class JsonUtils {
+
+	private static final int BULK_THRESHOLD = 16;
+
+	private static final long CONTROL_MASK = 0xE0E0E0E0E0E0E0E0L;
+
+
+	private JsonUtils() {
+	}
+
+
+	static final boolean isSpecial(final byte b) {
+		return (b == '"' || b == '\\' || (b & 0xE0) == 0);
+	}
+
+	/**
+	 * Returns the index of the first quote, backslash or control character in
+	 * [start, end) of the array, or end if there is none.
+	 */
+	static final int indexOfSpecial(final byte[] array, int start, final int end) {
+		for (; start < end; ++start) {
+			final byte b = array[start];
+			if (b == '"' || b == '\\' || (b & 0xE0) == 0) {
+				break;
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * Same as indexOfSpecial for arrays, eight bytes at a time on direct buffers.
+	 */
+	static final int indexOfSpecial(final ByteBuffer buffer, int start, final int end) {
+		if (buffer.hasArray()) {
+			final int offset = buffer.arrayOffset();
+			return indexOfSpecial(buffer.array(), start + offset, end + offset) - offset;
+		}
+
+		if ((end - start) >= BULK_THRESHOLD) {
+			final ByteOrder order = buffer.order();
+			for (final int limit = end - 8; start <= limit; start += 8) {
+				final long word = buffer.getLong(start);
+				final long mask = SwarUtils.matchBytes(word, (byte)'"')
+						| SwarUtils.matchBytes(word, (byte)'\\')
+						| SwarUtils.zeroBytes(word & CONTROL_MASK);
+				if (mask != 0) {
+					return start + SwarUtils.firstIndex(mask, order);
+				}
+			}
+		}
+
+		for (; start < end; ++start) {
+			if (isSpecial(buffer.get(start))) {
+				break;
+			}
+		}
+		return start;
+	}
+
+}
@@ -0,0 +1,315 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.json;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.chinmobi.octet.Octet;
+import com.chinmobi.text.ExpandableTextBuffer;
+
+/**
+ * Streams JSON into an {@link ExpandableTextBuffer}, whose charset should be UTF-8
+ * (the default).
+ * <p>
+ * Strings are appended as is and then escaped in place, so text without quotes,
+ * backslashes or control characters costs a single scan. Top level values are
+ * separated by LF, as in JSON lines.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class JsonWriter {
+
+	private static final byte OBJECT = 1;
+	private static final byte ARRAY = 2;
+
+	private static final byte[] HEX_DIGITS = {
+		'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+	};
+
+	private static final byte[] TRUE_BYTES = { 't', 'r', 'u', 'e' };
+	private static final byte[] FALSE_BYTES = { 'f', 'a', 'l', 's', 'e' };
+	private static final byte[] NULL_BYTES = { 'n', 'u', 'l', 'l' };
+
+
+	private final ExpandableTextBuffer buffer;
+
+	private byte[] stack;
+	private int depth;
+
+	private boolean first;
+	private boolean afterName;
+	private boolean hasRoot;
+
+
+	public JsonWriter(final ExpandableTextBuffer buffer) {
+		this.buffer = buffer;
+		this.stack = new byte[16];
+		this.first = true;
+	}
+
+
+	public final ExpandableTextBuffer buffer() {
+		return this.buffer;
+	}
+
+	public final int depth() {
+		return this.depth;
+	}
+
+	/*
+	 * Structure methods
+	 */
+
+	public final JsonWriter beginObject() {
+		beforeValue();
+		this.buffer.append((byte)'{');
+		push(OBJECT);
+		return this;
+	}
+
+	public final JsonWriter endObject() {
+		pop(OBJECT);
+		this.buffer.append((byte)'}');
+		return this;
+	}
+
+	public final JsonWriter beginArray() {
+		beforeValue();
+		this.buffer.append((byte)'[');
+		push(ARRAY);
+		return this;
+	}
+
+	public final JsonWriter endArray() {
+		pop(ARRAY);
+		this.buffer.append((byte)']');
+		return this;
+	}
+
+	public final JsonWriter name(final CharSequence name) {
+		beforeName();
+		final int start = beginString();
+		this.buffer.append(name);
+		endString(start);
+		this.buffer.append((byte)':');
+		return this;
+	}
+
+	/**
+	 * Writes a name given as UTF-8 bytes.
+	 */
+	public final JsonWriter name(final Octet name) {
+		beforeName();
+		final int start = beginString();
+		this.buffer.append(name);
+		endString(start);
+		this.buffer.append((byte)':');
+		return this;
+	}
+
+	/*
+	 * Value methods
+	 */
+
+	public final JsonWriter value(final CharSequence value) {
+		if (value == null) {
+			return nullValue();
+		}
+
+		beforeValue();
+		final int start = beginString();
+		this.buffer.append(value);
+		endString(start);
+		return this;
+	}
+
+	/**
+	 * Writes a string given as UTF-8 bytes.
+	 */
+	public final JsonWriter value(final Octet value) {
+		return value(value, value.begin(), value.end());
+	}
+
+	public final JsonWriter value(final Octet value, final int start, final int end) {
+		beforeValue();
+		final int stringStart = beginString();
+		this.buffer.append(value, start, end);
+		endString(stringStart);
+		return this;
+	}
+
+	public final JsonWriter value(final long value) {
+		beforeValue();
+		this.buffer.appendLong(value);
+		return this;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if value is NaN or infinite
+	 */
+	public final JsonWriter value(final double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			throw new IllegalArgumentException("Non-finite number: " + value);
+		}
+
+		beforeValue();
+		this.buffer.appendDouble(value);
+		return this;
+	}
+
+	public final JsonWriter value(final boolean value) {
+		beforeValue();
+		this.buffer.append(value ? TRUE_BYTES : FALSE_BYTES);
+		return this;
+	}
+
+	public final JsonWriter nullValue() {
+		beforeValue();
+		this.buffer.append(NULL_BYTES);
+		return this;
+	}
+
+	/**
+	 * Writes an already encoded JSON value as is.
+	 */
+	public final JsonWriter rawValue(final Octet json) {
+		beforeValue();
+		this.buffer.append(json);
+		return this;
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final void push(final byte container) {
+		if (this.depth >= this.stack.length) {
+			this.stack = Arrays.copyOf(this.stack, this.stack.length << 1);
+		}
+		this.stack[this.depth++] = container;
+		this.first = true;
+	}
+
+	private final void pop(final byte container) {
+		if (this.depth == 0 || this.stack[this.depth - 1] != container || this.afterName) {
+			throw new IllegalStateException("Unbalanced " + ((container == OBJECT) ? "object" : "array"));
+		}
+		--this.depth;
+		this.first = false;
+	}
+
+	private final void beforeName() {
+		if (this.depth == 0 || this.stack[this.depth - 1] != OBJECT || this.afterName) {
+			throw new IllegalStateException("Name outside of object");
+		}
+		if (!this.first) {
+			this.buffer.append((byte)',');
+		}
+		this.first = false;
+		this.afterName = true;
+	}
+
+	private final void beforeValue() {
+		if (this.depth == 0) {
+			if (this.hasRoot) {
+				this.buffer.append((byte)'\n');
+			}
+			this.hasRoot = true;
+		} else if (this.stack[this.depth - 1] == OBJECT) {
+			if (!this.afterName) {
+				throw new IllegalStateException("Value without name in object");
+			}
+			this.afterName = false;
+		} else {
+			if (!this.first) {
+				this.buffer.append((byte)',');
+			}
+			this.first = false;
+		}
+	}
+
+	private final int beginString() {
+		this.buffer.append((byte)'"');
+		return this.buffer.position();
+	}
+
+	/**
+	 * Escapes the bytes appended since start in place and closes the string.
+	 */
+	private final void endString(final int start) {
+		ByteBuffer buf = this.buffer.buffer();
+		final int end = buf.position();
+
+		final int special = JsonUtils.indexOfSpecial(buf, start, end);
+		if (special < end) {
+			int extra = 0;
+			for (int i = special; i < end; ++i) {
+				final byte b = buf.get(i);
+				if (b == '"' || b == '\\' || b == '\b' || b == '\f' || b == '\n' || b == '\r' || b == '\t') {
+					++extra;
+				} else if ((b & 0xE0) == 0) {
+					extra += 5;
+				}
+			}
+
+			this.buffer.ensureLength(extra + 1);
+			buf = this.buffer.buffer();
+
+			// Move the tail right from its end, expanding escapes on the way.
+			int w = end + extra;
+			for (int r = end; r > special; ) {
+				final byte b = buf.get(--r);
+				if (!JsonUtils.isSpecial(b)) {
+					buf.put(--w, b);
+					continue;
+				}
+
+				switch (b) {
+				case '"': case '\\': buf.put(--w, b); break;
+				case '\b': buf.put(--w, (byte)'b'); break;
+				case '\f': buf.put(--w, (byte)'f'); break;
+				case '\n': buf.put(--w, (byte)'n'); break;
+				case '\r': buf.put(--w, (byte)'r'); break;
+				case '\t': buf.put(--w, (byte)'t'); break;
+				default:
+					buf.put(--w, HEX_DIGITS[b & 0x0F]);
+					buf.put(--w, HEX_DIGITS[(b >> 4) & 0x0F]);
+					buf.put(--w, (byte)'0');
+					buf.put(--w, (byte)'0');
+					buf.put(--w, (byte)'u');
+					break;
+				}
+				buf.put(--w, (byte)'\\');
+			}
+
+			buf.position(end + extra);
+		}
+
+		this.buffer.append((byte)'"');
+	}
+
+}
@@ -0,0 +1,354 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.regex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.chinmobi.octet.Octet;
+import com.chinmobi.text.ArrayText;
+import com.chinmobi.text.BufferText;
+import com.chinmobi.text.TextOctet;
+
+/**
+ * Matches an {@link OctetPattern} against a range of an {@link Octet}, in the manner of
+ * {@link java.util.regex.Matcher}. Indexes are those of the octet; '^' and '$' see the
+ * begin and end of the range.
+ * <p>
+ * A search runs a forward DFA to find where the match ends and a reverse DFA to find
+ * where it starts; the groups are only worked out, by an NFA over the match, when one
+ * of them is asked for. The DFA states are cached per matcher, so reuse a matcher
+ * rather than make a new one per input. A matcher is not thread-safe.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class OctetMatcher {
+
+	private static final byte[] EMPTY_ARRAY = new byte[0];
+
+	private static final int NO_MATCH = 0;
+	private static final int FOUND = 1;
+	private static final int MATCHED = 2;
+
+	private final OctetPattern pattern;
+
+	private RegexDfa forwardDfa;
+	private RegexDfa anchoredDfa;
+	private RegexDfa fullDfa;
+	private RegexDfa reverseDfa;
+	private RegexNfa forwardNfa;
+	private RegexNfa fullNfa;
+
+	private Octet source;
+	private ByteBuffer sourceBuffer;
+	private byte[] sourceArray;
+	private int sourceArrayOffset;
+
+	private int rangeBegin;
+	private int rangeEnd;
+	/** Where the next find starts, or past the range end once the matches run out. */
+	private int searchFrom;
+
+	private int matchState;
+	private int matchStart;
+	private int matchEnd;
+
+	private final int[] captures;
+	private boolean capturesValid;
+
+	private ArrayText arrayView;
+	private BufferText bufferView;
+
+
+	OctetMatcher(final OctetPattern pattern) {
+		this.pattern = pattern;
+		this.captures = new int[2 * (pattern.groupCount() + 1)];
+	}
+
+
+	public final OctetPattern pattern() {
+		return this.pattern;
+	}
+
+	public final OctetMatcher reset(final Octet source) {
+		return reset(source, source.begin(), source.end());
+	}
+
+	public final OctetMatcher reset(final Octet source, final int beginIndex, final int endIndex) {
+		if (beginIndex < source.begin() || beginIndex > endIndex || endIndex > source.end()) {
+			throw new IndexOutOfBoundsException("Begin: " + beginIndex + " End: " + endIndex);
+		}
+
+		this.source = source;
+		this.sourceBuffer = source.buffer();
+		this.sourceArray = (this.sourceBuffer == null) ? source.array() : null;
+		this.sourceArrayOffset = (this.sourceArray != null) ? source.arrayOffset() : 0;
+
+		this.rangeBegin = beginIndex;
+		this.rangeEnd = endIndex;
+
+		if (this.arrayView != null) {
+			this.arrayView.setCharset(charsetOf(source));
+		}
+		if (this.bufferView != null) {
+			this.bufferView.setCharset(charsetOf(source));
+		}
+
+		return reset();
+	}
+
+	/**
+	 * Forgets the last match, so the next find starts again from the range begin.
+	 */
+	public final OctetMatcher reset() {
+		this.searchFrom = this.rangeBegin;
+		this.matchState = NO_MATCH;
+		return this;
+	}
+
+	public final int regionStart() {
+		return this.rangeBegin;
+	}
+
+	public final int regionEnd() {
+		return this.rangeEnd;
+	}
+
+	/*
+	 * Match methods
+	 */
+
+	/**
+	 * Finds the next match, leftmost first, after the last one. See {@link OctetPattern}
+	 * for where an empty loop iteration makes it differ from java.util.regex.
+	 */
+	public final boolean find() {
+		checkSource();
+
+		final int from = this.searchFrom;
+		if (from > this.rangeEnd) {
+			this.matchState = NO_MATCH;
+			return false;
+		}
+		return search(from);
+	}
+
+	/**
+	 * Resets this matcher and finds the first match at or after from.
+	 */
+	public final boolean find(final int from) {
+		checkSource();
+		if (from < this.rangeBegin || from > this.rangeEnd) {
+			throw new IndexOutOfBoundsException("Illegal start index: " + from);
+		}
+
+		reset();
+		return search(from);
+	}
+
+	/**
+	 * Tells whether the whole range matches.
+	 */
+	public final boolean matches() {
+		checkSource();
+
+		if (this.fullDfa == null) {
+			this.fullDfa = new RegexDfa(this.pattern.full, false);
+		}
+		final int end = this.fullDfa.searchForward(this.sourceArray, this.sourceArrayOffset,
+				this.sourceBuffer, this.rangeBegin, this.rangeBegin, this.rangeEnd, true);
+
+		return setMatch((end >= 0) ? MATCHED : NO_MATCH, this.rangeBegin, end);
+	}
+
+	/**
+	 * Tells whether a prefix of the range matches.
+	 */
+	public final boolean lookingAt() {
+		checkSource();
+
+		if (this.anchoredDfa == null) {
+			this.anchoredDfa = new RegexDfa(this.pattern.forward, false);
+		}
+		final int end = this.anchoredDfa.searchForward(this.sourceArray, this.sourceArrayOffset,
+				this.sourceBuffer, this.rangeBegin, this.rangeBegin, this.rangeEnd, true);
+
+		return setMatch((end >= 0) ? FOUND : NO_MATCH, this.rangeBegin, end);
+	}
+
+	/*
+	 * Group methods
+	 */
+
+	public final int groupCount() {
+		return this.pattern.groupCount();
+	}
+
+	public final int start() {
+		checkMatch();
+		return this.matchStart;
+	}
+
+	/**
+	 * Returns where the group starts in the last match, or -1 if it took no part.
+	 */
+	public final int start(final int group) {
+		return capture(group, 0);
+	}
+
+	public final int end() {
+		checkMatch();
+		return this.matchEnd;
+	}
+
+	public final int end(final int group) {
+		return capture(group, 1);
+	}
+
+	/**
+	 * Returns a view over the last match. The same view is returned on every call of
+	 * group and is moved by the next one, so copy it to keep it.
+	 */
+	public final TextOctet group() {
+		return group(0);
+	}
+
+	/**
+	 * Returns a view over the group in the last match, or null if it took no part.
+	 */
+	public final TextOctet group(final int group) {
+		final int start = start(group);
+		if (start < 0) {
+			return null;
+		}
+		final int length = end(group) - start;
+
+		if (this.sourceBuffer != null) {
+			if (this.bufferView == null) {
+				this.bufferView = new BufferText();
+				this.bufferView.setCharset(charsetOf(this.source));
+			}
+			return this.bufferView.wrap(this.sourceBuffer, start, length);
+		} else {
+			if (this.arrayView == null) {
+				this.arrayView = new ArrayText();
+				this.arrayView.setCharset(charsetOf(this.source));
+			}
+			final byte[] array = (this.sourceArray != null) ? this.sourceArray : EMPTY_ARRAY;
+			return this.arrayView.wrap(array, start + this.sourceArrayOffset, length);
+		}
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private final boolean search(final int from) {
+		if (this.forwardDfa == null) {
+			this.forwardDfa = new RegexDfa(this.pattern.forward, false);
+			this.reverseDfa = new RegexDfa(this.pattern.reverse, true);
+		}
+
+		final int end = this.forwardDfa.searchForward(this.sourceArray, this.sourceArrayOffset,
+				this.sourceBuffer, from, this.rangeBegin, this.rangeEnd, false);
+		if (end < 0) {
+			this.searchFrom = this.rangeEnd + 1;
+			return setMatch(NO_MATCH, -1, -1);
+		}
+
+		final int start = this.reverseDfa.searchReverse(this.sourceArray, this.sourceArrayOffset,
+				this.sourceBuffer, from, end, this.rangeBegin, this.rangeEnd);
+
+		// An empty match is not found again at the same index.
+		this.searchFrom = (end > start) ? end : end + 1;
+		return setMatch(FOUND, start, end);
+	}
+
+	private final boolean setMatch(final int state, final int start, final int end) {
+		this.matchState = state;
+		this.matchStart = start;
+		this.matchEnd = end;
+		this.capturesValid = false;
+		return (state != NO_MATCH);
+	}
+
+	private final int capture(final int group, final int which) {
+		checkMatch();
+		if (group < 0 || group > this.pattern.groupCount()) {
+			throw new IndexOutOfBoundsException("No group " + group);
+		}
+
+		if (group == 0) {
+			return (which == 0) ? this.matchStart : this.matchEnd;
+		}
+
+		if (!this.capturesValid) {
+			final RegexNfa nfa;
+			if (this.matchState == MATCHED) {
+				if (this.fullNfa == null) {
+					this.fullNfa = new RegexNfa(this.pattern.full);
+				}
+				nfa = this.fullNfa;
+			} else {
+				if (this.forwardNfa == null) {
+					this.forwardNfa = new RegexNfa(this.pattern.forward);
+				}
+				nfa = this.forwardNfa;
+			}
+
+			Arrays.fill(this.captures, -1);
+			nfa.match(this.sourceArray, this.sourceArrayOffset, this.sourceBuffer,
+					this.matchStart, this.rangeBegin, this.rangeEnd, this.captures);
+			this.capturesValid = true;
+		}
+
+		return this.captures[2 * group + which];
+	}
+
+	private final void checkSource() {
+		if (this.source == null) {
+			throw new IllegalStateException("No input");
+		}
+	}
+
+	private final void checkMatch() {
+		if (this.matchState == NO_MATCH) {
+			throw new IllegalStateException("No match available");
+		}
+	}
+
+	private static final Charset charsetOf(final Octet source) {
+		if (source instanceof TextOctet) {
+			final TextOctet text = (TextOctet)source;
+			if (text.hasCharset()) {
+				return text.getCharset();
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.regex;
+
+import com.chinmobi.octet.Octet;
+
+/**
+ * A regular expression over the bytes of an {@link Octet}, matched in time linear in the
+ * input by a lazily built DFA rather than by backtracking, so no pattern can take
+ * exponential time. The syntax is the common part of java.util.regex: alternation,
+ * groups, the greedy and lazy quantifiers, classes, the perl classes \d \w \s, '^'
+ * and '$' as the begin and end of the input, and the flags (?i) and (?s).
+ * <p>
+ * The matching is by bytes: '.' and a class stand for a single byte, and a char above
+ * 0x7F outside a class stands for its UTF-8 bytes. Backreferences, lookaround, word
+ * boundaries and possessive quantifiers are not supported, and CASE_INSENSITIVE only
+ * folds ASCII letters.
+ * <p>
+ * Alternatives and quantifiers are preferred in the order java.util.regex tries them,
+ * but a loop iteration that matches nothing is skipped, as in RE2, rather than ending
+ * the loop. Where a loop body can match empty before a later alternative could match
+ * something, the two differ: "(?:a*|c)*" finds "c" at the start of "c" here, and the
+ * empty string in java.util.regex.
+ * <p>
+ * A pattern is immutable and may be shared among threads; each thread uses its own
+ * {@link OctetMatcher}.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class OctetPattern {
+
+	/** As {@link java.util.regex.Pattern#CASE_INSENSITIVE}, for ASCII letters. */
+	public static final int CASE_INSENSITIVE = 0x02;
+
+	/** As {@link java.util.regex.Pattern#DOTALL}: '.' also matches '\n'. */
+	public static final int DOTALL = 0x20;
+
+	private final String pattern;
+	private final int flags;
+	private final int groupCount;
+
+	final RegexProgram forward;
+	final RegexProgram full;
+	final RegexProgram reverse;
+
+
+	private OctetPattern(final String pattern, final int flags) {
+		if ((flags & ~(CASE_INSENSITIVE | DOTALL)) != 0) {
+			throw new IllegalArgumentException("Unknown flags: 0x" + Integer.toHexString(flags));
+		}
+
+		final RegexParser parser = new RegexParser(pattern, flags);
+		final RegexParser.Node node = parser.parse();
+
+		this.pattern = pattern;
+		this.flags = flags;
+		this.groupCount = parser.groupCount();
+
+		this.forward = RegexProgram.compile(node, this.groupCount, false);
+		this.full = RegexProgram.compile(node, this.groupCount, true);
+		this.reverse = RegexProgram.compileReverse(node);
+	}
+
+
+	/**
+	 * @throws IllegalArgumentException if the pattern is malformed or unsupported
+	 */
+	public static OctetPattern compile(final String regex) {
+		return new OctetPattern(regex, 0);
+	}
+
+	public static OctetPattern compile(final String regex, final int flags) {
+		return new OctetPattern(regex, flags);
+	}
+
+	public static boolean matches(final String regex, final Octet input) {
+		return compile(regex).matcher(input).matches();
+	}
+
+
+	public final OctetMatcher matcher() {
+		return new OctetMatcher(this);
+	}
+
+	public final OctetMatcher matcher(final Octet input) {
+		return new OctetMatcher(this).reset(input);
+	}
+
+	public final String pattern() {
+		return this.pattern;
+	}
+
+	public final int flags() {
+		return this.flags;
+	}
+
+	public final int groupCount() {
+		return this.groupCount;
+	}
+
+	@Override
+	public final String toString() {
+		return this.pattern;
+	}
+
+}
@@ -0,0 +1,402 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.regex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A DFA built lazily from a {@link RegexProgram}: each state is the ordered list of
+ * instructions the NFA threads wait at, and a transition is computed the first time it
+ * is taken, so a search costs one table lookup per byte. When the cache grows past
+ * {@link #MAX_STATES} it is dropped and rebuilt as needed, keeping memory bounded.
+ * <p>
+ * In leftmost-first mode the threads after a match are cut, as a backtracker would never
+ * try them; in longest mode they are kept, to find the longest match.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+final class RegexDfa {
+
+	static final int DEAD = 0;
+
+	private static final int MAX_STATES = 4096;
+
+	private static final int UNKNOWN = -1;
+
+	private static final int[] EMPTY_PCS = new int[0];
+
+	private final RegexProgram program;
+	private final boolean longest;
+
+	/** The byte classes plus one for the end of the text. */
+	private final int stride;
+	private final int endClass;
+
+	private int[][] statePcs;
+	private boolean[] matchStates;
+	private int stateCount;
+	private int[] transitions;
+
+	private final HashMap<Key, Integer> states;
+	private final int[] startStates;
+
+	// Closure scratch.
+	private final int[] visited;
+	private int visitMark;
+	private final int[] stack;
+	private int[] pcs;
+	private int pcCount;
+
+
+	RegexDfa(final RegexProgram program, final boolean longest) {
+		this.program = program;
+		this.longest = longest;
+
+		this.stride = program.classCount + 1;
+		this.endClass = program.classCount;
+
+		this.states = new HashMap<Key, Integer>();
+		this.startStates = new int[8];
+
+		this.visited = new int[program.size()];
+		this.stack = new int[2 * program.size() + 1];
+		this.pcs = new int[16];
+
+		clear();
+	}
+
+
+	/**
+	 * Runs forwards over [from, rangeEnd) and returns where the first match ends, or -1.
+	 * The text runs over [rangeBegin, rangeEnd), which is what the anchors see.
+	 */
+	final int searchForward(final byte[] array, final int arrayOffset, final ByteBuffer buffer,
+			final int from, final int rangeBegin, final int rangeEnd, final boolean anchored) {
+		int state = startState(anchored, from == rangeBegin, from == rangeEnd);
+		int matchEnd = this.matchStates[state] ? from : -1;
+
+		final int[] byteClasses = this.program.byteClasses;
+		int i = from;
+		for (; i < rangeEnd; ++i) {
+			if (state == DEAD || isMatchOnly(state)) {
+				return matchEnd;
+			}
+
+			final int b = (array != null) ? array[i + arrayOffset] & 0xFF : buffer.get(i) & 0xFF;
+			final int cls = byteClasses[b];
+
+			int next = this.transitions[state * this.stride + cls];
+			if (next == UNKNOWN) {
+				next = computeNext(state, cls);
+			}
+			state = next;
+
+			if (this.matchStates[state]) {
+				matchEnd = i + 1;
+			}
+		}
+
+		if (state != DEAD) {
+			int next = this.transitions[state * this.stride + this.endClass];
+			if (next == UNKNOWN) {
+				next = computeNext(state, this.endClass);
+			}
+			if (this.matchStates[next]) {
+				matchEnd = rangeEnd;
+			}
+		}
+
+		return matchEnd;
+	}
+
+	/**
+	 * Runs an anchored reverse program backwards from end down to from, and returns
+	 * the lowest index a match reaches, or -1.
+	 */
+	final int searchReverse(final byte[] array, final int arrayOffset, final ByteBuffer buffer,
+			final int from, final int end, final int rangeBegin, final int rangeEnd) {
+		int state = startState(true, end == rangeEnd, end == rangeBegin);
+		int matchStart = this.matchStates[state] ? end : -1;
+
+		final int[] byteClasses = this.program.byteClasses;
+		int i = end;
+		for (; i > from; --i) {
+			if (state == DEAD || isMatchOnly(state)) {
+				return matchStart;
+			}
+
+			final int b = (array != null) ?
+					array[i - 1 + arrayOffset] & 0xFF : buffer.get(i - 1) & 0xFF;
+			final int cls = byteClasses[b];
+
+			int next = this.transitions[state * this.stride + cls];
+			if (next == UNKNOWN) {
+				next = computeNext(state, cls);
+			}
+			state = next;
+
+			if (this.matchStates[state]) {
+				matchStart = i - 1;
+			}
+		}
+
+		if (state != DEAD && from == rangeBegin) {
+			int next = this.transitions[state * this.stride + this.endClass];
+			if (next == UNKNOWN) {
+				next = computeNext(state, this.endClass);
+			}
+			if (this.matchStates[next]) {
+				matchStart = rangeBegin;
+			}
+		}
+
+		return matchStart;
+	}
+
+	/*
+	 * State methods
+	 */
+
+	private final boolean isMatchOnly(final int state) {
+		final int[] pcs = this.statePcs[state];
+		return (pcs.length == 1 && this.matchStates[state]);
+	}
+
+	private final int startState(final boolean anchored, final boolean atBegin, final boolean atEnd) {
+		final int key = (anchored ? 4 : 0) | (atBegin ? 2 : 0) | (atEnd ? 1 : 0);
+		int state = this.startStates[key];
+		if (state == UNKNOWN) {
+			final RegexProgram program = this.program;
+
+			beginClosure();
+			addClosure(anchored ? program.anchoredStart : program.unanchoredStart, atBegin, atEnd);
+
+			state = intern();
+			this.startStates[key] = state;
+		}
+		return state;
+	}
+
+	private final int computeNext(final int state, final int cls) {
+		final RegexProgram program = this.program;
+		final int[] from = this.statePcs[state];
+
+		beginClosure();
+		if (cls == this.endClass) {
+			for (int pc : from) {
+				switch (program.ops[pc]) {
+				case RegexProgram.END_TEXT:
+					addClosure(program.outs[pc], false, true);
+					break;
+
+				case RegexProgram.MATCH:
+					addClosure(pc, false, true);
+					break;
+
+				default:
+					break;
+				}
+			}
+		} else {
+			for (int pc : from) {
+				final int op = program.ops[pc];
+				if (op == RegexProgram.BYTE) {
+					if (program.matchesClass(pc, cls)) {
+						addClosure(program.outs[pc], false, false);
+					}
+				} else if (op == RegexProgram.MATCH && !this.longest) {
+					break;
+				}
+			}
+		}
+
+		if (this.stateCount >= MAX_STATES) {
+			// The source state goes with the others, so the transition is not kept;
+			// the caller carries on from the new state.
+			clear();
+			return intern();
+		}
+		final int next = intern();
+		this.transitions[state * this.stride + cls] = next;
+		return next;
+	}
+
+	private final int intern() {
+		return intern((this.pcCount == 0) ? EMPTY_PCS : Arrays.copyOf(this.pcs, this.pcCount));
+	}
+
+	private final int intern(final int[] pcs) {
+		final Key key = new Key(pcs);
+
+		final Integer existing = this.states.get(key);
+		if (existing != null) {
+			return existing.intValue();
+		}
+
+		final int state = this.stateCount++;
+		if (state == this.statePcs.length) {
+			final int capacity = state * 2;
+			this.statePcs = Arrays.copyOf(this.statePcs, capacity);
+			this.matchStates = Arrays.copyOf(this.matchStates, capacity);
+
+			final int oldLength = this.transitions.length;
+			this.transitions = Arrays.copyOf(this.transitions, capacity * this.stride);
+			Arrays.fill(this.transitions, oldLength, this.transitions.length, UNKNOWN);
+		}
+
+		this.statePcs[state] = pcs;
+		for (int pc : pcs) {
+			if (this.program.ops[pc] == RegexProgram.MATCH) {
+				this.matchStates[state] = true;
+				break;
+			}
+		}
+		this.states.put(key, Integer.valueOf(state));
+		return state;
+	}
+
+	private final void clear() {
+		final int capacity = 16;
+		this.statePcs = new int[capacity][];
+		this.matchStates = new boolean[capacity];
+		this.transitions = new int[capacity * this.stride];
+		Arrays.fill(this.transitions, UNKNOWN);
+		this.stateCount = 0;
+
+		this.states.clear();
+		Arrays.fill(this.startStates, UNKNOWN);
+
+		// The dead state is the empty list; it goes to itself on every class.
+		intern(EMPTY_PCS);
+		Arrays.fill(this.transitions, 0, this.stride, DEAD);
+	}
+
+	/*
+	 * Closure methods
+	 */
+
+	private final void beginClosure() {
+		this.pcCount = 0;
+		if (++this.visitMark == 0) {
+			Arrays.fill(this.visited, 0);
+			this.visitMark = 1;
+		}
+	}
+
+	/**
+	 * Adds the instructions reachable from start without taking a byte, in priority
+	 * order, unless a match has already cut the lower priority threads.
+	 */
+	private final void addClosure(final int start, final boolean atBegin, final boolean atEnd) {
+		final RegexProgram program = this.program;
+		final int[] stack = this.stack;
+		int top = 0;
+		stack[top++] = start;
+
+		if (this.pcCount > 0 && !this.longest
+				&& program.ops[this.pcs[this.pcCount - 1]] == RegexProgram.MATCH) {
+			return;
+		}
+
+		while (top > 0) {
+			final int pc = stack[--top];
+			if (this.visited[pc] == this.visitMark) {
+				continue;
+			}
+			this.visited[pc] = this.visitMark;
+
+			switch (program.ops[pc]) {
+			case RegexProgram.SPLIT:
+				stack[top++] = program.args[pc];
+				stack[top++] = program.outs[pc];
+				break;
+
+			case RegexProgram.SAVE:
+				stack[top++] = program.outs[pc];
+				break;
+
+			case RegexProgram.BEGIN_TEXT:
+				if (atBegin) {
+					stack[top++] = program.outs[pc];
+				}
+				break;
+
+			case RegexProgram.END_TEXT:
+				if (atEnd) {
+					stack[top++] = program.outs[pc];
+				} else {
+					addPc(pc);
+				}
+				break;
+
+			case RegexProgram.MATCH:
+				addPc(pc);
+				if (!this.longest) {
+					return;
+				}
+				break;
+
+			default:
+				addPc(pc);
+				break;
+			}
+		}
+	}
+
+	private final void addPc(final int pc) {
+		if (this.pcCount == this.pcs.length) {
+			this.pcs = Arrays.copyOf(this.pcs, this.pcCount * 2);
+		}
+		this.pcs[this.pcCount++] = pc;
+	}
+
+	/*
+	 * Key
+	 */
+
+	private static final class Key {
+		private final int[] pcs;
+		private final int hash;
+
+		Key(final int[] pcs) {
+			this.pcs = pcs;
+			this.hash = Arrays.hashCode(pcs);
+		}
+
+		@Override
+		public final int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public final boolean equals(final Object object) {
+			return (object instanceof Key) && Arrays.equals(this.pcs, ((Key)object).pcs);
+		}
+	}
+
+}
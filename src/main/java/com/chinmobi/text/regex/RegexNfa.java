@@ -0,0 +1,228 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.regex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Runs a {@link RegexProgram} as an NFA in lockstep over the bytes (a Pike VM), with the
+ * capture slots carried per thread. It is only used for the groups, once the DFAs have
+ * found where the match lies, so it never scans more than the match and what the
+ * higher priority threads look at past it.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+final class RegexNfa {
+
+	private final RegexProgram program;
+	private final int slotCount;
+
+	private ThreadList current;
+	private ThreadList next;
+
+	private final int[] slots;
+	/** Instructions to follow, or a slot to restore once a branch is done. */
+	private final int[] stack;
+	private final int[] stackValues;
+
+
+	RegexNfa(final RegexProgram program) {
+		this.program = program;
+		this.slotCount = program.slotCount;
+
+		this.current = new ThreadList(program.size(), this.slotCount);
+		this.next = new ThreadList(program.size(), this.slotCount);
+
+		this.slots = new int[this.slotCount];
+		this.stack = new int[2 * program.size() + this.slotCount + 1];
+		this.stackValues = new int[this.stack.length];
+	}
+
+
+	/**
+	 * Runs anchored at start and fills captures with the slots of the match; returns
+	 * false if there is none.
+	 */
+	final boolean match(final byte[] array, final int arrayOffset, final ByteBuffer buffer,
+			final int start, final int rangeBegin, final int rangeEnd, final int[] captures) {
+		final RegexProgram program = this.program;
+		boolean matched = false;
+
+		ThreadList current = this.current;
+		ThreadList next = this.next;
+		current.clear();
+
+		Arrays.fill(this.slots, -1);
+		addThread(current, program.anchoredStart, start, rangeBegin, rangeEnd, this.slots, 0);
+
+		for (int pos = start; current.size > 0; ++pos) {
+			final int b = (pos >= rangeEnd) ? -1 :
+				(array != null) ? array[pos + arrayOffset] & 0xFF : buffer.get(pos) & 0xFF;
+			next.clear();
+
+			for (int i = 0; i < current.size; ++i) {
+				final int pc = current.pcs[i];
+				final int op = program.ops[pc];
+
+				if (op == RegexProgram.MATCH) {
+					System.arraycopy(current.slots, i * this.slotCount, captures, 0, this.slotCount);
+					matched = true;
+					// The threads after this one would only give lower priority matches.
+					break;
+				}
+				if (op == RegexProgram.BYTE && b >= 0 && program.matchesByte(pc, b)) {
+					addThread(next, program.outs[pc], pos + 1, rangeBegin, rangeEnd,
+							current.slots, i * this.slotCount);
+				}
+			}
+
+			if (pos >= rangeEnd) {
+				break;
+			}
+
+			final ThreadList swap = current;
+			current = next;
+			next = swap;
+		}
+
+		this.current = current;
+		this.next = next;
+		return matched;
+	}
+
+	/**
+	 * Follows the instructions from pc that take no byte, and adds the threads that
+	 * wait on a byte or match, each with its own copy of the slots.
+	 */
+	private final void addThread(final ThreadList list, final int pc, final int pos,
+			final int rangeBegin, final int rangeEnd, final int[] fromSlots, final int fromOffset) {
+		final RegexProgram program = this.program;
+		final int[] slots = this.slots;
+		final int[] stack = this.stack;
+		final int[] stackValues = this.stackValues;
+
+		System.arraycopy(fromSlots, fromOffset, slots, 0, this.slotCount);
+
+		int top = 0;
+		stack[top++] = pc;
+
+		while (top > 0) {
+			final int entry = stack[--top];
+			if (entry < 0) {
+				slots[~entry] = stackValues[top];
+				continue;
+			}
+			if (list.contains(entry)) {
+				continue;
+			}
+
+			switch (program.ops[entry]) {
+			case RegexProgram.SPLIT:
+				list.mark(entry);
+				stack[top++] = program.args[entry];
+				stack[top++] = program.outs[entry];
+				break;
+
+			case RegexProgram.SAVE:
+				list.mark(entry);
+				final int slot = program.args[entry];
+				stackValues[top] = slots[slot];
+				stack[top++] = ~slot;
+				slots[slot] = pos;
+				stack[top++] = program.outs[entry];
+				break;
+
+			case RegexProgram.BEGIN_TEXT:
+				list.mark(entry);
+				if (pos == rangeBegin) {
+					stack[top++] = program.outs[entry];
+				}
+				break;
+
+			case RegexProgram.END_TEXT:
+				list.mark(entry);
+				if (pos == rangeEnd) {
+					stack[top++] = program.outs[entry];
+				}
+				break;
+
+			default:
+				list.add(entry, slots);
+				break;
+			}
+		}
+	}
+
+	/*
+	 * ThreadList
+	 */
+
+	/**
+	 * A sparse set of instructions in insertion order, with the slots of the threads
+	 * that wait on a byte or match.
+	 */
+	private static final class ThreadList {
+		final int[] sparse;
+		final int[] dense;
+		final int[] pcs;
+		final int[] slots;
+		final int slotCount;
+
+		int marked;
+		int size;
+
+		ThreadList(final int programSize, final int slotCount) {
+			this.sparse = new int[programSize];
+			this.dense = new int[programSize];
+			this.pcs = new int[programSize];
+			this.slots = new int[programSize * slotCount];
+			this.slotCount = slotCount;
+		}
+
+		final void clear() {
+			this.marked = 0;
+			this.size = 0;
+		}
+
+		final boolean contains(final int pc) {
+			final int index = this.sparse[pc];
+			return (index < this.marked && this.dense[index] == pc);
+		}
+
+		final void mark(final int pc) {
+			this.sparse[pc] = this.marked;
+			this.dense[this.marked++] = pc;
+		}
+
+		final void add(final int pc, final int[] slots) {
+			mark(pc);
+			System.arraycopy(slots, 0, this.slots, this.size * this.slotCount, this.slotCount);
+			this.pcs[this.size++] = pc;
+		}
+	}
+
+}
@@ -0,0 +1,518 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.regex;
+
+import java.util.ArrayList;
+
+import com.chinmobi.text.CharsetUtils;
+
+/**
+ * Parses a pattern into a tree of {@link Node}s over bytes. A char above 0x7F outside a
+ * class stands for its UTF-8 bytes; inside a class only ASCII and \xHH bytes are allowed.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+final class RegexParser {
+
+	static final int EMPTY = 0;
+	static final int BYTES = 1;
+	static final int CONCAT = 2;
+	static final int ALTERNATE = 3;
+	static final int REPEAT = 4;
+	static final int CAPTURE = 5;
+	static final int BEGIN_TEXT = 6;
+	static final int END_TEXT = 7;
+
+	static final int INFINITE = -1;
+
+	/** Bounded repeats are expanded, so keep them small. */
+	private static final int MAX_REPEAT = 1000;
+
+	static final class Node {
+		final int type;
+
+		/** The bytes of a BYTES node, as four 64 bit words. */
+		final long[] set;
+
+		final Node[] subs;
+
+		final int min;
+		final int max;
+		final boolean greedy;
+
+		/** The group of a CAPTURE node. */
+		final int group;
+
+		Node(final int type, final long[] set, final Node[] subs,
+				final int min, final int max, final boolean greedy, final int group) {
+			this.type = type;
+			this.set = set;
+			this.subs = subs;
+			this.min = min;
+			this.max = max;
+			this.greedy = greedy;
+			this.group = group;
+		}
+	}
+
+	private final String pattern;
+	private int flags;
+
+	private int position;
+	private int groupCount;
+
+
+	RegexParser(final String pattern, final int flags) {
+		this.pattern = pattern;
+		this.flags = flags;
+	}
+
+
+	final int groupCount() {
+		return this.groupCount;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the pattern is malformed or uses an
+	 *         unsupported construct
+	 */
+	final Node parse() {
+		final Node node = parseAlternate();
+		if (this.position < this.pattern.length()) {
+			throw error("Unmatched ')'");
+		}
+		return node;
+	}
+
+	/*
+	 * Grammar methods
+	 */
+
+	private final Node parseAlternate() {
+		final ArrayList<Node> alternatives = new ArrayList<Node>();
+		alternatives.add(parseConcat());
+
+		while (peek() == '|') {
+			++this.position;
+			alternatives.add(parseConcat());
+		}
+
+		if (alternatives.size() == 1) {
+			return alternatives.get(0);
+		}
+		return new Node(ALTERNATE, null, alternatives.toArray(new Node[alternatives.size()]),
+				0, 0, true, 0);
+	}
+
+	private final Node parseConcat() {
+		final ArrayList<Node> items = new ArrayList<Node>();
+
+		for (;;) {
+			final int c = peek();
+			if (c < 0 || c == '|' || c == ')') {
+				break;
+			}
+
+			final Node atom = parseAtom();
+			if (atom != null) {
+				items.add(parseQuantifier(atom));
+			}
+		}
+
+		if (items.size() == 1) {
+			return items.get(0);
+		}
+		if (items.isEmpty()) {
+			return new Node(EMPTY, null, null, 0, 0, true, 0);
+		}
+		return new Node(CONCAT, null, items.toArray(new Node[items.size()]), 0, 0, true, 0);
+	}
+
+	private final Node parseQuantifier(final Node atom) {
+		final int c = peek();
+
+		int min;
+		int max;
+		switch (c) {
+		case '*': min = 0; max = INFINITE; ++this.position; break;
+		case '+': min = 1; max = INFINITE; ++this.position; break;
+		case '?': min = 0; max = 1; ++this.position; break;
+		case '{':
+			final int saved = this.position;
+			++this.position;
+			min = parseNumber();
+			if (min < 0) {
+				// Not a repeat: the '{' is taken literally.
+				this.position = saved;
+				return atom;
+			}
+			max = min;
+			if (peek() == ',') {
+				++this.position;
+				max = (peek() == '}') ? INFINITE : parseNumber();
+				if (max == -1 && peek() != '}') {
+					throw error("Malformed repeat");
+				}
+			}
+			if (peek() != '}') {
+				throw error("Malformed repeat");
+			}
+			++this.position;
+			if (min > MAX_REPEAT || max > MAX_REPEAT || (max != INFINITE && max < min)) {
+				throw error("Bad repeat bounds");
+			}
+			break;
+		default:
+			return atom;
+		}
+
+		boolean greedy = true;
+		if (peek() == '?') {
+			++this.position;
+			greedy = false;
+		} else
+		if (peek() == '+') {
+			throw error("Possessive quantifiers are not supported");
+		}
+
+		final int next = peek();
+		if (next == '*' || next == '+' || next == '?' || next == '{') {
+			throw error("Nested quantifier");
+		}
+
+		return new Node(REPEAT, null, new Node[] { atom }, min, max, greedy, 0);
+	}
+
+	private final Node parseAtom() {
+		final char c = this.pattern.charAt(this.position++);
+
+		switch (c) {
+		case '(':
+			return parseGroup();
+
+		case '[':
+			return bytes(parseClass());
+
+		case '.':
+			final long[] set = new long[4];
+			setRange(set, 0, 0xFF);
+			if ((this.flags & OctetPattern.DOTALL) == 0) {
+				clear(set, '\n');
+			}
+			return bytes(set);
+
+		case '^':
+			return new Node(BEGIN_TEXT, null, null, 0, 0, true, 0);
+
+		case '$':
+			return new Node(END_TEXT, null, null, 0, 0, true, 0);
+
+		case '\\':
+			return parseEscape();
+
+		case '*': case '+': case '?':
+			throw error("Nothing to repeat");
+
+		default:
+			return literal(c);
+		}
+	}
+
+	private final Node parseGroup() {
+		boolean capture = true;
+
+		if (peek() == '?') {
+			++this.position;
+			final int c = next();
+
+			if (c == ':') {
+				capture = false;
+			} else {
+				// Inline flags, (?i) or (?s), apply to the rest of the pattern.
+				int d = c;
+				for (;;) {
+					if (d == 'i') {
+						this.flags |= OctetPattern.CASE_INSENSITIVE;
+					} else
+					if (d == 's') {
+						this.flags |= OctetPattern.DOTALL;
+					} else
+					if (d == ')') {
+						return null;
+					} else {
+						throw error("Unsupported group construct");
+					}
+					d = next();
+				}
+			}
+		}
+
+		final int group = capture ? ++this.groupCount : 0;
+
+		final Node sub = parseAlternate();
+		if (next() != ')') {
+			throw error("Unclosed group");
+		}
+
+		if (!capture) {
+			return sub;
+		}
+		return new Node(CAPTURE, null, new Node[] { sub }, 0, 0, true, group);
+	}
+
+	private final Node parseEscape() {
+		final int c = next();
+
+		switch (c) {
+		case 'A':
+			return new Node(BEGIN_TEXT, null, null, 0, 0, true, 0);
+		case 'z':
+			return new Node(END_TEXT, null, null, 0, 0, true, 0);
+		default:
+			final long[] set = new long[4];
+			if (classEscape(c, set)) {
+				return bytes(set);
+			}
+			return byteLiteral(escapedByte(c));
+		}
+	}
+
+	private final long[] parseClass() {
+		final long[] set = new long[4];
+
+		boolean negate = false;
+		if (peek() == '^') {
+			++this.position;
+			negate = true;
+		}
+
+		boolean first = true;
+		for (;;) {
+			int c = next();
+			if (c < 0) {
+				throw error("Unclosed character class");
+			}
+			if (c == ']' && !first) {
+				break;
+			}
+			first = false;
+
+			int lo;
+			if (c == '\\') {
+				c = next();
+				if (classEscape(c, set)) {
+					continue;
+				}
+				lo = escapedByte(c);
+			} else {
+				lo = classByte(c);
+			}
+
+			if (peek() == '-' && this.position + 1 < this.pattern.length() &&
+					this.pattern.charAt(this.position + 1) != ']') {
+				++this.position;
+				c = next();
+				final int hi = (c == '\\') ? escapedByte(next()) : classByte(c);
+				if (hi < lo) {
+					throw error("Illegal character range");
+				}
+				addRange(set, lo, hi);
+			} else {
+				addRange(set, lo, lo);
+			}
+		}
+
+		if (negate) {
+			for (int i = 0; i < 4; ++i) {
+				set[i] = ~set[i];
+			}
+		}
+		return set;
+	}
+
+	/*
+	 * Escape methods
+	 */
+
+	private final boolean classEscape(final int c, final long[] set) {
+		final long[] cls = new long[4];
+
+		switch (Character.toLowerCase((char)c)) {
+		case 'd':
+			setRange(cls, '0', '9');
+			break;
+		case 'w':
+			setRange(cls, '0', '9');
+			setRange(cls, 'A', 'Z');
+			setRange(cls, 'a', 'z');
+			set(cls, '_');
+			break;
+		case 's':
+			set(cls, ' ');
+			setRange(cls, '\t', '\r');
+			break;
+		default:
+			return false;
+		}
+
+		final boolean negate = Character.isUpperCase((char)c);
+		for (int i = 0; i < 4; ++i) {
+			set[i] |= negate ? ~cls[i] : cls[i];
+		}
+		return true;
+	}
+
+	private final int escapedByte(final int c) {
+		switch (c) {
+		case 't': return '\t';
+		case 'n': return '\n';
+		case 'r': return '\r';
+		case 'f': return '\f';
+		case 'e': return 0x1B;
+		case 'a': return 0x07;
+		case 'x':
+			final int hi = Character.digit(next(), 16);
+			final int lo = Character.digit(next(), 16);
+			if (hi < 0 || lo < 0) {
+				throw error("Illegal hexadecimal escape");
+			}
+			return (hi << 4) | lo;
+		default:
+			if (c < 0) {
+				throw error("Trailing backslash");
+			}
+			if (c < 0x80 && !Character.isLetterOrDigit((char)c)) {
+				return c;
+			}
+			throw error("Unsupported escape \\" + (char)c);
+		}
+	}
+
+	private final int classByte(final int c) {
+		if (c >= 0x80) {
+			throw error("Only ASCII and \\xHH bytes are allowed in a class");
+		}
+		return c;
+	}
+
+	/*
+	 * Node methods
+	 */
+
+	private final Node literal(final char c) {
+		if (c < 0x80) {
+			return byteLiteral(c);
+		}
+
+		int codePoint = c;
+		if (Character.isHighSurrogate(c) && peek() >= 0 &&
+				Character.isLowSurrogate((char)peek())) {
+			codePoint = Character.toCodePoint(c, (char)next());
+		}
+
+		final byte[] bytes = new String(Character.toChars(codePoint)).getBytes(CharsetUtils.UTF_8);
+		final Node[] items = new Node[bytes.length];
+		for (int i = 0; i < bytes.length; ++i) {
+			final long[] set = new long[4];
+			set(set, bytes[i] & 0xFF);
+			items[i] = bytes(set);
+		}
+		return new Node(CONCAT, null, items, 0, 0, true, 0);
+	}
+
+	private final Node byteLiteral(final int b) {
+		final long[] set = new long[4];
+		addRange(set, b, b);
+		return bytes(set);
+	}
+
+	private final void addRange(final long[] set, final int lo, final int hi) {
+		setRange(set, lo, hi);
+
+		if ((this.flags & OctetPattern.CASE_INSENSITIVE) != 0) {
+			for (int b = Math.max(lo, 'A'); b <= Math.min(hi, 'Z'); ++b) {
+				set(set, b + ('a' - 'A'));
+			}
+			for (int b = Math.max(lo, 'a'); b <= Math.min(hi, 'z'); ++b) {
+				set(set, b - ('a' - 'A'));
+			}
+		}
+	}
+
+	private static final Node bytes(final long[] set) {
+		return new Node(BYTES, set, null, 0, 0, true, 0);
+	}
+
+	static final boolean contains(final long[] set, final int b) {
+		return (set[b >> 6] & (1L << b)) != 0;
+	}
+
+	private static final void set(final long[] set, final int b) {
+		set[b >> 6] |= (1L << b);
+	}
+
+	private static final void clear(final long[] set, final int b) {
+		set[b >> 6] &= ~(1L << b);
+	}
+
+	private static final void setRange(final long[] set, final int lo, final int hi) {
+		for (int b = lo; b <= hi; ++b) {
+			set(set, b);
+		}
+	}
+
+	/*
+	 * Scan methods
+	 */
+
+	private final int peek() {
+		return (this.position < this.pattern.length()) ? this.pattern.charAt(this.position) : -1;
+	}
+
+	private final int next() {
+		return (this.position < this.pattern.length()) ? this.pattern.charAt(this.position++) : -1;
+	}
+
+	private final int parseNumber() {
+		final int start = this.position;
+		int value = 0;
+		while (this.position < this.pattern.length()) {
+			final char c = this.pattern.charAt(this.position);
+			if (c < '0' || c > '9') {
+				break;
+			}
+			value = Math.min(value * 10 + (c - '0'), MAX_REPEAT + 1);
+			++this.position;
+		}
+		return (this.position > start) ? value : -1;
+	}
+
+	private final IllegalArgumentException error(final String message) {
+		return new IllegalArgumentException(message + " near index " + this.position +
+				" of " + this.pattern);
+	}
+
+}
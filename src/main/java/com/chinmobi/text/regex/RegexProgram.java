@@ -0,0 +1,298 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.text.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.chinmobi.text.regex.RegexParser.Node;
+
+/**
+ * A pattern compiled to NFA instructions over bytes, in the style of RE2: a split
+ * prefers its first branch, and the bytes are grouped into classes that no instruction
+ * tells apart, so a DFA needs one transition per class rather than per byte.
+ *
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+final class RegexProgram {
+
+	static final int BYTE = 0;
+	static final int SPLIT = 1;
+	static final int SAVE = 2;
+	static final int BEGIN_TEXT = 3;
+	static final int END_TEXT = 4;
+	static final int MATCH = 5;
+
+	private static final int MAX_INSTRUCTIONS = 64 * 1024;
+
+	private static final long[] ANY_BYTE = { -1L, -1L, -1L, -1L };
+
+	/** The opcode of each instruction. */
+	final int[] ops;
+	/** The next instruction, or the preferred branch of a split. */
+	final int[] outs;
+	/** The other branch of a split, the slot of a save, or the byte set of a byte. */
+	final int[] args;
+
+	final long[][] sets;
+
+	/** The byte class of each byte. */
+	final int[] byteClasses;
+	final int classCount;
+	/** Whether each byte set takes each byte class. */
+	final boolean[][] classInSet;
+
+	/** Where an anchored match starts. */
+	final int anchoredStart;
+	/**
+	 * Where a search starts: a loop over any byte ahead of the anchored start, or -1 for
+	 * a reverse program, which is only ever run anchored.
+	 */
+	final int unanchoredStart;
+
+	final int slotCount;
+
+
+	private RegexProgram(final Builder builder, final int anchoredStart, final int unanchoredStart,
+			final int slotCount) {
+		final int size = builder.size;
+		this.ops = Arrays.copyOf(builder.ops, size);
+		this.outs = Arrays.copyOf(builder.outs, size);
+		this.args = Arrays.copyOf(builder.args, size);
+		this.sets = builder.sets.toArray(new long[builder.sets.size()][]);
+
+		this.anchoredStart = anchoredStart;
+		this.unanchoredStart = unanchoredStart;
+		this.slotCount = slotCount;
+
+		// A class boundary wherever some set changes between two neighbouring bytes.
+		this.byteClasses = new int[256];
+		int classCount = 1;
+		for (int b = 1; b < 256; ++b) {
+			for (long[] set : this.sets) {
+				if (RegexParser.contains(set, b) != RegexParser.contains(set, b - 1)) {
+					++classCount;
+					break;
+				}
+			}
+			this.byteClasses[b] = classCount - 1;
+		}
+		this.classCount = classCount;
+
+		this.classInSet = new boolean[this.sets.length][classCount];
+		for (int s = 0; s < this.sets.length; ++s) {
+			for (int b = 0; b < 256; ++b) {
+				if (RegexParser.contains(this.sets[s], b)) {
+					this.classInSet[s][this.byteClasses[b]] = true;
+				}
+			}
+		}
+	}
+
+
+	final int size() {
+		return this.ops.length;
+	}
+
+	final boolean matchesByte(final int pc, final int b) {
+		return RegexParser.contains(this.sets[this.args[pc]], b);
+	}
+
+	final boolean matchesClass(final int pc, final int byteClass) {
+		return this.classInSet[this.args[pc]][byteClass];
+	}
+
+	/**
+	 * Compiles the pattern forwards, with group 0 saved around it; when toEnd is set
+	 * the match must also reach the end of the text.
+	 */
+	static final RegexProgram compile(final Node node, final int groupCount, final boolean toEnd) {
+		final Builder builder = new Builder();
+
+		int next = builder.emit(MATCH, -1, 0);
+		if (toEnd) {
+			next = builder.emit(END_TEXT, next, 0);
+		}
+		next = builder.emit(SAVE, next, 1);
+		next = builder.compile(node, next, false);
+		final int anchoredStart = builder.emit(SAVE, next, 0);
+
+		return new RegexProgram(builder, anchoredStart, builder.searchLoop(anchoredStart),
+				2 * (groupCount + 1));
+	}
+
+	/**
+	 * Compiles the pattern backwards, for finding where a match starts from where it
+	 * ends. Groups are not saved.
+	 */
+	static final RegexProgram compileReverse(final Node node) {
+		final Builder builder = new Builder();
+
+		final int match = builder.emit(MATCH, -1, 0);
+		final int anchoredStart = builder.compile(node, match, true);
+
+		return new RegexProgram(builder, anchoredStart, -1, 0);
+	}
+
+	/*
+	 * Builder
+	 */
+
+	private static final class Builder {
+		int[] ops = new int[16];
+		int[] outs = new int[16];
+		int[] args = new int[16];
+		int size;
+
+		final ArrayList<long[]> sets = new ArrayList<long[]>();
+
+		final int emit(final int op, final int out, final int arg) {
+			if (this.size == this.ops.length) {
+				if (this.size >= MAX_INSTRUCTIONS) {
+					throw new IllegalArgumentException("Pattern too large");
+				}
+				this.ops = Arrays.copyOf(this.ops, this.size * 2);
+				this.outs = Arrays.copyOf(this.outs, this.size * 2);
+				this.args = Arrays.copyOf(this.args, this.size * 2);
+			}
+			this.ops[this.size] = op;
+			this.outs[this.size] = out;
+			this.args[this.size] = arg;
+			return this.size++;
+		}
+
+		final int emitSet(final long[] set, final int out) {
+			int index = -1;
+			for (int i = 0; i < this.sets.size(); ++i) {
+				if (Arrays.equals(this.sets.get(i), set)) {
+					index = i;
+					break;
+				}
+			}
+			if (index < 0) {
+				index = this.sets.size();
+				this.sets.add(set);
+			}
+			return emit(BYTE, out, index);
+		}
+
+		final int searchLoop(final int start) {
+			final int loop = emit(SPLIT, start, -1);
+			final int any = emitSet(ANY_BYTE, loop);
+			this.args[loop] = any;
+			return loop;
+		}
+
+		/**
+		 * Emits the node so that it continues at next, and returns where it starts.
+		 */
+		final int compile(final Node node, int next, final boolean reverse) {
+			switch (node.type) {
+			case RegexParser.EMPTY:
+				return next;
+
+			case RegexParser.BYTES:
+				return emitSet(node.set, next);
+
+			case RegexParser.CONCAT:
+				if (reverse) {
+					for (int i = 0; i < node.subs.length; ++i) {
+						next = compile(node.subs[i], next, true);
+					}
+				} else {
+					for (int i = node.subs.length - 1; i >= 0; --i) {
+						next = compile(node.subs[i], next, false);
+					}
+				}
+				return next;
+
+			case RegexParser.ALTERNATE:
+				int start = compile(node.subs[node.subs.length - 1], next, reverse);
+				for (int i = node.subs.length - 2; i >= 0; --i) {
+					start = emit(SPLIT, compile(node.subs[i], next, reverse), start);
+				}
+				return start;
+
+			case RegexParser.CAPTURE:
+				if (reverse) {
+					return compile(node.subs[0], next, true);
+				}
+				next = emit(SAVE, next, 2 * node.group + 1);
+				next = compile(node.subs[0], next, false);
+				return emit(SAVE, next, 2 * node.group);
+
+			case RegexParser.BEGIN_TEXT:
+				return emit(reverse ? END_TEXT : BEGIN_TEXT, next, 0);
+
+			case RegexParser.END_TEXT:
+				return emit(reverse ? BEGIN_TEXT : END_TEXT, next, 0);
+
+			default:
+				return compileRepeat(node, next, reverse);
+			}
+		}
+
+		private final int compileRepeat(final Node node, int next, final boolean reverse) {
+			final Node sub = node.subs[0];
+
+			// The optional part: x* for no upper bound, else nested (x(x)?)? for max - min.
+			if (node.max == RegexParser.INFINITE) {
+				final int loop = emit(SPLIT, -1, -1);
+				final int body = compile(sub, loop, reverse);
+				setSplit(loop, body, next, node.greedy);
+
+				if (node.min > 0) {
+					// x+ enters the body first; the remaining copies go ahead of it.
+					next = body;
+					for (int i = 1; i < node.min; ++i) {
+						next = compile(sub, next, reverse);
+					}
+					return next;
+				}
+				next = loop;
+			} else {
+				final int end = next;
+				for (int i = node.min; i < node.max; ++i) {
+					final int split = emit(SPLIT, -1, -1);
+					setSplit(split, compile(sub, next, reverse), end, node.greedy);
+					next = split;
+				}
+				for (int i = 0; i < node.min; ++i) {
+					next = compile(sub, next, reverse);
+				}
+			}
+
+			return next;
+		}
+
+		private final void setSplit(final int split, final int body, final int skip,
+				final boolean greedy) {
+			this.outs[split] = greedy ? body : skip;
+			this.args[split] = greedy ? skip : body;
+		}
+	}
+
+}
@@ -0,0 +1,190 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octettest;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Random;
+
+import com.chinmobi.octet.BufferAllocator;
+import com.chinmobi.testapp.BaseTestAction;
+import com.chinmobi.text.ExpandableTextBuffer;
+import com.chinmobi.text.csv.CsvReader;
+import com.chinmobi.text.csv.CsvWriter;
+
+/**
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class CsvTestAction extends BaseTestAction implements BufferAllocator {
+
+	private boolean isAllocateDirect;
+
+
+	public CsvTestAction() {
+		super();
+		this.isAllocateDirect = false;
+	}
+
+
+	public final ByteBuffer allocate(final ByteBuffer oldBuffer, final int size) {
+		if (this.isAllocateDirect) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
+	}
+
+
+	/*
+	 * Test methods
+	 */
+
+	public final void testReader() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestReader();
+		}
+	}
+
+	private final void doTestReader() {
+		final String csv = "a,b,c\r\n"
+				+ "1,\"two, too\",\"say \"\"hi\"\"\"\n"
+				+ "\"multi\r\nline\",,\"\"\n"
+				+ "last,\"x\"y";
+
+		final String[][] expected = {
+				{ "a", "b", "c" },
+				{ "1", "two, too", "say \"hi\"" },
+				{ "multi\r\nline", "", "" },
+				{ "last", "xy" },
+		};
+
+		for (int size = 1; size <= 64; size *= 4) {
+			try {
+				final CsvReader reader = new CsvReader(new ExpandableTextBuffer((BufferAllocator)this, size),
+						channel(csv), (byte)',');
+				assertRecords(expected, reader);
+				assertTrue(reader.isEndOfInput());
+			} catch (IOException ex) {
+				fail(ex);
+			}
+		}
+
+		final ExpandableTextBuffer buffer = new ExpandableTextBuffer((BufferAllocator)this, 16);
+		buffer.append(csv);
+		try {
+			final CsvReader reader = new CsvReader(buffer);
+			assertRecords(expected, reader);
+			assertEquals(4, reader.recordNumber());
+		} catch (IOException ex) {
+			fail(ex);
+		}
+
+		try {
+			final CsvReader reader = new CsvReader(channel("a,\"open\nfield"));
+			reader.nextRecord();
+			fail();
+		} catch (EOFException ignore) {
+		} catch (IOException ex) {
+			fail(ex);
+		}
+	}
+
+	public final void testWriter() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestWriter();
+		}
+	}
+
+	private final void doTestWriter() {
+		final ExpandableTextBuffer buffer = new ExpandableTextBuffer((BufferAllocator)this, 4);
+		final CsvWriter writer = new CsvWriter(buffer);
+
+		writer.writeField("plain").writeField("a,b").writeField("say \"hi\"").endRecord();
+		writer.writeField(42).writeEmptyField().writeField(0.5).writeField("two\nlines").endRecord();
+
+		assertEquals("plain,\"a,b\",\"say \"\"hi\"\"\"\r\n42,,0.5,\"two\nlines\"\r\n", buffer.toString());
+	}
+
+	public final void testRoundTrip() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestRoundTrip();
+		}
+	}
+
+	private final void doTestRoundTrip() {
+		final Random random = new Random(4180);
+		final String alphabet = "ab,\"\r\n ";
+
+		final String[][] records = new String[200][];
+		final ExpandableTextBuffer out = new ExpandableTextBuffer((BufferAllocator)this, 16);
+		final CsvWriter writer = new CsvWriter(out);
+
+		for (int r = 0; r < records.length; ++r) {
+			records[r] = new String[1 + random.nextInt(5)];
+			for (int f = 0; f < records[r].length; ++f) {
+				final StringBuilder field = new StringBuilder();
+				for (int n = random.nextInt(8); n > 0; --n) {
+					field.append(alphabet.charAt(random.nextInt(alphabet.length())));
+				}
+				records[r][f] = field.toString();
+				writer.writeField(records[r][f]);
+			}
+			writer.endRecord();
+		}
+
+		try {
+			final CsvReader reader = new CsvReader(new ExpandableTextBuffer((BufferAllocator)this, 32),
+					channel(out.toString()), (byte)',');
+			assertRecords(records, reader);
+		} catch (IOException ex) {
+			fail(ex);
+		}
+	}
+
+	private static final ReadableByteChannel channel(final String str) {
+		return Channels.newChannel(new ByteArrayInputStream(str.getBytes()));
+	}
+
+	private static final void assertRecords(final String[][] expected, final CsvReader reader) throws IOException {
+		for (String[] record : expected) {
+			assertTrue(reader.nextRecord());
+			assertEquals(record.length, reader.fieldCount());
+			for (int f = 0; f < record.length; ++f) {
+				assertEquals(record[f], reader.field(f).toString());
+			}
+		}
+		assertFalse(reader.nextRecord());
+		assertEquals(0, reader.fieldCount());
+	}
+
+}
@@ -0,0 +1,166 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octettest;
+
+import java.nio.ByteBuffer;
+
+import com.chinmobi.octet.BufferAllocator;
+import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.Octet;
+import com.chinmobi.testapp.BaseTestAction;
+import com.chinmobi.text.ArrayText;
+import com.chinmobi.text.http.HttpHeadParser;
+
+/**
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class HttpHeadTestAction extends BaseTestAction implements BufferAllocator {
+
+	private static final String REQUEST = "\r\nGET /index.html?q=1 HTTP/1.1\r\n"
+			+ "Host: example.com\r\n"
+			+ "Accept:text/html \t\r\n"
+			+ "Content-Length: 5\n"
+			+ "X-Empty:\r\n"
+			+ "\r\n"
+			+ "hello";
+
+	private boolean isAllocateDirect;
+
+
+	public HttpHeadTestAction() {
+		super();
+		this.isAllocateDirect = false;
+	}
+
+
+	public final ByteBuffer allocate(final ByteBuffer oldBuffer, final int size) {
+		if (this.isAllocateDirect) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
+	}
+
+
+	/*
+	 * Test methods
+	 */
+
+	public final void testRequest() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestRequest();
+		}
+	}
+
+	private final void doTestRequest() {
+		final byte[] bytes = REQUEST.getBytes();
+		final int headLength = REQUEST.indexOf("hello");
+
+		// Whole, then arriving a few bytes at a time into a growing buffer.
+		for (int step = bytes.length; step >= 1; step = (step > 7) ? 7 : step - 6) {
+			final ExpandableOctetBuffer buffer = new ExpandableOctetBuffer((BufferAllocator)this, 4);
+			final HttpHeadParser parser = new HttpHeadParser(true);
+
+			int result = -1;
+			for (int offset = 0; offset < bytes.length && result < 0; offset += step) {
+				buffer.append(bytes, offset, Math.min(step, bytes.length - offset));
+
+				final Octet data = buffer.toInput();
+				result = parser.parse(data, 0, data.end());
+			}
+
+			assertEquals(headLength, result);
+			assertTrue(parser.isComplete());
+
+			assertEquals("GET", parser.method().toString());
+			assertEquals("/index.html?q=1", parser.uri().toString());
+			assertEquals("HTTP/1.1", parser.version().toString());
+
+			assertEquals(4, parser.headerCount());
+			assertEquals("Host", parser.headerName(0).toString());
+			assertEquals("example.com", parser.headerValue(0).toString());
+			assertEquals("text/html", parser.headerValue(1).toString());
+			assertEquals("", parser.headerValue(3).toString());
+
+			assertEquals(2, parser.indexOfHeader("content-LENGTH".getBytes()));
+			assertEquals(5, parser.headerValue(2).parseInt(parser.valueBegin(2), parser.valueEnd(2)));
+			assertTrue(parser.headerValue("Missing".getBytes()) == null);
+		}
+	}
+
+	public final void testResponse() {
+		final HttpHeadParser parser = new HttpHeadParser(false);
+		final byte[] bytes = "HTTP/1.1 404 Not Found\r\nServer: x\r\n\r\n".getBytes();
+
+		assertEquals(bytes.length, parser.parse(new ArrayText(bytes), 0, bytes.length));
+		assertEquals(404, parser.statusCode());
+		assertEquals("Not Found", parser.reason().toString());
+		assertEquals("HTTP/1.1", parser.version().toString());
+		assertTrue(parser.method() == null);
+
+		parser.reset();
+		final byte[] noReason = "HTTP/1.0 204\r\n\r\n".getBytes();
+		assertEquals(noReason.length, parser.parse(new ArrayText(noReason), 0, noReason.length));
+		assertEquals(204, parser.statusCode());
+		assertEquals("", parser.reason().toString());
+	}
+
+	public final void testMalformed() {
+		final String[] requests = {
+				"GET /\r\n\r\n",
+				"GET / HTTP/1.1 x\r\n\r\n",
+				"GET / HTTP/1.1\r\nBad Name: x\r\n\r\n",
+				"GET / HTTP/1.1\r\nNoColon\r\n\r\n",
+				"GET / HTTP/1.1\r\nA: b\r\n folded\r\n\r\n",
+				"G(T / HTTP/1.1\r\n\r\n",
+		};
+		for (String request : requests) {
+			final byte[] bytes = request.getBytes();
+			try {
+				new HttpHeadParser(true).parse(new ArrayText(bytes), 0, bytes.length);
+				fail(request);
+			} catch (IllegalArgumentException ignore) {
+			}
+		}
+
+		final byte[] large = "GET / HTTP/1.1\r\nA: 0123456789\r\nB: 0123456789\r\n\r\n".getBytes();
+		final HttpHeadParser parser = new HttpHeadParser(true, 32, 10);
+		assertEquals(-1, parser.parse(new ArrayText(large), 0, 20));
+		try {
+			parser.parse(new ArrayText(large), 0, large.length);
+			fail();
+		} catch (IllegalArgumentException ignore) {
+		}
+
+		try {
+			new HttpHeadParser(true, 1024, 1).parse(new ArrayText(large), 0, large.length);
+			fail();
+		} catch (IllegalArgumentException ignore) {
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octettest;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.chinmobi.octet.BufferAllocator;
+import com.chinmobi.testapp.BaseTestAction;
+import com.chinmobi.text.ArrayText;
+import com.chinmobi.text.BufferText;
+import com.chinmobi.text.CharsetUtils;
+import com.chinmobi.text.ExpandableTextBuffer;
+import com.chinmobi.text.TextOctet;
+import com.chinmobi.text.json.JsonTokenizer;
+import com.chinmobi.text.json.JsonWriter;
+
+/**
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class JsonTestAction extends BaseTestAction implements BufferAllocator {
+
+	private boolean isAllocateDirect;
+
+
+	public JsonTestAction() {
+		super();
+		this.isAllocateDirect = false;
+	}
+
+
+	public final ByteBuffer allocate(final ByteBuffer oldBuffer, final int size) {
+		if (this.isAllocateDirect) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
+	}
+
+
+	/*
+	 * Test methods
+	 */
+
+	public final void testTokenizer() {
+		final String json = " {\"id\": -42, \"name\":\"caf\\u00e9 \\\"x\\\"\", \"tags\":[true,false,null,[]],"
+				+ "\"pi\":3.25e0, \"nested\":{\"a\":{}}} ";
+
+		final byte[] bytes = json.getBytes(CharsetUtils.UTF_8);
+		final ByteBuffer directBuf = ByteBuffer.allocateDirect(bytes.length);
+		directBuf.put(bytes);
+		directBuf.flip();
+
+		final TextOctet[] texts = {
+				new ArrayText(bytes),
+				new BufferText(ByteBuffer.wrap(bytes)),
+				new BufferText(directBuf),
+		};
+
+		final JsonTokenizer tokenizer = new JsonTokenizer();
+		for (TextOctet text : texts) {
+			tokenizer.reset(text);
+
+			assertEquals(JsonTokenizer.START_OBJECT, tokenizer.next());
+			assertEquals(JsonTokenizer.FIELD_NAME, tokenizer.next());
+			assertTrue(tokenizer.nameEquals("id".getBytes()));
+			assertEquals(JsonTokenizer.NUMBER, tokenizer.next());
+			assertTrue(tokenizer.isInteger());
+			assertEquals(-42, tokenizer.intValue());
+
+			assertEquals(JsonTokenizer.FIELD_NAME, tokenizer.next());
+			assertEquals("name", tokenizer.token().toString());
+			assertEquals(JsonTokenizer.STRING, tokenizer.next());
+			assertTrue(tokenizer.hasEscapes());
+			assertEquals("caf\u00e9 \"x\"", tokenizer.stringValue());
+
+			assertEquals(JsonTokenizer.FIELD_NAME, tokenizer.next());
+			assertEquals(JsonTokenizer.START_ARRAY, tokenizer.next());
+			assertEquals(JsonTokenizer.TRUE, tokenizer.next());
+			assertEquals(JsonTokenizer.FALSE, tokenizer.next());
+			assertEquals(JsonTokenizer.NULL, tokenizer.next());
+			assertEquals(JsonTokenizer.START_ARRAY, tokenizer.next());
+			assertEquals(JsonTokenizer.END_ARRAY, tokenizer.next());
+			assertEquals(JsonTokenizer.END_ARRAY, tokenizer.next());
+
+			assertEquals(JsonTokenizer.FIELD_NAME, tokenizer.next());
+			assertEquals(JsonTokenizer.NUMBER, tokenizer.next());
+			assertFalse(tokenizer.isInteger());
+			assertTrue(3.25 == tokenizer.doubleValue());
+
+			assertEquals(JsonTokenizer.FIELD_NAME, tokenizer.next());
+			assertEquals(JsonTokenizer.START_OBJECT, tokenizer.next());
+			tokenizer.skipValue();
+			assertEquals(1, tokenizer.depth());
+
+			assertEquals(JsonTokenizer.END_OBJECT, tokenizer.next());
+			assertEquals(JsonTokenizer.END_OF_INPUT, tokenizer.next());
+		}
+
+		// Mantissas of 19 and more significant digits.
+		tokenizer.reset(new ArrayText("[9999999999999999999,0.9999999999999999999,-9223372036854775808.5e-3]".getBytes()));
+		assertEquals(JsonTokenizer.START_ARRAY, tokenizer.next());
+		assertEquals(JsonTokenizer.NUMBER, tokenizer.next());
+		assertTrue(9999999999999999999.0 == tokenizer.doubleValue());
+		assertEquals(JsonTokenizer.NUMBER, tokenizer.next());
+		assertTrue(0.9999999999999999999 == tokenizer.doubleValue());
+		assertEquals(JsonTokenizer.NUMBER, tokenizer.next());
+		assertTrue(-9223372036854775808.5e-3 == tokenizer.doubleValue());
+		assertEquals(JsonTokenizer.END_ARRAY, tokenizer.next());
+
+		final String[] invalid = {
+				"{\"a\" 1}", "[1,]", "{,}", "[01]", "[1.]", "\"open", "[\"a\u0001\"]", "[\"\\x\"]", "[tru]", "[1}", "{\"a\":1",
+		};
+		for (String str : invalid) {
+			tokenizer.reset(new ArrayText(str.getBytes(CharsetUtils.UTF_8)));
+			try {
+				while (tokenizer.next() != JsonTokenizer.END_OF_INPUT) {
+				}
+				fail(str);
+			} catch (IllegalArgumentException ignore) {
+			}
+		}
+	}
+
+	public final void testWriter() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestWriter();
+		}
+	}
+
+	private final void doTestWriter() {
+		final ExpandableTextBuffer buffer = new ExpandableTextBuffer((BufferAllocator)this, 4);
+		final JsonWriter writer = new JsonWriter(buffer);
+
+		writer.beginObject()
+			.name("id").value(7)
+			.name("text").value("tab\there \"quoted\" \\ \u0001 \u00e9")
+			.name("list").beginArray().value(true).nullValue().value(0.5).beginObject().endObject().endArray()
+			.endObject();
+		writer.beginArray().endArray();
+
+		assertEquals("{\"id\":7,\"text\":\"tab\\there \\\"quoted\\\" \\\\ \\u0001 \u00e9\","
+				+ "\"list\":[true,null,0.5,{}]}\n[]", buffer.toString());
+
+		try {
+			writer.name("outside");
+			fail();
+		} catch (IllegalStateException ignore) {
+		}
+	}
+
+	public final void testRoundTrip() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestRoundTrip();
+		}
+	}
+
+	private final void doTestRoundTrip() {
+		final Random random = new Random(8259);
+		final String alphabet = "abc \"\\/\b\f\n\r\t\u0000\u001f\u00e9\u4e2d\ud83d\ude00";
+
+		final String[] strings = new String[300];
+		final ExpandableTextBuffer buffer = new ExpandableTextBuffer((BufferAllocator)this, 16);
+		final JsonWriter writer = new JsonWriter(buffer);
+
+		writer.beginArray();
+		for (int i = 0; i < strings.length; ++i) {
+			final StringBuilder builder = new StringBuilder();
+			for (int n = random.nextInt(40); n > 0; --n) {
+				final char c = alphabet.charAt(random.nextInt(alphabet.length() - 1));
+				builder.append(c);
+				if (Character.isHighSurrogate(c)) {
+					builder.append(alphabet.charAt(alphabet.length() - 1));
+				}
+			}
+			strings[i] = builder.toString();
+			writer.value(strings[i]);
+		}
+		writer.endArray();
+
+		final JsonTokenizer tokenizer = new JsonTokenizer();
+		tokenizer.reset(buffer.toInputText());
+
+		assertEquals(JsonTokenizer.START_ARRAY, tokenizer.next());
+		for (String str : strings) {
+			assertEquals(JsonTokenizer.STRING, tokenizer.next());
+			assertEquals(str, tokenizer.stringValue());
+		}
+		assertEquals(JsonTokenizer.END_ARRAY, tokenizer.next());
+		assertEquals(JsonTokenizer.END_OF_INPUT, tokenizer.next());
+	}
+
+}
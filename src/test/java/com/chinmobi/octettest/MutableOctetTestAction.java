@@ -25,7 +25,9 @@
 package com.chinmobi.octettest;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+import com.chinmobi.octet.ArrayOctet;
 import com.chinmobi.octet.BufferOctet;
 import com.chinmobi.testapp.BaseTestAction;
 
@@ -95,6 +97,41 @@ public final class MutableOctetTestAction extends BaseTestAction {
 		assertEquals(expectedString1, bufferOctetD.toString());
 	}
 
+	public final void testDeleteLong() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestDeleteLong();
+		}
+	}
+
+	private final void doTestDeleteLong() {
+
+		final ByteBuffer directBuf =
+				(this.isAllocateDirect) ? ByteBuffer.allocateDirect(128) : ByteBuffer.allocate(128);
+
+		for (int i = 0; i < 10; ++i) {
+			directBuf.put(TEST_ARRAY);
+		}
+		directBuf.flip();
+
+		final BufferOctet bufferOctetD = new BufferOctet(directBuf);
+		assertEquals(100, bufferOctetD.length());
+
+		bufferOctetD.delete(3, 5);
+		assertEquals(98, bufferOctetD.length());
+
+		bufferOctetD.delete(0, 50);
+		assertEquals(48, bufferOctetD.length());
+
+		final String expectedString =
+				"\r\n" +
+				"32 33 34 35 36 37 38 39  30 31 32 33 34 35 36 37  2345678901234567" + "\r\n" +
+				"38 39 30 31 32 33 34 35  36 37 38 39 30 31 32 33  8901234567890123" + "\r\n" +
+				"34 35 36 37 38 39 30 31  32 33 34 35 36 37 38 39  4567890123456789" + "\r\n";
+
+		assertEquals(expectedString, bufferOctetD.toString());
+	}
+
 	public final void testReplaceAll() {
 		for (int i = 1; i >= 0; --i) {
 			this.isAllocateDirect = (i > 0);
@@ -127,6 +164,118 @@ public final class MutableOctetTestAction extends BaseTestAction {
 				"30 62 32 33 34 30 62 32  33 34                    0b2340b234" + "\r\n";
 
 		assertEquals(expectedString, bufferOctetD.toString());
+
+		directBuf.clear();
+		for (int i = 0; i < 5; ++i) {
+			directBuf.put(TEST_ARRAY);
+		}
+		directBuf.flip();
+
+		bufferOctetD.wrap(directBuf, 3, 45);
+		bufferOctetD.replaceAll((byte)'1', (byte)'b');
+
+		assertEquals(3, bufferOctetD.begin());
+		assertEquals(45, bufferOctetD.length());
+		assertEquals((byte)'1', directBuf.get(1));
+		assertEquals((byte)'b', directBuf.get(11));
+		assertEquals((byte)'b', directBuf.get(41));
+	}
+
+	public final void testTranslate() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestTranslate();
+		}
+	}
+
+	private final void doTestTranslate() {
+
+		final ByteBuffer directBuf =
+				(this.isAllocateDirect) ? ByteBuffer.allocateDirect(64) : ByteBuffer.allocate(64);
+
+		for (int i = 0; i < 5; ++i) {
+			directBuf.put(TEST_ARRAY);
+		}
+		directBuf.flip();
+
+		// Digits to letters, the rest as is.
+		final byte[] table = new byte[256];
+		for (int i = 0; i < 256; ++i) {
+			table[i] = (byte)((i >= '0' && i <= '9') ? ('a' + i - '0') : i);
+		}
+
+		final BufferOctet bufferOctetD = new BufferOctet(directBuf, 3, 45);
+		bufferOctetD.translate(table);
+
+		assertEquals((byte)'2', directBuf.get(2));
+		assertEquals((byte)'d', directBuf.get(3));
+		assertEquals((byte)'h', directBuf.get(47));
+		assertEquals((byte)'8', directBuf.get(48));
+		assertEquals(50, directBuf.limit());
+
+		try {
+			bufferOctetD.translate(new byte[16]);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException ignore) {
+		}
+	}
+
+	public final void testBitwise() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestBitwise();
+		}
+	}
+
+	private final void doTestBitwise() {
+
+		final ByteBuffer directBuf =
+				(this.isAllocateDirect) ? ByteBuffer.allocateDirect(64) : ByteBuffer.allocate(64);
+
+		for (int i = 0; i < 4; ++i) {
+			directBuf.put(TEST_ARRAY);
+		}
+		directBuf.flip();
+
+		final BufferOctet bufferOctetD = new BufferOctet(directBuf, 1, 37);
+		final long bits = bufferOctetD.bitCount();
+
+		final byte[] key = new byte[37];
+		for (int i = 0; i < key.length; ++i) {
+			key[i] = (byte)(i * 37 + 11);
+		}
+		final ArrayOctet mask = new ArrayOctet(key);
+
+		// Xor twice gives the bytes back.
+		bufferOctetD.xor(mask);
+		assertEquals((byte)('1' ^ 11), directBuf.get(1));
+		assertEquals((byte)('7' ^ (byte)(36 * 37 + 11)), directBuf.get(37));
+		bufferOctetD.xor(mask);
+		assertEquals((byte)'1', directBuf.get(1));
+		assertEquals(bits, bufferOctetD.bitCount());
+
+		bufferOctetD.and(new ArrayOctet(new byte[40]));
+		assertEquals(0, bufferOctetD.bitCount());
+		assertEquals((byte)'0', directBuf.get(0));
+		assertEquals((byte)'8', directBuf.get(38));
+
+		final byte[] ones = new byte[37];
+		Arrays.fill(ones, (byte)0x0F);
+		bufferOctetD.or(new ArrayOctet(ones));
+		assertEquals(37 * 4, bufferOctetD.bitCount());
+
+		final byte[] array = new byte[TEST_ARRAY.length * 4];
+		for (int i = 0; i < 4; ++i) {
+			System.arraycopy(TEST_ARRAY, 0, array, i * TEST_ARRAY.length, TEST_ARRAY.length);
+		}
+		assertEquals(bits, new ArrayOctet(array, 1, 37).bitCount());
+		assertEquals(36 * 4, new ArrayOctet(ones, 1, 36).bitCount());
+
+		try {
+			bufferOctetD.xor(new ArrayOctet(new byte[36]));
+			fail("Expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException ignore) {
+		}
 	}
 
 	public final void testSetByteAt() {
@@ -30,6 +30,7 @@ import java.nio.ByteBuffer;
 import com.chinmobi.octet.ArrayOctet;
 import com.chinmobi.octet.BufferAllocator;
 import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.Octet;
 import com.chinmobi.testapp.BaseTestAction;
 
 /**
@@ -669,6 +670,117 @@ public final class OctetBufferTestAction extends BaseTestAction implements Buffe
 				"30 61 62 63 64 65 33 34  35 36 37 38 39 30 61 62  0abcde34567890ab" + "\r\n" +
 				"63 64 65 33 34 35 36 37  38 39                    cde3456789" + "\r\n";
 		assertEquals(expectedString1, octetBufD.toString());
+
+		octetBufD.replaceAll(new ArrayOctet(TEST_ARRAY_0, 5, 2), new ArrayOctet(TEST_ARRAY_a, 0, 1));
+		assertEquals(24, octetBufD.length());
+		assertEquals(32, octetBufD.capacity());
+		assertTrue(octetBufD.toInput().equals("0abcde34a7890abcde34a789".getBytes()));
+
+		octetBufD.replaceAll(new ArrayOctet(TEST_ARRAY_0, 3, 1), new ArrayOctet(TEST_ARRAY_a, 5, 3));
+		assertEquals(28, octetBufD.length());
+		assertEquals(32, octetBufD.capacity());
+		assertTrue(octetBufD.toInput().equals("0abcdefgh4a7890abcdefgh4a789".getBytes()));
+	}
+
+	public final void testReplaceAllTable() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestReplaceAllTable();
+		}
+	}
+
+	private final void doTestReplaceAllTable() {
+		ExpandableOctetBuffer octetBufD = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+
+		octetBufD.append(TEST_ARRAY_0).append(TEST_ARRAY_0);
+		assertEquals(20, octetBufD.capacity());
+
+		octetBufD.replaceAll(
+				new Octet[] { new ArrayOctet(TEST_ARRAY_0, 1, 2), new ArrayOctet(TEST_ARRAY_0, 1, 3), new ArrayOctet(TEST_ARRAY_0, 9, 1) },
+				new Octet[] { new ArrayOctet(TEST_ARRAY_a, 0, 1), new ArrayOctet(TEST_ARRAY_a, 1, 2), new ArrayOctet(TEST_ARRAY_a, 0, 0) });
+		assertEquals(16, octetBufD.length());
+		assertEquals(20, octetBufD.capacity());
+		assertTrue(octetBufD.toInput().equals("0bc456780bc45678".getBytes()));
+
+		octetBufD.replaceAll(
+				new Octet[] { new ArrayOctet(TEST_ARRAY_0, 0, 1), new ArrayOctet("bc45".getBytes()) },
+				new Octet[] { new ArrayOctet("zz".getBytes()), new ArrayOctet(TEST_ARRAY_a, 0, 0) });
+		assertEquals(10, octetBufD.length());
+		assertEquals(20, octetBufD.capacity());
+		assertTrue(octetBufD.toInput().equals("zz678zz678".getBytes()));
+
+		octetBufD.replaceAll(
+				new Octet[] { new ArrayOctet("z".getBytes()), new ArrayOctet("8".getBytes()) },
+				new Octet[] { new ArrayOctet("Z".getBytes()), new ArrayOctet(TEST_ARRAY_0) });
+		assertEquals(28, octetBufD.length());
+		assertEquals(32, octetBufD.capacity());
+		assertTrue(octetBufD.toInput().equals("ZZ670123456789ZZ670123456789".getBytes()));
+
+		try {
+			octetBufD.replaceAll(new Octet[] { new ArrayOctet(TEST_ARRAY_0) }, new Octet[0]);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException ignore) {
+		}
+	}
+
+
+	public final void testGapEditing() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestGapEditing();
+		}
+	}
+
+	private final void doTestGapEditing() {
+		final ExpandableOctetBuffer octetBufG = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+		final ExpandableOctetBuffer octetBufE = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+
+		octetBufG.setGapEditing(true);
+		assertTrue(octetBufG.isGapEditing());
+
+		octetBufG.append(TEST_ARRAY_0);
+		octetBufE.append(TEST_ARRAY_0);
+
+		octetBufG.insert(2, TEST_ARRAY_a, 0, 3);
+		octetBufE.insert(2, TEST_ARRAY_a, 0, 3);
+		assertEquals(13, octetBufG.length());
+
+		octetBufG.replace(8, 10, (byte)'x');
+		octetBufE.replace(8, 10, (byte)'x');
+		assertEquals(12, octetBufG.length());
+
+		octetBufG.delete(0, 2);
+		octetBufE.delete(0, 2);
+		assertEquals(10, octetBufG.length());
+
+		octetBufG.insert(10, new ArrayOctet(TEST_ARRAY_a, 5, 4));
+		octetBufE.insert(10, new ArrayOctet(TEST_ARRAY_a, 5, 4));
+		assertEquals(14, octetBufG.length());
+
+		octetBufG.replace(3, 5, TEST_ARRAY_0, 0, 6);
+		octetBufE.replace(3, 5, TEST_ARRAY_0, 0, 6);
+		assertEquals(18, octetBufG.length());
+
+		final String expectedString =
+				"\r\n" +
+				"61 62 63 30 31 32 33 34  35 34 78 37 38 39 66 67  abc0123454x789fg" + "\r\n" +
+				"68 69                                             hi" + "\r\n";
+		assertEquals(expectedString, octetBufG.toString());
+		assertEquals(octetBufE.toString(), octetBufG.toString());
+
+		octetBufG.delete(0, 4).delete(10, 30);
+		octetBufE.delete(0, 4).delete(10, 30);
+		assertEquals(10, octetBufG.length());
+		assertEquals(octetBufE.toInput(), octetBufG.toInput());
+
+		octetBufG.insert(0, (byte)'-').append((byte)'+');
+		octetBufG.setGapEditing(false);
+		assertFalse(octetBufG.isGapEditing());
+
+		final String expectedString1 =
+				"\r\n" +
+				"2D 31 32 33 34 35 34 78  37 38 39 2B              -123454x789+" + "\r\n";
+		assertEquals(expectedString1, octetBufG.toString());
 	}
 
 
@@ -0,0 +1,196 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octettest;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import com.chinmobi.octet.ArrayOctet;
+import com.chinmobi.octet.BufferAllocator;
+import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.MutableArrayOctet;
+import com.chinmobi.octet.Octet;
+import com.chinmobi.octet.io.OctetOutputOp;
+import com.chinmobi.octet.zip.OctetChecksum;
+import com.chinmobi.testapp.BaseTestAction;
+
+/**
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class OctetChecksumTestAction extends BaseTestAction implements BufferAllocator {
+
+	private static final byte[] TEST_ARRAY_0 = { '1', '2', '3', '4', '5', '6', '7', '8', '9' };
+
+	private boolean isAllocateDirect;
+
+
+	public OctetChecksumTestAction() {
+		super();
+		this.isAllocateDirect = false;
+	}
+
+
+	public final ByteBuffer allocate(final ByteBuffer oldBuffer, final int size) {
+		if (this.isAllocateDirect) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
+	}
+
+
+	/*
+	 * Test methods
+	 */
+
+	public final void testCheckValues() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestCheckValues();
+		}
+	}
+
+	private final void doTestCheckValues() {
+		final ExpandableOctetBuffer octetBuf = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+		octetBuf.append((byte)'x').append(TEST_ARRAY_0).append((byte)'y');
+
+		final Octet octet = octetBuf.toInput();
+		final int start = octet.begin() + 1;
+		final int end = octet.end() - 1;
+
+		assertEquals(0xCBF43926L, OctetChecksum.crc32().update(octet, start, end).getValue());
+		assertEquals(0xE3069283L, OctetChecksum.crc32c().update(octet, start, end).getValue());
+		assertEquals(0x091E01DEL, OctetChecksum.adler32().update(octet, start, end).getValue());
+
+		// Updates in pieces give the same value.
+		final OctetChecksum checksum = OctetChecksum.crc32c();
+		checksum.update(octet, start, start + 4).update(octet, start + 4, end);
+		assertEquals(0xE3069283L, checksum.getValue());
+
+		checksum.reset();
+		assertEquals(0L, checksum.getValue());
+
+		try {
+			OctetChecksum.crc32().update(octet, octet.begin(), octet.end() + 1);
+			fail();
+		} catch (IndexOutOfBoundsException ignore) {
+		}
+	}
+
+	public final void testLargeRange() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestLargeRange();
+		}
+	}
+
+	private final void doTestLargeRange() {
+		final byte[] data = new byte[100 * 1024 + 13];
+		new Random(7).nextBytes(data);
+
+		final ExpandableOctetBuffer octetBuf = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+		octetBuf.append(data);
+
+		final CRC32 crc = new CRC32();
+		crc.update(data, 3, data.length - 3);
+
+		final Octet octet = octetBuf.toInput();
+		assertEquals(crc.getValue(), OctetChecksum.crc32().update(octet, octet.begin() + 3, octet.end()).getValue());
+
+		// CRC32C agrees between the heap and direct paths.
+		final long crc32c = OctetChecksum.crc32c().update(new ArrayOctet(data)).getValue();
+		assertEquals(crc32c, OctetChecksum.crc32c().update(octetBuf).getValue());
+
+		try {
+			final byte[] expected = MessageDigest.getInstance("SHA-256").digest(data);
+			assertTrue(Arrays.equals(expected, OctetChecksum.digest("SHA-256").update(octetBuf).digest()));
+		} catch (NoSuchAlgorithmException ex) {
+			fail(ex);
+		}
+	}
+
+	public final void testTrack() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestTrack();
+		}
+	}
+
+	private final void doTestTrack() {
+		final ExpandableOctetBuffer octetBuf = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+		final OctetOutputOp outputOp = octetBuf.outputOp();
+
+		outputOp.put((byte)'#');
+
+		final OctetChecksum checksum = OctetChecksum.crc32().track(outputOp);
+		assertTrue(checksum.trackedOp() == outputOp);
+
+		final CRC32 crc = new CRC32();
+
+		final Random random = new Random(11);
+		for (int n = 0; n < 50; ++n) {
+			final byte[] record = new byte[random.nextInt(3000)];
+			random.nextBytes(record);
+
+			outputOp.put(record).putInt(record.length);
+
+			crc.update(record);
+			crc.update(record.length >>> 24);
+			crc.update(record.length >>> 16);
+			crc.update(record.length >>> 8);
+			crc.update(record.length);
+
+			if ((n % 7) == 0) {
+				assertEquals(crc.getValue(), checksum.getValue());
+			}
+		}
+		assertEquals(crc.getValue(), checksum.getValue());
+
+		// Restarting the checksum at a record boundary.
+		checksum.reset();
+		outputOp.put(TEST_ARRAY_0);
+		assertEquals(0xCBF43926L, checksum.getValue());
+
+		outputOp.clear().restart();
+		try {
+			outputOp.put((byte)'1');
+			checksum.getValue();
+			fail();
+		} catch (IllegalStateException ignore) {
+		}
+
+		// Plain arrays are tracked the same way.
+		final MutableArrayOctet arrayOctet = new MutableArrayOctet(64);
+		final OctetChecksum arrayChecksum = OctetChecksum.crc32c().track(arrayOctet.outputOp());
+		arrayChecksum.trackedOp().put(TEST_ARRAY_0);
+		assertEquals(0xE3069283L, arrayChecksum.getValue());
+	}
+
+}
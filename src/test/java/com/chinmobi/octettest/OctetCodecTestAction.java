@@ -0,0 +1,231 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octettest;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.chinmobi.octet.ArrayOctet;
+import com.chinmobi.octet.BufferAllocator;
+import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.MutableArrayOctet;
+import com.chinmobi.octet.Octet;
+import com.chinmobi.octet.codec.Base64Codec;
+import com.chinmobi.octet.codec.HexCodec;
+import com.chinmobi.octet.codec.OctetCodec;
+import com.chinmobi.octet.io.OctetOutputOp;
+import com.chinmobi.testapp.BaseTestAction;
+
+/**
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class OctetCodecTestAction extends BaseTestAction implements BufferAllocator {
+
+	private boolean isAllocateDirect;
+
+
+	public OctetCodecTestAction() {
+		super();
+		this.isAllocateDirect = false;
+	}
+
+
+	public final ByteBuffer allocate(final ByteBuffer oldBuffer, final int size) {
+		if (this.isAllocateDirect) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
+	}
+
+
+	/*
+	 * Test methods
+	 */
+
+	public final void testHex() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestHex();
+		}
+	}
+
+	private final void doTestHex() {
+		final Octet src = newOctet(new byte[] { 0x00, 0x1F, (byte)0xA0, (byte)0xFF, 'z' });
+
+		final ExpandableOctetBuffer dest = newBuffer();
+		dest.append((byte)'[');
+		HexCodec.encode(src, dest);
+		assertEquals("[001fa0ff7a", asString(dest));
+
+		HexCodec.encode(src, true, dest.clear());
+		assertEquals("001FA0FF7A", asString(dest));
+
+		final ExpandableOctetBuffer result = newBuffer();
+		HexCodec.decode(dest.toInput(), result);
+		assertTrue(result.toInput().equals(src));
+
+		HexCodec.decode(newOctet("00ff".getBytes()).suboctet(2, 4), result.clear());
+		assertEquals(1, result.length());
+		assertEquals((byte)0x0F, result.toInput().byteAt(0));
+
+		final String[] illegals = { "abc", "0g", "-1" };
+		for (String illegal : illegals) {
+			try {
+				HexCodec.decode(newOctet(illegal.getBytes()), result.clear());
+				fail(illegal);
+			} catch (IllegalArgumentException ignore) {
+			}
+		}
+	}
+
+	public final void testBase64() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestBase64();
+		}
+	}
+
+	private final void doTestBase64() {
+		final String[][] vectors = {
+				{ "", "" },
+				{ "f", "Zg==" },
+				{ "fo", "Zm8=" },
+				{ "foo", "Zm9v" },
+				{ "foob", "Zm9vYg==" },
+				{ "fooba", "Zm9vYmE=" },
+				{ "foobar", "Zm9vYmFy" },
+		};
+
+		final ExpandableOctetBuffer dest = newBuffer();
+		final ExpandableOctetBuffer result = newBuffer();
+
+		for (String[] vector : vectors) {
+			final Octet src = newOctet(vector[0].getBytes());
+
+			Base64Codec.encode(src, dest.clear());
+			assertEquals(vector[1], asString(dest));
+
+			Base64Codec.decode(dest.toInput(), result.clear());
+			assertEquals(vector[0], asString(result));
+
+			// Unpadded input decodes the same.
+			final Octet encoded = dest.toInput();
+			int end = encoded.end();
+			while (end > encoded.begin() && encoded.byteAt(end - 1) == '=') {
+				--end;
+			}
+			Base64Codec.decode(encoded.suboctet(encoded.begin(), end), result.clear());
+			assertEquals(vector[0], asString(result));
+		}
+
+		final Octet binary = newOctet(new byte[] { (byte)0xFB, (byte)0xFF, (byte)0xBF, 0x01 });
+
+		Base64Codec.encode(binary, dest.clear());
+		assertEquals("+/+/AQ==", asString(dest));
+
+		Base64Codec.encodeUrlSafe(binary, dest.clear());
+		assertEquals("-_-_AQ", asString(dest));
+
+		Base64Codec.decodeUrlSafe(dest.toInput(), result.clear());
+		assertTrue(result.toInput().equals(binary));
+
+		final String[] illegals = { "A", "AB=", "A===", "AB=C", "Zg==Zg==", "Zm9v=", "Zm*v", "-_-_" };
+		for (String illegal : illegals) {
+			try {
+				Base64Codec.decode(newOctet(illegal.getBytes()), result.clear());
+				fail(illegal);
+			} catch (IllegalArgumentException ignore) {
+			}
+		}
+	}
+
+	public final void testStreaming() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestStreaming();
+		}
+	}
+
+	private final void doTestStreaming() {
+		final Random random = new Random(5);
+		final byte[] data = new byte[50 * 1024 + 1];
+		random.nextBytes(data);
+
+		final Octet src = newOctet(data);
+
+		final ExpandableOctetBuffer whole = newBuffer();
+		Base64Codec.encode(src, whole);
+
+		// Feeding odd sized pieces gives the same output as one update.
+		final OctetCodec encoder = Base64Codec.newEncoder(false, true);
+		final ExpandableOctetBuffer pieces = newBuffer();
+		int start = src.begin();
+		while (start < src.end()) {
+			final int end = Math.min(start + 1 + random.nextInt(5000), src.end());
+			encoder.update(src, start, end, pieces);
+			start = end;
+		}
+		encoder.finish(pieces);
+		assertTrue(pieces.toInput().equals(whole.toInput()));
+
+		final OctetCodec decoder = Base64Codec.newDecoder(false);
+		final ExpandableOctetBuffer result = newBuffer();
+		final Octet encoded = whole.toInput();
+		start = encoded.begin();
+		while (start < encoded.end()) {
+			final int end = Math.min(start + 1 + random.nextInt(5000), encoded.end());
+			decoder.update(encoded, start, end, result);
+			start = end;
+		}
+		decoder.finish(result);
+		assertTrue(result.toInput().equals(new ArrayOctet(data)));
+
+		// Codecs are reusable after finish and write to output ops as well.
+		final MutableArrayOctet arrayOctet = new MutableArrayOctet(16);
+		final OctetOutputOp outputOp = arrayOctet.outputOp();
+		HexCodec.newEncoder(false).update(newOctet("hi!".getBytes()), outputOp).finish(outputOp);
+		decoder.update(newOctet("aGkh".getBytes()), outputOp).finish(outputOp);
+		outputOp.update();
+		assertEquals("686921hi!", new String(arrayOctet.getBytes()));
+	}
+
+
+	private final ExpandableOctetBuffer newBuffer() {
+		return new ExpandableOctetBuffer((BufferAllocator)this, 1);
+	}
+
+	private final Octet newOctet(final byte[] data) {
+		final ExpandableOctetBuffer octetBuf = newBuffer();
+		octetBuf.append((byte)'#').append(data);
+		return octetBuf.toInput().suboctet(1, data.length + 1);
+	}
+
+	private static final String asString(final ExpandableOctetBuffer octetBuf) {
+		return new String(octetBuf.toInput().getBytes());
+	}
+
+}
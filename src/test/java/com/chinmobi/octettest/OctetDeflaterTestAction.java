@@ -0,0 +1,291 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octettest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import com.chinmobi.octet.ArrayOctet;
+import com.chinmobi.octet.BufferAllocator;
+import com.chinmobi.octet.ExpandableOctetBuffer;
+import com.chinmobi.octet.Octet;
+import com.chinmobi.octet.zip.OctetDeflater;
+import com.chinmobi.octet.zip.OctetInflater;
+import com.chinmobi.testapp.BaseTestAction;
+
+/**
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class OctetDeflaterTestAction extends BaseTestAction implements BufferAllocator {
+
+	private boolean isAllocateDirect;
+
+
+	public OctetDeflaterTestAction() {
+		super();
+		this.isAllocateDirect = false;
+	}
+
+
+	public final ByteBuffer allocate(final ByteBuffer oldBuffer, final int size) {
+		if (this.isAllocateDirect) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
+	}
+
+
+	/*
+	 * Test methods
+	 */
+
+	public final void testRoundTrip() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestRoundTrip();
+		}
+	}
+
+	private final void doTestRoundTrip() {
+		final byte[] data = newData(100 * 1024);
+
+		final ExpandableOctetBuffer src = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+		src.append(data);
+
+		final int[] formats = { OctetDeflater.ZLIB, OctetDeflater.RAW, OctetDeflater.GZIP };
+		for (int format : formats) {
+			final OctetDeflater deflater = new OctetDeflater(format);
+			final OctetInflater inflater = new OctetInflater(format);
+
+			final ExpandableOctetBuffer compressed = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+			final int length = deflater.deflate(src.toInput(), compressed);
+
+			assertEquals(compressed.length(), length);
+			assertTrue(length < data.length / 2);
+
+			final ExpandableOctetBuffer result = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+			result.append((byte)'#');
+
+			try {
+				assertEquals(data.length, inflater.inflate(compressed.toInput(), result));
+			} catch (ZipException ex) {
+				fail(ex);
+			}
+
+			assertEquals(data.length + 1, result.length());
+			assertTrue(result.toInput().suboctet(1, data.length + 1).equals(new ArrayOctet(data)));
+
+			// The deflater is reusable.
+			final ExpandableOctetBuffer again = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+			assertEquals(length, deflater.deflate(src.toInput(), again));
+			assertTrue(again.toInput().equals(compressed.toInput()));
+
+			deflater.end();
+			inflater.end();
+		}
+	}
+
+	public final void testGzipCompatible() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestGzipCompatible();
+		}
+	}
+
+	private final void doTestGzipCompatible() {
+		final byte[] data = newData(20 * 1024);
+
+		final ExpandableOctetBuffer compressed = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+		new OctetDeflater(OctetDeflater.GZIP).deflate(new ArrayOctet(data), compressed);
+
+		try {
+			final GZIPInputStream gzipIn = new GZIPInputStream(
+					new ByteArrayInputStream(compressed.toInput().getBytes()));
+			final ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+
+			final byte[] tmp = new byte[1024];
+			int count;
+			while ((count = gzipIn.read(tmp)) > 0) {
+				bytesOut.write(tmp, 0, count);
+			}
+			gzipIn.close();
+
+			assertTrue(new ArrayOctet(bytesOut.toByteArray()).equals(new ArrayOctet(data)));
+
+			bytesOut.reset();
+			final GZIPOutputStream gzipOut = new GZIPOutputStream(bytesOut);
+			gzipOut.write(data);
+			gzipOut.close();
+
+			final ExpandableOctetBuffer src = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+			src.append(bytesOut.toByteArray());
+
+			final ExpandableOctetBuffer result = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+			new OctetInflater(OctetDeflater.GZIP).inflate(src.toInput(), result);
+
+			assertTrue(result.toInput().equals(new ArrayOctet(data)));
+
+			// Corrupt the CRC.
+			final Octet octet = src.toInput();
+			final int index = octet.end() - 8;
+			src.buffer().put(index, (byte)(octet.byteAt(index) ^ 0x01));
+
+			try {
+				new OctetInflater(OctetDeflater.GZIP).inflate(src.toInput(), result.clear());
+				fail();
+			} catch (ZipException ignore) {
+			}
+		} catch (IOException ex) {
+			fail(ex);
+		}
+	}
+
+	public final void testDictionary() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestDictionary();
+		}
+	}
+
+	private final void doTestDictionary() {
+		final Octet dictionary = new ArrayOctet("{\"name\":\"\",\"value\":\"\",\"timestamp\":}".getBytes());
+		final Octet record = new ArrayOctet("{\"name\":\"size\",\"value\":\"42\",\"timestamp\":7}".getBytes());
+
+		final int[] formats = { OctetDeflater.ZLIB, OctetDeflater.RAW };
+		for (int format : formats) {
+			final OctetDeflater deflater = new OctetDeflater(format);
+
+			final ExpandableOctetBuffer plain = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+			final int plainLength = deflater.deflate(record, plain);
+
+			deflater.setDictionary(dictionary);
+
+			final ExpandableOctetBuffer first = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+			final int length = deflater.deflate(record, first);
+			assertTrue(length < plainLength);
+
+			final ExpandableOctetBuffer second = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+			assertEquals(length, deflater.deflate(record, second));
+
+			final OctetInflater inflater = new OctetInflater(format);
+			final ExpandableOctetBuffer result = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+
+			if (format == OctetDeflater.ZLIB) {
+				try {
+					inflater.inflate(first.toInput(), result);
+					fail();
+				} catch (ZipException ignore) {
+				}
+			}
+
+			inflater.setDictionary(dictionary);
+
+			for (int j = 0; j < 2; ++j) {
+				try {
+					inflater.inflate(((j == 0) ? first : second).toInput(), result.clear());
+				} catch (ZipException ex) {
+					fail(ex);
+				}
+				assertTrue(result.toInput().equals(record));
+			}
+		}
+
+		try {
+			new OctetDeflater(OctetDeflater.GZIP).setDictionary(dictionary);
+			fail();
+		} catch (IllegalArgumentException ignore) {
+		}
+	}
+
+	public final void testStreaming() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestStreaming();
+		}
+	}
+
+	private final void doTestStreaming() {
+		final byte[] data = newData(50 * 1024);
+
+		final ExpandableOctetBuffer src = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+		src.append(data);
+		final Octet octet = src.toInput();
+
+		final int[] formats = { OctetDeflater.ZLIB, OctetDeflater.GZIP };
+		for (int format : formats) {
+			final OctetDeflater deflater = new OctetDeflater(format);
+			final ExpandableOctetBuffer compressed = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+
+			int start = octet.begin();
+			while (start < octet.end()) {
+				final int end = Math.min(start + 3000, octet.end());
+				deflater.update(octet, start, end, compressed);
+				start = end;
+
+				if (start == 30000) {
+					deflater.flush(compressed);
+				}
+			}
+			deflater.finish(compressed);
+
+			assertEquals(data.length, deflater.getBytesRead());
+
+			final ExpandableOctetBuffer result = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+			try {
+				new OctetInflater(format).inflate(compressed.toInput(), result);
+			} catch (ZipException ex) {
+				fail(ex);
+			}
+			assertTrue(result.toInput().equals(new ArrayOctet(data)));
+
+			deflater.reset();
+		}
+	}
+
+
+	private static final byte[] newData(final int length) {
+		final Random random = new Random(length);
+		final byte[] words = "alpha beta gamma delta epsilon zeta eta theta ".getBytes();
+
+		final byte[] data = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			if ((i & 0xFF) == 0) {
+				data[i] = (byte)random.nextInt();
+			} else {
+				data[i] = words[(i + random.nextInt(3)) % words.length];
+			}
+		}
+		return data;
+	}
+
+}
@@ -24,6 +24,8 @@
  */
 package com.chinmobi.octettest;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -35,6 +37,8 @@ import com.chinmobi.octet.BufferOctet;
 import com.chinmobi.octet.ExpandableOctetBuffer;
 import com.chinmobi.octet.MutableArrayOctet;
 import com.chinmobi.octet.Octet;
+import com.chinmobi.octet.data.CompactOctetFormat;
+import com.chinmobi.octet.io.OctetInputOp;
 import com.chinmobi.testapp.BaseTestAction;
 
 /**
@@ -253,6 +257,192 @@ public final class OctetSerializeTestAction extends BaseTestAction implements Bu
 	}
 
 
+	public final void testCompactOctet() {
+		final BufferOctet heapOctet = new BufferOctet(ByteBuffer.allocate(64));
+		heapOctet.clear().outputOp().put(TEST_ARRAY_0).update();
+
+		final BufferOctet directOctet = new BufferOctet(ByteBuffer.allocateDirect(64));
+		directOctet.clear().outputOp().put(TEST_ARRAY_0).update();
+
+		final Octet[] octets = { new ArrayOctet(TEST_ARRAY_0), heapOctet, directOctet };
+
+		for (Octet source : octets) {
+			source.suboctet(1, 5);
+
+			final ExpandableOctetBuffer dump = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+
+			Octet octet = null;
+			try {
+				final DataOutputStream dataOut = new DataOutputStream(dump.outputOp());
+				CompactOctetFormat.writeOctet(source, dataOut);
+				dataOut.close();
+
+				assertEquals(1 + 1 + 4, dump.length());
+
+				final DataInputStream dataIn = new DataInputStream(dump.inputOp());
+				octet = CompactOctetFormat.readOctet(dataIn);
+				dataIn.close();
+			} catch (IOException ex) {
+				fail(ex);
+			}
+
+			assertNotNull(octet);
+			assertEquals(0, octet.begin());
+			assertEquals(4, octet.length());
+			assertTrue(octet.equals(new ArrayOctet(TEST_ARRAY_0, 1, 4)));
+
+			if (source.buffer() != null) {
+				assertEquals(4, octet.buffer().capacity());
+				assertEquals(source.buffer().isDirect(), octet.buffer().isDirect());
+			} else {
+				assertNull(octet.buffer());
+				assertEquals(4, octet.array().length);
+			}
+		}
+	}
+
+	public final void testCompactVarint() {
+		final int[] values = { 0, 1, 0x7F, 0x80, 0x3FFF, 0x4000, 0x1FFFFF, 0x200000, Integer.MAX_VALUE, -1 };
+		final int[] sizes = { 1, 1, 1, 2, 2, 3, 3, 4, 5, 5 };
+
+		final ExpandableOctetBuffer dump = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+
+		try {
+			final DataOutputStream dataOut = new DataOutputStream(dump.outputOp());
+			for (int i = 0; i < values.length; ++i) {
+				final int before = dataOut.size();
+				CompactOctetFormat.writeVarint(values[i], dataOut);
+				assertEquals(sizes[i], dataOut.size() - before);
+			}
+			dataOut.close();
+
+			final DataInputStream dataIn = new DataInputStream(dump.inputOp());
+			for (int i = 0; i < values.length; ++i) {
+				assertEquals(values[i], CompactOctetFormat.readVarint(dataIn));
+			}
+			dataIn.close();
+		} catch (IOException ex) {
+			fail(ex);
+		}
+	}
+
+	public final void testCompactOctetBuffer() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestCompactOctetBuffer();
+		}
+	}
+
+	private final void doTestCompactOctetBuffer() {
+		final ExpandableOctetBuffer octetBuf = new ExpandableOctetBuffer((BufferAllocator)this, 64 * 1024);
+		octetBuf.outputOp().put(TEST_ARRAY_0).update();
+
+		octetBuf.setCompactExternal(true);
+
+		ExpandableOctetBuffer result = null;
+		int defaultSize = 0;
+		int compactSize = 0;
+		try {
+			compactSize = serializedSize(octetBuf);
+			result = doSerialize(octetBuf);
+
+			octetBuf.setCompactExternal(false);
+			defaultSize = serializedSize(octetBuf);
+		} catch (IOException ex) {
+			fail(ex);
+		} catch (ClassNotFoundException ex) {
+			fail(ex);
+		}
+
+		assertTrue(compactSize < 1024);
+		assertTrue(defaultSize > 64 * 1024);
+
+		assertNotNull(result);
+		assertTrue(result.isCompactExternal());
+		assertEquals(TEST_ARRAY_0.length, result.length());
+		assertEquals(TEST_ARRAY_0.length, result.capacity());
+		assertEquals(this.isAllocateDirect, result.buffer().isDirect());
+
+		result.outputOp().put(TEST_ARRAY_0, 0, 2).update();
+		assertTrue(result.toInput().equals(new ArrayOctet("012345678901".getBytes())));
+
+		// Input mode ships only the visible octet.
+		final Octet bufferOctet = octetBuf.toInput();
+		bufferOctet.suboctet(1, 5);
+		octetBuf.setCompactExternal(true);
+
+		try {
+			result = doSerialize(octetBuf);
+		} catch (IOException ex) {
+			fail(ex);
+		} catch (ClassNotFoundException ex) {
+			fail(ex);
+		}
+
+		assertEquals(4, result.capacity());
+		assertTrue(result.toInput().equals(new ArrayOctet(TEST_ARRAY_0, 1, 4)));
+	}
+
+	public final void testCompactAfterRead() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestCompactAfterRead();
+		}
+	}
+
+	private final void doTestCompactAfterRead() {
+		final ExpandableOctetBuffer octetBuf = new ExpandableOctetBuffer((BufferAllocator)this, 64);
+		octetBuf.outputOp().put("hello world".getBytes()).update();
+		final OctetInputOp inputOp = octetBuf.inputOp();
+		inputOp.get(new byte[3]);
+		assertEquals(8, octetBuf.length());
+
+		ExpandableOctetBuffer compact = null;
+		ExpandableOctetBuffer standard = null;
+		try {
+			octetBuf.setCompactExternal(true);
+			compact = doSerialize(octetBuf);
+
+			octetBuf.setCompactExternal(false);
+			standard = doSerialize(octetBuf);
+		} catch (IOException ex) {
+			fail(ex);
+		} catch (ClassNotFoundException ex) {
+			fail(ex);
+		}
+
+		assertEquals(8, standard.length());
+		assertEquals(8, compact.length());
+		assertTrue(compact.toInput().equals(new ArrayOctet("lo world".getBytes())));
+
+		// Reading the rest leaves nothing to ship.
+		inputOp.get(new byte[8]);
+		assertEquals(0, octetBuf.length());
+		octetBuf.setCompactExternal(true);
+		try {
+			compact = doSerialize(octetBuf);
+		} catch (IOException ex) {
+			fail(ex);
+		} catch (ClassNotFoundException ex) {
+			fail(ex);
+		}
+
+		assertEquals(0, compact.length());
+	}
+
+	private final int serializedSize(final ExpandableOctetBuffer octetBuf) throws IOException {
+		final ExpandableOctetBuffer dump = new ExpandableOctetBuffer((BufferAllocator)this, 1);
+
+		final ObjectOutputStream objOut = new ObjectOutputStream(dump.outputOp());
+
+		objOut.writeObject(octetBuf);
+		objOut.flush();
+		objOut.close();
+
+		return dump.length();
+	}
+
+
 	private static final void assertOctet(final Octet octet) {
 		assertEquals(1, octet.begin());
 		assertEquals(5, octet.end());
@@ -0,0 +1,289 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octettest;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.chinmobi.testapp.BaseTestAction;
+import com.chinmobi.text.ArrayText;
+import com.chinmobi.text.BufferText;
+import com.chinmobi.text.CharsetUtils;
+import com.chinmobi.text.TextOctet;
+import com.chinmobi.text.regex.OctetMatcher;
+import com.chinmobi.text.regex.OctetPattern;
+
+/**
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class RegexTestAction extends BaseTestAction {
+
+	public RegexTestAction() {
+		super();
+	}
+
+
+	/*
+	 * Test methods
+	 */
+
+	public final void testFind() {
+		assertFinds("a", "banana");
+		assertFinds("an", "banana");
+		assertFinds("a*", "baaac");
+		assertFinds("a*?", "aa");
+		assertFinds("(an)+", "bananas");
+		assertFinds("b(an)*?a", "bananas");
+		assertFinds("[a-c]{2,3}", "abcabcab x");
+		assertFinds("x{2}|y+z?", "xxxyyzxyz");
+		assertFinds("(?:ab|a)(bc|c)?", "abcac");
+		assertFinds("\\d+(\\.\\d+)?", "pi=3.14, e=2.718., n=42");
+		assertFinds("\\w+@\\w+\\.com", "mail joe@example.com or ann@test.com.");
+		assertFinds("[^\\s,]+", "one, two  three,four");
+		assertFinds("^a|b$", "ab ab");
+		assertFinds("\\Aab|ab\\z", "ab ab ab");
+		assertFinds(".+", "line one\nline two\n");
+		assertFinds("(?s).+", "line one\nline two\n");
+		assertFinds("(?i)get|post", "GET / POST /Get");
+		assertFinds("", "abc");
+		assertFinds("(a|b)*c", "abxc ac c");
+		assertFinds("(x)?y(z)?", "y xy yz");
+		assertFinds("a{0}b", "ab");
+		assertFinds("\\x41[\\x61-\\x63]\\t", "Ab\tAc\t Ad\t");
+	}
+
+	public final void testEmptyIteration() {
+		// An iteration that matches nothing is skipped, so the loop goes on to 'c';
+		// java.util.regex ends the loop there and finds "" instead.
+		final OctetMatcher matcher = OctetPattern.compile("(?:(?:a*|c)*)").matcher(text("c"));
+		assertTrue(matcher.find());
+		assertEquals(0, matcher.start());
+		assertEquals(1, matcher.end());
+
+		matcher.reset(text("cc"));
+		assertTrue(matcher.find());
+		assertEquals(2, matcher.end());
+
+		// With something after the loop both find the same span.
+		assertFinds("(?:(?:a*|c)*)x", "cx acx");
+	}
+
+	public final void testMatches() {
+		final String[][] cases = {
+				{ "a*b", "aaab" },
+				{ "a*b", "aaabc" },
+				{ "a|ab", "ab" },
+				{ "(a|ab)(c|bcd)(d*)", "abcd" },
+				{ "(a+)(b+)?", "aaa" },
+				{ "", "" },
+				{ "x?", "" },
+				{ "[0-9a-f]+", "00ff7e" },
+				{ "[0-9a-f]+", "00fg7e" },
+				{ "(?:(\\w+)=(\\w*);?)+", "a=1;b=;c=33" },
+		};
+
+		for (String[] c : cases) {
+			final Matcher expected = Pattern.compile(c[0]).matcher(c[1]);
+			final OctetMatcher matcher = OctetPattern.compile(c[0]).matcher(text(c[1]));
+
+			assertEquals(expected.matches(), matcher.matches());
+			if (expected.matches()) {
+				assertGroups(expected, matcher);
+			}
+
+			assertEquals(expected.lookingAt(), matcher.lookingAt());
+			if (expected.lookingAt()) {
+				assertGroups(expected, matcher);
+			}
+		}
+
+		// A '{' that starts no repeat is taken literally.
+		assertTrue(OctetPattern.matches("a{,3}", text("a{,3}")));
+
+		assertTrue(OctetPattern.matches("GET|POST", text("POST")));
+		assertFalse(OctetPattern.matches("GET|POST", text("PUT")));
+	}
+
+	public final void testGroups() {
+		final OctetPattern pattern = OctetPattern.compile("(\\w+)(?:=(\\w*))?");
+		assertEquals(2, pattern.groupCount());
+
+		final OctetMatcher matcher = pattern.matcher(text("key=value flag"));
+
+		assertTrue(matcher.find());
+		assertEquals("key=value", matcher.group().toString());
+		assertEquals("key", matcher.group(1).toString());
+		assertEquals("value", matcher.group(2).toString());
+		assertEquals(4, matcher.start(2));
+		assertEquals(9, matcher.end(2));
+
+		assertTrue(matcher.find());
+		assertEquals("flag", matcher.group(1).toString());
+		assertTrue(matcher.group(2) == null);
+		assertEquals(-1, matcher.start(2));
+		assertEquals(-1, matcher.end(2));
+
+		assertFalse(matcher.find());
+		try {
+			matcher.start();
+			fail();
+		} catch (IllegalStateException ignore) {
+		}
+
+		matcher.reset();
+		assertTrue(matcher.find());
+		try {
+			matcher.group(3);
+			fail();
+		} catch (IndexOutOfBoundsException ignore) {
+		}
+	}
+
+	public final void testRegion() {
+		final TextOctet text = new ArrayText("xx abc abc xx".getBytes(), 0, 13);
+
+		final OctetMatcher matcher = OctetPattern.compile("^abc|abc$").matcher();
+		matcher.reset(text, 3, 10);
+		assertTrue(matcher.find());
+		assertEquals(3, matcher.start());
+		assertTrue(matcher.find());
+		assertEquals(7, matcher.start());
+		assertEquals(10, matcher.end());
+		assertFalse(matcher.find());
+
+		assertTrue(matcher.find(4));
+		assertEquals(7, matcher.start());
+
+		matcher.reset(text, 3, 6);
+		assertTrue(matcher.matches());
+
+		// The octet itself may start inside its array.
+		final TextOctet sub = new ArrayText("--a1b22c333".getBytes(), 2, 9);
+		final OctetMatcher digits = OctetPattern.compile("\\d+").matcher(sub);
+		assertTrue(digits.find());
+		assertEquals(3, digits.start());
+		assertEquals("1", digits.group().toString());
+		assertTrue(digits.find());
+		assertTrue(digits.find());
+		assertEquals("333", digits.group().toString());
+		assertFalse(digits.find());
+	}
+
+	public final void testUtf8() {
+		final String str = "caf\u00e9 na\u00efve \u65e5\u672c\u8a9e";
+		final byte[] bytes = str.getBytes(CharsetUtils.UTF_8);
+
+		final OctetMatcher matcher = OctetPattern.compile("\u65e5(\u672c)").matcher(new ArrayText(bytes));
+		assertTrue(matcher.find());
+		assertEquals(13, matcher.start());
+		assertEquals(16, matcher.start(1));
+		assertEquals(19, matcher.end());
+
+		// A class and '.' take single bytes.
+		final OctetMatcher word = OctetPattern.compile("[a-z\\x80-\\xff]+").matcher(new ArrayText(bytes));
+		assertTrue(word.find());
+		assertEquals(5, word.end());
+		assertTrue(OctetPattern.matches("caf..", new ArrayText(bytes, 0, 5)));
+	}
+
+	public final void testUnsupported() {
+		final String[] patterns = {
+				"(a)\\1", "a(?=b)", "(?<=a)b", "\\bword", "a++", "a**", "(a", "a)", "[a-", "[\u00e9]", "x{3,2}", "\\",
+		};
+
+		for (String regex : patterns) {
+			try {
+				OctetPattern.compile(regex);
+				fail(regex);
+			} catch (IllegalArgumentException ignore) {
+			}
+		}
+	}
+
+	public final void testLinearTime() {
+		final byte[] bytes = new byte[100000];
+		Arrays.fill(bytes, (byte)'a');
+
+		// A backtracker takes exponential time on these.
+		assertFalse(OctetPattern.compile("(a|aa)*b").matcher(new ArrayText(bytes)).find());
+		assertFalse(OctetPattern.compile("(a*)*b").matcher(new ArrayText(bytes)).matches());
+		assertTrue(OctetPattern.compile("(a|aa)*").matcher(new ArrayText(bytes)).matches());
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private static final TextOctet text(final String str) {
+		return new ArrayText(str.getBytes(CharsetUtils.ISO_8859_1));
+	}
+
+	private static final void assertFinds(final String regex, final String str) {
+		final byte[] bytes = str.getBytes(CharsetUtils.ISO_8859_1);
+		final byte[] array = new byte[bytes.length + 2];
+		System.arraycopy(bytes, 0, array, 1, bytes.length);
+
+		final ByteBuffer directBuf = ByteBuffer.allocateDirect(array.length);
+		directBuf.put(array);
+		directBuf.flip();
+
+		final TextOctet[] texts = {
+				new ArrayText(array, 1, bytes.length),
+				new BufferText(ByteBuffer.wrap(array), 1, bytes.length),
+				new BufferText(directBuf, 1, bytes.length),
+		};
+
+		final OctetMatcher matcher = OctetPattern.compile(regex).matcher();
+		for (TextOctet text : texts) {
+			final Matcher expected = Pattern.compile(regex).matcher(str);
+			matcher.reset(text);
+
+			while (expected.find()) {
+				assertTrue(matcher.find());
+				assertEquals(expected.start() + 1, matcher.start());
+				assertEquals(expected.end() + 1, matcher.end());
+				assertEquals(expected.group(), matcher.group().toString());
+
+				for (int group = 1; group <= expected.groupCount(); ++group) {
+					final int start = expected.start(group);
+					assertEquals((start >= 0) ? start + 1 : -1, matcher.start(group));
+				}
+			}
+			assertFalse(matcher.find());
+		}
+	}
+
+	private static final void assertGroups(final Matcher expected, final OctetMatcher matcher) {
+		assertEquals(expected.groupCount(), matcher.groupCount());
+		for (int group = 0; group <= expected.groupCount(); ++group) {
+			assertEquals(expected.start(group), matcher.start(group));
+			assertEquals(expected.end(group), matcher.end(group));
+		}
+	}
+
+}
@@ -25,11 +25,14 @@
 package com.chinmobi.octettest;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 
 import com.chinmobi.octet.BufferAllocator;
 import com.chinmobi.testapp.BaseTestAction;
 import com.chinmobi.text.ExpandableTextBuffer;
+import com.chinmobi.text.LineIndex;
 
 /**
  * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
@@ -94,6 +97,150 @@ public final class TextBufferTestAction extends BaseTestAction implements Buffer
 		assertEquals("0123456789a12", octetTxt.toString());
 	}
 
+	public final void testAppendChars() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestAppendChars();
+		}
+	}
+
+	private final void doTestAppendChars() {
+		final String str = "a\u00e9\u4e2d\ud83d\ude00z";
+
+		ExpandableTextBuffer octetTxt = new ExpandableTextBuffer((BufferAllocator)this, 1);
+		octetTxt.append(str);
+		assertEquals(1 + 2 + 3 + 4 + 1, octetTxt.length());
+		assertEquals(str, octetTxt.toString());
+
+		octetTxt.clear();
+		for (int i = 0; i < str.length(); ++i) {
+			octetTxt.append(str.charAt(i));
+		}
+		// Each half of the pair alone is a lone surrogate.
+		assertEquals("a\u00e9\u4e2d??z", octetTxt.toString());
+
+		octetTxt.clear();
+		octetTxt.append("[\ud83dx\ude00]");
+		assertEquals("[?x?]", octetTxt.toString());
+
+		octetTxt.clear();
+		octetTxt.append("ab");
+		octetTxt.insert(1, str);
+		assertEquals("a" + str + "b", octetTxt.toString());
+
+		octetTxt.clear();
+		octetTxt.setCharset("ISO-8859-1");
+		octetTxt.append(str);
+		octetTxt.append('\u00ff');
+		assertEquals("a\u00e9??z\u00ff", octetTxt.toString());
+
+		octetTxt.clear();
+		octetTxt.setCharset("US-ASCII");
+		octetTxt.append(str);
+		octetTxt.append('\u00ff');
+		assertEquals("a???z?", octetTxt.toString());
+
+		octetTxt = new ExpandableTextBuffer((BufferAllocator)this, 1);
+		octetTxt.setCharset("GBK");
+		octetTxt.append('a');
+		octetTxt.append('\u4e2d');
+		octetTxt.append("\u4e2d\u6587");
+		assertEquals(7, octetTxt.length());
+		assertEquals("a\u4e2d\u4e2d\u6587", octetTxt.toString());
+	}
+
+	public final void testWriter() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+
+			try {
+				doTestWriter();
+			} catch (IOException ex) {
+				fail(ex);
+			}
+		}
+	}
+
+	private final void doTestWriter() throws IOException {
+		final ExpandableTextBuffer octetTxt = new ExpandableTextBuffer((BufferAllocator)this, 1);
+
+		final Writer writer = octetTxt.getWriter();
+		writer.write("abc", 1, 2);
+		writer.write('\u00e9');
+		// A pair split across writes comes out whole.
+		writer.write("x\ud83d".toCharArray());
+		writer.write('\ude00');
+		writer.append("\u4e2d\ud83d");
+		writer.append("\ude00yz", 0, 2);
+		assertEquals("bc\u00e9x\ud83d\ude00\u4e2d\ud83d\ude00y", octetTxt.toString());
+
+		writer.write('\ud83d');
+		writer.write('q');
+		writer.write('\ud83d');
+		writer.close();
+		assertEquals("bc\u00e9x\ud83d\ude00\u4e2d\ud83d\ude00y?q?", octetTxt.toString());
+
+		try {
+			writer.write('a');
+			fail();
+		} catch (IOException ignore) {
+		}
+
+		octetTxt.clear();
+		octetTxt.setCharset("GBK");
+		final PrintWriter printWriter = octetTxt.getPrintWriter(false);
+		printWriter.print("\u4e2d\u6587");
+		printWriter.print(12);
+		assertEquals(6, octetTxt.length());
+		assertEquals("\u4e2d\u658712", octetTxt.toString());
+
+		octetTxt.clear();
+		octetTxt.setCharset("UTF-8");
+		octetTxt.appendCodePoint('a').appendCodePoint(0x1F600).appendCodePoint(0x4E2D);
+		assertEquals("a\ud83d\ude00\u4e2d", octetTxt.toString());
+	}
+
+	public final void testAppendNumber() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestAppendNumber();
+		}
+	}
+
+	private final void doTestAppendNumber() {
+		ExpandableTextBuffer octetTxt = new ExpandableTextBuffer((BufferAllocator)this, 1);
+
+		octetTxt.appendInt(0).append(',').appendInt(-123).append(',').appendInt(Integer.MIN_VALUE);
+		assertEquals("0,-123,-2147483648", octetTxt.toString());
+
+		octetTxt.clear();
+		octetTxt.appendLong(Long.MAX_VALUE).append(',').appendLong(Long.MIN_VALUE);
+		assertEquals("9223372036854775807,-9223372036854775808", octetTxt.toString());
+
+		final double[] values = {
+				0.0, -0.0, 1.0, -1.5, 0.1, 0.001, 1.0E-4, 123.456, 9999999.0, 1.0E7,
+				1.0E22, 2.2250738585072014E-308, 1.7976931348623157E308,
+				Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+		};
+		for (double value : values) {
+			octetTxt.clear();
+			octetTxt.appendDouble(value);
+			assertEquals(Double.toString(value), octetTxt.toString());
+		}
+
+		// Shortest digits that still read back to the same value.
+		octetTxt.clear();
+		octetTxt.appendDouble(1.0E23).append(',').appendDouble(Double.MIN_VALUE);
+		assertEquals("1.0E23,5.0E-324", octetTxt.toString());
+
+		// Digits are encoded in the charset of the buffer.
+		octetTxt = new ExpandableTextBuffer((BufferAllocator)this, 8);
+		octetTxt.setCharset("UTF-16LE");
+		octetTxt.append("x=").appendInt(12).append(',').appendLong(-7L).append(',').appendDouble(1.5);
+		assertEquals(22, octetTxt.length());
+		assertEquals("x=12,-7,1.5", octetTxt.toString());
+	}
+
 	public final void testReplace() {
 		for (int i = 1; i >= 0; --i) {
 			this.isAllocateDirect = (i > 0);
@@ -193,6 +340,80 @@ public final class TextBufferTestAction extends BaseTestAction implements Buffer
 	}
 
 
+	public final void testConvertLarge() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+
+			try {
+				doTestConvertLarge();
+			} catch (IOException ex) {
+				fail(ex);
+			}
+		}
+	}
+
+	private final void doTestConvertLarge() throws IOException {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; builder.length() < 100000; ++i) {
+			builder.append("abc\u00e9\u4e2d").append(i).append("\ud83d\ude00\r\n");
+		}
+		final String str = builder.toString();
+
+		final ExpandableTextBuffer octetTxt = new ExpandableTextBuffer((BufferAllocator)this, 1);
+		octetTxt.append(str);
+
+		octetTxt.convert("UTF-16LE");
+		assertEquals(2 * str.length(), octetTxt.length());
+		assertEquals(str, octetTxt.toString());
+
+		octetTxt.convert("UTF-8");
+		assertEquals(str, octetTxt.toString());
+
+		octetTxt.convert("GBK");
+		octetTxt.convert("UTF-16BE");
+		assertEquals(str.replace("\ud83d\ude00", "?"), octetTxt.toString());
+
+		octetTxt.clear();
+		octetTxt.setCharset("UTF-8");
+		octetTxt.append(str);
+
+		octetTxt.convert("ISO-8859-1");
+		final String latin1 = str.replace("\u4e2d", "?").replace("\ud83d\ude00", "?");
+		assertEquals(latin1.length(), octetTxt.length());
+		assertEquals(latin1, octetTxt.toString());
+
+		octetTxt.convert("UTF-8");
+		assertEquals(latin1, octetTxt.toString());
+
+		// -------------------------------------------------
+		final String fileName = "../tmp/textbuftest1.txt";
+
+		final ExpandableTextBuffer octetTxtS = new ExpandableTextBuffer((BufferAllocator)this, 1);
+		octetTxtS.setCharset("UTF-16LE");
+		octetTxtS.append(str);
+		octetTxtS.store(fileName, false, true);
+
+		final ExpandableTextBuffer octetTxtD = new ExpandableTextBuffer((BufferAllocator)this, 1);
+		octetTxtD.append("head");
+		octetTxtD.load(fileName);
+		assertTrue(octetTxtD.isSameCharset("UTF-8"));
+		assertEquals("head" + str, octetTxtD.toString());
+
+		octetTxtS.store(fileName, false, false);
+
+		octetTxtD.clear();
+		octetTxtD.load(fileName, "UTF-16LE");
+		assertEquals(str, octetTxtD.toString());
+
+		octetTxtS.convert("GBK");
+		octetTxtS.store(fileName, false, false);
+
+		octetTxtD.clear();
+		octetTxtD.load(fileName, "GBK");
+		assertEquals(str.replace("\ud83d\ude00", "?"), octetTxtD.toString());
+	}
+
+
 	public final void testLoadAndStore() {
 		for (int i = 1; i >= 0; --i) {
 			this.isAllocateDirect = (i > 0);
@@ -298,4 +519,102 @@ public final class TextBufferTestAction extends BaseTestAction implements Buffer
 
 	}
 
+
+	public final void testLineIndex() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+
+			try {
+				doTestLineIndex();
+			} catch (IOException ex) {
+				fail(ex);
+			}
+		}
+	}
+
+	private final void doTestLineIndex() throws IOException {
+		final ExpandableTextBuffer octetTxt = new ExpandableTextBuffer((BufferAllocator)this, 1);
+		octetTxt.setCharset("UTF-8");
+
+		final LineIndex index = octetTxt.lineIndex();
+		assertEquals(1, index.lineCount());
+		assertEquals(0, index.lineEnd(0));
+
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 500; ++i) {
+			final String line = "line " + i + ((i % 7 == 0) ? " \u00e9t\u00e9" : "") + "\n";
+			builder.append(line);
+
+			// Lines split across appends.
+			octetTxt.append(line, 0, 3);
+			assertEquals(i + 1, index.lineCount());
+			octetTxt.append(line, 3, line.length());
+		}
+		final byte[] bytes = builder.toString().getBytes("UTF-8");
+
+		assertEquals(501, index.lineCount());
+		for (int i = 0, start = 0; i < bytes.length; ++i) {
+			if (bytes[i] == '\n') {
+				final int line = index.lineOf(i);
+				assertEquals(start, index.lineStart(line));
+				assertEquals(i, index.lineEnd(line));
+				assertEquals(line, index.lineOf(start));
+				start = i + 1;
+			}
+		}
+		assertEquals(500, index.lineOf(bytes.length));
+		assertEquals(bytes.length, index.lineStart(500));
+
+		octetTxt.replace(10, 10, "\n\n");
+		assertEquals(503, index.lineCount());
+		assertEquals(11, index.lineStart(1));
+		assertEquals(12, index.lineStart(2));
+		assertEquals(15, index.lineStart(3));
+
+		octetTxt.replace(10, 12, "");
+		assertEquals(501, index.lineCount());
+		assertEquals(bytes.length, index.lineStart(500));
+
+		// -------------------------------------------------
+		final String fileName = "../tmp/textbuftest2.idx";
+		index.store(fileName);
+
+		final ExpandableTextBuffer octetTxtD = new ExpandableTextBuffer((BufferAllocator)this, 1);
+		octetTxtD.append(bytes);
+		octetTxtD.append("more\nlines");
+
+		final LineIndex loaded = octetTxtD.lineIndex().load(fileName);
+		assertEquals(502, loaded.lineCount());
+		assertEquals(bytes.length + 5, loaded.lineStart(501));
+		assertEquals(index.lineStart(250), loaded.lineStart(250));
+
+		octetTxtD.clear();
+		octetTxtD.append("short\n");
+		try {
+			octetTxtD.lineIndex().load(fileName);
+			fail("Expected IOException");
+		} catch (IOException ignore) {
+		}
+		assertEquals(2, octetTxtD.lineIndex().lineCount());
+
+		// -------------------------------------------------
+		// The byte edits and reads of the buffer keep the index up too.
+		octetTxtD.append("a\nbb\nccc\n");
+		final LineIndex lines = octetTxtD.lineIndex();
+		assertEquals(5, lines.lineCount());
+
+		octetTxtD.delete(0, 6);
+		assertEquals(4, lines.lineCount());
+		assertEquals(2, lines.lineStart(1));
+
+		octetTxtD.replaceAll((byte)'b', (byte)'\n');
+		assertEquals(6, lines.lineCount());
+
+		final byte[] read = new byte[4];
+		octetTxtD.inputOp().get(read);
+		assertEquals(3, lines.lineCount());
+		assertEquals(1, lines.lineStart(1));
+		assertEquals(5, lines.lineStart(2));
+	}
+
 }
@@ -0,0 +1,396 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Zhaoping Yu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.chinmobi.octettest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import com.chinmobi.octet.BufferAllocator;
+import com.chinmobi.testapp.BaseTestAction;
+import com.chinmobi.text.ArrayText;
+import com.chinmobi.text.BufferText;
+import com.chinmobi.text.ExpandableTextBuffer;
+import com.chinmobi.text.TextOctet;
+import com.chinmobi.text.TextRope;
+
+/**
+ * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
+ *
+ */
+public final class TextRopeTestAction extends BaseTestAction implements BufferAllocator {
+
+	private boolean isAllocateDirect;
+
+
+	public TextRopeTestAction() {
+		super();
+		this.isAllocateDirect = false;
+	}
+
+
+	public final ByteBuffer allocate(final ByteBuffer oldBuffer, final int size) {
+		if (this.isAllocateDirect) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
+	}
+
+	private final TextOctet newText(final String str) {
+		final byte[] bytes = str.getBytes(Charset.forName("UTF-8"));
+		return newText(bytes, 0, bytes.length);
+	}
+
+	private final TextOctet newText(final byte[] bytes, final int offset, final int length) {
+		if (this.isAllocateDirect) {
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(length + 4);
+			buffer.position(2);
+			buffer.put(bytes, offset, length);
+			return new BufferText(buffer, 2, length);
+		} else {
+			final byte[] array = new byte[length + 4];
+			System.arraycopy(bytes, offset, array, 2, length);
+			return new ArrayText(array, 2, length);
+		}
+	}
+
+	private static String repeat(final String str, final int count) {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < count; ++i) {
+			builder.append(str);
+		}
+		return builder.toString();
+	}
+
+
+	/*
+	 * Test methods
+	 */
+
+	public final void testEdit() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestEdit();
+		}
+	}
+
+	private final void doTestEdit() {
+		final TextRope rope = new TextRope();
+		final StringBuilder expected = new StringBuilder();
+
+		assertTrue(rope.isEmpty());
+		assertEquals(0, rope.length());
+
+		final Random random = new Random(20180615);
+
+		for (int n = 0; n < 400; ++n) {
+			final int length = expected.length();
+			final int begin = (length > 0) ? random.nextInt(length + 1) : 0;
+			final int end = begin + ((length > begin) ? random.nextInt(Math.min(length - begin, 300) + 1) : 0);
+
+			final String str = repeat(Integer.toString(n), random.nextInt(120));
+
+			switch (random.nextInt(4)) {
+			case 0:
+				rope.insert(begin, newText(str));
+				expected.insert(begin, str);
+				break;
+
+			case 1:
+				rope.delete(begin, end);
+				expected.delete(begin, end);
+				break;
+
+			case 2:
+				rope.replace(begin, end, str);
+				expected.replace(begin, end, str);
+				break;
+
+			default:
+				rope.append(newText(str));
+				expected.append(str);
+				break;
+			}
+
+			assertEquals(expected.length(), rope.length());
+		}
+
+		assertEquals(expected.toString(), rope.toString());
+
+		final int index = expected.length() / 3;
+		assertEquals((byte)expected.charAt(index), rope.byteAt(index));
+
+		try {
+			rope.byteAt(rope.length());
+			fail("IndexOutOfBoundsException expected");
+		} catch (IndexOutOfBoundsException ignore) {
+		}
+
+		try {
+			rope.replace(2, 1, "x");
+			fail("IndexOutOfBoundsException expected");
+		} catch (IndexOutOfBoundsException ignore) {
+		}
+
+		rope.delete(0, rope.length() + 10);
+		assertTrue(rope.isEmpty());
+		assertEquals("", rope.toString());
+	}
+
+	public final void testSubrope() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestSubrope();
+		}
+	}
+
+	private final void doTestSubrope() {
+		final String str0 = repeat("0123456789", 30);
+		final String str1 = repeat("abcdefghij", 30);
+
+		final TextRope rope = new TextRope(newText(str0));
+		rope.append(newText(str1));
+
+		final TextRope sub = rope.subrope(295, 305);
+		assertEquals("56789abcde", sub.toString());
+
+		rope.delete(290, 310);
+		rope.insert(0, "xyz");
+
+		assertEquals("56789abcde", sub.toString());
+		assertEquals(583, rope.length());
+		assertTrue(rope.startsWith(false, "xyz0123".getBytes()));
+		assertFalse(rope.endsWith(false, "HIJ".getBytes()));
+		assertTrue(rope.endsWith(true, "HIJ".getBytes()));
+		assertTrue(rope.startsWith(false, 291, "89".getBytes()));
+		assertTrue(rope.startsWith(true, 293, "ABc".getBytes()));
+
+		assertTrue(sub.equals(false, "56789abcde".getBytes()));
+		assertTrue(sub.equals(true, "56789ABCDE".getBytes()));
+		assertFalse(sub.equals(false, "56789ABCDE".getBytes()));
+		assertTrue(sub.equals(false, rope.subrope(0, 0).append(sub)));
+	}
+
+	public final void testEquals() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestEquals();
+		}
+	}
+
+	private final void doTestEquals() {
+		final String str = repeat("0123456789abcdefghij", 40);
+
+		// The same bytes cut into leaves at different places.
+		final TextRope rope = new TextRope();
+		rope.append(newText(str.substring(0, 300))).append(newText(str.substring(300, 301)))
+				.append(newText(str.substring(301)));
+
+		final TextRope another = new TextRope();
+		another.append(newText(str.substring(0, 270))).append(newText(str.substring(270, 555)))
+				.append(newText(str.substring(555)));
+
+		assertTrue(rope.equals(false, another));
+		assertTrue(another.equals(false, rope));
+		assertTrue(rope.equals(false, newText(str)));
+
+		final TextRope upper = new TextRope().append(newText(str.toUpperCase()));
+		assertFalse(rope.equals(false, upper));
+		assertTrue(rope.equals(true, upper));
+		assertTrue(upper.equals(true, another));
+		assertTrue(rope.equals(true, newText(str.toUpperCase())));
+
+		another.delete(500, 501).insert(500, "X");
+		assertFalse(rope.equals(false, another));
+		assertFalse(rope.equals(true, another));
+		assertFalse(rope.equals(false, newText(str.substring(1) + "0")));
+		assertFalse(rope.equals(false, newText(str.substring(1))));
+
+		assertTrue(rope.startsWith(false, newText(str.substring(0, 320))));
+		assertTrue(rope.startsWith(true, 290, newText(str.substring(290, 320).toUpperCase())));
+		assertFalse(rope.startsWith(false, 790, newText("ijk")));
+		assertTrue(rope.endsWith(false, newText(str.substring(250))));
+		assertFalse(rope.endsWith(false, newText("x" + str)));
+
+		assertEquals(-1, rope.indexOf(800, (byte)'0'));
+		assertEquals(0, rope.indexOf(-5, (byte)'0'));
+		assertEquals(-1, rope.lastIndexOf(-1, (byte)'0'));
+		assertEquals(str.lastIndexOf('0', 300), rope.lastIndexOf(300, (byte)'0'));
+		assertEquals(str.lastIndexOf('j'), rope.lastIndexOf(1000, (byte)'j'));
+		assertEquals(-1, new TextRope().indexOf((byte)'0'));
+		assertEquals(-1, new TextRope().lastIndexOf((byte)'0'));
+	}
+
+	public final void testIndexOf() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestIndexOf();
+		}
+	}
+
+	private final void doTestIndexOf() {
+		final String str0 = repeat("0123456789", 30) + "Hello Wo";
+		final String str1 = "rld" + repeat("abcdefghij", 30) + "he";
+		final String str2 = "llo";
+		final String str3 = " world" + repeat("0123456789", 30);
+
+		final TextRope rope = new TextRope();
+		rope.append(newText(str0)).append(newText(str1)).append(newText(str2)).append(newText(str3));
+
+		final String expected = str0 + str1 + str2 + str3;
+		assertEquals(expected, rope.toString());
+
+		assertEquals(expected.indexOf("Hello World"), rope.indexOf(false, "Hello World".getBytes()));
+		assertEquals(expected.indexOf("hello world"), rope.indexOf(false, "hello world".getBytes()));
+		assertEquals(-1, rope.indexOf(false, "Hello world".getBytes()));
+		assertEquals(expected.indexOf("Hello World"), rope.indexOf(true, "hello world".getBytes()));
+		assertEquals(expected.indexOf("hello world"), rope.indexOf(true, 301, "hello world".getBytes()));
+		assertEquals(expected.indexOf("hello world"), rope.indexOf(false, "xhello worldx".getBytes(), 1, 11));
+
+		assertEquals(expected.indexOf("jhello"), rope.indexOf(false, newText("jhello")));
+		assertEquals(expected.lastIndexOf("789"), rope.lastIndexOf(false, "789".getBytes()));
+		assertEquals(expected.toUpperCase().lastIndexOf("HELLO", 400), rope.lastIndexOf(true, 400 + 5, "HELLO".getBytes()));
+		assertEquals(expected.lastIndexOf("hello"), rope.lastIndexOf(false, newText("hello")));
+		assertEquals(expected.lastIndexOf("ohe"), rope.lastIndexOf(false, "ohe".getBytes()));
+		assertEquals(-1, rope.lastIndexOf(false, 5, "56789".getBytes()));
+		assertEquals(5, rope.lastIndexOf(false, 10, "56789".getBytes()));
+
+		assertEquals(expected.indexOf('W'), rope.indexOf((byte)'W'));
+		assertEquals(expected.indexOf('l', 310), rope.indexOf(310, (byte)'l'));
+		assertEquals(expected.lastIndexOf('W'), rope.lastIndexOf((byte)'W'));
+		assertEquals(expected.lastIndexOf('j', 600), rope.lastIndexOf(600, (byte)'j'));
+
+		final TextRope sub = rope.subrope(305, 620);
+		assertEquals(expected.substring(305, 620).indexOf("HELLO world", 0), sub.indexOf(false, "HELLO world".getBytes()));
+		assertEquals(expected.substring(305, 620).indexOf("hello world"), sub.indexOf(true, "HELLO world".getBytes()));
+	}
+
+	public final void testTransferTo() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+
+			try {
+				doTestTransferTo();
+			} catch (IOException ex) {
+				fail(ex);
+			}
+		}
+	}
+
+	private final void doTestTransferTo() throws IOException {
+		final TextRope rope = new TextRope();
+		for (int i = 0; i < 10; ++i) {
+			rope.append(newText(repeat(Integer.toString(i), 30 * i + 1)));
+		}
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		final int[] calls = new int[1];
+		final GatheringByteChannel channel = new GatheringByteChannel() {
+
+			public int write(final ByteBuffer src) throws IOException {
+				int n = 0;
+				while (src.hasRemaining() && n < 97) {
+					out.write(src.get());
+					++n;
+				}
+				return n;
+			}
+
+			public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+				++calls[0];
+				long n = 0;
+				for (int i = offset; i < offset + length; ++i) {
+					n += write(srcs[i]);
+					if (srcs[i].hasRemaining()) {
+						break;
+					}
+				}
+				return n;
+			}
+
+			public long write(final ByteBuffer[] srcs) throws IOException {
+				return write(srcs, 0, srcs.length);
+			}
+
+			public boolean isOpen() {
+				return true;
+			}
+
+			public void close() throws IOException {
+			}
+
+		};
+
+		assertEquals(rope.length(), rope.transferTo(channel));
+		assertTrue(calls[0] > 1);
+		assertEquals(rope.toString(), new String(out.toByteArray(), "UTF-8"));
+
+		final ExpandableTextBuffer textBuf = new ExpandableTextBuffer((BufferAllocator)this, 1);
+		rope.transferTo(textBuf);
+		assertEquals(rope.toString(), textBuf.toString());
+
+		final TextRope copy = new TextRope(textBuf);
+		textBuf.clear();
+		assertTrue(copy.equals(false, rope));
+	}
+
+	public final void testCharset() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestCharset();
+		}
+	}
+
+	private final void doTestCharset() {
+		final String str = repeat("\u4e2d\u6587 text \u00e9\ud83d\ude00 ", 40);
+		final byte[] bytes = str.getBytes(Charset.forName("UTF-8"));
+
+		final TextRope rope = new TextRope();
+		for (int i = 0; i < bytes.length; i += 257) {
+			rope.append(newText(bytes, i, Math.min(257, bytes.length - i)));
+		}
+		assertFalse(rope.hasCharset());
+		assertEquals(bytes.length, rope.length());
+		assertEquals(str, rope.toString());
+
+		rope.convert("UTF-16BE");
+		assertEquals("UTF-16BE", rope.getCharset().name());
+		assertEquals(str.length() * 2, rope.length());
+		assertEquals(str, rope.toString());
+
+		rope.insert(0, "\u00e9");
+		assertEquals("\u00e9" + str, rope.toString());
+
+		rope.convert("utf-8");
+		assertTrue(rope.isSameCharset("UTF8"));
+		assertTrue(rope.equals(false, ("\u00e9" + str).getBytes(Charset.forName("UTF-8"))));
+	}
+
+}
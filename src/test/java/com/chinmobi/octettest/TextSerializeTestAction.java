@@ -262,6 +262,38 @@ public final class TextSerializeTestAction extends BaseTestAction implements Buf
 	}
 
 
+	public final void testCompactTextBuffer() {
+		for (int i = 1; i >= 0; --i) {
+			this.isAllocateDirect = (i > 0);
+			doTestCompactTextBuffer();
+		}
+	}
+
+	private final void doTestCompactTextBuffer() {
+		final ExpandableTextBuffer textBuf = new ExpandableTextBuffer((BufferAllocator)this, 4 * 1024);
+		textBuf.setCharset("ISO-8859-1");
+		textBuf.append("caf\u00e9");
+
+		textBuf.setCompactExternal(true);
+
+		ExpandableTextBuffer result = null;
+		try {
+			result = doSerialize(textBuf);
+		} catch (IOException ex) {
+			fail(ex);
+		} catch (ClassNotFoundException ex) {
+			fail(ex);
+		}
+
+		assertNotNull(result);
+		assertEquals(4, result.capacity());
+		assertEquals(this.isAllocateDirect, result.buffer().isDirect());
+		assertTrue(result.hasCharset());
+		assertTrue(result.isSameCharset("ISO-8859-1"));
+		assertEquals("caf\u00e9", result.toString());
+	}
+
+
 	private static final void assertText(final TextOctet text) {
 		assertEquals(1, text.begin());
 		assertEquals(5, text.end());
@@ -27,11 +27,24 @@ package com.chinmobi.octettest;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.chinmobi.testapp.BaseTestAction;
+import com.chinmobi.text.AbstractTextOctet;
 import com.chinmobi.text.ArrayText;
 import com.chinmobi.text.BufferText;
+import com.chinmobi.text.CharsetUtils;
+import com.chinmobi.text.EscapeUtils;
+import com.chinmobi.text.ExpandableTextBuffer;
+import com.chinmobi.text.ParallelUtf8Decoder;
+import com.chinmobi.text.TextCharSequence;
+import com.chinmobi.text.TextMatchUtils;
 import com.chinmobi.text.TextOctet;
+import com.chinmobi.text.TextOctetReader;
+import com.chinmobi.text.TextTokenizer;
+import com.chinmobi.text.Utf8Index;
 
 /**
  * @author <a href="mailto:yuzhaoping1970@gmail.com">Zhaoping Yu</a>
@@ -855,6 +868,532 @@ public final class TextTestAction extends BaseTestAction {
 	}
 
 
+	public final void testDecode() {
+		final String[] samples = {
+				"plain ascii header value",
+				"caf\u00e9 cr\u00e8me",
+				"\u4e2d\u6587 mixed \ud83d\ude00 text",
+		};
+		final String[] charsets = { "UTF-8", "ISO-8859-1", "US-ASCII", "GBK" };
+
+		for (String sample : samples) {
+			for (String charsetName : charsets) {
+				final Charset charset = Charset.forName(charsetName);
+				final byte[] bytes = sample.getBytes(charset);
+				final String expected = new String(bytes, charset);
+
+				assertDecoded(expected, bytes, charsetName);
+			}
+		}
+
+		// Malformed UTF-8 is replaced the same way the JDK decoder does.
+		final byte[] malformed = { 'a', (byte)0xE4, (byte)0xB8, 'b', (byte)0xC0, (byte)0x80,
+				(byte)0xED, (byte)0xA0, (byte)0x80, (byte)0xF0, (byte)0x9F, (byte)0x98, (byte)0x80 };
+		assertDecoded("a\ufffdb\ufffd\ufffd\ufffd\ud83d\ude00", malformed, "UTF-8");
+
+		// Non ASCII bytes under US-ASCII.
+		assertDecoded("a\ufffdb", new byte[] { 'a', (byte)0xE9, 'b' }, "US-ASCII");
+
+		// Longer than the one String append limit.
+		final StringBuilder large = new StringBuilder();
+		while (large.length() < 20000) {
+			large.append("\u00e9t\u00e9 ");
+		}
+		assertDecoded(large.toString(), large.toString().getBytes(CharsetUtils.UTF_8), "UTF-8");
+
+		assertEquals(5, CharsetUtils.asciiLength("abcde\u00e9".getBytes(CharsetUtils.UTF_8), 0, 7));
+	}
+
+	private static final void assertDecoded(final String expected, final byte[] bytes, final String charsetName) {
+		final byte[] array = new byte[bytes.length + 2];
+		System.arraycopy(bytes, 0, array, 1, bytes.length);
+
+		final ByteBuffer directBuf = ByteBuffer.allocateDirect(array.length);
+		directBuf.put(array);
+		directBuf.flip();
+
+		final TextOctet[] texts = {
+				new ArrayText(array, 1, bytes.length),
+				new BufferText(ByteBuffer.wrap(array), 1, bytes.length),
+				new BufferText(directBuf, 1, bytes.length),
+		};
+
+		for (TextOctet text : texts) {
+			((AbstractTextOctet)text).setCharset(charsetName);
+
+			assertEquals(expected, text.toString());
+
+			final StringBuilder builder = new StringBuilder();
+			try {
+				text.appendTo(builder);
+			} catch (IOException ex) {
+				fail(ex);
+			}
+			assertEquals(expected, builder.toString());
+		}
+	}
+
+
+	public final void testValidateUtf8() {
+		assertValidLength(0, new byte[0]);
+		assertValidLength(11, "plain ASCII".getBytes(CharsetUtils.UTF_8));
+		assertValidLength(13, "\u00e9t\u00e9 \u65e5\ud83d\ude00".getBytes(CharsetUtils.UTF_8));
+
+		// Overlong, surrogate, too large and stray continuation bytes.
+		assertValidLength(1, new byte[] { 'a', (byte)0xC0, (byte)0x80 });
+		assertValidLength(2, new byte[] { 'a', 'b', (byte)0xE0, (byte)0x80, (byte)0x80 });
+		assertValidLength(0, new byte[] { (byte)0xED, (byte)0xA0, (byte)0x80 });
+		assertValidLength(0, new byte[] { (byte)0xF4, (byte)0x90, (byte)0x80, (byte)0x80 });
+		assertValidLength(3, new byte[] { 'a', 'b', 'c', (byte)0x80, 'd' });
+
+		// A truncated sequence at the end.
+		assertValidLength(9, "123456789\u00e9".substring(0, 10).getBytes(CharsetUtils.UTF_8), 10);
+		assertValidLength(10, new byte[] { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+				(byte)0xF0, (byte)0x9F, (byte)0x98 });
+	}
+
+	private static final void assertValidLength(final int expected, final byte[] bytes) {
+		assertValidLength(expected, bytes, bytes.length);
+	}
+
+	private static final void assertValidLength(final int expected, final byte[] bytes, final int length) {
+		assertEquals(expected, CharsetUtils.validUtf8Length(bytes, 0, length));
+		assertEquals(expected == length, CharsetUtils.isValidUtf8(bytes, 0, length));
+
+		final ByteBuffer directBuf = ByteBuffer.allocateDirect(length + 1);
+		directBuf.put((byte)'x').put(bytes, 0, length);
+		assertEquals(expected, CharsetUtils.validUtf8Length(directBuf, 1, length + 1));
+	}
+
+	public final void testParallelDecode() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; builder.length() < ParallelUtf8Decoder.PARALLEL_THRESHOLD * 2; ++i) {
+			builder.append("line ").append(i).append(" \u00e9t\u00e9 \u65e5\u672c \ud83d\ude00\n");
+		}
+		final byte[] valid = builder.toString().getBytes(CharsetUtils.UTF_8);
+
+		final byte[] malformed = valid.clone();
+		for (int i = 1000; i < malformed.length; i += 300007) {
+			malformed[i] = (byte)0xFF;
+		}
+		malformed[malformed.length - 1] = (byte)0xF0;
+
+		for (byte[] bytes : new byte[][] { valid, malformed }) {
+			final String expected = new String(bytes, CharsetUtils.UTF_8);
+
+			final ByteBuffer directBuf = ByteBuffer.allocateDirect(bytes.length);
+			directBuf.put(bytes);
+			directBuf.flip();
+
+			assertEquals(expected, ParallelUtf8Decoder.decode(bytes, 0, bytes.length));
+			assertEquals(expected, ParallelUtf8Decoder.decode(directBuf, 0, bytes.length));
+
+			final StringBuilder segments = new StringBuilder();
+			for (char[] segment : ParallelUtf8Decoder.decodeSegments(directBuf, 0, bytes.length)) {
+				segments.append(segment);
+			}
+			assertEquals(expected, segments.toString());
+
+			assertEquals(bytes == valid, ParallelUtf8Decoder.isValid(bytes, 0, bytes.length));
+			assertEquals(bytes == valid, ParallelUtf8Decoder.isValid(directBuf, 0, bytes.length));
+
+			assertDecoded(expected, bytes, "UTF-8");
+		}
+	}
+
+	public final void testEscape() {
+		final ArrayText source = new ArrayText("say \"<a href='x'>\" & \\ \t\u0001 done".getBytes());
+
+		final ExpandableTextBuffer json = new ExpandableTextBuffer(16).setCharset("UTF-8");
+		EscapeUtils.escapeJson(source, json);
+		assertEquals("say \\\"<a href='x'>\\\" & \\\\ \\t\\u0001 done", json.toString());
+
+		final ExpandableTextBuffer html = new ExpandableTextBuffer(16).setCharset("UTF-8");
+		EscapeUtils.escapeHtml(source, html);
+		assertEquals("say &quot;&lt;a href=&#39;x&#39;&gt;&quot; &amp; \\ \t\u0001 done", html.toString());
+
+		final ArrayText query = new ArrayText("a b&c=\u00e9~".getBytes(CharsetUtils.UTF_8));
+		final ExpandableTextBuffer url = new ExpandableTextBuffer(16).setCharset("UTF-8");
+		EscapeUtils.escapeUrl(query, true, url);
+		assertEquals("a+b%26c%3D%C3%A9~", url.toString());
+
+		// Unescaping into a buffer.
+		final ExpandableTextBuffer dest = new ExpandableTextBuffer(16).setCharset("UTF-8");
+		EscapeUtils.unescapeJson(new ArrayText("\\u00e9\\n\\ud83d\\ude00\\ud83d \\q\\u12".getBytes()), dest);
+		assertEquals("\u00e9\n\ud83d\ude00\ufffd q\\u12", dest.toString());
+
+		dest.clear();
+		EscapeUtils.unescapeHtml(new ArrayText("&lt;&#233;&#x1F600;&nbsp;&bogus; &#xZZ; &".getBytes()), dest);
+		assertEquals("<\u00e9\ud83d\ude00\u00a0&bogus; &#xZZ; &", dest.toString());
+
+		// Unescaping in place, on heap and direct buffers.
+		final byte[] encoded = "x=%E6%97%A5+%2B%zz%4".getBytes();
+		for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(64), ByteBuffer.allocateDirect(64) }) {
+			buffer.put(encoded).put("tail".getBytes()).flip();
+
+			final BufferText text = new BufferText().wrap(buffer, 0, encoded.length);
+			text.setCharset("UTF-8");
+
+			final int end = EscapeUtils.unescapeUrl(text, text.begin(), text.end(), true);
+			assertEquals(end, text.end());
+			assertEquals("x=\u65e5 +%zz%4", text.toString());
+		}
+	}
+
+	public final void testUtf8Index() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; builder.length() < Utf8Index.CHECKPOINT_INTERVAL * 5; ++i) {
+			builder.append(i).append(" \u00e9t\u00e9 \u65e5\u672c \ud83d\ude00 ");
+		}
+		final String string = builder.toString();
+		final byte[] bytes = string.getBytes(CharsetUtils.UTF_8);
+
+		final byte[] padded = new byte[bytes.length + 7];
+		System.arraycopy(bytes, 0, padded, 3, bytes.length);
+
+		final Utf8Index index = new Utf8Index(new ArrayText().wrap(padded, 3, bytes.length));
+
+		assertEquals(string.length(), index.charLength());
+		assertEquals(string.codePointCount(0, string.length()), index.codePointCount());
+		assertEquals(3 + bytes.length, index.byteIndexOfChar(string.length()));
+
+		for (int i = string.length() - 1; i >= 0; i -= 7) {
+			final int start = Character.isLowSurrogate(string.charAt(i)) ? i - 1 : i;
+			final int byteIndex = 3 + string.substring(0, start).getBytes(CharsetUtils.UTF_8).length;
+
+			assertEquals(byteIndex, index.byteIndexOfChar(i));
+			assertEquals(start, index.charIndex(byteIndex));
+			if (string.charAt(start) >= 0x80) {
+				assertEquals(start, index.charIndex(byteIndex + 1));
+			}
+
+			final int codePoint = string.codePointCount(0, start);
+			assertEquals(byteIndex, index.byteIndexOfCodePoint(codePoint));
+			assertEquals(codePoint, index.codePointIndex(byteIndex));
+		}
+
+		try {
+			index.byteIndexOfChar(string.length() + 1);
+			fail("Expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException ignore) {
+		}
+
+		// Malformed bytes count as the JDK decoder replaces them.
+		final byte[] malformed = { 'a', (byte)0xE2, (byte)0x82, 'b', (byte)0xED, (byte)0xA0, (byte)0x80,
+				(byte)0xFF, (byte)0xF0, (byte)0x9F, (byte)0x98, (byte)0x80, (byte)0xC3 };
+		final Utf8Index malformedIndex = new Utf8Index(new ArrayText().wrap(malformed));
+		assertEquals(new String(malformed, CharsetUtils.UTF_8).length(), malformedIndex.charLength());
+		assertEquals(3, malformedIndex.byteIndexOfChar(2));
+		assertEquals(8, malformedIndex.byteIndexOfChar(5));
+		assertEquals(12, malformedIndex.byteIndexOfChar(7));
+
+		// The index of a buffer goes on over appends, even of a split code point.
+		final ExpandableTextBuffer buffer = new ExpandableTextBuffer(16);
+		buffer.setCharset("UTF-8");
+
+		final Utf8Index bufferIndex = buffer.utf8Index();
+		for (int i = 0; i < bytes.length; i += 1000) {
+			buffer.append(bytes, i, Math.min(1000, bytes.length - i));
+
+			final String expected = new String(bytes, 0, buffer.length(), CharsetUtils.UTF_8);
+			assertEquals(expected.length(), bufferIndex.charLength());
+		}
+		assertEquals(bytes.length - 5, bufferIndex.byteIndexOfChar(string.length() - 2));
+
+		buffer.insert(5, "\u65e5");
+		assertEquals(string.length() + 1, bufferIndex.charLength());
+		assertEquals(bytes.length + 2, bufferIndex.byteIndexOfChar(string.length()));
+
+		// The byte edits of the buffer keep the index up too.
+		final ExpandableTextBuffer edited = new ExpandableTextBuffer(16);
+		edited.setCharset("UTF-8");
+		edited.append("h\u00e9llo w\u00f6rld");
+
+		final Utf8Index editedIndex = edited.utf8Index();
+		assertEquals(11, editedIndex.charLength());
+
+		edited.delete(1, 3);
+		assertEquals(10, editedIndex.charLength());
+		assertEquals(6, editedIndex.byteIndexOfChar(6));
+
+		edited.replace(0, 1, "\u00e9\u00e9".getBytes(CharsetUtils.UTF_8));
+		assertEquals(11, editedIndex.charLength());
+		assertEquals(4, editedIndex.byteIndexOfChar(2));
+
+		// Reading off the input starts the index over.
+		edited.inputOp().get(new byte[4]);
+		assertEquals(9, editedIndex.charLength());
+		assertEquals(5, editedIndex.byteIndexOfChar(5));
+	}
+
+	public final void testParseNumber() {
+		final TextOctet text = new ArrayText("x -2147483648,+42,9223372036854775807,12a,-0.25e2,1e400".getBytes());
+
+		assertEquals(Integer.MIN_VALUE, text.parseInt(2, 13));
+		assertEquals(42, text.parseInt(14, 17));
+		assertTrue(Long.MAX_VALUE == text.parseLong(18, 37));
+
+		assertTrue(-25.0 == text.parseDouble(42, 49));
+		assertTrue(Double.POSITIVE_INFINITY == text.parseDouble(50, 55));
+		assertTrue(0.1 == new ArrayText("0.1".getBytes()).parseDouble(0, 3));
+		assertTrue(123456789.125 == new ArrayText("123456789.125".getBytes()).parseDouble(0, 13));
+
+		// Mantissas longer than a long holds.
+		final String[] longMantissas = { "9999999999999999999", "0.9999999999999999999", "9223372036854775808",
+				"-9999999999999999999e-5", "999999999999999999", "123456789012345678901234567890",
+				"0.000000000000000000012345678901234567890", "-18446744073709551616.5" };
+		for (String str : longMantissas) {
+			assertTrue(Double.parseDouble(str) == new ArrayText(str.getBytes()).parseDouble(0, str.length()));
+		}
+
+		final String[] bad = { "", "-", "12a", "2147483648" };
+		for (String str : bad) {
+			try {
+				new ArrayText(str.getBytes()).parseInt(0, str.length());
+				fail();
+			} catch (NumberFormatException ignore) {
+			}
+		}
+
+		try {
+			text.parseDouble(38, 41);
+			fail();
+		} catch (NumberFormatException ignore) {
+		}
+
+		try {
+			text.parseInt(0, 100);
+			fail();
+		} catch (IndexOutOfBoundsException ignore) {
+		}
+	}
+
+
+	public final void testTokenizer() {
+		assertTokens(new TextTokenizer(), "a\r\nbb\n\nccc\rd", "a", "bb", "", "ccc", "d");
+		assertTokens(new TextTokenizer(), "line one of a longer text block\r\nline two\n", "line one of a longer text block", "line two");
+		assertTokens(new TextTokenizer(), "");
+
+		assertTokens(new TextTokenizer((byte)','), "a,,b,", "a", "", "b", "");
+		assertTokens(new TextTokenizer((byte)','), "no separator in this rather long token", "no separator in this rather long token");
+		assertTokens(new TextTokenizer((byte)','), "");
+
+		assertTokens(new TextTokenizer("::".getBytes()), "a::b:c::::d", "a", "b:c", "", "d");
+		assertTokens(new TextTokenizer("<sep>".getBytes()), "x<sep>y<se", "x", "y<se");
+
+		final TextTokenizer tokenizer = new TextTokenizer((byte)' ');
+		final TextOctet text = new ArrayText("skip one two".getBytes(), 5, 7);
+		tokenizer.reset(text);
+		assertTrue(tokenizer.next());
+		assertEquals(5, tokenizer.begin());
+		assertEquals(8, tokenizer.end());
+		assertEquals("one", tokenizer.token().toString());
+		assertTrue(tokenizer.next());
+		assertEquals("two", tokenizer.token().toString());
+		assertEquals(12, tokenizer.position());
+		assertFalse(tokenizer.next());
+	}
+
+	private static final void assertTokens(final TextTokenizer tokenizer, final String str, final String... expected) {
+		final byte[] bytes = str.getBytes();
+		final byte[] array = new byte[bytes.length + 2];
+		System.arraycopy(bytes, 0, array, 1, bytes.length);
+
+		final ByteBuffer directBuf = ByteBuffer.allocateDirect(array.length);
+		directBuf.put(array);
+		directBuf.flip();
+
+		final TextOctet[] texts = {
+				new ArrayText(array, 1, bytes.length),
+				new BufferText(ByteBuffer.wrap(array), 1, bytes.length),
+				new BufferText(directBuf, 1, bytes.length),
+		};
+
+		for (TextOctet text : texts) {
+			tokenizer.reset(text);
+
+			TextOctet view = null;
+			for (String token : expected) {
+				assertTrue(tokenizer.next());
+				assertEquals(token.length(), tokenizer.length());
+				assertEquals(token, tokenizer.token().toString());
+
+				if (view != null) {
+					assertTrue(view == tokenizer.token());
+				}
+				view = tokenizer.token();
+			}
+			assertFalse(tokenizer.next());
+			assertFalse(tokenizer.next());
+		}
+	}
+
+
+	public final void testCaseConversion() {
+		final String str = "Content-Type: TEXT/html; charset=UTF-8 \u00c0 [@`{]";
+		final byte[] bytes = str.getBytes(CharsetUtils.ISO_8859_1);
+
+		final ByteBuffer directBuf = ByteBuffer.allocateDirect(bytes.length);
+		directBuf.put(bytes);
+		directBuf.flip();
+
+		final BufferText[] texts = {
+				new BufferText(ByteBuffer.wrap(bytes.clone())),
+				new BufferText(directBuf),
+		};
+
+		for (BufferText text : texts) {
+			text.setCharset("ISO-8859-1");
+
+			text.toLowerCase();
+			assertEquals("content-type: text/html; charset=utf-8 \u00c0 [@`{]", text.toString());
+			assertTrue(text.equalsIgnoreCase(bytes));
+
+			text.toUpperCase();
+			assertEquals("CONTENT-TYPE: TEXT/HTML; CHARSET=UTF-8 \u00c0 [@`{]", text.toString());
+			assertTrue(text.equalsIgnoreCase(new ArrayText(bytes)));
+			assertFalse(text.equalsIgnoreCase("CONTENT-TYPE: TEXT/HTML; CHARSET=UTF-8 \u00e0 [@`{]".getBytes(CharsetUtils.ISO_8859_1)));
+			assertEquals(0, text.compareToIgnoreCase(new ArrayText(bytes)));
+		}
+
+		final byte[] pattern = "CHARSET=".getBytes();
+		final int[] shiftTable = TextMatchUtils.compileIgnoreCase(pattern, 0, pattern.length);
+		final TextOctet text = new ArrayText(bytes);
+		assertEquals(str.indexOf("charset="),
+				TextMatchUtils.findCompiledIgnoreCase(text, 0, bytes.length, pattern, 0, pattern.length, shiftTable));
+		assertEquals(-1,
+				TextMatchUtils.findCompiledIgnoreCase(text, 30, bytes.length - 30, pattern, 0, pattern.length, shiftTable));
+	}
+
+
+	public final void testReader() {
+		final String str = "first \u00e9\u4e2d\r\n\ud83d\ude00 second\rthird\n\nlast";
+		final byte[] bytes = str.getBytes(CharsetUtils.UTF_8);
+		final byte[] array = new byte[bytes.length + 2];
+		System.arraycopy(bytes, 0, array, 1, bytes.length);
+
+		final ByteBuffer directBuf = ByteBuffer.allocateDirect(array.length);
+		directBuf.put(array);
+		directBuf.flip();
+
+		final TextOctet[] texts = {
+				new ArrayText(array, 1, bytes.length),
+				new BufferText(directBuf, 1, bytes.length),
+		};
+
+		try {
+			for (TextOctet text : texts) {
+				TextOctetReader reader = new TextOctetReader(text);
+				final StringBuilder builder = new StringBuilder();
+				final char[] cbuf = new char[3];
+				for (int n; (n = reader.read(cbuf, 0, cbuf.length)) >= 0; ) {
+					builder.append(cbuf, 0, n);
+				}
+				assertEquals(str, builder.toString());
+				assertEquals(-1, reader.read());
+
+				// One char at a time splits the pair across two reads.
+				reader = new TextOctetReader(text);
+				builder.setLength(0);
+				for (int c; (c = reader.read()) >= 0; ) {
+					builder.append((char)c);
+				}
+				assertEquals(str, builder.toString());
+
+				reader = new TextOctetReader(text);
+				assertEquals("first \u00e9\u4e2d", reader.readLine().toString());
+				reader.mark(0);
+				assertEquals('\ud83d', reader.read());
+				assertEquals('\ude00', reader.read());
+				assertEquals(' ', reader.read());
+				reader.reset();
+				assertEquals("\ud83d\ude00 second", reader.readLine().toString());
+				final TextOctet line = reader.readLine();
+				assertEquals("third", line.toString());
+				assertTrue(line == reader.readLine());
+				assertEquals(0, line.length());
+				assertEquals("last", reader.readLine().toString());
+				assertTrue(reader.readLine() == null);
+				assertEquals(-1, reader.read());
+
+				reader.close();
+				try {
+					reader.read();
+					fail();
+				} catch (IOException ignore) {
+				}
+			}
+
+			final BufferText utf16 = new BufferText(ByteBuffer.wrap("a\nb".getBytes("UTF-16BE")));
+			utf16.setCharset("UTF-16BE");
+			final TextOctetReader reader = new TextOctetReader(utf16);
+			assertEquals('a', reader.read());
+			try {
+				reader.readLine();
+				fail();
+			} catch (IllegalStateException ignore) {
+			}
+		} catch (IOException ex) {
+			fail(ex);
+		}
+	}
+
+
+	public final void testCharSequence() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 40; ++i) {
+			builder.append("k").append(i).append("=\u00e9\u4e2d\ud83d\ude00;");
+		}
+		final String str = builder.toString();
+		final byte[] bytes = str.getBytes(CharsetUtils.UTF_8);
+
+		final ByteBuffer directBuf = ByteBuffer.allocateDirect(bytes.length);
+		directBuf.put(bytes);
+		directBuf.flip();
+
+		final TextOctet[] texts = {
+				new ArrayText(bytes),
+				new BufferText(directBuf),
+		};
+
+		for (TextOctet text : texts) {
+			final CharSequence chars = text.asCharSequence();
+			assertTrue(chars instanceof TextCharSequence);
+			assertEquals(str.length(), chars.length());
+
+			for (int i = chars.length() - 1; i >= 0; i -= 7) {
+				assertEquals(str.charAt(i), chars.charAt(i));
+			}
+			assertEquals(str, chars.toString());
+
+			final CharSequence sub = chars.subSequence(100, 200);
+			assertEquals(str.substring(100, 200), sub.toString());
+			assertEquals(str.substring(150, 160), sub.subSequence(50, 60).toString());
+
+			final Matcher matcher = Pattern.compile("k(\\d+)=[^;]*\ud83d\ude00;").matcher(chars);
+			int count = 0;
+			while (matcher.find()) {
+				assertEquals(String.valueOf(count), matcher.group(1));
+				++count;
+			}
+			assertEquals(40, count);
+		}
+
+		final ArrayText ascii = new ArrayText("GET /index.html HTTP/1.1".getBytes());
+		assertTrue(ascii.asCharSequence() instanceof TextCharSequence);
+		assertTrue(Pattern.matches("GET (\\S+) HTTP/1\\.1", ascii.asCharSequence()));
+
+		final ArrayText latin1 = new ArrayText(new byte[] { 'a', (byte)0xe9, (byte)0xff });
+		latin1.setCharset("ISO-8859-1");
+		assertEquals("a\u00e9\u00ff", latin1.asCharSequence().toString());
+
+		// Malformed UTF-8 is decoded rather than viewed.
+		final ArrayText malformed = new ArrayText(new byte[] { 'a', (byte)0xc3, 'b' });
+		assertFalse(malformed.asCharSequence() instanceof TextCharSequence);
+		assertEquals("a\ufffdb", malformed.asCharSequence().toString());
+	}
+
+
 	private static final String APPEND_RESULT_STR = "0123456789abcdefghijabcdefghij";
 
 	public final void testAppendTo() {